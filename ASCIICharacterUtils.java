@@ -6,24 +6,74 @@ package cryptography;
  */
 class ASCIICharacterUtils {
     
+    //CONSTANT FIELDS
+    
+    /**
+     * The first letter of the case of every ASCII character, 'A' for the
+     * uppercase letters, 'a' for the lowercase letters and 0 for the other
+     * characters. It classifies a character with a single read and gives its
+     * offset in the alphabet.
+     */
+    private static final char[] BASES = new char[128];
+    
+    /**
+     * The bit 0x8000 of every char of a long, the sign of its four lanes.
+     */
+    private static final long HIGH_BITS = 0x8000800080008000L;
+    
+    /**
+     * The bit 0x0020 of every char of a long, the bit which makes an
+     * uppercase letter lowercase.
+     */
+    private static final long CASE_BITS = 0x0020002000200020L;
+    
+    /**
+     * The lanes of a long which become negative when they are at least 'a'.
+     */
+    private static final long FROM_A = ASCIICharacterUtils.lanes(0x8000 - 'a');
+    
+    /**
+     * The lanes of a long which become negative when they are after 'z'.
+     */
+    private static final long AFTER_Z = ASCIICharacterUtils.lanes(0x8000 - 'z' - 1);
+    
+    static {
+        for(char ch = 'A'; ch <= 'Z'; ch++)
+        {
+            ASCIICharacterUtils.BASES[ch] = 'A';
+            ASCIICharacterUtils.BASES[ch + ('a' - 'A')] = 'a';
+        }
+    }
+    
+    //CONSTRUCTORS
+    
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private ASCIICharacterUtils() {
+    }
+    
+    //PACKAGE STATIC METHODS
+    
     /**
      * This method checks if the given char is an uppercase ASCII letter.
      * @param ch char: The character that you want to check
-     * @return boolean: True if the given char is an uppercase ASCII letter, 
+     * @return boolean: True if the given char is an uppercase ASCII letter,
      * false otherwise
      */
     static boolean isUppercaseLetter(char ch) {
-        return (ch >= 65 && ch <= 90);
+        return ASCIICharacterUtils.getBase(ch) == 'A';
     }
     
     /**
      * This method checks if the given char is a lowercase ASCII letter.
      * @param ch char: The character that you want to check
-     * @return boolean: True if the given char is a lowercase ASCII letter, 
+     * @return boolean: True if the given char is a lowercase ASCII letter,
      * false otherwise
      */
     static boolean isLowercaseLetter(char ch) {
-        return (ch >= 97 && ch <= 122);
+        return ASCIICharacterUtils.getBase(ch) == 'a';
     }
     
     /**
@@ -32,7 +82,186 @@ class ASCIICharacterUtils {
      * @return boolean: True if the given char is an letter, false otherwise
      */
     static boolean isLetter(char ch) {
-        return (ASCIICharacterUtils.isUppercaseLetter(ch) || ASCIICharacterUtils.isLowercaseLetter(ch));
+        return ASCIICharacterUtils.getBase(ch) != 0;
+    }
+    
+    /**
+     * This method returns the first letter of the case of the given char, so
+     * that a letter can be classified and shifted with a single lookup.
+     * @param ch char: The character
+     * @return char: 'A' if the given char is an uppercase ASCII letter, 'a' if
+     * it is a lowercase ASCII letter, 0 otherwise
+     */
+    static char getBase(char ch) {
+        return (ch < 128) ? ASCIICharacterUtils.BASES[ch] : 0;
+    }
+    
+    /**
+     * This method returns the position in the alphabet of the given char,
+     * regardless of its case.
+     * @param ch char: The character
+     * @return int: From 0 for A to 25 for Z, -1 if the given char is not an
+     * ASCII letter
+     */
+    static int indexOf(char ch) {
+        char base = ASCIICharacterUtils.getBase(ch);
+        return (base != 0) ? ch - base : -1;
+    }
+    
+    /**
+     * This method counts the ASCII letters of a part of an array. The
+     * characters are read four at a time into a long and classified together.
+     * @param chars char[]: The characters
+     * @param offset int: The index of the first character
+     * @param length int: The number of characters
+     * @return int: The number of letters
+     */
+    static int countLetters(char[] chars, int offset, int length) {
+        int count = 0, end = offset + length, i = offset;
+        for(; i <= end - 4; i += 4)
+        {
+            count += Long.bitCount(ASCIICharacterUtils.letterLanes(ASCIICharacterUtils.pack(chars, i)));
+        }
+        for(; i < end; i++)
+        {
+            if(ASCIICharacterUtils.isLetter(chars[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * This method counts the ASCII letters of a text. The characters are read
+     * four at a time into a long and classified together.
+     * @param text CharSequence: The text
+     * @return int: The number of letters
+     */
+    static int countLetters(CharSequence text) {
+        int count = 0, end = text.length(), i = 0;
+        for(; i <= end - 4; i += 4)
+        {
+            count += Long.bitCount(ASCIICharacterUtils.letterLanes(ASCIICharacterUtils.pack(text, i)));
+        }
+        for(; i < end; i++)
+        {
+            if(ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * This method returns the index of the first character of a part of an
+     * array which is not an ASCII letter.
+     * @param chars char[]: The characters
+     * @param from int: The index of the first character to check
+     * @param to int: The index after the last character to check
+     * @return int: The index of the first character which is not a letter, -1
+     * if they are all letters
+     */
+    static int indexOfNonLetter(char[] chars, int from, int to) {
+        int i = from;
+        for(; i <= to - 4; i += 4)
+        {
+            long others = ~ASCIICharacterUtils.letterLanes(ASCIICharacterUtils.pack(chars, i)) & ASCIICharacterUtils.HIGH_BITS;
+            if(others != 0) {
+                return i + Long.numberOfTrailingZeros(others) / 16;
+            }
+        }
+        for(; i < to; i++)
+        {
+            if(!ASCIICharacterUtils.isLetter(chars[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * This method returns the index of the first character of a part of a
+     * text which is not an ASCII letter.
+     * @param text CharSequence: The text
+     * @param from int: The index of the first character to check
+     * @param to int: The index after the last character to check
+     * @return int: The index of the first character which is not a letter, -1
+     * if they are all letters
+     */
+    static int indexOfNonLetter(CharSequence text, int from, int to) {
+        int i = from;
+        for(; i <= to - 4; i += 4)
+        {
+            long others = ~ASCIICharacterUtils.letterLanes(ASCIICharacterUtils.pack(text, i)) & ASCIICharacterUtils.HIGH_BITS;
+            if(others != 0) {
+                return i + Long.numberOfTrailingZeros(others) / 16;
+            }
+        }
+        for(; i < to; i++)
+        {
+            if(!ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * This method checks if a text contains only ASCII letters.
+     * @param text CharSequence: The text that you want to check
+     * @return boolean: True if every character is a letter, also if the text
+     * is empty, false otherwise
+     */
+    static boolean isLetters(CharSequence text) {
+        return ASCIICharacterUtils.indexOfNonLetter(text, 0, text.length()) == -1;
+    }
+    
+    //PRIVATE STATIC METHODS
+    
+    /**
+     * This method returns the given value in every char of a long.
+     * @param value int: The value, from 0 to 0xFFFF
+     * @return long: The four lanes
+     */
+    private static long lanes(int value) {
+        return (value & 0xFFFFL) * 0x0001000100010001L;
+    }
+    
+    /**
+     * This method reads four characters of an array into a long, the first
+     * one in the lowest lane.
+     * @param chars char[]: The characters
+     * @param index int: The index of the first character
+     * @return long: The four lanes
+     */
+    private static long pack(char[] chars, int index) {
+        return chars[index] | (long) chars[index + 1] << 16 | (long) chars[index + 2] << 32 | (long) chars[index + 3] << 48;
+    }
+    
+    /**
+     * This method reads four characters of a text into a long, the first one
+     * in the lowest lane.
+     * @param text CharSequence: The text
+     * @param index int: The index of the first character
+     * @return long: The four lanes
+     */
+    private static long pack(CharSequence text, int index) {
+        return text.charAt(index) | (long) text.charAt(index + 1) << 16 | (long) text.charAt(index + 2) << 32 | (long) text.charAt(index + 3) << 48;
+    }
+    
+    /**
+     * This method classifies the four characters of a long at once. Every
+     * lane is made lowercase and, without its sign, compared with 'a' and 'z'
+     * by adding a bias which brings the bounds to 0x8000: no lane can carry
+     * into the next one.
+     * @param word long: The four lanes
+     * @return long: The bit 0x8000 of the lanes which are ASCII letters
+     */
+    private static long letterLanes(long word) {
+        long folded = (word | ASCIICharacterUtils.CASE_BITS) & ~ASCIICharacterUtils.HIGH_BITS;
+        long fromA = folded + ASCIICharacterUtils.FROM_A;
+        long afterZ = folded + ASCIICharacterUtils.AFTER_Z;
+        return fromA & ~afterZ & ~word & ASCIICharacterUtils.HIGH_BITS;
     }
     
 }
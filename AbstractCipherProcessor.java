@@ -0,0 +1,532 @@
+package cryptography;
+
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The base of the Flow processors which encrypt or decrypt a stream of chunks
+ * with a CipherEngine. Every chunk received is decoded into characters, cut at
+ * the last complete block of the cipher and encrypted or decrypted; the
+ * characters of an incomplete block and the state of the cipher are carried to
+ * the next chunk, so the stream is processed as one text. At the end the
+ * incomplete block is processed as encryptText and decryptText do.
+ * <p>
+ * Every chunk received produces at most one chunk, so the processor requests
+ * from its publisher only the chunks its subscriber has requested, and at most
+ * window at a time: the memory used is bounded whatever the speed of the
+ * subscriber. With an Executor the ciphers which do not depend on the position
+ * process the chunks in parallel, and the chunks are still published in order.
+ * All the signals to the subscriber are sent by one drain loop at a time.
+ * @param <T> The type of the chunks
+ */
+abstract class AbstractCipherProcessor<T> implements Flow.Processor<T, T> {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default maximum number of chunks requested and not yet published.
+     */
+    static final int DEFAULT_WINDOW = 16;
+
+    //FIELDS
+
+    /**
+     * The compiled cipher.
+     */
+    private final CipherEngine engine;
+
+    /**
+     * True to encrypt, false to decrypt.
+     */
+    private final boolean encryption;
+
+    /**
+     * The executor of the parallel mode, null to process the chunks in the
+     * drain loop.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of chunks requested and not yet published.
+     */
+    private final int window;
+
+    /**
+     * The characters of the incomplete block of the last chunk.
+     */
+    private final char[] carry;
+
+    /**
+     * The number of characters in this.carry.
+     */
+    private int carried;
+
+    /**
+     * The state of the cipher after the last chunk.
+     */
+    private long state;
+
+    /**
+     * The chunks received and not yet processed.
+     */
+    private final ConcurrentLinkedQueue<T> inputs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The processed chunks not yet published, in order. Only the drain loop
+     * uses it.
+     */
+    private final ArrayDeque<CompletableFuture<char[]>> pending = new ArrayDeque<>();
+
+    /**
+     * The number of chunks requested by the subscriber.
+     */
+    private final AtomicLong requested = new AtomicLong();
+
+    /**
+     * The number of chunks published.
+     */
+    private long emitted;
+
+    /**
+     * The number of chunks requested from the publisher and not yet
+     * received.
+     */
+    private long outstanding;
+
+    /**
+     * The number of threads which have called drain and not yet left it.
+     */
+    private final AtomicInteger work = new AtomicInteger();
+
+    /**
+     * The subscription to the publisher.
+     */
+    private volatile Flow.Subscription upstream;
+
+    /**
+     * The subscriber, set after its onSubscribe.
+     */
+    private volatile Flow.Subscriber<? super T> downstream;
+
+    /**
+     * True when a subscriber has subscribed, guarded by this.
+     */
+    private boolean subscribed;
+
+    /**
+     * True when the publisher has completed.
+     */
+    private volatile boolean completed;
+
+    /**
+     * The error to send to the subscriber.
+     */
+    private volatile Throwable error;
+
+    /**
+     * True when the subscriber has cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * True when the last chunk has been prepared.
+     */
+    private boolean finishing;
+
+    /**
+     * The last chunk, null if there is none or it has been published.
+     */
+    private T last;
+
+    /**
+     * True when onComplete or onError has been sent to the subscriber.
+     */
+    private boolean terminated;
+
+    //NESTED CLASSES
+
+    /**
+     * The subscription of the subscriber.
+     */
+    private final class Subscription implements Flow.Subscription {
+
+        /**
+         * It adds demand and publishes the chunks ready.
+         * @param n long: The number of chunks, positive
+         */
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                AbstractCipherProcessor.this.fail(new IllegalArgumentException("The number of chunks requested must be positive"));
+                return;
+            }
+            AbstractCipherProcessor.this.requested.accumulateAndGet(n, (long a, long b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+            AbstractCipherProcessor.this.drain();
+        }
+
+        /**
+         * It stops the stream and cancels the subscription to the publisher.
+         */
+        @Override
+        public void cancel() {
+            AbstractCipherProcessor.this.cancelled = true;
+            AbstractCipherProcessor.this.drain();
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param engine CipherEngine: The compiled cipher. Its block size must not
+     * be 0, since the whole text can not be kept
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param executor Executor: The executor of the parallel mode, null to
+     * process the chunks one after the other. The cipher must be position
+     * independent
+     * @param window int: The maximum number of chunks requested and not yet
+     * published. It must be positive
+     */
+    AbstractCipherProcessor(CipherEngine engine, boolean encryption, Executor executor, int window) {
+        if(engine.getBlockSize() == 0) {
+            throw new IllegalArgumentException("The cipher needs the whole text and can not process a stream");
+        }
+        if(executor != null && !engine.isPositionIndependent()) {
+            throw new IllegalArgumentException("The cipher depends on the position and can not process the chunks in parallel");
+        }
+        if(window < 1) {
+            throw new IllegalArgumentException("The window must be positive");
+        }
+        this.engine = engine;
+        this.encryption = encryption;
+        this.executor = executor;
+        this.window = window;
+        this.carry = new char[engine.getBlockSize()];
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It adds the subscriber of the processed chunks. Only one subscriber is
+     * allowed, the others receive an IllegalStateException.
+     * @param subscriber Flow.Subscriber: The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        boolean first;
+        synchronized(this) {
+            first = !this.subscribed;
+            this.subscribed = true;
+        }
+        if(first) {
+            subscriber.onSubscribe(new Subscription());
+            this.downstream = subscriber;
+            this.drain();
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+
+        });
+        subscriber.onError(new IllegalStateException("The processor has already a subscriber"));
+    }
+
+    /**
+     * It receives the subscription to the publisher. A second subscription is
+     * cancelled.
+     * @param subscription Flow.Subscription: The subscription
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        boolean first;
+        synchronized(this) {
+            first = this.upstream == null;
+            if(first) {
+                this.upstream = subscription;
+            }
+        }
+        if(first) {
+            this.drain();
+        }
+        else {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * It receives a chunk from the publisher.
+     * @param item T: The chunk, consumed by the processor
+     */
+    @Override
+    public void onNext(T item) {
+        this.inputs.add(item);
+        this.drain();
+    }
+
+    /**
+     * It receives the error of the publisher, which is sent to the subscriber.
+     * @param throwable Throwable: The error
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        this.fail(throwable);
+    }
+
+    /**
+     * It receives the end of the stream. The last incomplete block is
+     * processed and published before onComplete.
+     */
+    @Override
+    public void onComplete() {
+        this.completed = true;
+        this.drain();
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It decodes a chunk received into characters.
+     * @param item T: The chunk
+     * @return CharBuffer: The characters, read by the caller
+     * @throws CharacterCodingException If the chunk can not be decoded
+     */
+    abstract CharBuffer decode(T item) throws CharacterCodingException;
+
+    /**
+     * It returns the characters left by the decoding at the end of the stream.
+     * @return CharBuffer: The characters, usually none
+     * @throws CharacterCodingException If the end of the stream can not be
+     * decoded
+     */
+    abstract CharBuffer decodeEnd() throws CharacterCodingException;
+
+    /**
+     * It encodes processed characters into a chunk to publish. It is called
+     * in order, one chunk at a time.
+     * @param chars char[]: The processed characters
+     * @param end boolean: True for the last characters of the stream
+     * @return T: The chunk, null if there is nothing to publish
+     * @throws CharacterCodingException If the characters can not be encoded
+     */
+    abstract T encode(char[] chars, boolean end) throws CharacterCodingException;
+
+    //PRIVATE METHODS
+
+    /**
+     * This method records an error, which is sent to the subscriber by the
+     * drain loop.
+     * @param throwable Throwable: The error
+     */
+    private void fail(Throwable throwable) {
+        if(this.error == null) {
+            this.error = throwable;
+        }
+        this.drain();
+    }
+
+    /**
+     * This method runs the drain loop if no other thread is running it,
+     * otherwise it makes that thread loop again.
+     */
+    private void drain() {
+        if(this.work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do
+        {
+            this.drainOnce();
+            missed = this.work.addAndGet(-missed);
+        }
+        while(missed != 0);
+    }
+
+    /**
+     * This method processes the chunks received, publishes the chunks ready
+     * while there is demand, terminates the stream and requests new chunks.
+     */
+    private void drainOnce() {
+        if(this.terminated) {
+            this.inputs.clear();
+            return;
+        }
+        Flow.Subscription upstream = this.upstream;
+        if(this.cancelled) {
+            this.terminated = true;
+            this.inputs.clear();
+            this.pending.clear();
+            if(upstream != null) {
+                upstream.cancel();
+            }
+            return;
+        }
+        Flow.Subscriber<? super T> downstream = this.downstream;
+        if(downstream == null) {
+            return;
+        }
+        try {
+            this.process();
+            this.publish(downstream);
+        }
+        catch(CharacterCodingException | RuntimeException ex) {
+            if(this.error == null) {
+                this.error = ex;
+            }
+        }
+        if(this.error != null) {
+            this.terminated = true;
+            this.inputs.clear();
+            this.pending.clear();
+            if(upstream != null) {
+                upstream.cancel();
+            }
+            downstream.onError(this.error);
+            return;
+        }
+        if(this.finishing) {
+            if(this.last != null && this.emitted < this.requested.get()) {
+                downstream.onNext(this.last);
+                this.emitted++;
+                this.last = null;
+            }
+            if(this.last == null) {
+                this.terminated = true;
+                downstream.onComplete();
+            }
+            return;
+        }
+        if(upstream != null && !this.completed) {
+            long credit = Math.min(this.requested.get() - this.emitted, this.window);
+            long wanted = credit - this.outstanding - this.pending.size();
+            if(wanted > 0) {
+                this.outstanding += wanted;
+                upstream.request(wanted);
+            }
+        }
+    }
+
+    /**
+     * This method cuts the chunks received at their last complete block and
+     * processes them, in the drain loop or on the executor.
+     * @throws CharacterCodingException If a chunk can not be decoded
+     */
+    private void process() throws CharacterCodingException {
+        T item;
+        while((item = this.inputs.poll()) != null)
+        {
+            this.outstanding--;
+            char[] blocks = this.cut(this.decode(item));
+            if(blocks.length == 0) {
+                continue;
+            }
+            if(this.executor == null) {
+                this.transform(blocks);
+                this.pending.add(CompletableFuture.completedFuture(blocks));
+            }
+            else {
+                CompletableFuture<char[]> future = CompletableFuture.supplyAsync(() -> {
+                    this.transform(blocks);
+                    return blocks;
+                }, this.executor);
+                future.whenComplete((char[] chars, Throwable throwable) -> this.drain());
+                this.pending.add(future);
+            }
+        }
+    }
+
+    /**
+     * This method publishes the processed chunks in order while there is
+     * demand. When the publisher has completed and every chunk has been
+     * published, it prepares the last chunk.
+     * @param downstream Flow.Subscriber: The subscriber
+     * @throws CharacterCodingException If a chunk can not be encoded
+     */
+    private void publish(Flow.Subscriber<? super T> downstream) throws CharacterCodingException {
+        while(!this.pending.isEmpty() && this.pending.peek().isDone() && this.emitted < this.requested.get())
+        {
+            char[] chars;
+            try {
+                chars = this.pending.poll().join();
+            }
+            catch(CompletionException ex) {
+                throw (ex.getCause() instanceof RuntimeException) ? (RuntimeException) ex.getCause() : ex;
+            }
+            T chunk = this.encode(chars, false);
+            if(chunk != null) {
+                downstream.onNext(chunk);
+                this.emitted++;
+            }
+        }
+        if(this.completed && !this.finishing && this.inputs.isEmpty() && this.pending.isEmpty()) {
+            char[] blocks = this.cut(this.decodeEnd());
+            this.transform(blocks);
+            String end = new String(this.carry, 0, this.carried);
+            end = this.encryption ? this.engine.encryptText(end) : this.engine.decryptText(end);
+            char[] chars = new char[blocks.length + end.length()];
+            System.arraycopy(blocks, 0, chars, 0, blocks.length);
+            end.getChars(0, end.length(), chars, blocks.length);
+            this.carried = 0;
+            this.last = this.encode(chars, true);
+            this.finishing = true;
+        }
+    }
+
+    /**
+     * This method returns the complete blocks of the characters carried and
+     * of the given characters, and carries the characters of the incomplete
+     * block.
+     * @param chars CharBuffer: The characters, all read
+     * @return char[]: The complete blocks, possibly empty
+     */
+    private char[] cut(CharBuffer chars) {
+        int total = this.carried + chars.remaining();
+        int length = total - total % this.carry.length;
+        if(length == 0) {
+            int remaining = chars.remaining();
+            chars.get(this.carry, this.carried, remaining);
+            this.carried += remaining;
+            return new char[0];
+        }
+        char[] blocks = new char[length];
+        System.arraycopy(this.carry, 0, blocks, 0, this.carried);
+        chars.get(blocks, this.carried, length - this.carried);
+        this.carried = chars.remaining();
+        chars.get(this.carry, 0, this.carried);
+        return blocks;
+    }
+
+    /**
+     * This method encrypts or decrypts complete blocks in place, carrying the
+     * state of the cipher when the chunks are processed one after the other.
+     * @param blocks char[]: The blocks
+     */
+    private void transform(char[] blocks) {
+        long state = (this.executor == null) ? this.state : 0;
+        if(this.encryption) {
+            state = this.engine.encrypt(blocks, 0, blocks, 0, blocks.length, state);
+        }
+        else {
+            state = this.engine.decrypt(blocks, 0, blocks, 0, blocks.length, state);
+        }
+        if(this.executor == null) {
+            this.state = state;
+        }
+    }
+
+}
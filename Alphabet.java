@@ -0,0 +1,488 @@
+package cryptography;
+
+import java.util.Arrays;
+
+/**
+ * The class of an alphabet of the Caesar, Vigenere and Substitution Ciphers,
+ * in place of the English one: the letters are in one or more cases, for
+ * example lowercase and uppercase, every case with the same number of letters
+ * in the same order, and a letter is encrypted to a letter of its own case.
+ * The characters which are not letters of the alphabet are not encrypted.
+ * <p>
+ * A character is looked up in a table of two levels: its high byte selects a
+ * page of 256 characters and its low byte the entry of the page. The pages
+ * without letters are the same empty page, so an alphabet takes a page for
+ * every block of 256 characters it uses and every lookup is two array reads,
+ * with no comparison, for the English and for any other alphabet. An alphabet
+ * is immutable and can be shared between threads.
+ */
+public final class Alphabet {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of characters of a page of the tables.
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * The page of the tables without letters.
+     */
+    private static final char[] EMPTY_PAGE = new char[Alphabet.PAGE_SIZE];
+
+    /**
+     * The English alphabet, in lowercase and uppercase, as used by the
+     * CaesarCipher, VigenereCipher and SubstitutionCipher classes.
+     */
+    public static final Alphabet ENGLISH = Alphabet.of(Alphabet.range('a', 'z'), Alphabet.range('A', 'Z'));
+
+    /**
+     * The Greek alphabet of 24 letters, in lowercase and uppercase. The final
+     * sigma is not a letter of the alphabet.
+     */
+    public static final Alphabet GREEK = Alphabet.of(
+            Alphabet.range('\u03B1', '\u03C1') + Alphabet.range('\u03C3', '\u03C9'),
+            Alphabet.range('\u0391', '\u03A1') + Alphabet.range('\u03A3', '\u03A9'));
+
+    /**
+     * The Russian alphabet of 33 letters, in lowercase and uppercase, with
+     * the letter yo after ye.
+     */
+    public static final Alphabet RUSSIAN = Alphabet.of(
+            Alphabet.range('\u0430', '\u0435') + '\u0451' + Alphabet.range('\u0436', '\u044F'),
+            Alphabet.range('\u0410', '\u0415') + '\u0401' + Alphabet.range('\u0416', '\u042F'));
+
+    /**
+     * The decimal digits.
+     */
+    public static final Alphabet DIGITS = Alphabet.of(Alphabet.range('0', '9'));
+
+    //FIELDS
+
+    /**
+     * The letters of every case.
+     */
+    private final char[][] cases;
+
+    /**
+     * The number of letters of a case.
+     */
+    private final int length;
+
+    /**
+     * The code of every character, by page: 0 if it is not a letter,
+     * otherwise the index in ring of the letter plus 1.
+     */
+    private final char[][] codes;
+
+    /**
+     * The letters of every case written twice, one case after the other, so
+     * that the letter at index + shift is at code - 1 + shift.
+     */
+    private final char[] ring;
+
+    //NESTED CLASSES
+
+    /**
+     * The compiled form of a cipher which replaces every letter with a letter
+     * of the same case, as the Caesar and Substitution Ciphers. Every
+     * character is added to the difference of its page, which is 0 for the
+     * characters which are not letters. It has no state and can be shared
+     * between threads.
+     */
+    static final class Translation implements CipherEngine {
+
+        /**
+         * The difference between every character and its encryption, by
+         * page.
+         */
+        private final char[][] encryption;
+
+        /**
+         * The difference between every character and its decryption, by
+         * page.
+         */
+        private final char[][] decryption;
+
+        /**
+         * Constructor of the class.
+         * @param encryption char[][]: The differences of the encryption
+         * @param decryption char[][]: The differences of the decryption
+         */
+        private Translation(char[][] encryption, char[][] decryption) {
+            this.encryption = encryption;
+            this.decryption = decryption;
+        }
+
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Translation.translate(this.encryption, src, srcOffset, dst, dstOffset, length);
+            return state;
+        }
+
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Translation.translate(this.decryption, src, srcOffset, dst, dstOffset, length);
+            return state;
+        }
+
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+
+        /**
+         * It returns true, a letter does not depend on its position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+
+        /**
+         * This method adds to every character of a chunk its difference.
+         * @param differences char[][]: The differences, by page
+         * @param src char[]: The characters to translate
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         */
+        private static void translate(char[][] differences, char[] src, int srcOffset, char[] dst, int dstOffset, int length) {
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i];
+                dst[dstOffset + i] = (char) (ch + differences[ch >>> 8][ch & 0xFF]);
+            }
+        }
+
+    }
+
+    /**
+     * The compiled form of a cipher which shifts every letter by the shift of
+     * its position in a key, as the Vigenere Cipher: only letters move the
+     * position in the key. It has no state and can be shared between threads.
+     * The state of a text is the position in the key of its next letter.
+     */
+    static final class Polyalphabetic implements CipherEngine {
+
+        /**
+         * The alphabet.
+         */
+        private final Alphabet alphabet;
+
+        /**
+         * The shift of every letter of the key, from 0 to the length of the
+         * alphabet minus 1.
+         */
+        private final int[] encryption;
+
+        /**
+         * The shift which decrypts every letter of the key.
+         */
+        private final int[] decryption;
+
+        /**
+         * Constructor of the class.
+         * @param alphabet Alphabet: The alphabet
+         * @param shifts int[]: The shift of every letter of the key, not empty
+         */
+        private Polyalphabetic(Alphabet alphabet, int[] shifts) {
+            this.alphabet = alphabet;
+            this.encryption = shifts;
+            this.decryption = new int[shifts.length];
+            for(int i = 0; i < shifts.length; i++)
+            {
+                this.decryption[i] = (alphabet.length - shifts[i]) % alphabet.length;
+            }
+        }
+
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted and only
+         * they move the position in the key.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shift(this.encryption, src, srcOffset, dst, dstOffset, length, (int) state);
+        }
+
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted and only
+         * they move the position in the key.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shift(this.decryption, src, srcOffset, dst, dstOffset, length, (int) state);
+        }
+
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+
+        /**
+         * It returns false, the shift depends on the letters before.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return false;
+        }
+
+        /**
+         * This method shifts the letters of a chunk, the other characters are
+         * copied.
+         * @param shifts int[]: The shift of every letter of the key
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         * @param position int: The position in the key of the first letter
+         * @return int: The position in the key of the letter after the chunk
+         */
+        private int shift(int[] shifts, char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position) {
+            char[][] codes = this.alphabet.codes;
+            char[] ring = this.alphabet.ring;
+            int keyLength = shifts.length;
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i];
+                int code = codes[ch >>> 8][ch & 0xFF];
+                if(code != 0) {
+                    ch = ring[code - 1 + shifts[position]];
+                    position = (position == keyLength - 1) ? 0 : position + 1;
+                }
+                dst[dstOffset + i] = ch;
+            }
+            return position;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param cases char[][]: The letters of every case, checked by of
+     */
+    private Alphabet(char[][] cases) {
+        this.cases = cases;
+        this.length = cases[0].length;
+        this.ring = new char[cases.length * this.length * 2];
+        this.codes = Alphabet.emptyPages();
+        for(int k = 0; k < cases.length; k++)
+        {
+            for(int i = 0; i < this.length * 2; i++)
+            {
+                this.ring[k * this.length * 2 + i] = cases[k][i % this.length];
+            }
+            for(int i = 0; i < this.length; i++)
+            {
+                char letter = cases[k][i];
+                Alphabet.pageOf(this.codes, letter)[letter & 0xFF] = (char) (k * this.length * 2 + i + 1);
+            }
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the field length.
+     * @return int: the number of letters of a case
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * It returns the number of cases of the alphabet.
+     * @return int: The number of cases, for example 2 for lowercase and
+     * uppercase
+     */
+    public int getCaseCount() {
+        return this.cases.length;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the index of a letter in its case.
+     * @param ch char: The character
+     * @return int: The index, from 0 to getLength() - 1, or -1 if the
+     * character is not a letter of the alphabet
+     */
+    public int indexOf(char ch) {
+        int code = this.codes[ch >>> 8][ch & 0xFF];
+        return (code == 0) ? -1 : (code - 1) % (this.length * 2);
+    }
+
+    /**
+     * It returns if a character is a letter of the alphabet.
+     * @param ch char: The character
+     * @return boolean: True if it is a letter, false otherwise
+     */
+    public boolean contains(char ch) {
+        return this.codes[ch >>> 8][ch & 0xFF] != 0;
+    }
+
+    /**
+     * It returns the letters of the cases, separated by '/'.
+     * @return String: The alphabet
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for(char[] letters : this.cases)
+        {
+            if(text.length() > 0) {
+                text.append('/');
+            }
+            text.append(letters);
+        }
+        return text.toString();
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It returns the compiled cipher which replaces the letter at every index
+     * with the letter of the same case at the target of the index.
+     * @param targets int[]: The target of every index, a permutation of the
+     * indexes
+     * @return CipherEngine: The compiled cipher
+     */
+    CipherEngine translation(int[] targets) {
+        int[] sources = new int[this.length];
+        for(int i = 0; i < this.length; i++)
+        {
+            sources[targets[i]] = i;
+        }
+        return new Translation(this.differences(targets), this.differences(sources));
+    }
+
+    /**
+     * It returns the compiled cipher which shifts every letter by the shift of
+     * its position in a key.
+     * @param shifts int[]: The shift of every letter of the key, from 0 to
+     * getLength() - 1, not empty
+     * @return CipherEngine: The compiled cipher
+     */
+    CipherEngine polyalphabetic(int[] shifts) {
+        return new Polyalphabetic(this, shifts);
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method returns the difference between every letter and the letter
+     * of the same case at the target of its index, by page.
+     * @param targets int[]: The target of every index
+     * @return char[][]: The differences
+     */
+    private char[][] differences(int[] targets) {
+        char[][] differences = Alphabet.emptyPages();
+        for(char[] letters : this.cases)
+        {
+            for(int i = 0; i < this.length; i++)
+            {
+                char letter = letters[i];
+                Alphabet.pageOf(differences, letter)[letter & 0xFF] = (char) (letters[targets[i]] - letter);
+            }
+        }
+        return differences;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns the alphabet with the given cases.
+     * @param cases String[]: The letters of every case, in the same order, for
+     * example "abc" and "ABC"
+     * @return Alphabet: The alphabet
+     * @throws IllegalArgumentException If there are no cases, a case is empty
+     * or shorter than the others, a letter is written twice or the alphabet
+     * has more than 32767 letters
+     */
+    public static Alphabet of(String... cases) {
+        if(cases == null || cases.length == 0 || cases[0] == null || cases[0].isEmpty()) {
+            throw new IllegalArgumentException("The alphabet must have letters");
+        }
+        int length = cases[0].length();
+        if((long) cases.length * length * 2 > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("The alphabet can have at most " + Character.MAX_VALUE / 2 + " letters");
+        }
+        char[][] letters = new char[cases.length][];
+        boolean[] used = new boolean[Character.MAX_VALUE + 1];
+        for(int k = 0; k < cases.length; k++)
+        {
+            if(cases[k] == null || cases[k].length() != length) {
+                throw new IllegalArgumentException("Every case must have " + length + " letters");
+            }
+            letters[k] = cases[k].toCharArray();
+            for(char letter : letters[k])
+            {
+                if(used[letter]) {
+                    throw new IllegalArgumentException("The letter " + letter + " is written twice");
+                }
+                used[letter] = true;
+            }
+        }
+        return new Alphabet(letters);
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the characters from first to last.
+     * @param first char: The first character
+     * @param last char: The last character
+     * @return String: The characters
+     */
+    private static String range(char first, char last) {
+        char[] chars = new char[last - first + 1];
+        for(int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char) (first + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * This method returns a table whose pages are all the empty page.
+     * @return char[][]: The table
+     */
+    private static char[][] emptyPages() {
+        char[][] pages = new char[(Character.MAX_VALUE + 1) / Alphabet.PAGE_SIZE][];
+        Arrays.fill(pages, Alphabet.EMPTY_PAGE);
+        return pages;
+    }
+
+    /**
+     * This method returns the page of a table of a character, replacing the
+     * empty page with a new one.
+     * @param pages char[][]: The table
+     * @param ch char: The character
+     * @return char[]: The page, which can be written
+     */
+    private static char[] pageOf(char[][] pages, char ch) {
+        if(pages[ch >>> 8] == Alphabet.EMPTY_PAGE) {
+            pages[ch >>> 8] = new char[Alphabet.PAGE_SIZE];
+        }
+        return pages[ch >>> 8];
+    }
+
+}
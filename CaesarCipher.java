@@ -39,6 +39,86 @@ public final class CaesarCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(short). It has no
+     * state and can be shared between threads.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The shift of the letters to encrypt, between 0 and 25.
+         */
+        private final int shift;
+        
+        /**
+         * Constructor of the class.
+         * @param shift int: The shift of the letters to encrypt, between 0 and
+         * 25
+         */
+        private Engine(int shift) {
+            this.shift = shift;
+        }
+        
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Engine.shiftLetters(src, srcOffset, dst, dstOffset, length, this.shift);
+            return state;
+        }
+        
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Engine.shiftLetters(src, srcOffset, dst, dstOffset, length, (CaesarCipher.ALPHABET_LENGTH - this.shift) % CaesarCipher.ALPHABET_LENGTH);
+            return state;
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns true, the shift does not depend on the position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+        
+        /**
+         * This method shifts the letters of a chunk, the other characters are
+         * copied.
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         * @param shift int: The shift, between 0 and 25
+         */
+        private static void shiftLetters(char[] src, int srcOffset, char[] dst, int dstOffset, int length, int shift) {
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i], base = ASCIICharacterUtils.getBase(ch);
+                if(base != 0) {
+                    ch = (char) (base + (ch - base + shift) % CaesarCipher.ALPHABET_LENGTH);
+                }
+                dst[dstOffset + i] = ch;
+            }
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -191,11 +271,12 @@ public final class CaesarCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i++) 
         {
@@ -224,7 +305,7 @@ public final class CaesarCipher implements Cipher {
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, CaesarCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -238,11 +319,12 @@ public final class CaesarCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i++) 
         {
@@ -271,7 +353,7 @@ public final class CaesarCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, CaesarCipher.class, false, text, this.lastDecryptedText);
     }
     
     //STATIC METHODS
@@ -287,10 +369,11 @@ public final class CaesarCipher implements Cipher {
      * null or is an empty String
      */
     public static String encryptText(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i++) 
         {
@@ -318,7 +401,7 @@ public final class CaesarCipher implements Cipher {
                 }
             }
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, CaesarCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -332,10 +415,11 @@ public final class CaesarCipher implements Cipher {
      * null or is an empty String
      */
     public static String decryptText(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i++) 
         {
@@ -363,7 +447,40 @@ public final class CaesarCipher implements Cipher {
                 }
             }
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, CaesarCipher.class, false, text, decryptedText.toString());
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(short, String) and
+     * decryptText(short, String) and can be shared between threads.
+     * @param key short: It can be any short value, either positive or negative
+     * @return CipherEngine: The compiled cipher
+     */
+    public static CipherEngine compile(short key) {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        return CipherEvents.endCompilation(event, CaesarCipher.class, key, new Engine(Math.floorMod(key, CaesarCipher.ALPHABET_LENGTH)));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key and
+     * alphabet: every letter is shifted by the key among the letters of its
+     * case, the other characters are not changed. With Alphabet.ENGLISH it
+     * encrypts as compile(short).
+     * @param key short: It can be any short value, either positive or negative
+     * @param alphabet Alphabet: The alphabet
+     * @return CipherEngine: The compiled cipher
+     */
+    public static CipherEngine compile(short key, Alphabet alphabet) {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        int length = alphabet.getLength();
+        int shift = Math.floorMod(key, length);
+        int[] targets = new int[length];
+        for(int i = 0; i < length; i++)
+        {
+            targets[i] = (i + shift) % length;
+        }
+        return CipherEvents.endCompilation(event, CaesarCipher.class, key, alphabet.translation(targets));
     }
     
 }
@@ -0,0 +1,215 @@
+package cryptography;
+
+import java.util.SplittableRandom;
+
+/**
+ * The class which compares the bulk scanners of ASCIICharacterUtils with a
+ * loop which checks every character with two range comparisons, as the
+ * ciphers did before. It measures the count of the letters and the check that
+ * a text contains only letters, used by the PlayfairCipher, on a mixed text,
+ * with spaces and punctuation, and on a text of letters only.
+ */
+public final class CharacterScanBenchmark {
+
+    //NESTED CLASSES
+
+    /**
+     * The measures of an operation on an input.
+     */
+    public static final class Result {
+
+        /**
+         * The name of the operation and of the input.
+         */
+        private final String name;
+
+        /**
+         * The time of the loop, in nanoseconds.
+         */
+        private final long loop;
+
+        /**
+         * The time of the scanner, in nanoseconds.
+         */
+        private final long scanner;
+
+        /**
+         * Constructor of the class.
+         * @param name String: The name of the operation and of the input
+         * @param loop long: The time of the loop
+         * @param scanner long: The time of the scanner
+         */
+        Result(String name, long loop, long scanner) {
+            this.name = name;
+            this.loop = loop;
+            this.scanner = scanner;
+        }
+
+        /**
+         * Getter method of the field name.
+         * @return String: the class field name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Getter method of the field loop.
+         * @return long: the class field loop, in nanoseconds
+         */
+        public long getLoop() {
+            return this.loop;
+        }
+
+        /**
+         * Getter method of the field scanner.
+         * @return long: the class field scanner, in nanoseconds
+         */
+        public long getScanner() {
+            return this.scanner;
+        }
+
+        /**
+         * It returns the measures in a line.
+         * @return String: The times
+         */
+        @Override
+        public String toString() {
+            return String.format("%s: loop %.2f ms, scanner %.2f ms (%.1fx)", this.name, this.loop / 1e6, this.scanner / 1e6,
+                    (this.scanner == 0) ? 0 : (double) this.loop / this.scanner);
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private CharacterScanBenchmark() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It measures the count of the letters of a text.
+     * @param name String: The name of the input
+     * @param chars char[]: The text
+     * @param repetitions int: The number of times the text is scanned
+     * @return Result: The measures
+     * @throws IllegalStateException If the loop and the scanner do not agree
+     */
+    public static Result countLetters(String name, char[] chars, int repetitions) {
+        long expected = 0, actual = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < repetitions; i++)
+        {
+            expected += CharacterScanBenchmark.countLoop(chars);
+        }
+        long loop = System.nanoTime() - start;
+        start = System.nanoTime();
+        for(int i = 0; i < repetitions; i++)
+        {
+            actual += ASCIICharacterUtils.countLetters(chars, 0, chars.length);
+        }
+        long scanner = System.nanoTime() - start;
+        if(expected != actual) {
+            throw new IllegalStateException("The letters counted by the scanner are " + actual + " instead of " + expected);
+        }
+        return new Result("count letters, " + name, loop, scanner);
+    }
+
+    /**
+     * It measures the check that a text contains only letters.
+     * @param name String: The name of the input
+     * @param text String: The text
+     * @param repetitions int: The number of times the text is scanned
+     * @return Result: The measures
+     * @throws IllegalStateException If the loop and the scanner do not agree
+     */
+    public static Result checkLetters(String name, String text, int repetitions) {
+        int expected = 0, actual = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < repetitions; i++)
+        {
+            expected += CharacterScanBenchmark.checkLoop(text) ? 1 : 0;
+        }
+        long loop = System.nanoTime() - start;
+        start = System.nanoTime();
+        for(int i = 0; i < repetitions; i++)
+        {
+            actual += ASCIICharacterUtils.isLetters(text) ? 1 : 0;
+        }
+        long scanner = System.nanoTime() - start;
+        if(expected != actual) {
+            throw new IllegalStateException("The scanner does not agree with the loop");
+        }
+        return new Result("check letters, " + name, loop, scanner);
+    }
+
+    /**
+     * It runs the benchmark. The arguments are the number of characters of the
+     * texts and the number of rounds.
+     * @param args String[]: The optional arguments
+     */
+    public static void main(String[] args) {
+        int length = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 20;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        SplittableRandom random = new SplittableRandom(42);
+        char[] mixed = new char[length], letters = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            int kind = random.nextInt(8);
+            char letter = (char) ((random.nextBoolean() ? 'a' : 'A') + random.nextInt(26));
+            mixed[i] = (kind == 0) ? ' ' : (kind == 1) ? (char) ('!' + random.nextInt(32)) : letter;
+            letters[i] = letter;
+        }
+        String text = new String(letters);
+        for(int round = 1; round <= rounds; round++)
+        {
+            System.out.println("round " + round + ":");
+            System.out.println("  " + CharacterScanBenchmark.countLetters("mixed", mixed, 100));
+            System.out.println("  " + CharacterScanBenchmark.countLetters("letters only", letters, 100));
+            System.out.println("  " + CharacterScanBenchmark.checkLetters("letters only", text, 100));
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method counts the letters of a text checking every character with
+     * two range comparisons.
+     * @param chars char[]: The text
+     * @return int: The number of letters
+     */
+    private static int countLoop(char[] chars) {
+        int count = 0;
+        for(char ch : chars)
+        {
+            if((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z')) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method checks if a text contains only letters checking every
+     * character with two range comparisons.
+     * @param text String: The text
+     * @return boolean: True if every character is a letter, false otherwise
+     */
+    private static boolean checkLoop(String text) {
+        int length = text.length();
+        for(int i = 0; i < length; i++)
+        {
+            char ch = text.charAt(i);
+            if(!((ch >= 'A' && ch <= 'Z') || (ch >= 'a' && ch <= 'z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,162 @@
+package cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.Executor;
+
+/**
+ * The Flow processor which encrypts or decrypts a stream of ByteBuffers of
+ * encoded text with a CipherEngine, as CipherProcessor does with CharBuffers.
+ * The bytes are decoded and the result encoded with a Charset: a character
+ * split between two chunks is carried to the next one, both when decoding and
+ * when encoding, and the malformed or unmappable characters end the stream
+ * with a CharacterCodingException.
+ * <p>
+ * The ByteBuffers received are read, not modified, and every ByteBuffer
+ * published is new. The Transposition Cipher needs the whole text and can not
+ * be used.
+ */
+public final class CipherByteProcessor extends AbstractCipherProcessor<ByteBuffer> {
+
+    //FIELDS
+
+    /**
+     * The decoder of the chunks received.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * The encoder of the chunks published.
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * The bytes of a character split between the last chunk received and the
+     * next one.
+     */
+    private ByteBuffer bytesLeft = ByteBuffer.allocate(0);
+
+    /**
+     * The characters of a surrogate pair split between the last chunk
+     * published and the next one.
+     */
+    private CharBuffer charsLeft = CharBuffer.allocate(0);
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which processes the chunks one after the
+     * other.
+     * @param engine CipherEngine: The compiled cipher, with a block size
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param charset Charset: The charset of the chunks received and
+     * published
+     * @throws IllegalArgumentException If the cipher needs the whole text
+     */
+    public CipherByteProcessor(CipherEngine engine, boolean encryption, Charset charset) {
+        this(engine, encryption, charset, null, CipherProcessor.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param engine CipherEngine: The compiled cipher, with a block size
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param charset Charset: The charset of the chunks received and
+     * published
+     * @param executor Executor: The executor which processes the chunks in
+     * parallel, null to process them one after the other. The cipher must be
+     * position independent
+     * @param window int: The maximum number of chunks requested and not yet
+     * published. It must be positive
+     * @throws IllegalArgumentException If the cipher needs the whole text, or
+     * it depends on the position and the executor is not null
+     */
+    public CipherByteProcessor(CipherEngine engine, boolean encryption, Charset charset, Executor executor, int window) {
+        super(engine, encryption, executor, window);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It decodes the bytes carried and the chunk, carrying the bytes of an
+     * incomplete character.
+     */
+    @Override
+    CharBuffer decode(ByteBuffer item) throws CharacterCodingException {
+        ByteBuffer bytes = this.join(item.asReadOnlyBuffer());
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * (double) this.decoder.maxCharsPerByte()) + 1);
+        CoderResult result = this.decoder.decode(bytes, chars, false);
+        if(result.isError()) {
+            result.throwException();
+        }
+        this.bytesLeft = ByteBuffer.allocate(bytes.remaining()).put(bytes).flip();
+        return chars.flip();
+    }
+
+    /**
+     * It decodes the bytes carried at the end of the stream.
+     */
+    @Override
+    CharBuffer decodeEnd() throws CharacterCodingException {
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(this.bytesLeft.remaining() * (double) this.decoder.maxCharsPerByte()) + 4);
+        CoderResult result = this.decoder.decode(this.bytesLeft, chars, true);
+        if(result.isError()) {
+            result.throwException();
+        }
+        result = this.decoder.flush(chars);
+        if(result.isError()) {
+            result.throwException();
+        }
+        return chars.flip();
+    }
+
+    /**
+     * It encodes the characters carried and the given ones, carrying the high
+     * surrogate of an incomplete pair unless it is the end of the stream.
+     */
+    @Override
+    ByteBuffer encode(char[] chars, boolean end) throws CharacterCodingException {
+        CharBuffer input = CharBuffer.allocate(this.charsLeft.remaining() + chars.length).put(this.charsLeft).put(chars).flip();
+        ByteBuffer bytes = ByteBuffer.allocate((int) Math.ceil(input.remaining() * (double) this.encoder.maxBytesPerChar()) + 16);
+        CoderResult result = this.encoder.encode(input, bytes, end);
+        if(result.isError()) {
+            result.throwException();
+        }
+        if(end) {
+            result = this.encoder.flush(bytes);
+            if(result.isError()) {
+                result.throwException();
+            }
+        }
+        this.charsLeft = CharBuffer.allocate(input.remaining()).put(input).flip();
+        bytes.flip();
+        return bytes.hasRemaining() ? bytes : null;
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method returns the bytes carried followed by the given ones.
+     * @param bytes ByteBuffer: The bytes of the chunk
+     * @return ByteBuffer: The bytes to decode
+     */
+    private ByteBuffer join(ByteBuffer bytes) {
+        if(!this.bytesLeft.hasRemaining()) {
+            return bytes;
+        }
+        return ByteBuffer.allocate(this.bytesLeft.remaining() + bytes.remaining()).put(this.bytesLeft).put(bytes).flip();
+    }
+
+}
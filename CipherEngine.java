@@ -0,0 +1,103 @@
+package cryptography;
+
+/**
+ * The interface of a cipher with a compiled key. Unlike the Cipher classes, an
+ * engine has no state: it can be shared between threads and it encrypts and
+ * decrypts arrays of characters without allocating memory, in chunks. The
+ * state of the cipher between two chunks, such as the position in the key of
+ * the Vigenere Cipher, is given and returned as a long: it is 0 at the start
+ * of a text and the value returned by a chunk is given to the next one.
+ * An engine is created by the compile method of its cipher class, for
+ * example CaesarCipher.compile(short).
+ */
+public interface CipherEngine {
+
+    /**
+     * It returns the given text encrypted, as the encryptText method of the
+     * cipher class with the same key does.
+     * @param text String: The text that you want to encrypt. If it is null or
+     * empty then the encrypted text will be empty
+     * @return String: The encrypted text
+     */
+    public default String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        char[] chars = text.toCharArray();
+        this.encrypt(chars, 0, chars, 0, chars.length, 0);
+        return CipherEvents.endOperation(event, this.getClass(), true, text, new String(chars));
+    }
+
+    /**
+     * It returns the given text decrypted, as the decryptText method of the
+     * cipher class with the same key does.
+     * @param text String: The text that you want to decrypt. If it is null or
+     * empty then the decrypted text will be empty
+     * @return String: The decrypted text
+     */
+    public default String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        char[] chars = text.toCharArray();
+        this.decrypt(chars, 0, chars, 0, chars.length, 0);
+        return CipherEvents.endOperation(event, this.getClass(), false, text, new String(chars));
+    }
+
+    /**
+     * It encrypts a chunk of a text. src and dst can be the same array with
+     * the same offset, except for the engines with block size 0.
+     * @param src char[]: The characters to encrypt
+     * @param srcOffset int: The index of the first character to encrypt
+     * @param dst char[]: The array where the encrypted characters are written
+     * @param dstOffset int: The index of dst where the first character is
+     * written
+     * @param length int: The number of characters, a multiple of the block
+     * size
+     * @param state long: The state returned by the previous chunk, 0 for the
+     * first chunk of a text
+     * @return long: The state to give to the next chunk
+     * @throws IllegalArgumentException If the chunk can not be encrypted by
+     * the cipher
+     */
+    public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state);
+
+    /**
+     * It decrypts a chunk of a text. src and dst can be the same array with
+     * the same offset, except for the engines with block size 0.
+     * @param src char[]: The characters to decrypt
+     * @param srcOffset int: The index of the first character to decrypt
+     * @param dst char[]: The array where the decrypted characters are written
+     * @param dstOffset int: The index of dst where the first character is
+     * written
+     * @param length int: The number of characters, a multiple of the block
+     * size
+     * @param state long: The state returned by the previous chunk, 0 for the
+     * first chunk of a text
+     * @return long: The state to give to the next chunk
+     * @throws IllegalArgumentException If the chunk can not be decrypted by
+     * the cipher
+     */
+    public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state);
+
+    /**
+     * It returns the number of characters that the chunks must be a multiple
+     * of. It is 1 for the ciphers of single characters, 2 for the Playfair
+     * Cipher and 0 if the whole text must be given in one chunk. The end of a
+     * text shorter than a block is encrypted or decrypted with encryptText or
+     * decryptText.
+     * @return int: The block size
+     */
+    public int getBlockSize();
+
+    /**
+     * It returns if a block is encrypted independently from its position in
+     * the text, so that the chunks can be encrypted in any order with the
+     * state 0.
+     * @return boolean: True if the cipher does not depend on the position
+     */
+    public boolean isPositionIndependent();
+
+}
@@ -0,0 +1,324 @@
+package cryptography;
+
+import java.util.Collection;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The JDK Flight Recorder events emitted by the ciphers: the encryptions and
+ * decryptions of texts, the compilations of keys, the generations of random
+ * keys and the checks of the used keys of the Vernam Ciphers. The events are
+ * in the category Cryptography and are recorded when they last at least 1 ms.
+ * The threshold can be changed in the settings of a recording, for example
+ * with {@code <setting name="threshold">0 ms</setting>} under
+ * {@code <event name="cryptography.CipherOperation">} in a .jfc file.
+ * <p>
+ * When no recording is running the events are not enabled: the begin methods
+ * return a shared event which is never begun nor committed, so nothing is
+ * allocated, and the fields such as the count of the letters are computed
+ * only for the events which are committed.
+ */
+final class CipherEvents {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The shared Operation returned when the events are not enabled, also
+     * used to check if they are.
+     */
+    private static final Operation DISABLED_OPERATION = new Operation();
+
+    /**
+     * The shared Compilation returned when the events are not enabled, also
+     * used to check if they are.
+     */
+    private static final Compilation DISABLED_COMPILATION = new Compilation();
+
+    /**
+     * The shared Generation returned when the events are not enabled, also
+     * used to check if they are.
+     */
+    private static final Generation DISABLED_GENERATION = new Generation();
+
+    /**
+     * The UsedKeysCheck used to check if the events are enabled.
+     */
+    private static final UsedKeysCheck DISABLED_USED_KEYS_CHECK = new UsedKeysCheck();
+
+    //NESTED CLASSES
+
+    /**
+     * The event of an encryption or decryption of a text.
+     */
+    @Name("cryptography.CipherOperation")
+    @Label("Cipher Operation")
+    @Category("Cryptography")
+    @Description("A text encrypted or decrypted")
+    @Threshold("1 ms")
+    static final class Operation extends Event {
+
+        /**
+         * The class of the cipher.
+         */
+        @Label("Cipher")
+        String cipher;
+
+        /**
+         * "encrypt" or "decrypt".
+         */
+        @Label("Direction")
+        String direction;
+
+        /**
+         * The number of characters of the text.
+         */
+        @Label("Input Length")
+        int inputLength;
+
+        /**
+         * The number of ASCII letters of the text, as counted by the ciphers.
+         */
+        @Label("Letter Count")
+        int letterCount;
+
+    }
+
+    /**
+     * The event of a compilation of a key into a CipherEngine.
+     */
+    @Name("cryptography.KeyCompilation")
+    @Label("Key Compilation")
+    @Category("Cryptography")
+    @Description("A key compiled into a CipherEngine")
+    @Threshold("1 ms")
+    static final class Compilation extends Event {
+
+        /**
+         * The class of the cipher.
+         */
+        @Label("Cipher")
+        String cipher;
+
+        /**
+         * The number of characters of the key, 0 for the numeric keys.
+         */
+        @Label("Key Length")
+        int keyLength;
+
+    }
+
+    /**
+     * The event of a generation of a random key.
+     */
+    @Name("cryptography.KeyGeneration")
+    @Label("Key Generation")
+    @Category("Cryptography")
+    @Description("A random key generated")
+    @Threshold("1 ms")
+    static final class Generation extends Event {
+
+        /**
+         * The class of the cipher.
+         */
+        @Label("Cipher")
+        String cipher;
+
+        /**
+         * The number of characters of the key.
+         */
+        @Label("Key Length")
+        int keyLength;
+
+    }
+
+    /**
+     * The event of a search of a key in the used keys of a Vernam Cipher.
+     */
+    @Name("cryptography.UsedKeysCheck")
+    @Label("Used Keys Check")
+    @Category("Cryptography")
+    @Description("A one-time pad searched in the used keys")
+    @Threshold("1 ms")
+    static final class UsedKeysCheck extends Event {
+
+        /**
+         * The class of the cipher.
+         */
+        @Label("Cipher")
+        String cipher;
+
+        /**
+         * The number of used keys searched.
+         */
+        @Label("Used Keys")
+        int usedKeys;
+
+        /**
+         * The number of characters of the key.
+         */
+        @Label("Key Length")
+        int keyLength;
+
+        /**
+         * True if the key has been found.
+         */
+        @Label("Used")
+        boolean used;
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private CipherEvents() {
+    }
+
+    //PACKAGE STATIC METHODS
+
+    /**
+     * It returns a new Operation event which has begun, or a shared event if
+     * the events are not enabled.
+     * @return Operation: The event
+     */
+    static Operation beginOperation() {
+        if(!CipherEvents.DISABLED_OPERATION.isEnabled()) {
+            return CipherEvents.DISABLED_OPERATION;
+        }
+        Operation event = new Operation();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * It ends an Operation event and commits it if it is enabled and longer
+     * than the threshold.
+     * @param <T> The type of the result
+     * @param event Operation: The event returned by beginOperation
+     * @param cipher Class: The class of the cipher, or of its Engine
+     * @param encryption boolean: True for an encryption, false for a
+     * decryption
+     * @param text String: The text encrypted or decrypted
+     * @param result T: The result of the operation
+     * @return T: The result, so that the method can wrap a return
+     */
+    static <T> T endOperation(Operation event, Class<?> cipher, boolean encryption, String text, T result) {
+        if(event != CipherEvents.DISABLED_OPERATION && event.shouldCommit()) {
+            event.cipher = CipherEvents.nameOf(cipher);
+            event.direction = encryption ? "encrypt" : "decrypt";
+            event.inputLength = text.length();
+            event.letterCount = ASCIICharacterUtils.countLetters(text);
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * It returns a new Compilation event which has begun, or a shared event if
+     * the events are not enabled.
+     * @return Compilation: The event
+     */
+    static Compilation beginCompilation() {
+        if(!CipherEvents.DISABLED_COMPILATION.isEnabled()) {
+            return CipherEvents.DISABLED_COMPILATION;
+        }
+        Compilation event = new Compilation();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * It ends a Compilation event and commits it if it is enabled and longer
+     * than the threshold.
+     * @param event Compilation: The event returned by beginCompilation
+     * @param cipher Class: The class of the cipher
+     * @param key Object: The key compiled
+     * @param engine CipherEngine: The compiled cipher
+     * @return CipherEngine: The compiled cipher, so that the method can wrap a
+     * return
+     */
+    static CipherEngine endCompilation(Compilation event, Class<?> cipher, Object key, CipherEngine engine) {
+        if(event != CipherEvents.DISABLED_COMPILATION && event.shouldCommit()) {
+            event.cipher = cipher.getSimpleName();
+            event.keyLength = (key instanceof CharSequence) ? ((CharSequence) key).length() : 0;
+            event.commit();
+        }
+        return engine;
+    }
+
+    /**
+     * It returns a new Generation event which has begun, or a shared event if
+     * the events are not enabled.
+     * @return Generation: The event
+     */
+    static Generation beginGeneration() {
+        if(!CipherEvents.DISABLED_GENERATION.isEnabled()) {
+            return CipherEvents.DISABLED_GENERATION;
+        }
+        Generation event = new Generation();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * It ends a Generation event and commits it if it is enabled and longer
+     * than the threshold.
+     * @param event Generation: The event returned by beginGeneration
+     * @param cipher Class: The class of the cipher
+     * @param key String: The key generated
+     * @return String: The key, so that the method can wrap a return
+     */
+    static String endGeneration(Generation event, Class<?> cipher, String key) {
+        if(event != CipherEvents.DISABLED_GENERATION && event.shouldCommit()) {
+            event.cipher = cipher.getSimpleName();
+            event.keyLength = key.length();
+            event.commit();
+        }
+        return key;
+    }
+
+    /**
+     * It returns if a key is in the used keys, recording the search as an
+     * UsedKeysCheck event.
+     * @param cipher Class: The class of the cipher
+     * @param usedKeys Collection(String): The used keys
+     * @param key String: The key to search
+     * @return boolean: True if the key has been used
+     */
+    static boolean isUsed(Class<?> cipher, Collection<String> usedKeys, String key) {
+        if(!CipherEvents.DISABLED_USED_KEYS_CHECK.isEnabled()) {
+            return usedKeys.contains(key);
+        }
+        UsedKeysCheck event = new UsedKeysCheck();
+        event.begin();
+        boolean used = usedKeys.contains(key);
+        if(event.shouldCommit()) {
+            event.cipher = cipher.getSimpleName();
+            event.usedKeys = usedKeys.size();
+            event.keyLength = key.length();
+            event.used = used;
+            event.commit();
+        }
+        return used;
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the name of a cipher class. The compiled engines are
+     * named after the cipher class which encloses them.
+     * @param cipher Class: The class of the cipher or of its Engine
+     * @return String: The simple name of the cipher class
+     */
+    private static String nameOf(Class<?> cipher) {
+        Class<?> enclosing = cipher.getEnclosingClass();
+        return (enclosing != null) ? enclosing.getSimpleName() : cipher.getSimpleName();
+    }
+
+}
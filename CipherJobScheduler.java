@@ -0,0 +1,977 @@
+package cryptography;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The class which runs encryption and decryption jobs in the background,
+ * instead of as blocking calls. A job is a text, a file or a corpus of texts
+ * with a compiled cipher and a direction, submitted by a tenant with a
+ * priority. The jobs wait in a bounded queue for every priority and at most
+ * a fixed number of them run at the same time, on virtual threads or on the
+ * executor given to the scheduler: when a job ends the next one is taken from
+ * the queue of the highest priority, skipping the tenants which are already
+ * running as many jobs as their share allows.
+ * <p>
+ * A job is processed in chunks, and after every chunk it records its
+ * progress, checks if it has been cancelled and charges the time spent to its
+ * tenant. Every tenant has a share of the processors, and the time of its
+ * chunks is taken from a budget which grows by the share in real time: when
+ * the budget is spent the job of the tenant waits until it is refilled, so a
+ * tenant with a share of 0.5 uses at most about half a processor whatever the
+ * number of its jobs. The time of a chunk is the processor time of the thread
+ * when the JVM can measure it, and the elapsed time otherwise, as for the
+ * virtual threads.
+ */
+public final class CipherJobScheduler implements AutoCloseable {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default maximum number of jobs waiting with every priority.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * The default number of characters of a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+    /**
+     * The most processor time a tenant can save while it is idle and spend at
+     * once, in nanoseconds of a whole processor.
+     */
+    private static final long MAXIMUM_BURST = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * The longest a throttled job waits before checking again if it has been
+     * cancelled, in nanoseconds.
+     */
+    private static final long THROTTLE_SLICE = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The bean which measures the processor time of the threads, null if the
+     * JVM can not measure it.
+     */
+    private static final ThreadMXBean THREADS = CipherJobScheduler.findThreadBean();
+
+    //FIELDS
+
+    /**
+     * The executor of the jobs.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * True if the executor has been created by the scheduler and is shut
+     * down by close.
+     */
+    private final boolean ownsExecutor;
+
+    /**
+     * The maximum number of jobs running at the same time.
+     */
+    private final int workers;
+
+    /**
+     * The maximum number of jobs waiting with every priority.
+     */
+    private final int queueCapacity;
+
+    /**
+     * The number of characters of a chunk.
+     */
+    private final int chunkSize;
+
+    /**
+     * The object which guards the queues, the tenants and the counters.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The jobs waiting, a queue for every priority.
+     */
+    private final Map<Priority, ArrayDeque<Job<?>>> queues = new EnumMap<>(Priority.class);
+
+    /**
+     * The tenants by name.
+     */
+    private final Map<String, Tenant> tenants = new HashMap<>();
+
+    /**
+     * The jobs running.
+     */
+    private final Set<Job<?>> running = new HashSet<>();
+
+    /**
+     * True when the scheduler has been closed.
+     */
+    private boolean closed;
+
+    //NESTED CLASSES
+
+    /**
+     * The priorities of the jobs. The jobs with a higher priority are always
+     * started first, and the jobs with the same priority in the order in
+     * which they were submitted.
+     */
+    public enum Priority {
+
+        /**
+         * The jobs started only when no other job is waiting.
+         */
+        LOW,
+
+        /**
+         * The jobs of the default priority.
+         */
+        NORMAL,
+
+        /**
+         * The jobs started before all the others.
+         */
+        HIGH
+
+    }
+
+    /**
+     * The states of a job.
+     */
+    public enum State {
+
+        /**
+         * The job is waiting in a queue.
+         */
+        QUEUED,
+
+        /**
+         * The job is being processed.
+         */
+        RUNNING,
+
+        /**
+         * The job has ended with its result.
+         */
+        SUCCEEDED,
+
+        /**
+         * The job has ended with an error.
+         */
+        FAILED,
+
+        /**
+         * The job has been cancelled before its end.
+         */
+        CANCELLED
+
+    }
+
+    /**
+     * The work of a job, which calls checkpoint after every chunk.
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    private interface Work<T> {
+
+        /**
+         * It does the work of the job.
+         * @param job Job(T): The job
+         * @return T: The result
+         * @throws Exception If the work fails
+         */
+        T run(Job<T> job) throws Exception;
+
+    }
+
+    /**
+     * A tenant of the scheduler, with its share of the processors and its
+     * budget of processor time. The number of jobs running is guarded by the
+     * lock of the scheduler, the budget by the tenant.
+     */
+    private static final class Tenant {
+
+        /**
+         * The share of the processors, in processors.
+         */
+        private volatile double share;
+
+        /**
+         * The number of jobs of the tenant running.
+         */
+        private int running;
+
+        /**
+         * The processor time which the tenant can still spend, in
+         * nanoseconds. It is negative when the tenant has spent more than its
+         * share.
+         */
+        private long budget;
+
+        /**
+         * The time of the last refill of the budget, from System.nanoTime.
+         */
+        private long refilled = System.nanoTime();
+
+        /**
+         * Constructor of the class.
+         * @param share double: The share of the processors
+         */
+        private Tenant(double share) {
+            this.share = share;
+        }
+
+        /**
+         * It returns the maximum number of jobs of the tenant running at the
+         * same time, the share rounded up.
+         * @return int: The number of jobs
+         */
+        private int getMaximumRunning() {
+            return Math.max(1, (int) Math.ceil(this.share));
+        }
+
+        /**
+         * It refills the budget for the time elapsed and charges the time of
+         * a chunk.
+         * @param time long: The time of the chunk, in nanoseconds
+         * @return long: The time to wait before the budget is positive again,
+         * in nanoseconds, 0 if it is positive
+         */
+        private synchronized long charge(long time) {
+            double share = this.share;
+            long now = System.nanoTime();
+            double refill = (now - this.refilled) * share;
+            this.budget = (long) Math.min(this.budget + refill, CipherJobScheduler.MAXIMUM_BURST * share);
+            this.refilled = now;
+            this.budget -= time;
+            return (this.budget >= 0) ? 0 : (long) (-this.budget / share);
+        }
+
+    }
+
+    /**
+     * A job submitted to the scheduler. It gives the state, the progress and
+     * the result of the job and it can be cancelled.
+     * @param <T> The type of the result
+     */
+    public static final class Job<T> {
+
+        /**
+         * The scheduler of the job.
+         */
+        private final CipherJobScheduler scheduler;
+
+        /**
+         * The name of the tenant which submitted the job.
+         */
+        private final String tenantName;
+
+        /**
+         * The tenant which submitted the job.
+         */
+        private final Tenant tenant;
+
+        /**
+         * The priority of the job.
+         */
+        private final Priority priority;
+
+        /**
+         * The work of the job.
+         */
+        private final Work<T> work;
+
+        /**
+         * The result of the job.
+         */
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        /**
+         * The state of the job, changed under the lock of the scheduler.
+         */
+        private volatile State state = State.QUEUED;
+
+        /**
+         * True when the job has been cancelled.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The units of work done, characters or bytes.
+         */
+        private volatile long done;
+
+        /**
+         * The units of work of the whole job, characters or bytes.
+         */
+        private volatile long total;
+
+        /**
+         * The time of the thread at the end of the last chunk, in
+         * nanoseconds.
+         */
+        private long lastTime;
+
+        /**
+         * Constructor of the class.
+         * @param scheduler CipherJobScheduler: The scheduler of the job
+         * @param tenantName String: The name of the tenant
+         * @param tenant Tenant: The tenant
+         * @param priority Priority: The priority of the job
+         * @param total long: The units of work of the whole job, or 0 if they
+         * are known only when the job starts
+         * @param work Work(T): The work of the job
+         */
+        Job(CipherJobScheduler scheduler, String tenantName, Tenant tenant, Priority priority, long total, Work<T> work) {
+            this.scheduler = scheduler;
+            this.tenantName = tenantName;
+            this.tenant = tenant;
+            this.priority = priority;
+            this.total = total;
+            this.work = work;
+        }
+
+        /**
+         * Getter method of the field tenantName.
+         * @return String: the class field tenantName
+         */
+        public String getTenant() {
+            return this.tenantName;
+        }
+
+        /**
+         * Getter method of the field priority.
+         * @return Priority: the class field priority
+         */
+        public Priority getPriority() {
+            return this.priority;
+        }
+
+        /**
+         * Getter method of the field state.
+         * @return State: the class field state
+         */
+        public State getState() {
+            return this.state;
+        }
+
+        /**
+         * It returns the percentage of the job which has been done. The
+         * progress of a file is measured on the bytes read, so it is
+         * approximate.
+         * @return double: From 0 to 100, 100 only when the job has succeeded
+         */
+        public double getProgress() {
+            if(this.state == State.SUCCEEDED) {
+                return 100;
+            }
+            long total = this.total;
+            return (total <= 0) ? 0 : Math.min(99.9, this.done * 100.0 / total);
+        }
+
+        /**
+         * It returns the result of the job, as a stage which is completed
+         * when the job ends.
+         * @return CompletionStage(T): The result
+         */
+        public CompletionStage<T> getResult() {
+            return this.result.minimalCompletionStage();
+        }
+
+        /**
+         * It waits for the end of the job and returns its result.
+         * @return T: The result
+         * @throws InterruptedException If the thread is interrupted
+         * @throws ExecutionException If the job has failed
+         * @throws CancellationException If the job has been cancelled
+         */
+        public T get() throws InterruptedException, ExecutionException {
+            return this.result.get();
+        }
+
+        /**
+         * It waits for the end of the job, for at most the given time, and
+         * returns its result.
+         * @param timeout long: The maximum time to wait
+         * @param unit TimeUnit: The unit of the time
+         * @return T: The result
+         * @throws InterruptedException If the thread is interrupted
+         * @throws ExecutionException If the job has failed
+         * @throws TimeoutException If the job has not ended in time
+         * @throws CancellationException If the job has been cancelled
+         */
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return this.result.get(timeout, unit);
+        }
+
+        /**
+         * It cancels the job. A job waiting is removed from its queue, a job
+         * running stops after its current chunk.
+         * @return boolean: True if the job had not ended, false otherwise
+         */
+        public boolean cancel() {
+            this.cancelled = true;
+            return this.scheduler.cancel(this);
+        }
+
+        /**
+         * It records the end of a chunk: the progress is updated, the time of
+         * the chunk is charged to the tenant, which waits if it has spent its
+         * share, and the cancellation is checked.
+         * @param done long: The units of work done
+         * @throws CancellationException If the job has been cancelled
+         */
+        void checkpoint(long done) {
+            this.done = done;
+            long now = CipherJobScheduler.threadTime();
+            long wait = this.tenant.charge(now - this.lastTime);
+            long deadline = System.nanoTime() + wait;
+            while(wait > 0 && !this.cancelled)
+            {
+                LockSupport.parkNanos(Math.min(wait, CipherJobScheduler.THROTTLE_SLICE));
+                wait = deadline - System.nanoTime();
+            }
+            if(this.cancelled) {
+                throw new CancellationException("The job has been cancelled");
+            }
+            this.lastTime = CipherJobScheduler.threadTime();
+        }
+
+        /**
+         * It sets the units of work of the whole job.
+         * @param total long: The units of work
+         */
+        void setTotal(long total) {
+            this.total = total;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with a job for every processor running on
+     * virtual threads, the default queue capacity and the default chunk size.
+     */
+    public CipherJobScheduler() {
+        this(null, Runtime.getRuntime().availableProcessors(), CipherJobScheduler.DEFAULT_QUEUE_CAPACITY, CipherJobScheduler.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param executor ExecutorService: The executor of the jobs, which must
+     * be able to run the given number of jobs at the same time. If it is null
+     * the jobs run on virtual threads
+     * @param workers int: The maximum number of jobs running at the same time
+     * @param queueCapacity int: The maximum number of jobs waiting with every
+     * priority
+     * @param chunkSize int: The number of characters of a chunk
+     * @throws IllegalArgumentException If a number is not positive
+     */
+    public CipherJobScheduler(ExecutorService executor, int workers, int queueCapacity, int chunkSize) {
+        if(workers < 1 || queueCapacity < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("The workers, the queue capacity and the chunk size must be positive");
+        }
+        this.ownsExecutor = executor == null;
+        this.executor = (executor == null) ? VirtualThreads.newExecutor("cipher-job") : executor;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.chunkSize = chunkSize;
+        for(Priority priority : Priority.values())
+        {
+            this.queues.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the number of jobs waiting in the queues.
+     * @return int: The number of jobs waiting
+     */
+    public int getQueued() {
+        synchronized(this.lock) {
+            int queued = 0;
+            for(ArrayDeque<Job<?>> queue : this.queues.values())
+            {
+                queued += queue.size();
+            }
+            return queued;
+        }
+    }
+
+    /**
+     * Getter method of the number of jobs running.
+     * @return int: The number of jobs running
+     */
+    public int getRunning() {
+        synchronized(this.lock) {
+            return this.running.size();
+        }
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It sets the share of the processors of a tenant. The tenants which
+     * have no share set can use all the processors.
+     * @param tenant String: The name of the tenant
+     * @param processors double: The share, in processors, as 0.5 for half a
+     * processor
+     * @throws IllegalArgumentException If the share is not positive
+     */
+    public void setShare(String tenant, double processors) {
+        if(!(processors > 0)) {
+            throw new IllegalArgumentException("The share must be positive");
+        }
+        synchronized(this.lock) {
+            this.tenantOf(tenant).share = processors;
+            this.dispatch();
+        }
+    }
+
+    /**
+     * It submits the encryption or decryption of a text.
+     * @param tenant String: The name of the tenant
+     * @param priority Priority: The priority of the job
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param text String: The text
+     * @return Job(String): The job, whose result is the encrypted or
+     * decrypted text
+     * @throws IllegalStateException If the queue of the priority is full or
+     * the scheduler has been closed
+     */
+    public Job<String> submitText(String tenant, Priority priority, CipherEngine engine, boolean encryption, String text) {
+        if(engine == null || text == null) {
+            throw new IllegalArgumentException("The engine and the text can not be null");
+        }
+        return this.submit(tenant, priority, text.length(), (Job<String> job) -> this.transform(job, engine, encryption, text, 0));
+    }
+
+    /**
+     * It submits the encryption or decryption of a corpus of texts, each one
+     * encrypted or decrypted on its own.
+     * @param tenant String: The name of the tenant
+     * @param priority Priority: The priority of the job
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param texts List(String): The texts
+     * @return Job(List(String)): The job, whose result is the encrypted or
+     * decrypted texts in the same order
+     * @throws IllegalStateException If the queue of the priority is full or
+     * the scheduler has been closed
+     */
+    public Job<List<String>> submitCorpus(String tenant, Priority priority, CipherEngine engine, boolean encryption, List<String> texts) {
+        if(engine == null || texts == null) {
+            throw new IllegalArgumentException("The engine and the texts can not be null");
+        }
+        List<String> corpus = new ArrayList<>(texts);
+        long total = 0;
+        for(String text : corpus)
+        {
+            if(text == null) {
+                throw new IllegalArgumentException("The texts can not be null");
+            }
+            total += text.length();
+        }
+        return this.submit(tenant, priority, total, (Job<List<String>> job) -> {
+            List<String> results = new ArrayList<>(corpus.size());
+            long done = 0;
+            for(String text : corpus)
+            {
+                results.add(this.transform(job, engine, encryption, text, done));
+                done += text.length();
+            }
+            return Collections.unmodifiableList(results);
+        });
+    }
+
+    /**
+     * It submits the encryption or decryption of a file into another file.
+     * The text is streamed in chunks, except for the engines with block size
+     * 0 which need the whole text. If the job fails or is cancelled the
+     * target file is deleted.
+     * @param tenant String: The name of the tenant
+     * @param priority Priority: The priority of the job
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param source Path: The file to read
+     * @param target Path: The file to write, replaced if it exists
+     * @param charset Charset: The charset of both files
+     * @return Job(Path): The job, whose result is the target file
+     * @throws IllegalStateException If the queue of the priority is full or
+     * the scheduler has been closed
+     */
+    public Job<Path> submitFile(String tenant, Priority priority, CipherEngine engine, boolean encryption, Path source, Path target, Charset charset) {
+        if(engine == null || source == null || target == null || charset == null) {
+            throw new IllegalArgumentException("The engine, the files and the charset can not be null");
+        }
+        return this.submit(tenant, priority, 0, (Job<Path> job) -> {
+            try {
+                this.transformFile(job, engine, encryption, source, target, charset);
+            }
+            catch(IOException | RuntimeException | Error ex) {
+                try {
+                    Files.deleteIfExists(target);
+                }
+                catch(IOException deletion) {
+                    ex.addSuppressed(deletion);
+                }
+                throw ex;
+            }
+            return target;
+        });
+    }
+
+    /**
+     * It closes the scheduler: no job can be submitted any more and all the
+     * jobs waiting or running are cancelled. The executor is shut down only
+     * if it has been created by the scheduler.
+     */
+    @Override
+    public void close() {
+        List<Job<?>> jobs = new ArrayList<>();
+        synchronized(this.lock) {
+            this.closed = true;
+            for(ArrayDeque<Job<?>> queue : this.queues.values())
+            {
+                jobs.addAll(queue);
+            }
+            jobs.addAll(this.running);
+        }
+        for(Job<?> job : jobs)
+        {
+            job.cancel();
+        }
+        if(this.ownsExecutor) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method queues a job and starts the jobs which can run.
+     * @param tenant String: The name of the tenant
+     * @param priority Priority: The priority of the job
+     * @param total long: The units of work of the job
+     * @param work Work(T): The work of the job
+     * @return Job(T): The job
+     * @throws IllegalStateException If the queue of the priority is full or
+     * the scheduler has been closed
+     */
+    private <T> Job<T> submit(String tenant, Priority priority, long total, Work<T> work) {
+        if(tenant == null || priority == null) {
+            throw new IllegalArgumentException("The tenant and the priority can not be null");
+        }
+        synchronized(this.lock) {
+            if(this.closed) {
+                throw new IllegalStateException("The scheduler has been closed");
+            }
+            ArrayDeque<Job<?>> queue = this.queues.get(priority);
+            if(queue.size() >= this.queueCapacity) {
+                throw new IllegalStateException("The queue of the priority " + priority + " is full");
+            }
+            Job<T> job = new Job<>(this, tenant, this.tenantOf(tenant), priority, total, work);
+            queue.addLast(job);
+            this.dispatch();
+            return job;
+        }
+    }
+
+    /**
+     * This method starts the jobs which can run, the first ones of the
+     * highest priorities whose tenants are below their limit. It must be
+     * called holding this.lock.
+     */
+    private void dispatch() {
+        while(this.running.size() < this.workers)
+        {
+            Job<?> job = this.poll();
+            if(job == null) {
+                return;
+            }
+            job.state = State.RUNNING;
+            job.tenant.running++;
+            this.running.add(job);
+            try {
+                this.executor.execute(() -> this.run(job));
+            }
+            catch(RejectedExecutionException ex) {
+                job.tenant.running--;
+                this.running.remove(job);
+                job.state = State.FAILED;
+                job.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * This method removes from the queues the first job which can run. It
+     * must be called holding this.lock.
+     * @return Job: The job, null if no job can run
+     */
+    private Job<?> poll() {
+        Priority[] priorities = Priority.values();
+        for(int i = priorities.length - 1; i >= 0; i--)
+        {
+            Iterator<Job<?>> jobs = this.queues.get(priorities[i]).iterator();
+            while(jobs.hasNext())
+            {
+                Job<?> job = jobs.next();
+                if(job.tenant.running < job.tenant.getMaximumRunning()) {
+                    jobs.remove();
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method runs a job on the thread of the executor and then starts
+     * the next ones. An error of the work, as an AssertionError of an engine,
+     * fails the job as an exception does, so that its result is always
+     * completed.
+     * @param job Job(T): The job
+     */
+    private <T> void run(Job<T> job) {
+        try {
+            if(job.cancelled) {
+                throw new CancellationException("The job has been cancelled");
+            }
+            job.lastTime = CipherJobScheduler.threadTime();
+            T value = job.work.run(job);
+            job.done = job.total;
+            job.state = State.SUCCEEDED;
+            job.result.complete(value);
+        }
+        catch(CancellationException ex) {
+            job.state = State.CANCELLED;
+            job.result.completeExceptionally(ex);
+        }
+        catch(Throwable ex) {
+            job.state = State.FAILED;
+            job.result.completeExceptionally(ex);
+        }
+        finally {
+            synchronized(this.lock) {
+                job.tenant.running--;
+                this.running.remove(job);
+                this.dispatch();
+            }
+        }
+    }
+
+    /**
+     * This method cancels a job which is waiting, or marks a job running as
+     * cancelled.
+     * @param job Job(T): The job, already marked as cancelled
+     * @return boolean: True if the job had not ended, false otherwise
+     */
+    private <T> boolean cancel(Job<T> job) {
+        synchronized(this.lock) {
+            if(job.state == State.RUNNING) {
+                return true;
+            }
+            if(job.state != State.QUEUED) {
+                return false;
+            }
+            this.queues.get(job.priority).remove(job);
+            job.state = State.CANCELLED;
+        }
+        job.result.completeExceptionally(new CancellationException("The job has been cancelled"));
+        return true;
+    }
+
+    /**
+     * This method returns a tenant, created with a share of all the
+     * processors if it does not exist. It must be called holding this.lock.
+     * @param name String: The name of the tenant
+     * @return Tenant: The tenant
+     */
+    private Tenant tenantOf(String name) {
+        Tenant tenant = this.tenants.get(name);
+        if(tenant == null) {
+            tenant = new Tenant(Runtime.getRuntime().availableProcessors());
+            this.tenants.put(name, tenant);
+        }
+        return tenant;
+    }
+
+    /**
+     * This method encrypts or decrypts a text in chunks, carrying the state
+     * of the cipher from a chunk to the next one and calling the checkpoint
+     * of the job after every chunk. The end of the text shorter than a block
+     * is given to encryptText or decryptText, as the whole text of the
+     * engines with block size 0.
+     * @param job Job: The job
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param text String: The text
+     * @param done long: The characters of the job done before the text
+     * @return String: The encrypted or decrypted text
+     * @throws CancellationException If the job has been cancelled
+     */
+    private String transform(Job<?> job, CipherEngine engine, boolean encryption, String text, long done) {
+        int blockSize = engine.getBlockSize();
+        int length = text.length();
+        if(blockSize == 0 || length < blockSize) {
+            String result = encryption ? engine.encryptText(text) : engine.decryptText(text);
+            job.checkpoint(done + length);
+            return result;
+        }
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        char[] chars = text.toCharArray();
+        int whole = length - length % blockSize;
+        int step = Math.max(blockSize, this.chunkSize - this.chunkSize % blockSize);
+        long state = 0;
+        for(int offset = 0; offset < whole; offset += step)
+        {
+            int chunk = Math.min(step, whole - offset);
+            if(encryption) {
+                state = engine.encrypt(chars, offset, chars, offset, chunk, state);
+            }
+            else {
+                state = engine.decrypt(chars, offset, chars, offset, chunk, state);
+            }
+            job.checkpoint(done + offset + chunk);
+        }
+        String result = new String(chars, 0, whole);
+        if(whole < length) {
+            String end = text.substring(whole);
+            result += encryption ? engine.encryptText(end) : engine.decryptText(end);
+            job.checkpoint(done + length);
+        }
+        return CipherEvents.endOperation(event, engine.getClass(), encryption, text, result);
+    }
+
+    /**
+     * This method encrypts or decrypts a file in chunks, carrying the state
+     * of the cipher from a chunk to the next one and calling the checkpoint
+     * of the job after every chunk with the bytes read. The whole text is
+     * read first for the engines with block size 0.
+     * @param job Job: The job
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param source Path: The file to read
+     * @param target Path: The file to write
+     * @param charset Charset: The charset of both files
+     * @throws IOException If a file can not be read, decoded or written
+     * @throws CancellationException If the job has been cancelled
+     */
+    private void transformFile(Job<?> job, CipherEngine engine, boolean encryption, Path source, Path target, Charset charset) throws IOException {
+        if(target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        int blockSize = engine.getBlockSize();
+        int step = Math.max(blockSize, this.chunkSize - this.chunkSize % Math.max(blockSize, 1));
+        try(FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            Reader reader = new InputStreamReader(Channels.newInputStream(channel), charset.newDecoder());
+            Writer writer = Files.newBufferedWriter(target, charset)) {
+            job.setTotal(channel.size());
+            char[] buffer = new char[step];
+            if(blockSize == 0) {
+                StringBuilder text = new StringBuilder();
+                int read;
+                while((read = reader.read(buffer)) != -1)
+                {
+                    text.append(buffer, 0, read);
+                    job.checkpoint(channel.position());
+                }
+                writer.write(encryption ? engine.encryptText(text.toString()) : engine.decryptText(text.toString()));
+                return;
+            }
+            long state = 0;
+            int filled = 0, read;
+            while((read = reader.read(buffer, filled, buffer.length - filled)) != -1)
+            {
+                filled += read;
+                int length = filled - filled % blockSize;
+                if(encryption) {
+                    state = engine.encrypt(buffer, 0, buffer, 0, length, state);
+                }
+                else {
+                    state = engine.decrypt(buffer, 0, buffer, 0, length, state);
+                }
+                writer.write(buffer, 0, length);
+                System.arraycopy(buffer, length, buffer, 0, filled - length);
+                filled -= length;
+                job.checkpoint(channel.position());
+            }
+            if(filled > 0) {
+                String end = new String(buffer, 0, filled);
+                writer.write(encryption ? engine.encryptText(end) : engine.decryptText(end));
+            }
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the time of the current thread: its processor time
+     * if the JVM can measure it, the elapsed time otherwise.
+     * @return long: The time, in nanoseconds
+     */
+    private static long threadTime() {
+        if(CipherJobScheduler.THREADS != null) {
+            long time = CipherJobScheduler.THREADS.getCurrentThreadCpuTime();
+            if(time >= 0) {
+                return time;
+            }
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * This method returns the bean which measures the processor time of the
+     * threads, enabling the measure if needed.
+     * @return ThreadMXBean: The bean, null if the JVM can not measure the
+     * processor time of the current thread
+     */
+    private static ThreadMXBean findThreadBean() {
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if(!threads.isCurrentThreadCpuTimeSupported()) {
+                return null;
+            }
+            if(!threads.isThreadCpuTimeEnabled()) {
+                threads.setThreadCpuTimeEnabled(true);
+            }
+            return threads;
+        }
+        catch(UnsupportedOperationException | SecurityException ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package cryptography;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * The Flow processor which encrypts or decrypts a stream of CharBuffers with a
+ * CipherEngine, as if the stream was one text: the state of the Vigenere and
+ * Vernam Ciphers and the incomplete pairs of the Playfair Cipher are carried
+ * from a chunk to the next. It requests from its publisher only the chunks
+ * requested by its subscriber, at most window at a time, so a slow subscriber
+ * does not make it buffer the stream. With an Executor the chunks of the
+ * ciphers which do not depend on the position are processed in parallel and
+ * published in order.
+ * <p>
+ * The CharBuffers received are read, not modified, and every CharBuffer
+ * published is new. The Transposition Cipher needs the whole text and can not
+ * be used.
+ */
+public final class CipherProcessor extends AbstractCipherProcessor<CharBuffer> {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default maximum number of chunks requested and not yet published.
+     */
+    public static final int DEFAULT_WINDOW = AbstractCipherProcessor.DEFAULT_WINDOW;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which processes the chunks one after the
+     * other.
+     * @param engine CipherEngine: The compiled cipher, with a block size
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @throws IllegalArgumentException If the cipher needs the whole text
+     */
+    public CipherProcessor(CipherEngine engine, boolean encryption) {
+        this(engine, encryption, null, CipherProcessor.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param engine CipherEngine: The compiled cipher, with a block size
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param executor Executor: The executor which processes the chunks in
+     * parallel, null to process them one after the other. The cipher must be
+     * position independent
+     * @param window int: The maximum number of chunks requested and not yet
+     * published. It must be positive
+     * @throws IllegalArgumentException If the cipher needs the whole text, or
+     * it depends on the position and the executor is not null
+     */
+    public CipherProcessor(CipherEngine engine, boolean encryption, Executor executor, int window) {
+        super(engine, encryption, executor, window);
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It returns a read-only view of the chunk, so that it is not modified.
+     */
+    @Override
+    CharBuffer decode(CharBuffer item) {
+        return item.asReadOnlyBuffer();
+    }
+
+    /**
+     * It returns no characters.
+     */
+    @Override
+    CharBuffer decodeEnd() {
+        return CharBuffer.allocate(0);
+    }
+
+    /**
+     * It wraps the characters, null if there are none.
+     */
+    @Override
+    CharBuffer encode(char[] chars, boolean end) {
+        return (chars.length == 0) ? null : CharBuffer.wrap(chars);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns a new CipherProcessor subscribed to the given publisher,
+     * which processes its chunks one after the other.
+     * @param publisher Flow.Publisher: The publisher of the chunks
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @return Flow.Publisher(CharBuffer): The publisher of the processed
+     * chunks
+     */
+    public static Flow.Publisher<CharBuffer> of(Flow.Publisher<? extends CharBuffer> publisher, CipherEngine engine, boolean encryption) {
+        CipherProcessor processor = new CipherProcessor(engine, encryption);
+        publisher.subscribe(processor);
+        return processor;
+    }
+
+}
@@ -0,0 +1,423 @@
+package cryptography;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class of a concurrent cache of compiled keys, which avoids checking and
+ * compiling again the keys used often. The keys are stored in their canonical
+ * form, so equivalent keys share the same CipherEngine: the Caesar keys are
+ * reduced modulo 26, the Vigenere keys to the lowercase letters of their
+ * minimal period, the Substitution keys to uppercase and the Playfair keys to
+ * the 25 letters of their table.
+ * <p>
+ * The number of keys is bounded. When the registry is full a new key replaces
+ * the least recently used one only if it has been requested more often, as
+ * estimated by a small frequency sketch (the TinyLFU admission policy), so a
+ * burst of keys used once does not evict the keys used all the time. The
+ * lookups of cached keys do not lock: the order of use and the frequencies are
+ * updated only when no other thread is updating them. The one-time pads of the
+ * Vernam Ciphers are compiled every time and never cached.
+ */
+public final class CipherRegistry {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default maximum number of keys.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    //FIELDS
+
+    /**
+     * The compiled keys, by type and canonical key.
+     */
+    private final ConcurrentHashMap<String, CipherEngine> engines = new ConcurrentHashMap<>();
+
+    /**
+     * The keys of this.engines from the least to the most recently used,
+     * guarded by this.lock.
+     */
+    private final LinkedHashMap<String, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The estimated frequencies of the requested keys, guarded by this.lock.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * The lock of this.order and this.sketch.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The maximum number of keys.
+     */
+    private final int maximumSize;
+
+    /**
+     * The number of requests of a cached key.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of requests of a key which was not cached.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of keys removed to make room for another one.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The number of keys not cached because they were requested less often
+     * than the key they would have replaced.
+     */
+    private final LongAdder rejections = new LongAdder();
+
+    //NESTED CLASSES
+
+    /**
+     * The count-min sketch of the frequencies of the keys, with four counters
+     * of four bits for every key. The counters are halved after a number of
+     * additions proportional to the size of the registry, so the old
+     * frequencies fade.
+     */
+    private static final class FrequencySketch {
+
+        /**
+         * The seeds of the four hash functions.
+         */
+        private static final int[] SEEDS = { 0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F };
+
+        /**
+         * The counters, every one from 0 to 15.
+         */
+        private final byte[] counters;
+
+        /**
+         * The number of additions after which the counters are halved.
+         */
+        private final int sampleSize;
+
+        /**
+         * The number of additions since the counters have been halved.
+         */
+        private int additions;
+
+        /**
+         * Constructor of the class.
+         * @param maximumSize int: The maximum number of keys of the registry
+         */
+        private FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 26)) * 8 - 1) << 1;
+            this.counters = new byte[width];
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maximumSize);
+        }
+
+        /**
+         * It increments the frequency of a key.
+         * @param hash int: The hash of the key
+         */
+        private void increment(int hash) {
+            for(int seed : FrequencySketch.SEEDS)
+            {
+                int index = this.indexOf(hash, seed);
+                if(this.counters[index] < 15) {
+                    this.counters[index]++;
+                }
+            }
+            if(++this.additions >= this.sampleSize) {
+                for(int i = 0; i < this.counters.length; i++)
+                {
+                    this.counters[i] >>= 1;
+                }
+                this.additions /= 2;
+            }
+        }
+
+        /**
+         * It returns the estimated frequency of a key.
+         * @param hash int: The hash of the key
+         * @return int: The frequency, from 0 to 15
+         */
+        private int frequency(int hash) {
+            int frequency = 15;
+            for(int seed : FrequencySketch.SEEDS)
+            {
+                frequency = Math.min(frequency, this.counters[this.indexOf(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * It returns the counter of a key for a hash function.
+         * @param hash int: The hash of the key
+         * @param seed int: The seed of the hash function
+         * @return int: The index of the counter
+         */
+        private int indexOf(int hash, int seed) {
+            int mixed = (hash + seed) * 0x9E3779B9;
+            mixed ^= mixed >>> 16;
+            return mixed & (this.counters.length - 1);
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with the default maximum size.
+     */
+    public CipherRegistry() {
+        this(CipherRegistry.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param maximumSize int: The maximum number of keys. It must be positive
+     */
+    public CipherRegistry(int maximumSize) {
+        if(maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the field maximumSize.
+     * @return int: the class field maximumSize
+     */
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * It returns the number of keys cached.
+     * @return int: The number of keys
+     */
+    public int size() {
+        return this.engines.size();
+    }
+
+    /**
+     * Getter method of the number of requests of a cached key.
+     * @return long: the number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Getter method of the number of requests of a key which was not cached.
+     * @return long: the number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Getter method of the number of keys removed to make room for another
+     * one.
+     * @return long: the number of evictions
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Getter method of the number of keys not cached because they were
+     * requested less often than the key they would have replaced.
+     * @return long: the number of rejections
+     */
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * It returns the fraction of the requests which found the key cached.
+     * @return double: The hit rate, from 0 to 1, 0 if there are no requests
+     */
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long requests = hits + this.misses.sum();
+        return (requests == 0) ? 0 : (double) hits / requests;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the compiled cipher with the given key, compiling it if it is
+     * not cached.
+     * @param type CipherType: The cipher
+     * @param key String: The key, as given to CipherType.compile(String)
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public CipherEngine get(CipherType type, String key) throws IllegalCipherKeyException {
+        if(type.isOneTimePad()) {
+            return type.compile(key);
+        }
+        String canonical = CipherRegistry.canonicalKey(type, key);
+        String name = type.name() + ':' + canonical;
+        CipherEngine engine = this.engines.get(name);
+        if(engine != null) {
+            this.hits.increment();
+            if(this.lock.tryLock()) {
+                try {
+                    this.sketch.increment(name.hashCode());
+                    this.order.get(name);
+                }
+                finally {
+                    this.lock.unlock();
+                }
+            }
+            return engine;
+        }
+        this.misses.increment();
+        engine = type.compile(canonical);
+        this.lock.lock();
+        try {
+            int hash = name.hashCode();
+            this.sketch.increment(hash);
+            CipherEngine cached = this.engines.get(name);
+            if(cached != null) {
+                return cached;
+            }
+            if(this.order.size() >= this.maximumSize) {
+                Iterator<String> eldest = this.order.keySet().iterator();
+                String victim = eldest.next();
+                if(this.sketch.frequency(hash) <= this.sketch.frequency(victim.hashCode())) {
+                    this.rejections.increment();
+                    return engine;
+                }
+                eldest.remove();
+                this.engines.remove(victim);
+                this.evictions.increment();
+            }
+            this.order.put(name, Boolean.TRUE);
+            this.engines.put(name, engine);
+        }
+        finally {
+            this.lock.unlock();
+        }
+        return engine;
+    }
+
+    /**
+     * It removes all the keys. The counters are not reset.
+     */
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.order.clear();
+            this.engines.clear();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns the canonical form of a key, which is the same for all the
+     * keys which encrypt in the same way. The Unicode Vigenere and the Vernam
+     * keys are returned as they are.
+     * @param type CipherType: The cipher
+     * @param key String: The key, as given to CipherType.compile(String)
+     * @return String: The canonical key, a valid key of the cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static String canonicalKey(CipherType type, String key) throws IllegalCipherKeyException {
+        if(key == null) {
+            throw new IllegalCipherKeyException("The key can not be null");
+        }
+        switch(type) {
+            case CAESAR:
+                return Integer.toString(Math.floorMod(CipherRegistry.parseShort(key), 26));
+            case UNICODE_CAESAR:
+                return Short.toString(CipherRegistry.parseShort(key));
+            case TRANSPOSITION:
+                try {
+                    return Integer.toString(Integer.parseInt(key.trim()));
+                }
+                catch(NumberFormatException ex) {
+                    throw new IllegalCipherKeyException("The key must be an int number");
+                }
+            case VIGENERE:
+                return CipherRegistry.canonicalVigenereKey(key);
+            case SUBSTITUTION:
+                return SubstitutionCipher.completeKey(key).substring(0, 26);
+            case PLAYFAIR:
+                byte[] table = new byte[25];
+                if(!PlayfairCipher.fillTable(key, table, new byte[26])) {
+                    throw new IllegalCipherKeyException();
+                }
+                char[] letters = new char[25];
+                for(int i = 0; i < 25; i++)
+                {
+                    letters[i] = (char) ('A' + table[i]);
+                }
+                return new String(letters);
+            default:
+                return key;
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method parses a short key.
+     * @param key String: The key
+     * @return short: The number
+     * @throws IllegalCipherKeyException If the key is not a short number
+     */
+    private static short parseShort(String key) throws IllegalCipherKeyException {
+        try {
+            return Short.parseShort(key.trim());
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalCipherKeyException("The key must be a short number");
+        }
+    }
+
+    /**
+     * This method returns the lowercase letters of the minimal period of the
+     * shifts of a Vigenere key, which encrypt as the whole key.
+     * @param key String: The key
+     * @return String: The canonical key
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    private static String canonicalVigenereKey(String key) throws IllegalCipherKeyException {
+        byte[] shifts = new byte[key.length()];
+        int length = VigenereCipher.fillShifts(key, shifts);
+        if(length == -1) {
+            throw new IllegalCipherKeyException("The key must be composed only by letters and not empty");
+        }
+        PeriodFinder finder = new PeriodFinder();
+        for(int i = 0; i < length; i++)
+        {
+            finder.add(shifts[i]);
+        }
+        int period = finder.getPeriod();
+        if(length % period != 0) {
+            period = length;
+        }
+        char[] letters = new char[period];
+        for(int i = 0; i < period; i++)
+        {
+            letters[i] = (char) ('a' + (shifts[i] + 25) % 26);
+        }
+        return new String(letters);
+    }
+
+}
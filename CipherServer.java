@@ -0,0 +1,816 @@
+package cryptography;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The class of a local HTTP service which encrypts and decrypts texts with all
+ * the ciphers of CipherType, built only on the JDK HTTP server. Every request
+ * is handled on a virtual thread, the compiled keys are cached and the small
+ * requests received at the same time with the same cipher, key and direction
+ * are processed together in micro-batches. The bodies are read and the texts
+ * are encrypted in scratch arrays of a ScratchPool, so a request allocates
+ * little more than its text and its result.
+ * <p>
+ * The requests are POST /encrypt?cipher=NAME and POST /decrypt?cipher=NAME,
+ * with the text as body and the key in the header X-Cipher-Key. The response
+ * is the encrypted or decrypted text. The Vernam Ciphers do not take a key to
+ * encrypt: a new pad is generated and returned in X-Cipher-Key, and it is
+ * claimed in a UsedPadSet of the server, so no pad is returned twice; a text
+ * so short that all its pads have been used is refused.
+ * The bodies are text in the charset of the Content-Type, UTF-8 by default,
+ * and the keys in the headers are percent-encoded UTF-8. With the Content-Type
+ * application/octet-stream the bodies are UTF-16BE code units and the keys are
+ * Base64 UTF-16BE code units, so that the texts of the Unicode ciphers which
+ * are not valid Unicode can be sent too.
+ * <p>
+ * The errors are 400 for a wrong cipher, key or text, 404 for a wrong path,
+ * 405 for a method which is not POST, 413 for a body too large and 422 for a
+ * result which can not be encoded in the charset of the request.
+ * <p>
+ * The JDK HTTP server sends the small responses with the Nagle algorithm,
+ * which on the loopback delays them until the delayed ACKs of the clients:
+ * the applications which need a low latency can start the JVM with
+ * -Dsun.net.httpserver.nodelay=true.
+ */
+public final class CipherServer {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The header with the key of the cipher.
+     */
+    public static final String KEY_HEADER = "X-Cipher-Key";
+
+    /**
+     * The Content-Type of the bodies of UTF-16BE code units.
+     */
+    public static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+
+    /**
+     * The default maximum number of compiled keys cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * The default time a micro-batch waits for other requests, in nanoseconds.
+     */
+    public static final long DEFAULT_BATCH_WINDOW = 100_000;
+
+    /**
+     * The default maximum number of requests in a micro-batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The maximum length of a text put in a micro-batch. The longer texts are
+     * processed alone.
+     */
+    private static final int BATCH_THRESHOLD = 4096;
+
+    /**
+     * The maximum size of a request body, in bytes.
+     */
+    private static final int MAX_BODY_SIZE = 1 << 24;
+
+    /**
+     * The initial size of the array of a request body, in bytes.
+     */
+    private static final int BODY_BUFFER_SIZE = 8192;
+
+    //FIELDS
+
+    /**
+     * The JDK HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The executor of the requests.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The cache of the compiled keys.
+     */
+    private final CipherRegistry registry;
+
+    /**
+     * The pads generated by the server, shared by all the requests so that
+     * no pad is returned twice.
+     */
+    private final UsedPadSet usedPads = new UsedPadSet();
+
+    /**
+     * The scratch arrays of the request bodies.
+     */
+    private final ScratchPool<byte[]> bodies = ScratchPool.ofBytes();
+
+    /**
+     * The scratch arrays of the texts encrypted or decrypted.
+     */
+    private final ScratchPool<char[]> texts = ScratchPool.ofChars();
+
+    /**
+     * The micro-batches waiting for requests, by cipher, direction and key.
+     */
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    /**
+     * The number of requests which are about to join a micro-batch, or lead
+     * one which is still open.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The time a micro-batch waits for other requests, in nanoseconds. If it
+     * is zero the requests are never batched.
+     */
+    private final long batchWindow;
+
+    /**
+     * The maximum number of requests in a micro-batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of requests encrypted or decrypted.
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * The number of micro-batches processed.
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The number of requests processed in micro-batches.
+     */
+    private final AtomicLong batchedRequests = new AtomicLong();
+
+    //NESTED CLASSES
+
+    /**
+     * A group of requests with the same cipher, key and direction, processed
+     * by the thread of the first one.
+     */
+    private static final class Batch {
+
+        /**
+         * The compiled cipher.
+         */
+        private final CipherEngine engine;
+
+        /**
+         * True to encrypt, false to decrypt.
+         */
+        private final boolean encryption;
+
+        /**
+         * The texts of the requests.
+         */
+        private final List<String> texts = new ArrayList<>();
+
+        /**
+         * The results of the requests, in the order of this.texts.
+         */
+        private final List<CompletableFuture<String>> results = new ArrayList<>();
+
+        /**
+         * True when the batch does not accept other requests.
+         */
+        private boolean closed;
+
+        /**
+         * The thread of the first request, which processes the batch.
+         */
+        private final Thread leader = Thread.currentThread();
+
+        /**
+         * Constructor of the class.
+         * @param engine CipherEngine: The compiled cipher
+         * @param encryption boolean: True to encrypt, false to decrypt
+         */
+        private Batch(CipherEngine engine, boolean encryption) {
+            this.engine = engine;
+            this.encryption = encryption;
+        }
+
+    }
+
+    /**
+     * The error of a request, with its HTTP status.
+     */
+    private static final class RequestException extends Exception {
+
+        /**
+         * The serial version of the class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The HTTP status of the response.
+         */
+        private final int status;
+
+        /**
+         * Constructor of the class.
+         * @param status int: The HTTP status of the response
+         * @param message String: The message sent to the client
+         */
+        private RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with the default cache and micro-batches. The
+     * server is not started.
+     * @param address InetSocketAddress: The address to listen on, for example
+     * new InetSocketAddress(InetAddress.getLoopbackAddress(), 0) for a free
+     * port of the loopback
+     * @throws IOException If the address can not be bound
+     */
+    public CipherServer(InetSocketAddress address) throws IOException {
+        this(address, CipherServer.DEFAULT_CACHE_SIZE, CipherServer.DEFAULT_BATCH_WINDOW, CipherServer.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor of the class. The server is not started.
+     * @param address InetSocketAddress: The address to listen on
+     * @param cacheSize int: The maximum number of compiled keys cached. It
+     * must be positive
+     * @param batchWindow long: The time a micro-batch waits for other
+     * requests, in nanoseconds. If it is zero the requests are not batched
+     * @param batchSize int: The maximum number of requests in a micro-batch.
+     * It must be positive
+     * @throws IOException If the address can not be bound
+     */
+    public CipherServer(InetSocketAddress address, int cacheSize, long batchWindow, int batchSize) throws IOException {
+        if(cacheSize < 1) {
+            throw new IllegalArgumentException("The cache size must be positive");
+        }
+        if(batchWindow < 0) {
+            throw new IllegalArgumentException("The batch window can not be negative");
+        }
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.registry = new CipherRegistry(cacheSize);
+        this.batchWindow = batchWindow;
+        this.batchSize = batchSize;
+        this.server = HttpServer.create(address, 0);
+        this.executor = VirtualThreads.newExecutor("cipher-server");
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/encrypt", (HttpExchange exchange) -> this.handle(exchange, true));
+        this.server.createContext("/decrypt", (HttpExchange exchange) -> this.handle(exchange, false));
+    }
+
+    //GETTERS
+
+    /**
+     * It returns the address the server listens on, with the port chosen if
+     * the port given was 0.
+     * @return InetSocketAddress: The address of the server
+     */
+    public InetSocketAddress getAddress() {
+        return this.server.getAddress();
+    }
+
+    /**
+     * Getter method of the number of requests encrypted or decrypted.
+     * @return long: the number of requests processed
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Getter method of the number of micro-batches processed.
+     * @return long: the number of micro-batches
+     */
+    public long getBatches() {
+        return this.batchCount.get();
+    }
+
+    /**
+     * Getter method of the number of requests processed in micro-batches,
+     * alone or with others.
+     * @return long: the number of batched requests
+     */
+    public long getBatchedRequests() {
+        return this.batchedRequests.get();
+    }
+
+    /**
+     * Getter method of the field registry, with the statistics of the cache
+     * of the compiled keys.
+     * @return CipherRegistry: the class field registry
+     */
+    public CipherRegistry getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * Getter method of the field texts, with the statistics of the scratch
+     * arrays of the texts.
+     * @return ScratchPool(char[]): the class field texts
+     */
+    public ScratchPool<char[]> getTexts() {
+        return this.texts;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It starts the server.
+     */
+    public void start() {
+        this.server.start();
+    }
+
+    /**
+     * It stops the server, waiting at most the given time for the requests in
+     * progress.
+     * @param delay int: The maximum time to wait, in seconds
+     */
+    public void stop(int delay) {
+        this.server.stop(delay);
+        this.executor.shutdownNow();
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method handles a request of /encrypt or /decrypt. An unexpected
+     * RuntimeException is answered with the status 500, and the exchange is
+     * always closed.
+     * @param exchange HttpExchange: The request and its response
+     * @param encryption boolean: True for /encrypt, false for /decrypt
+     * @throws IOException If the response can not be sent
+     */
+    private void handle(HttpExchange exchange, boolean encryption) throws IOException {
+        try {
+            Headers responseHeaders = exchange.getResponseHeaders();
+            try {
+                if(!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+                    throw new RequestException(404, "Unknown path");
+                }
+                if(!exchange.getRequestMethod().equals("POST")) {
+                    responseHeaders.set("Allow", "POST");
+                    throw new RequestException(405, "Only POST is allowed");
+                }
+                CipherType type = CipherServer.parseType(exchange.getRequestURI().getRawQuery());
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                boolean binary = contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(CipherServer.BINARY_CONTENT_TYPE);
+                Charset charset = binary ? StandardCharsets.UTF_16BE : CipherServer.parseCharset(contentType);
+                String text = this.readText(exchange.getRequestBody(), charset, binary);
+                String key = exchange.getRequestHeaders().getFirst(CipherServer.KEY_HEADER);
+                String result;
+                if(type.isOneTimePad() && encryption) {
+                    if(key != null) {
+                        throw new RequestException(400, "The pad of " + type.getName() + " is generated by the server");
+                    }
+                    String[] encrypted;
+                    try {
+                        encrypted = (type == CipherType.VERNAM) ? VernamCipher.encryptText(text, this.usedPads) : UnicodeVernamCipher.encryptText(text, this.usedPads);
+                    }
+                    catch(IllegalStateException ex) {
+                        throw new RequestException(400, ex.getMessage());
+                    }
+                    result = encrypted[0];
+                    responseHeaders.set(CipherServer.KEY_HEADER, CipherServer.encodeKey(encrypted[1], binary));
+                    this.requests.incrementAndGet();
+                }
+                else {
+                    if(key == null) {
+                        throw new RequestException(400, "The header " + CipherServer.KEY_HEADER + " is missing");
+                    }
+                    result = this.transform(type, CipherServer.decodeKey(key, binary), encryption, text);
+                }
+                byte[] body = CipherServer.encode(result, charset, binary);
+                responseHeaders.set("Content-Type", binary ? CipherServer.BINARY_CONTENT_TYPE : "text/plain; charset=" + charset.name());
+                exchange.sendResponseHeaders(200, (body.length == 0) ? -1 : body.length);
+                try(OutputStream output = exchange.getResponseBody()) {
+                    output.write(body);
+                }
+            }
+            catch(RequestException ex) {
+                CipherServer.sendError(exchange, ex.status, ex.getMessage());
+            }
+            catch(RuntimeException ex) {
+                CipherServer.sendError(exchange, 500, "Internal error: " + ex.getClass().getSimpleName());
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * This method encrypts or decrypts a text with the compiled key, alone or
+     * in a micro-batch.
+     * @param type CipherType: The cipher
+     * @param key String: The key
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param text String: The text
+     * @return String: The encrypted or decrypted text
+     * @throws RequestException If the key or the text is not valid
+     */
+    private String transform(CipherType type, String key, boolean encryption, String text) throws RequestException {
+        CipherEngine engine = this.engineFor(type, key);
+        this.requests.incrementAndGet();
+        if(this.batchWindow == 0 || text.length() > CipherServer.BATCH_THRESHOLD) {
+            try {
+                return this.apply(engine, encryption, text);
+            }
+            catch(IllegalArgumentException ex) {
+                throw new RequestException(400, ex.getMessage());
+            }
+        }
+        String batchKey = type.name() + (encryption ? "+" : "-") + key;
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Batch batch;
+        boolean leader;
+        this.pending.incrementAndGet();
+        while(true)
+        {
+            batch = this.batches.computeIfAbsent(batchKey, (String k) -> new Batch(engine, encryption));
+            synchronized(batch) {
+                if(!batch.closed) {
+                    batch.texts.add(text);
+                    batch.results.add(result);
+                    leader = batch.texts.size() == 1;
+                    if(batch.texts.size() == this.batchSize) {
+                        batch.closed = true;
+                        this.batches.remove(batchKey, batch);
+                    }
+                    break;
+                }
+            }
+            this.batches.remove(batchKey, batch);
+        }
+        if(leader) {
+            this.awaitBatch(batch);
+            this.pending.decrementAndGet();
+            this.batches.remove(batchKey, batch);
+            this.processBatch(batch);
+        }
+        else {
+            this.pending.decrementAndGet();
+            LockSupport.unpark(batch.leader);
+        }
+        try {
+            return result.get();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RequestException(503, "The request has been interrupted");
+        }
+        catch(ExecutionException ex) {
+            throw new RequestException(400, ex.getCause().getMessage());
+        }
+    }
+
+    /**
+     * This method waits for the other requests of a micro-batch and closes
+     * it. It waits at most the batch window, and not at all when no other
+     * request is about to join a micro-batch, as for a request alone: the
+     * requests which join the batch wake its leader up.
+     * @param batch Batch: The micro-batch, whose leader is this thread
+     */
+    private void awaitBatch(Batch batch) {
+        long deadline = System.nanoTime() + this.batchWindow;
+        while(true)
+        {
+            synchronized(batch) {
+                long remaining = deadline - System.nanoTime();
+                if(batch.closed || remaining <= 0 || this.pending.get() <= batch.texts.size()) {
+                    batch.closed = true;
+                    return;
+                }
+            }
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+
+    /**
+     * This method processes the texts of a closed micro-batch. The texts of
+     * the engines with block size 1 are copied in one array and encrypted or
+     * decrypted in place.
+     * @param batch Batch: The micro-batch, closed
+     */
+    private void processBatch(Batch batch) {
+        int size = batch.texts.size();
+        this.batchCount.incrementAndGet();
+        this.batchedRequests.addAndGet(size);
+        if(batch.engine.getBlockSize() != 1) {
+            for(int i = 0; i < size; i++)
+            {
+                try {
+                    String text = batch.texts.get(i);
+                    batch.results.get(i).complete(batch.encryption ? batch.engine.encryptText(text) : batch.engine.decryptText(text));
+                }
+                catch(RuntimeException ex) {
+                    batch.results.get(i).completeExceptionally(ex);
+                }
+            }
+            return;
+        }
+        int total = 0;
+        for(String text : batch.texts)
+        {
+            total += text.length();
+        }
+        char[] chars = this.texts.acquire(total);
+        for(int i = 0, offset = 0; i < size; i++)
+        {
+            String text = batch.texts.get(i);
+            text.getChars(0, text.length(), chars, offset);
+            offset += text.length();
+        }
+        for(int i = 0, offset = 0; i < size; i++)
+        {
+            int length = batch.texts.get(i).length();
+            try {
+                if(batch.encryption) {
+                    batch.engine.encrypt(chars, offset, chars, offset, length, 0);
+                }
+                else {
+                    batch.engine.decrypt(chars, offset, chars, offset, length, 0);
+                }
+                batch.results.get(i).complete(new String(chars, offset, length));
+            }
+            catch(RuntimeException ex) {
+                batch.results.get(i).completeExceptionally(ex);
+            }
+            offset += length;
+        }
+        this.texts.release(chars);
+    }
+
+    /**
+     * This method encrypts or decrypts a text alone. The texts of the engines
+     * with block size 1 are encrypted or decrypted in place in a scratch
+     * array, so only the result is allocated.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param text String: The text
+     * @return String: The encrypted or decrypted text
+     * @throws IllegalArgumentException If the text is not valid
+     */
+    private String apply(CipherEngine engine, boolean encryption, String text) {
+        if(engine.getBlockSize() != 1 || text.isEmpty()) {
+            return encryption ? engine.encryptText(text) : engine.decryptText(text);
+        }
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        int length = text.length();
+        char[] chars = this.texts.acquire(length);
+        try {
+            text.getChars(0, length, chars, 0);
+            if(encryption) {
+                engine.encrypt(chars, 0, chars, 0, length, 0);
+            }
+            else {
+                engine.decrypt(chars, 0, chars, 0, length, 0);
+            }
+            return CipherEvents.endOperation(event, engine.getClass(), encryption, text, new String(chars, 0, length));
+        }
+        finally {
+            this.texts.release(chars);
+        }
+    }
+
+    /**
+     * This method reads and decodes a request body into a scratch array,
+     * which grows by doubling.
+     * @param input InputStream: The body
+     * @param charset Charset: The charset of the text bodies
+     * @param binary boolean: True for a body of UTF-16BE code units
+     * @return String: The text
+     * @throws IOException If the body can not be read
+     * @throws RequestException If the body is too large or not valid
+     */
+    private String readText(InputStream input, Charset charset, boolean binary) throws IOException, RequestException {
+        byte[] body = this.bodies.acquire(CipherServer.BODY_BUFFER_SIZE);
+        try {
+            int size = 0, read;
+            while((read = input.read(body, size, body.length - size)) != -1)
+            {
+                size += read;
+                if(size > CipherServer.MAX_BODY_SIZE) {
+                    throw new RequestException(413, "The body is larger than " + CipherServer.MAX_BODY_SIZE + " bytes");
+                }
+                if(size == body.length) {
+                    byte[] larger = this.bodies.acquire(2 * body.length);
+                    System.arraycopy(body, 0, larger, 0, size);
+                    this.bodies.release(body);
+                    body = larger;
+                }
+            }
+            return CipherServer.decode(body, size, charset, binary);
+        }
+        finally {
+            this.bodies.release(body);
+        }
+    }
+
+    /**
+     * This method returns the compiled key from the registry, compiling it if
+     * it is not there. The pads of the Vernam Ciphers are not cached.
+     * @param type CipherType: The cipher
+     * @param key String: The key
+     * @return CipherEngine: The compiled cipher
+     * @throws RequestException If the key is not valid
+     */
+    private CipherEngine engineFor(CipherType type, String key) throws RequestException {
+        try {
+            return this.registry.get(type, key);
+        }
+        catch(IllegalCipherKeyException ex) {
+            throw new RequestException(400, ex.getMessage());
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the cipher of the parameter cipher of a query.
+     * @param query String: The raw query of the request
+     * @return CipherType: The cipher
+     * @throws RequestException If the parameter is missing or not valid
+     */
+    private static CipherType parseType(String query) throws RequestException {
+        if(query != null) {
+            for(String parameter : query.split("&"))
+            {
+                if(parameter.startsWith("cipher=")) {
+                    try {
+                        return CipherType.fromName(URLDecoder.decode(parameter.substring(7), StandardCharsets.UTF_8));
+                    }
+                    catch(IllegalArgumentException ex) {
+                        throw new RequestException(400, ex.getMessage());
+                    }
+                }
+            }
+        }
+        throw new RequestException(400, "The parameter cipher is missing");
+    }
+
+    /**
+     * This method returns the charset of a Content-Type.
+     * @param contentType String: The Content-Type, it can be null
+     * @return Charset: The charset, UTF-8 if it is not given
+     * @throws RequestException If the charset is not supported
+     */
+    private static Charset parseCharset(String contentType) throws RequestException {
+        if(contentType != null) {
+            for(String parameter : contentType.split(";"))
+            {
+                parameter = parameter.trim();
+                if(parameter.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                    try {
+                        return Charset.forName(parameter.substring(8).replace("\"", ""));
+                    }
+                    catch(IllegalArgumentException ex) {
+                        throw new RequestException(400, "Unsupported charset " + parameter.substring(8));
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * This method decodes a body. The binary bodies are UTF-16BE code units
+     * which are not checked.
+     * @param bytes byte[]: The body
+     * @param length int: The number of bytes of the body
+     * @param charset Charset: The charset of the text bodies
+     * @param binary boolean: True for a body of UTF-16BE code units
+     * @return String: The text
+     * @throws RequestException If the body is not valid in the charset
+     */
+    private static String decode(byte[] bytes, int length, Charset charset, boolean binary) throws RequestException {
+        if(binary) {
+            if(length % 2 != 0) {
+                throw new RequestException(400, "The binary body must have an even length");
+            }
+            return ByteBuffer.wrap(bytes, 0, length).asCharBuffer().toString();
+        }
+        try {
+            return charset.newDecoder().decode(ByteBuffer.wrap(bytes, 0, length)).toString();
+        }
+        catch(CharacterCodingException ex) {
+            throw new RequestException(400, "The body is not valid " + charset.name());
+        }
+    }
+
+    /**
+     * This method encodes a response body. The binary bodies are UTF-16BE code
+     * units which are not checked.
+     * @param text String: The text
+     * @param charset Charset: The charset of the text bodies
+     * @param binary boolean: True for a body of UTF-16BE code units
+     * @return byte[]: The body
+     * @throws RequestException If the text can not be encoded in the charset
+     */
+    private static byte[] encode(String text, Charset charset, boolean binary) throws RequestException {
+        if(binary) {
+            ByteBuffer bytes = ByteBuffer.allocate(2 * text.length());
+            bytes.asCharBuffer().put(text);
+            return bytes.array();
+        }
+        try {
+            ByteBuffer bytes = charset.newEncoder().encode(CharBuffer.wrap(text));
+            byte[] body = new byte[bytes.remaining()];
+            bytes.get(body);
+            return body;
+        }
+        catch(CharacterCodingException ex) {
+            throw new RequestException(422, "The result can not be encoded in " + charset.name() + ", use " + CipherServer.BINARY_CONTENT_TYPE);
+        }
+    }
+
+    /**
+     * This method decodes a key of the header X-Cipher-Key.
+     * @param key String: The value of the header
+     * @param binary boolean: True for Base64 UTF-16BE code units, false for
+     * percent-encoded UTF-8
+     * @return String: The key
+     * @throws RequestException If the key is not encoded correctly
+     */
+    private static String decodeKey(String key, boolean binary) throws RequestException {
+        try {
+            if(binary) {
+                byte[] bytes = Base64.getDecoder().decode(key);
+                return CipherServer.decode(bytes, bytes.length, StandardCharsets.UTF_16BE, true);
+            }
+            return URLDecoder.decode(key, StandardCharsets.UTF_8);
+        }
+        catch(IllegalArgumentException ex) {
+            throw new RequestException(400, "The key is not encoded correctly");
+        }
+    }
+
+    /**
+     * This method encodes a key for the header X-Cipher-Key.
+     * @param key String: The key
+     * @param binary boolean: True for Base64 UTF-16BE code units, false for
+     * percent-encoded UTF-8
+     * @return String: The value of the header
+     * @throws RequestException If the key can not be encoded in UTF-8
+     */
+    private static String encodeKey(String key, boolean binary) throws RequestException {
+        if(binary) {
+            return Base64.getEncoder().encodeToString(CipherServer.encode(key, StandardCharsets.UTF_16BE, true));
+        }
+        CipherServer.encode(key, StandardCharsets.UTF_8, false);
+        return URLEncoder.encode(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method sends an error as a plain text response.
+     * @param exchange HttpExchange: The request and its response
+     * @param status int: The status of the response
+     * @param message String: The text of the response
+     * @throws IOException If the response can not be sent
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try(OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+package cryptography;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class of the client which measures the latency and the throughput of a
+ * CipherServer. Every client sends its requests one after the other, so the
+ * number of clients is the number of requests in flight. The main method
+ * starts a server on the loopback and measures it.
+ */
+public final class CipherServerBenchmark {
+
+    //NESTED CLASSES
+
+    /**
+     * The measures of a run of the benchmark.
+     */
+    public static final class Result {
+
+        /**
+         * The latency of every request which succeeded, in nanoseconds,
+         * sorted.
+         */
+        private final long[] latencies;
+
+        /**
+         * The number of requests which failed.
+         */
+        private final int errors;
+
+        /**
+         * The time of the whole run, in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Constructor of the class.
+         * @param latencies long[]: The latencies of the requests, sorted
+         * @param errors int: The number of failed requests
+         * @param elapsed long: The time of the run, in nanoseconds
+         */
+        Result(long[] latencies, int errors, long elapsed) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * It returns the number of requests which succeeded.
+         * @return int: The requests which succeeded
+         */
+        public int getRequests() {
+            return this.latencies.length;
+        }
+
+        /**
+         * Getter method of the field errors.
+         * @return int: the class field errors
+         */
+        public int getErrors() {
+            return this.errors;
+        }
+
+        /**
+         * Getter method of the field elapsed.
+         * @return long: the class field elapsed, in nanoseconds
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * It returns the requests which succeeded per second.
+         * @return double: The throughput
+         */
+        public double getRequestsPerSecond() {
+            return (this.elapsed == 0) ? 0 : this.latencies.length * 1e9 / this.elapsed;
+        }
+
+        /**
+         * It returns a percentile of the latencies.
+         * @param percentile double: The percentile, between 0 and 100
+         * @return long: The latency, in nanoseconds, 0 if no request succeeded
+         */
+        public long getLatency(double percentile) {
+            if(this.latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * this.latencies.length) - 1;
+            return this.latencies[Math.max(0, Math.min(index, this.latencies.length - 1))];
+        }
+
+        /**
+         * It returns the measures in a line.
+         * @return String: The throughput and the latencies
+         */
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors, %.0f requests/s, latency p50 %.1f us, p99 %.1f us, max %.1f us",
+                    this.getRequests(), this.errors, this.getRequestsPerSecond(),
+                    this.getLatency(50) / 1e3, this.getLatency(99) / 1e3, this.getLatency(100) / 1e3);
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private CipherServerBenchmark() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It sends requests to a server and measures them.
+     * @param server URI: The address of the server, for example
+     * http://127.0.0.1:8080
+     * @param type CipherType: The cipher of the requests
+     * @param key String: The key of the requests, null for the Vernam Ciphers
+     * @param encryption boolean: True for /encrypt, false for /decrypt
+     * @param text String: The body of the requests
+     * @param clients int: The number of clients sending at the same time. It
+     * must be positive
+     * @param requests int: The number of requests sent by all the clients. It
+     * must be positive
+     * @return Result: The measures
+     * @throws IOException If the benchmark is interrupted
+     */
+    public static Result run(URI server, CipherType type, String key, boolean encryption, String text, int clients, int requests) throws IOException {
+        if(clients < 1 || requests < 1) {
+            throw new IllegalArgumentException("The clients and the requests must be positive");
+        }
+        URI uri = server.resolve((encryption ? "/encrypt" : "/decrypt") + "?cipher=" + type.getName());
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "text/plain; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(text, StandardCharsets.UTF_8));
+        if(key != null) {
+            builder.header(CipherServer.KEY_HEADER, URLEncoder.encode(key, StandardCharsets.UTF_8));
+        }
+        HttpRequest request = builder.build();
+        ExecutorService executor = VirtualThreads.newExecutor("cipher-server-benchmark");
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        long start = System.nanoTime();
+        for(int i = 0; i < clients; i++)
+        {
+            threads[i] = new Thread(() -> {
+                while(next.getAndIncrement() < requests)
+                {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                        if(response.statusCode() == 200) {
+                            latencies[succeeded.getAndIncrement()] = System.nanoTime() - sent;
+                        }
+                        else {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    catch(IOException ex) {
+                        errors.incrementAndGet();
+                    }
+                    catch(InterruptedException ex) {
+                        return;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            for(Thread thread : threads)
+            {
+                thread.join();
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The benchmark has been interrupted", ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+        long[] measured = Arrays.copyOf(latencies, succeeded.get());
+        Arrays.sort(measured);
+        return new Result(measured, (int) errors.get(), elapsed);
+    }
+
+    /**
+     * It starts a server on a free port of the loopback and measures it with
+     * small Vigenere requests, first without and then with micro-batches.
+     * @param args String[]: The number of clients, the number of requests and
+     * the length of the texts, by default 64, 50000 and 256
+     * @throws IOException If the server can not be started
+     */
+    public static void main(String[] args) throws IOException {
+        int clients = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+        int requests = (args.length > 1) ? Integer.parseInt(args[1]) : 50000;
+        int length = (args.length > 2) ? Integer.parseInt(args[2]) : 256;
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder text = new StringBuilder(length);
+        for(int i = 0; i < length; i++)
+        {
+            text.append((random.nextInt(6) == 0) ? ' ' : (char) ('a' + random.nextInt(26)));
+        }
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        for(long window : new long[]{ 0, CipherServer.DEFAULT_BATCH_WINDOW })
+        {
+            CipherServer server = new CipherServer(address, CipherServer.DEFAULT_CACHE_SIZE, window, CipherServer.DEFAULT_BATCH_SIZE);
+            server.start();
+            try {
+                URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+                CipherServerBenchmark.run(uri, CipherType.VIGENERE, "lemon", true, text.toString(), clients, Math.max(1, requests / 10));
+                Result result = CipherServerBenchmark.run(uri, CipherType.VIGENERE, "lemon", true, text.toString(), clients, requests);
+                System.out.println("batch window " + window / 1000 + " us: " + result);
+                System.out.println("  " + server.getBatches() + " batches of " + server.getBatchedRequests() + " requests");
+                System.out.println("  " + server.getTexts().getHits() + " scratch arrays reused, " + server.getTexts().getMisses() + " allocated");
+            }
+            finally {
+                server.stop(0);
+            }
+        }
+    }
+
+}
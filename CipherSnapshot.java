@@ -0,0 +1,543 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The class of a file of compiled keys, written once and mapped in memory by
+ * the programs which use them, so that they do not compile them again at every
+ * start. The file contains, for every key, the tables computed by the
+ * compilation: the shifts of the Vigenere Ciphers, the complete key of the
+ * Substitution Cipher, the table of the Playfair Cipher, the number of the
+ * Caesar and Transposition Ciphers. Opening the file only checks its header:
+ * a key is found with a hash table written in the file and its CipherEngine is
+ * created from the tables the first time it is requested, then reused. The
+ * one-time pads of the Vernam Ciphers can not be written.
+ * <p>
+ * The file starts with a header of HEADER_SIZE bytes: the magic number
+ * "CSNP", the version, the number of keys and the number of slots of the hash
+ * table. Then there are the slots, an int each, the index of a key plus 1 or
+ * 0 if empty, the keys, ENTRY_SIZE bytes each, and their data: the characters
+ * of the key, two bytes each, followed by its tables. The file can have at
+ * most Integer.MAX_VALUE bytes. An instance can be shared between threads.
+ */
+public final class CipherSnapshot {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The bytes of the header of the file.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * The bytes of the description of a key.
+     */
+    public static final int ENTRY_SIZE = 20;
+
+    /**
+     * The magic number at the start of the file, "CSNP".
+     */
+    private static final int MAGIC = 0x43534E50;
+
+    /**
+     * The version of the format of the file.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The index in the description of a key of its cipher.
+     */
+    private static final int TYPE_INDEX = 4;
+
+    /**
+     * The index in the description of a key of the offset of its data.
+     */
+    private static final int DATA_INDEX = 8;
+
+    /**
+     * The index in the description of a key of its length.
+     */
+    private static final int KEY_LENGTH_INDEX = 12;
+
+    /**
+     * The index in the description of a key of the length of its tables.
+     */
+    private static final int STATE_LENGTH_INDEX = 16;
+
+    /**
+     * The ciphers, by ordinal.
+     */
+    private static final CipherType[] TYPES = CipherType.values();
+
+    //FIELDS
+
+    /**
+     * The mapped file, read only with absolute methods.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of keys.
+     */
+    private final int size;
+
+    /**
+     * The number of slots of the hash table minus 1.
+     */
+    private final int mask;
+
+    /**
+     * The offset of the first key description.
+     */
+    private final int entries;
+
+    /**
+     * The compiled ciphers already created, by index of the key.
+     */
+    private final AtomicReferenceArray<CipherEngine> engines;
+
+    /**
+     * The number of compiled ciphers created.
+     */
+    private final AtomicInteger materialized = new AtomicInteger();
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param buffer ByteBuffer: The mapped file, with a valid header
+     */
+    private CipherSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        int slots = buffer.getInt(12);
+        this.mask = slots - 1;
+        this.entries = CipherSnapshot.HEADER_SIZE + slots * 4;
+        this.engines = new AtomicReferenceArray<>(this.size);
+    }
+
+    //GETTERS
+
+    /**
+     * It returns the number of keys of the file.
+     * @return int: The number of keys
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * It returns the number of keys whose compiled cipher has been created.
+     * @return int: The number of keys used
+     */
+    public int getMaterialized() {
+        return this.materialized.get();
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the compiled cipher with the given key, creating it from the
+     * file the first time. The key must be written as it was given to
+     * write(Path, Map).
+     * @param type CipherType: The cipher
+     * @param key String: The key
+     * @return CipherEngine: The compiled cipher, null if the key is not in
+     * the file
+     * @throws IllegalStateException If the data of the key or the hash table
+     * are not valid, also if the hash table has no empty slot
+     */
+    public CipherEngine get(CipherType type, String key) {
+        if(type == null || key == null) {
+            return null;
+        }
+        int hash = CipherSnapshot.hash(type, key);
+        int slot = hash & this.mask;
+        for(int probe = 0; probe <= this.mask; probe++)
+        {
+            int index = this.buffer.getInt(CipherSnapshot.HEADER_SIZE + slot * 4) - 1;
+            if(index < 0) {
+                return null;
+            }
+            if(index >= this.size) {
+                throw new IllegalStateException("The slot " + slot + " of the snapshot is not valid");
+            }
+            if(this.matches(index, hash, type, key)) {
+                return this.get(index);
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        throw new IllegalStateException("The hash table of the snapshot has no empty slot");
+    }
+
+    /**
+     * It returns the compiled cipher of the key with the given index,
+     * creating it from the file the first time.
+     * @param index int: The index of the key, from 0 to size() - 1
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalStateException If the data of the key are not valid
+     */
+    public CipherEngine get(int index) {
+        CipherEngine engine = this.engines.get(index);
+        if(engine == null) {
+            engine = this.restore(index);
+            if(this.engines.compareAndSet(index, null, engine)) {
+                this.materialized.incrementAndGet();
+            }
+            else {
+                engine = this.engines.get(index);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * It returns the cipher of the key with the given index.
+     * @param index int: The index of the key, from 0 to size() - 1
+     * @return CipherType: The cipher
+     * @throws IllegalStateException If the cipher is not valid
+     */
+    public CipherType getType(int index) {
+        int ordinal = this.buffer.get(this.entry(index) + CipherSnapshot.TYPE_INDEX);
+        if(ordinal < 0 || ordinal >= CipherSnapshot.TYPES.length) {
+            throw new IllegalStateException("The cipher of the key " + index + " of the snapshot is not valid");
+        }
+        return CipherSnapshot.TYPES[ordinal];
+    }
+
+    /**
+     * It returns the key with the given index.
+     * @param index int: The index of the key, from 0 to size() - 1
+     * @return String: The key
+     * @throws IllegalStateException If the data of the key are not valid
+     */
+    public String getKey(int index) {
+        int entry = this.entry(index);
+        int data = this.data(index);
+        char[] key = new char[this.buffer.getInt(entry + CipherSnapshot.KEY_LENGTH_INDEX)];
+        for(int i = 0; i < key.length; i++)
+        {
+            key[i] = this.buffer.getChar(data + i * 2);
+        }
+        return new String(key);
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method returns the offset of the description of a key.
+     * @param index int: The index of the key
+     * @return int: The offset
+     * @throws IndexOutOfBoundsException If there is no key with the index
+     */
+    private int entry(int index) {
+        if(index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("The snapshot has no key " + index);
+        }
+        return this.entries + index * CipherSnapshot.ENTRY_SIZE;
+    }
+
+    /**
+     * This method returns the offset of the data of a key, checking that they
+     * are inside the file.
+     * @param index int: The index of the key
+     * @return int: The offset of the first character of the key
+     * @throws IllegalStateException If the data are not inside the file
+     */
+    private int data(int index) {
+        int entry = this.entry(index);
+        int data = this.buffer.getInt(entry + CipherSnapshot.DATA_INDEX);
+        int keyLength = this.buffer.getInt(entry + CipherSnapshot.KEY_LENGTH_INDEX);
+        int stateLength = this.buffer.getInt(entry + CipherSnapshot.STATE_LENGTH_INDEX);
+        if(data < 0 || keyLength < 0 || stateLength < 0 || data + keyLength * 2L + stateLength > this.buffer.limit()) {
+            throw new IllegalStateException("The data of the key " + index + " of the snapshot are not valid");
+        }
+        return data;
+    }
+
+    /**
+     * This method checks if the key with the given index is the given one.
+     * @param index int: The index of the key
+     * @param hash int: The hash of the key
+     * @param type CipherType: The cipher
+     * @param key String: The key
+     * @return boolean: True if it is the key, false otherwise
+     */
+    private boolean matches(int index, int hash, CipherType type, String key) {
+        int entry = this.entry(index);
+        if(this.buffer.getInt(entry) != hash || this.buffer.get(entry + CipherSnapshot.TYPE_INDEX) != type.ordinal()
+                || this.buffer.getInt(entry + CipherSnapshot.KEY_LENGTH_INDEX) != key.length()) {
+            return false;
+        }
+        int data = this.data(index), length = key.length();
+        for(int i = 0; i < length; i++)
+        {
+            if(this.buffer.getChar(data + i * 2) != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method creates the compiled cipher of a key from its tables.
+     * @param index int: The index of the key
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalStateException If the tables are not valid
+     */
+    private CipherEngine restore(int index) {
+        int entry = this.entry(index);
+        int state = this.data(index) + this.buffer.getInt(entry + CipherSnapshot.KEY_LENGTH_INDEX) * 2;
+        int length = this.buffer.getInt(entry + CipherSnapshot.STATE_LENGTH_INDEX);
+        CipherType type = this.getType(index);
+        if(length != CipherSnapshot.stateLength(type, length)) {
+            throw new IllegalStateException("The tables of the key " + index + " of the snapshot are not valid");
+        }
+        try {
+            switch(type) {
+                case CAESAR:
+                    return CaesarCipher.compile(this.buffer.get(state));
+                case UNICODE_CAESAR:
+                    return UnicodeCaesarCipher.compile(this.buffer.getShort(state));
+                case TRANSPOSITION:
+                    return TranspositionCipher.compile(this.buffer.getInt(state));
+                case VIGENERE:
+                    byte[] shifts = new byte[length];
+                    this.buffer.get(state, shifts);
+                    return VigenereCipher.restore(shifts);
+                case SUBSTITUTION:
+                    byte[] letters = new byte[length];
+                    this.buffer.get(state, letters);
+                    String key = new String(letters, StandardCharsets.ISO_8859_1);
+                    return SubstitutionCipher.restore(key + key.toLowerCase(Locale.ROOT));
+                case PLAYFAIR:
+                    byte[] table = new byte[25];
+                    byte[] positions = new byte[26];
+                    this.buffer.get(state, table);
+                    this.buffer.get(state + table.length, positions);
+                    return PlayfairCipher.restore(table, positions);
+                case UNICODE_VIGENERE:
+                    int[] characters = new int[length / 2];
+                    for(int i = 0; i < characters.length; i++)
+                    {
+                        characters[i] = this.buffer.getChar(state + i * 2);
+                    }
+                    return UnicodeVigenereCipher.restore(characters);
+                default:
+                    throw new IllegalStateException("The snapshot contains a one-time pad");
+            }
+        }
+        catch(IllegalCipherKeyException ex) {
+            throw new IllegalStateException("The key " + index + " of the snapshot is not valid", ex);
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It compiles the given keys and writes their tables in a new file,
+     * replacing it if it exists. The keys written twice are written once.
+     * @param file Path: The file
+     * @param keys Map(CipherType, Collection(String)): The keys of every
+     * cipher, as given to CipherType.compile(String)
+     * @return int: The number of keys written
+     * @throws IllegalCipherKeyException If a key is not valid
+     * @throws IllegalArgumentException If a cipher uses one-time pads or the
+     * file would be bigger than Integer.MAX_VALUE bytes
+     * @throws IOException If the file can not be written
+     */
+    public static int write(Path file, Map<CipherType, ? extends Collection<String>> keys) throws IllegalCipherKeyException, IOException {
+        List<CipherType> types = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<byte[]> states = new ArrayList<>();
+        long size = CipherSnapshot.HEADER_SIZE;
+        for(Map.Entry<CipherType, ? extends Collection<String>> entry : keys.entrySet())
+        {
+            CipherType type = entry.getKey();
+            if(type.isOneTimePad()) {
+                throw new IllegalArgumentException("The keys of the " + type.getName() + " cipher are one-time pads");
+            }
+            for(String key : new LinkedHashSet<>(entry.getValue()))
+            {
+                byte[] state = CipherSnapshot.state(type, key);
+                types.add(type);
+                names.add(key);
+                states.add(state);
+                size += CipherSnapshot.ENTRY_SIZE + key.length() * 2L + state.length;
+            }
+        }
+        int count = names.size();
+        int slots = Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1;
+        size += slots * 4L;
+        if(size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The snapshot would have " + size + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(CipherSnapshot.MAGIC).putInt(CipherSnapshot.VERSION).putInt(count).putInt(slots);
+        int entries = CipherSnapshot.HEADER_SIZE + slots * 4;
+        int data = entries + count * CipherSnapshot.ENTRY_SIZE;
+        for(int index = 0; index < count; index++)
+        {
+            CipherType type = types.get(index);
+            String key = names.get(index);
+            byte[] state = states.get(index);
+            int hash = CipherSnapshot.hash(type, key);
+            int slot = hash & (slots - 1);
+            while(buffer.getInt(CipherSnapshot.HEADER_SIZE + slot * 4) != 0)
+            {
+                slot = (slot + 1) & (slots - 1);
+            }
+            buffer.putInt(CipherSnapshot.HEADER_SIZE + slot * 4, index + 1);
+            int entry = entries + index * CipherSnapshot.ENTRY_SIZE;
+            buffer.putInt(entry, hash);
+            buffer.put(entry + CipherSnapshot.TYPE_INDEX, (byte) type.ordinal());
+            buffer.putInt(entry + CipherSnapshot.DATA_INDEX, data);
+            buffer.putInt(entry + CipherSnapshot.KEY_LENGTH_INDEX, key.length());
+            buffer.putInt(entry + CipherSnapshot.STATE_LENGTH_INDEX, state.length);
+            for(int i = 0; i < key.length(); i++)
+            {
+                buffer.putChar(data + i * 2, key.charAt(i));
+            }
+            data += key.length() * 2;
+            buffer.put(data, state);
+            data += state.length;
+        }
+        buffer.clear();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        return count;
+    }
+
+    /**
+     * It maps a file written by write(Path, Map). Only the header is read.
+     * @param file Path: The file
+     * @return CipherSnapshot: The keys of the file
+     * @throws IOException If the file can not be read or is not valid
+     */
+    public static CipherSnapshot open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < CipherSnapshot.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("The file is not a snapshot: " + size + " bytes");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(buffer.getInt(0) != CipherSnapshot.MAGIC || buffer.getInt(4) != CipherSnapshot.VERSION) {
+                throw new IOException("The file is not a snapshot of version " + CipherSnapshot.VERSION);
+            }
+            int count = buffer.getInt(8);
+            int slots = buffer.getInt(12);
+            if(count < 0 || slots <= count || Integer.bitCount(slots) != 1
+                    || CipherSnapshot.HEADER_SIZE + slots * 4L + count * (long) CipherSnapshot.ENTRY_SIZE > size) {
+                throw new IOException("The header of the snapshot is not valid");
+            }
+            return new CipherSnapshot(buffer);
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the hash of a key, which is also written in the
+     * file, so it must not change between versions of Java.
+     * @param type CipherType: The cipher
+     * @param key String: The key
+     * @return int: The hash
+     */
+    private static int hash(CipherType type, String key) {
+        int hash = (key.hashCode() * 31 + type.ordinal()) * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * This method compiles a key and returns its tables.
+     * @param type CipherType: The cipher, not a one-time pad
+     * @param key String: The key
+     * @return byte[]: The tables
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    private static byte[] state(CipherType type, String key) throws IllegalCipherKeyException {
+        type.compile(key);
+        switch(type) {
+            case CAESAR:
+                return new byte[]{ Byte.parseByte(CipherRegistry.canonicalKey(type, key)) };
+            case UNICODE_CAESAR:
+                return ByteBuffer.allocate(2).putShort(Short.parseShort(key.trim())).array();
+            case TRANSPOSITION:
+                return ByteBuffer.allocate(4).putInt(Integer.parseInt(key.trim())).array();
+            case VIGENERE:
+                byte[] shifts = new byte[key.length()];
+                VigenereCipher.fillShifts(key, shifts);
+                return shifts;
+            case SUBSTITUTION:
+                return SubstitutionCipher.completeKey(key).substring(0, 26).getBytes(StandardCharsets.ISO_8859_1);
+            case PLAYFAIR:
+                byte[] state = new byte[25 + 26];
+                byte[] positions = new byte[26];
+                PlayfairCipher.fillTable(key, state, positions);
+                System.arraycopy(positions, 0, state, 25, positions.length);
+                return state;
+            default:
+                return CipherSnapshot.unicodeShifts(key);
+        }
+    }
+
+    /**
+     * This method returns the shifts of a key of the Unicode Vigenere Cipher,
+     * every character minus 'a', two bytes each.
+     * @param key String: The key
+     * @return byte[]: The shifts
+     */
+    private static byte[] unicodeShifts(String key) {
+        ByteBuffer shifts = ByteBuffer.allocate(key.length() * 2);
+        for(int i = 0; i < key.length(); i++)
+        {
+            shifts.putChar((char) (key.charAt(i) - 'a'));
+        }
+        return shifts.array();
+    }
+
+    /**
+     * This method returns the length of the tables of a cipher.
+     * @param type CipherType: The cipher
+     * @param length int: The length written in the file, returned for the
+     * ciphers whose tables depend on the key
+     * @return int: The length of the tables
+     */
+    private static int stateLength(CipherType type, int length) {
+        switch(type) {
+            case CAESAR:
+                return 1;
+            case UNICODE_CAESAR:
+                return 2;
+            case TRANSPOSITION:
+                return 4;
+            case SUBSTITUTION:
+                return 26;
+            case PLAYFAIR:
+                return 25 + 26;
+            case UNICODE_VIGENERE:
+                return (length > 0 && length % 2 == 0) ? length : -1;
+            default:
+                return (length > 0) ? length : -1;
+        }
+    }
+
+}
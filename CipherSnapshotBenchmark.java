@@ -0,0 +1,339 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * The class which compares the time needed to prepare many keys by compiling
+ * them and by opening a CipherSnapshot of them. Both ways prepare every key
+ * and then encrypt a short text with it, so the keys of the snapshot are
+ * really created. The main method writes a snapshot of Vigenere,
+ * Substitution and Playfair keys in a temporary file and measures both ways
+ * at the start of a JVM, every way in a new JVM and in alternate order, then
+ * several times in the same JVM. The first round in the same JVM favours the
+ * compilation, whose code has just run for every key to write the snapshot.
+ */
+public final class CipherSnapshotBenchmark {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The text encrypted with every key.
+     */
+    private static final char[] TEXT = "AttackAtDawn".toCharArray();
+
+    /**
+     * The first argument which makes the main method measure a way in the
+     * JVM just started, for measureCold(boolean, Path, Path).
+     */
+    private static final String COLD = "--cold";
+
+    //NESTED CLASSES
+
+    /**
+     * The measures of a round of the benchmark.
+     */
+    public static final class Result {
+
+        /**
+         * The number of keys.
+         */
+        private final int keys;
+
+        /**
+         * The time to compile every key, in nanoseconds.
+         */
+        private final long compilation;
+
+        /**
+         * The time to open the snapshot, in nanoseconds.
+         */
+        private final long opening;
+
+        /**
+         * The time to open the snapshot and create every key, in
+         * nanoseconds.
+         */
+        private final long snapshot;
+
+        /**
+         * Constructor of the class.
+         * @param keys int: The number of keys
+         * @param compilation long: The time to compile every key
+         * @param opening long: The time to open the snapshot
+         * @param snapshot long: The time to open the snapshot and create
+         * every key
+         */
+        Result(int keys, long compilation, long opening, long snapshot) {
+            this.keys = keys;
+            this.compilation = compilation;
+            this.opening = opening;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Getter method of the field keys.
+         * @return int: the class field keys
+         */
+        public int getKeys() {
+            return this.keys;
+        }
+
+        /**
+         * Getter method of the field compilation.
+         * @return long: the class field compilation, in nanoseconds
+         */
+        public long getCompilation() {
+            return this.compilation;
+        }
+
+        /**
+         * Getter method of the field opening.
+         * @return long: the class field opening, in nanoseconds
+         */
+        public long getOpening() {
+            return this.opening;
+        }
+
+        /**
+         * Getter method of the field snapshot.
+         * @return long: the class field snapshot, in nanoseconds
+         */
+        public long getSnapshot() {
+            return this.snapshot;
+        }
+
+        /**
+         * It returns the measures in a line.
+         * @return String: The times
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d keys: compile %.2f ms, open snapshot %.3f ms, open and create all %.2f ms (%.1fx)",
+                    this.keys, this.compilation / 1e6, this.opening / 1e6, this.snapshot / 1e6,
+                    (this.snapshot == 0) ? 0 : (double) this.compilation / this.snapshot);
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private CipherSnapshotBenchmark() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It measures a round of the benchmark.
+     * @param file Path: The snapshot of the keys, written by
+     * CipherSnapshot.write(Path, Map)
+     * @param keys Map(CipherType, List(String)): The keys of the snapshot
+     * @return Result: The measures
+     * @throws IllegalCipherKeyException If a key is not valid
+     * @throws IOException If the snapshot can not be read
+     */
+    public static Result run(Path file, Map<CipherType, List<String>> keys) throws IllegalCipherKeyException, IOException {
+        char[] output = new char[CipherSnapshotBenchmark.TEXT.length];
+        int count = 0;
+        long start = System.nanoTime();
+        for(Map.Entry<CipherType, List<String>> entry : keys.entrySet())
+        {
+            for(String key : entry.getValue())
+            {
+                entry.getKey().compile(key).encrypt(CipherSnapshotBenchmark.TEXT, 0, output, 0, output.length, 0);
+                count++;
+            }
+        }
+        long compilation = System.nanoTime() - start;
+        start = System.nanoTime();
+        CipherSnapshot snapshot = CipherSnapshot.open(file);
+        long opening = System.nanoTime() - start;
+        for(Map.Entry<CipherType, List<String>> entry : keys.entrySet())
+        {
+            for(String key : entry.getValue())
+            {
+                snapshot.get(entry.getKey(), key).encrypt(CipherSnapshotBenchmark.TEXT, 0, output, 0, output.length, 0);
+            }
+        }
+        return new Result(count, compilation, opening, System.nanoTime() - start);
+    }
+
+    /**
+     * It measures a way at the start of a new JVM, with the class path of
+     * this one: it reads the keys, then it compiles them or opens the
+     * snapshot and creates them, and encrypts the text with every one.
+     * @param snapshot boolean: True to use the snapshot, false to compile
+     * the keys
+     * @param file Path: The snapshot of the keys
+     * @param keys Path: The keys of the snapshot, written by
+     * writeKeys(Path, Map)
+     * @return long: The time, in nanoseconds, without the start of the JVM
+     * and the reading of the keys
+     * @throws IOException If the JVM can not be started or fails
+     * @throws InterruptedException If the thread is interrupted while it
+     * waits for the JVM
+     */
+    public static long measureCold(boolean snapshot, Path file, Path keys) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), CipherSnapshotBenchmark.class.getName(),
+                CipherSnapshotBenchmark.COLD, snapshot ? "snapshot" : "compile", file.toString(), keys.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim();
+        if(process.waitFor() != 0) {
+            throw new IOException("The JVM of the benchmark failed with " + process.exitValue());
+        }
+        try {
+            return Long.parseLong(output);
+        }
+        catch(NumberFormatException ex) {
+            throw new IOException("The JVM of the benchmark wrote " + output, ex);
+        }
+    }
+
+    /**
+     * It runs the benchmark. The arguments are the number of keys of every
+     * cipher, the number of rounds in a new JVM and the number of rounds in
+     * this JVM.
+     * @param args String[]: The optional arguments
+     * @throws IllegalCipherKeyException If a key is not valid
+     * @throws IOException If the snapshot can not be written or a JVM fails
+     * @throws InterruptedException If the thread is interrupted while it
+     * waits for a JVM
+     */
+    public static void main(String[] args) throws IllegalCipherKeyException, IOException, InterruptedException {
+        if(args.length == 4 && args[0].equals(CipherSnapshotBenchmark.COLD)) {
+            System.out.println(CipherSnapshotBenchmark.runCold(args[1].equals("snapshot"), Paths.get(args[2]), Paths.get(args[3])));
+            return;
+        }
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int coldRounds = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        SplittableRandom random = new SplittableRandom(42);
+        Map<CipherType, List<String>> keys = new EnumMap<>(CipherType.class);
+        keys.put(CipherType.VIGENERE, new ArrayList<>());
+        keys.put(CipherType.SUBSTITUTION, new ArrayList<>());
+        keys.put(CipherType.PLAYFAIR, new ArrayList<>());
+        for(int i = 0; i < count; i++)
+        {
+            keys.get(CipherType.VIGENERE).add(CipherSnapshotBenchmark.randomLetters(random, 8 + random.nextInt(25)));
+            keys.get(CipherType.SUBSTITUTION).add(SubstitutionCipher.generateRandomKey().substring(0, 26));
+            keys.get(CipherType.PLAYFAIR).add(CipherSnapshotBenchmark.randomLetters(random, 12));
+        }
+        Path file = Files.createTempFile("cipher", ".snapshot");
+        Path keyFile = Files.createTempFile("cipher", ".keys");
+        try {
+            CipherSnapshot.write(file, keys);
+            CipherSnapshotBenchmark.writeKeys(keyFile, keys);
+            System.out.println("snapshot of " + Files.size(file) + " bytes");
+            for(int round = 1; round <= coldRounds; round++)
+            {
+                boolean snapshotFirst = round % 2 == 0;
+                long first = CipherSnapshotBenchmark.measureCold(snapshotFirst, file, keyFile);
+                long second = CipherSnapshotBenchmark.measureCold(!snapshotFirst, file, keyFile);
+                long compilation = snapshotFirst ? second : first;
+                long snapshot = snapshotFirst ? first : second;
+                System.out.println(String.format(Locale.ROOT, "new JVM %d (%s first): %d keys: compile %.2f ms, open and create all %.2f ms (%.1fx)",
+                        round, snapshotFirst ? "snapshot" : "compile", 3 * count, compilation / 1e6, snapshot / 1e6,
+                        (snapshot == 0) ? 0 : (double) compilation / snapshot));
+            }
+            for(int round = 1; round <= rounds; round++)
+            {
+                System.out.println("same JVM " + round + ": " + CipherSnapshotBenchmark.run(file, keys));
+            }
+        }
+        finally {
+            Files.delete(file);
+            Files.delete(keyFile);
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method measures a way in the JVM just started, for
+     * measureCold(boolean, Path, Path).
+     * @param snapshot boolean: True to use the snapshot, false to compile
+     * the keys
+     * @param file Path: The snapshot of the keys
+     * @param keyFile Path: The keys of the snapshot
+     * @return long: The time, in nanoseconds, without the reading of the keys
+     * @throws IllegalCipherKeyException If a key is not valid
+     * @throws IOException If a file can not be read
+     */
+    private static long runCold(boolean snapshot, Path file, Path keyFile) throws IllegalCipherKeyException, IOException {
+        List<String> lines = Files.readAllLines(keyFile, StandardCharsets.US_ASCII);
+        CipherType[] types = new CipherType[lines.size()];
+        String[] keys = new String[lines.size()];
+        for(int i = 0; i < keys.length; i++)
+        {
+            String line = lines.get(i);
+            int tab = line.indexOf('\t');
+            types[i] = CipherType.valueOf(line.substring(0, tab));
+            keys[i] = line.substring(tab + 1);
+        }
+        char[] output = new char[CipherSnapshotBenchmark.TEXT.length];
+        long start = System.nanoTime();
+        if(snapshot) {
+            CipherSnapshot keySnapshot = CipherSnapshot.open(file);
+            for(int i = 0; i < keys.length; i++)
+            {
+                keySnapshot.get(types[i], keys[i]).encrypt(CipherSnapshotBenchmark.TEXT, 0, output, 0, output.length, 0);
+            }
+        }
+        else {
+            for(int i = 0; i < keys.length; i++)
+            {
+                types[i].compile(keys[i]).encrypt(CipherSnapshotBenchmark.TEXT, 0, output, 0, output.length, 0);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * This method writes the keys in a file, a line for every key with the
+     * name of its cipher and the key separated by a tab.
+     * @param file Path: The file
+     * @param keys Map(CipherType, List(String)): The keys
+     * @throws IOException If the file can not be written
+     */
+    private static void writeKeys(Path file, Map<CipherType, List<String>> keys) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(Map.Entry<CipherType, List<String>> entry : keys.entrySet())
+        {
+            for(String key : entry.getValue())
+            {
+                lines.add(entry.getKey().name() + "\t" + key);
+            }
+        }
+        Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * This method returns random lowercase letters.
+     * @param random SplittableRandom: The generator
+     * @param length int: The number of letters
+     * @return String: The letters
+     */
+    private static String randomLetters(SplittableRandom random, int length) {
+        char[] letters = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+}
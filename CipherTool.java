@@ -0,0 +1,496 @@
+package cryptography;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The command line tool which encrypts or decrypts the standard input into the
+ * standard output with a cipher of CipherType. The input is streamed in
+ * chunks, so the memory used does not depend on its length, except for the
+ * Transposition Cipher which needs the whole text. The ciphers which do not
+ * depend on the position can process the chunks in parallel.
+ * <pre>
+ * java cryptography.CipherTool --cipher vigenere --key lemon [--decrypt]
+ *     [--parallel [--threads N]] [--buffer-size N]
+ *     [--input-charset NAME] [--output-charset NAME] [--stats]
+ * </pre>
+ * It exits with 0 on success, 1 if the text can not be processed and 2 if the
+ * arguments are not valid.
+ */
+public final class CipherTool {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default size of a chunk, in characters.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The usage printed with --help or after a wrong argument.
+     */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java cryptography.CipherTool --cipher NAME --key KEY [options] < input > output",
+            "  --cipher NAME            caesar, vigenere, substitution, transposition, playfair,",
+            "                           vernam, unicode-caesar, unicode-vigenere, unicode-vernam",
+            "  --key KEY                the key, a number for caesar and transposition, the pad for vernam",
+            "  --encrypt | --decrypt    the direction, encrypt by default",
+            "  --parallel               process the chunks in parallel, only for the ciphers which",
+            "                           do not depend on the position (caesar, substitution, playfair,",
+            "                           unicode-caesar)",
+            "  --threads N              the threads of --parallel, the processors by default",
+            "  --buffer-size N          the characters of a chunk, " + CipherTool.DEFAULT_BUFFER_SIZE + " by default",
+            "  --input-charset NAME     the charset of the input, UTF-8 by default",
+            "  --output-charset NAME    the charset of the output, the input charset by default",
+            "  --stats                  print the characters processed and the MB/s on the standard error",
+            "  --help                   print this message");
+
+    //NESTED CLASSES
+
+    /**
+     * The options given on the command line.
+     */
+    private static final class Options {
+
+        /**
+         * The cipher.
+         */
+        private CipherType type;
+
+        /**
+         * The key.
+         */
+        private String key;
+
+        /**
+         * True to encrypt, false to decrypt.
+         */
+        private boolean encryption = true;
+
+        /**
+         * True to process the chunks in parallel.
+         */
+        private boolean parallel;
+
+        /**
+         * The threads of the parallel mode.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * The size of a chunk, in characters.
+         */
+        private int bufferSize = CipherTool.DEFAULT_BUFFER_SIZE;
+
+        /**
+         * The charset of the input.
+         */
+        private Charset inputCharset = StandardCharsets.UTF_8;
+
+        /**
+         * The charset of the output, null for the charset of the input.
+         */
+        private Charset outputCharset;
+
+        /**
+         * True to print the statistics.
+         */
+        private boolean stats;
+
+        /**
+         * True to print the usage.
+         */
+        private boolean help;
+
+    }
+
+    /**
+     * The input stream which counts the bytes read.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * The number of bytes read.
+         */
+        private long count;
+
+        /**
+         * Constructor of the class.
+         * @param input InputStream: The stream to count
+         */
+        private CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if(read != -1) {
+                this.count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if(read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private CipherTool() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * The entry point of the tool.
+     * @param args String[]: The arguments of the command line
+     */
+    public static void main(String[] args) {
+        int status = CipherTool.run(args, System.in, System.out, System.err);
+        System.out.flush();
+        System.exit(status);
+    }
+
+    /**
+     * It runs the tool with the given arguments and streams.
+     * @param args String[]: The arguments of the command line
+     * @param input InputStream: The text to encrypt or decrypt
+     * @param output OutputStream: The stream where the result is written. It
+     * is flushed but not closed
+     * @param messages PrintStream: The stream of the errors and the statistics
+     * @return int: 0 on success, 1 if the text could not be processed, 2 if the
+     * arguments are not valid
+     */
+    public static int run(String[] args, InputStream input, OutputStream output, PrintStream messages) {
+        Options options;
+        CipherEngine engine;
+        try {
+            options = CipherTool.parse(args);
+            if(options.help) {
+                messages.println(CipherTool.USAGE);
+                return 0;
+            }
+            engine = options.type.compile(options.key);
+            if(options.parallel && (!engine.isPositionIndependent() || engine.getBlockSize() == 0)) {
+                throw new IllegalArgumentException("The cipher " + options.type.getName() + " depends on the position, it can not be parallel");
+            }
+        }
+        catch(IllegalArgumentException | IllegalCipherKeyException ex) {
+            messages.println("Error: " + ex.getMessage());
+            messages.println(CipherTool.USAGE);
+            return 2;
+        }
+        CountingInputStream counter = new CountingInputStream(input);
+        Reader reader = new InputStreamReader(counter, options.inputCharset.newDecoder());
+        Charset outputCharset = (options.outputCharset != null) ? options.outputCharset : options.inputCharset;
+        Writer writer = new OutputStreamWriter(output, outputCharset.newEncoder());
+        long start = System.nanoTime();
+        long chars;
+        try {
+            if(engine.getBlockSize() == 0) {
+                chars = CipherTool.processWhole(engine, options.encryption, reader, writer, options.bufferSize);
+            }
+            else if(options.parallel) {
+                chars = CipherTool.processParallel(engine, options.encryption, reader, writer, options.bufferSize, options.threads);
+            }
+            else {
+                chars = CipherTool.processSequential(engine, options.encryption, reader, writer, options.bufferSize);
+            }
+            writer.flush();
+        }
+        catch(IOException | RuntimeException ex) {
+            messages.println("Error: " + ex);
+            return 1;
+        }
+        if(options.stats) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double megabytes = counter.count / 1e6;
+            messages.println(String.format(Locale.ROOT, "%d chars, %.2f MB in %.3f s, %.1f MB/s", chars, megabytes, seconds, (seconds == 0) ? 0 : megabytes / seconds));
+        }
+        return 0;
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method parses the arguments of the command line.
+     * @param args String[]: The arguments
+     * @return Options: The options
+     * @throws IllegalArgumentException If an argument is not valid
+     */
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        for(int i = 0; i < args.length; i++)
+        {
+            String arg = args[i];
+            switch(arg) {
+                case "--cipher":
+                    options.type = CipherType.fromName(CipherTool.value(args, ++i, arg));
+                    break;
+                case "--key":
+                    options.key = CipherTool.value(args, ++i, arg);
+                    break;
+                case "--encrypt":
+                    options.encryption = true;
+                    break;
+                case "--decrypt":
+                    options.encryption = false;
+                    break;
+                case "--parallel":
+                    options.parallel = true;
+                    break;
+                case "--threads":
+                    options.threads = CipherTool.positive(CipherTool.value(args, ++i, arg), arg);
+                    break;
+                case "--buffer-size":
+                    options.bufferSize = CipherTool.positive(CipherTool.value(args, ++i, arg), arg);
+                    break;
+                case "--input-charset":
+                    options.inputCharset = Charset.forName(CipherTool.value(args, ++i, arg));
+                    break;
+                case "--output-charset":
+                    options.outputCharset = Charset.forName(CipherTool.value(args, ++i, arg));
+                    break;
+                case "--stats":
+                    options.stats = true;
+                    break;
+                case "--help":
+                    options.help = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        if(!options.help && (options.type == null || options.key == null)) {
+            throw new IllegalArgumentException("--cipher and --key are required");
+        }
+        if(options.bufferSize % 2 != 0) {
+            options.bufferSize++;
+        }
+        return options;
+    }
+
+    /**
+     * This method returns the value of an option.
+     * @param args String[]: The arguments
+     * @param index int: The index of the value
+     * @param option String: The option
+     * @return String: The value
+     * @throws IllegalArgumentException If the value is missing
+     */
+    private static String value(String[] args, int index, String option) {
+        if(index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    /**
+     * This method parses a positive number of an option.
+     * @param value String: The value
+     * @param option String: The option
+     * @return int: The number
+     * @throws IllegalArgumentException If the value is not a positive number
+     */
+    private static int positive(String value, String option) {
+        try {
+            int number = Integer.parseInt(value);
+            if(number > 0) {
+                return number;
+            }
+        }
+        catch(NumberFormatException ex) {
+            //the error is thrown below
+        }
+        throw new IllegalArgumentException(option + " must be a positive number");
+    }
+
+    /**
+     * This method reads characters until the buffer is full or the input
+     * ends.
+     * @param reader Reader: The input
+     * @param buffer char[]: The buffer
+     * @param offset int: The index of buffer where the characters are written
+     * @return int: The number of characters in the buffer, from 0
+     * @throws IOException If the input can not be read
+     */
+    private static int fill(Reader reader, char[] buffer, int offset) throws IOException {
+        int read;
+        while(offset < buffer.length && (read = reader.read(buffer, offset, buffer.length - offset)) != -1)
+        {
+            offset += read;
+        }
+        return offset;
+    }
+
+    /**
+     * This method encrypts or decrypts the input chunk by chunk, carrying the
+     * state of the cipher and the characters which do not fill a block.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param reader Reader: The input
+     * @param writer Writer: The output
+     * @param bufferSize int: The size of a chunk, a multiple of the block size
+     * @return long: The number of characters processed
+     * @throws IOException If the input can not be read or the output written
+     */
+    private static long processSequential(CipherEngine engine, boolean encryption, Reader reader, Writer writer, int bufferSize) throws IOException {
+        int blockSize = engine.getBlockSize();
+        char[] buffer = new char[bufferSize];
+        long state = 0, chars = 0;
+        int length = 0;
+        while(true)
+        {
+            length = CipherTool.fill(reader, buffer, length);
+            int blocks = length - length % blockSize;
+            if(encryption) {
+                state = engine.encrypt(buffer, 0, buffer, 0, blocks, state);
+            }
+            else {
+                state = engine.decrypt(buffer, 0, buffer, 0, blocks, state);
+            }
+            writer.write(buffer, 0, blocks);
+            chars += blocks;
+            if(length < buffer.length) {
+                break;
+            }
+            System.arraycopy(buffer, blocks, buffer, 0, length - blocks);
+            length -= blocks;
+        }
+        if(length % blockSize != 0) {
+            String end = new String(buffer, length - length % blockSize, length % blockSize);
+            writer.write(encryption ? engine.encryptText(end) : engine.decryptText(end));
+            chars += end.length();
+        }
+        return chars;
+    }
+
+    /**
+     * This method encrypts or decrypts the chunks of the input in parallel and
+     * writes them in order. At most two chunks for each thread are in memory.
+     * @param engine CipherEngine: The compiled cipher, position independent
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param reader Reader: The input
+     * @param writer Writer: The output
+     * @param bufferSize int: The size of a chunk, a multiple of the block size
+     * @param threads int: The number of threads
+     * @return long: The number of characters processed
+     * @throws IOException If the input can not be read or the output written
+     */
+    private static long processParallel(CipherEngine engine, boolean encryption, Reader reader, Writer writer, int bufferSize, int threads) throws IOException {
+        int blockSize = engine.getBlockSize();
+        BlockingQueue<char[]> buffers = new ArrayBlockingQueue<>(2 * threads);
+        for(int i = 0; i < 2 * threads; i++)
+        {
+            buffers.add(new char[bufferSize]);
+        }
+        ArrayDeque<Future<char[]>> pending = new ArrayDeque<>();
+        ArrayDeque<Integer> lengths = new ArrayDeque<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long chars = 0;
+        String end = "";
+        try {
+            boolean endOfInput = false;
+            while(!endOfInput || !pending.isEmpty())
+            {
+                if(!endOfInput && (buffers.peek() != null || pending.isEmpty())) {
+                    char[] buffer = buffers.take();
+                    int length = CipherTool.fill(reader, buffer, 0);
+                    endOfInput = length < buffer.length;
+                    int blocks = length - length % blockSize;
+                    if(blocks < length) {
+                        end = new String(buffer, blocks, length - blocks);
+                    }
+                    pending.add(executor.submit(() -> {
+                        if(encryption) {
+                            engine.encrypt(buffer, 0, buffer, 0, blocks, 0);
+                        }
+                        else {
+                            engine.decrypt(buffer, 0, buffer, 0, blocks, 0);
+                        }
+                        return buffer;
+                    }));
+                    lengths.add(blocks);
+                }
+                else {
+                    char[] buffer = pending.poll().get();
+                    int blocks = lengths.poll();
+                    writer.write(buffer, 0, blocks);
+                    chars += blocks;
+                    buffers.add(buffer);
+                }
+            }
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The processing has been interrupted", ex);
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        if(!end.isEmpty()) {
+            writer.write(encryption ? engine.encryptText(end) : engine.decryptText(end));
+            chars += end.length();
+        }
+        return chars;
+    }
+
+    /**
+     * This method reads the whole input, encrypts or decrypts it and writes
+     * it, for the ciphers which need the whole text.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param reader Reader: The input
+     * @param writer Writer: The output
+     * @param bufferSize int: The size of the buffer used to read
+     * @return long: The number of characters processed
+     * @throws IOException If the input can not be read or the output written
+     */
+    private static long processWhole(CipherEngine engine, boolean encryption, Reader reader, Writer writer, int bufferSize) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int read;
+        while((read = reader.read(buffer)) != -1)
+        {
+            text.append(buffer, 0, read);
+        }
+        writer.write(encryption ? engine.encryptText(text.toString()) : engine.decryptText(text.toString()));
+        return text.length();
+    }
+
+}
@@ -0,0 +1,169 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * The ciphers of the library which can be compiled into a CipherEngine from a
+ * key written as a String, as it is received by a service or a command line.
+ * The keys of the Caesar Ciphers are short numbers, the key of the
+ * Transposition Cipher is an int number, the other keys are the Strings given
+ * to the cipher classes.
+ */
+public enum CipherType {
+
+    /**
+     * The CaesarCipher, with a short key.
+     */
+    CAESAR,
+
+    /**
+     * The VigenereCipher.
+     */
+    VIGENERE,
+
+    /**
+     * The SubstitutionCipher.
+     */
+    SUBSTITUTION,
+
+    /**
+     * The TranspositionCipher, with an int key.
+     */
+    TRANSPOSITION,
+
+    /**
+     * The PlayfairCipher.
+     */
+    PLAYFAIR,
+
+    /**
+     * The VernamCipher, whose key is a one-time pad.
+     */
+    VERNAM,
+
+    /**
+     * The UnicodeCaesarCipher, with a short key.
+     */
+    UNICODE_CAESAR,
+
+    /**
+     * The UnicodeVigenereCipher.
+     */
+    UNICODE_VIGENERE,
+
+    /**
+     * The UnicodeVernamCipher, whose key is a one-time pad.
+     */
+    UNICODE_VERNAM;
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the name of the cipher as written by users: lowercase, with
+     * '-' instead of '_'.
+     * @return String: The name, for example "unicode-caesar"
+     */
+    public String getName() {
+        return this.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * It returns if the key of the cipher is a one-time pad, which must not be
+     * cached nor used twice.
+     * @return boolean: True for the Vernam Ciphers
+     */
+    public boolean isOneTimePad() {
+        return this == CipherType.VERNAM || this == CipherType.UNICODE_VERNAM;
+    }
+
+    /**
+     * It compiles the cipher with the given key. The pads of the Vernam
+     * Ciphers are not checked against used keys.
+     * @param key String: The key, a number for the Caesar and Transposition
+     * Ciphers
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public CipherEngine compile(String key) throws IllegalCipherKeyException {
+        if(key == null) {
+            throw new IllegalCipherKeyException("The key can not be null");
+        }
+        switch(this) {
+            case CAESAR:
+                return CaesarCipher.compile(CipherType.parseShort(key));
+            case VIGENERE:
+                return VigenereCipher.compile(key);
+            case SUBSTITUTION:
+                return SubstitutionCipher.compile(key);
+            case TRANSPOSITION:
+                return TranspositionCipher.compile(CipherType.parseInt(key));
+            case PLAYFAIR:
+                return PlayfairCipher.compile(key);
+            case VERNAM:
+                return VernamCipher.compile(key, new ArrayList<>());
+            case UNICODE_CAESAR:
+                return UnicodeCaesarCipher.compile(CipherType.parseShort(key));
+            case UNICODE_VIGENERE:
+                return UnicodeVigenereCipher.compile(key);
+            default:
+                return UnicodeVernamCipher.compile(key, new ArrayList<>());
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns the cipher with the given name, without distinction between
+     * lowercase and uppercase and between '-' and '_'.
+     * @param name String: The name of the cipher, for example "vigenere" or
+     * "unicode-caesar"
+     * @return CipherType: The cipher
+     * @throws IllegalArgumentException If there is no cipher with the name
+     */
+    public static CipherType fromName(String name) {
+        if(name != null) {
+            String normalized = name.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+            for(CipherType type : CipherType.values())
+            {
+                if(type.name().equals(normalized)) {
+                    return type;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown cipher: " + name);
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method parses a short key.
+     * @param key String: The key
+     * @return short: The number
+     * @throws IllegalCipherKeyException If the key is not a short number
+     */
+    private static short parseShort(String key) throws IllegalCipherKeyException {
+        try {
+            return Short.parseShort(key.trim());
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalCipherKeyException("The key must be a short number");
+        }
+    }
+
+    /**
+     * This method parses an int key.
+     * @param key String: The key
+     * @return int: The number
+     * @throws IllegalCipherKeyException If the key is not an int number
+     */
+    private static int parseInt(String key) throws IllegalCipherKeyException {
+        try {
+            return Integer.parseInt(key.trim());
+        }
+        catch(NumberFormatException ex) {
+            throw new IllegalCipherKeyException("The key must be an int number");
+        }
+    }
+
+}
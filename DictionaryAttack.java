@@ -0,0 +1,456 @@
+package cryptography;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * The class to find the key of a text encrypted with the Vigenere Cipher or
+ * the Playfair Cipher by trying all the words of a wordlist. The wordlist is
+ * read as a stream and its words are tried in parallel batches, with a limited
+ * number of batches in memory. Every word is compiled in the buffers of the
+ * thread, only a short prefix of the text is decrypted, in a reused buffer,
+ * and it is scored with an n-gram model. Only the best keys are kept.
+ */
+public final class DictionaryAttack {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of letters that the alphabet contains.
+     */
+    private static final byte ALPHABET_LENGTH = 26;
+
+    /**
+     * The default number of letters of the text decrypted for every key.
+     */
+    public static final int DEFAULT_PREFIX_LENGTH = 200;
+
+    /**
+     * The default number of words of a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /**
+     * The default number of keys returned.
+     */
+    public static final int DEFAULT_TOP = 10;
+
+    /**
+     * The minimum time between two progress reports, in nanoseconds.
+     */
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    //FIELDS
+
+    /**
+     * The model used to score the decrypted prefixes.
+     */
+    private final NGramModel model;
+
+    /**
+     * The number of threads which try the keys.
+     */
+    private final int threads;
+
+    /**
+     * The number of words of a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of letters of the text decrypted for every key.
+     */
+    private final int prefixLength;
+
+    /**
+     * The number of keys returned.
+     */
+    private final int top;
+
+    //NESTED CLASSES
+
+    /**
+     * A key tried by the attack with its score. The higher the score, the more
+     * the decrypted text looks like the language of the model.
+     */
+    public static final class Result {
+
+        /**
+         * The key, as written in the wordlist.
+         */
+        private final String key;
+
+        /**
+         * The score of the decrypted prefix.
+         */
+        private final double score;
+
+        /**
+         * Constructor of the class.
+         * @param key String: The key
+         * @param score double: The score of the key
+         */
+        Result(String key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        /**
+         * Getter method of the field key.
+         * @return String: the class field key
+         */
+        public String getKey() {
+            return this.key;
+        }
+
+        /**
+         * Getter method of the field score.
+         * @return double: the class field score
+         */
+        public double getScore() {
+            return this.score;
+        }
+
+    }
+
+    /**
+     * The progress of an attack.
+     */
+    public static final class Progress {
+
+        /**
+         * The number of words tried.
+         */
+        private final long keys;
+
+        /**
+         * The time since the begin of the attack, in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Constructor of the class.
+         * @param keys long: The number of words tried
+         * @param elapsed long: The time since the begin, in nanoseconds
+         */
+        Progress(long keys, long elapsed) {
+            this.keys = keys;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Getter method of the field keys.
+         * @return long: the class field keys
+         */
+        public long getKeys() {
+            return this.keys;
+        }
+
+        /**
+         * Getter method of the field elapsed.
+         * @return long: the class field elapsed, in nanoseconds
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * It returns the number of keys tried per second.
+         * @return double: The keys per second
+         */
+        public double getKeysPerSecond() {
+            return (this.elapsed == 0) ? 0 : this.keys * 1e9 / this.elapsed;
+        }
+
+    }
+
+    /**
+     * The buffers used by a thread to compile and try the keys.
+     */
+    private static final class Scratch {
+
+        /**
+         * The shifts of a Vigenere key.
+         */
+        private byte[] shifts = new byte[64];
+
+        /**
+         * The letter of every cell of a Playfair table.
+         */
+        private final byte[] table = new byte[25];
+
+        /**
+         * The cell of every letter of a Playfair table.
+         */
+        private final byte[] positions = new byte[26];
+
+        /**
+         * The decrypted prefix.
+         */
+        private final byte[] decrypted;
+
+        /**
+         * Constructor of the class.
+         * @param prefixLength int: The number of letters of the prefix
+         */
+        Scratch(int prefixLength) {
+            this.decrypted = new byte[prefixLength];
+        }
+
+    }
+
+    /**
+     * The function which compiles a key and scores the decrypted prefix.
+     */
+    private interface KeyScorer {
+
+        /**
+         * It returns the score of the given key.
+         * @param key String: The key
+         * @param scratch Scratch: The buffers of the current thread
+         * @return double: The score, NaN if the key is not valid
+         */
+        double score(String key, Scratch scratch);
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It uses a thread for each processor and the
+     * default parameters.
+     * @param model NGramModel: The model used to score the decrypted texts
+     */
+    public DictionaryAttack(NGramModel model) {
+        this(model, Runtime.getRuntime().availableProcessors(), DictionaryAttack.DEFAULT_BATCH_SIZE,
+                DictionaryAttack.DEFAULT_PREFIX_LENGTH, DictionaryAttack.DEFAULT_TOP);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param model NGramModel: The model used to score the decrypted texts
+     * @param threads int: The number of threads. It must be positive
+     * @param batchSize int: The number of words of a batch. At most two
+     * batches for each thread are in memory. It must be positive
+     * @param prefixLength int: The number of letters of the text decrypted
+     * for every key. It must be positive
+     * @param top int: The number of keys returned. It must be positive
+     */
+    public DictionaryAttack(NGramModel model, int threads, int batchSize, int prefixLength, int top) {
+        if(model == null) {
+            throw new IllegalArgumentException("The model must not be null");
+        }
+        if(threads < 1 || batchSize < 1 || prefixLength < 1 || top < 1) {
+            throw new IllegalArgumentException("The threads, the batch size, the prefix length and the top must be positive");
+        }
+        this.model = model;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.prefixLength = prefixLength;
+        this.top = top;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It tries the words of the wordlist as keys of a text encrypted with the
+     * Vigenere Cipher. The words which are not valid keys are skipped. Only
+     * the ASCII letters of the text are scored, since the cipher leaves the
+     * other characters, also the accented letters, and does not move on in
+     * the key for them.
+     * @param text String: The encrypted text
+     * @param wordlist Path: The file with a word per line
+     * @param charset Charset: The charset of the wordlist
+     * @param progress Consumer(Progress): It receives the progress about
+     * every second and at the end, it can be null
+     * @return List(Result): The best keys, sorted from the most probable
+     * @throws IOException If the wordlist can not be read
+     */
+    public List<Result> attackVigenere(String text, Path wordlist, Charset charset, Consumer<Progress> progress) throws IOException {
+        byte[] letters = new byte[this.prefixLength];
+        int count = 0;
+        for(int i = 0; i < text.length() && count < letters.length; i++)
+        {
+            char ch = text.charAt(i);
+            if(ASCIICharacterUtils.isLetter(ch)) {
+                letters[count++] = (byte) (ASCIICharacterUtils.isUppercaseLetter(ch) ? ch - 'A' : ch - 'a');
+            }
+        }
+        int length = count;
+        KeyScorer scorer = (key, scratch) -> {
+            if(scratch.shifts.length < key.length()) {
+                scratch.shifts = new byte[Math.max(key.length(), 2 * scratch.shifts.length)];
+            }
+            int keyLength = VigenereCipher.fillShifts(key, scratch.shifts);
+            if(keyLength == -1) {
+                return Double.NaN;
+            }
+            int decrypted = 0;
+            for(int i = 0, j = 0; i < length; i++)
+            {
+                scratch.decrypted[i] = (byte) ((DictionaryAttack.ALPHABET_LENGTH + letters[i] - scratch.shifts[j]) % DictionaryAttack.ALPHABET_LENGTH);
+                j = (j == keyLength - 1) ? 0 : j + 1;
+            }
+            return this.model.score(scratch.decrypted, 0, length);
+        };
+        return this.attack(wordlist, charset, scorer, progress);
+    }
+
+    /**
+     * It tries the words of the wordlist as keys of a text encrypted with the
+     * Playfair Cipher. The words which are not valid keys are skipped.
+     * @param text String: The encrypted text, only letters allowed
+     * @param wordlist Path: The file with a word per line
+     * @param charset Charset: The charset of the wordlist
+     * @param progress Consumer(Progress): It receives the progress about
+     * every second and at the end, it can be null
+     * @return List(Result): The best keys, sorted from the most probable
+     * @throws IOException If the wordlist can not be read
+     */
+    public List<Result> attackPlayfair(String text, Path wordlist, Charset charset, Consumer<Progress> progress) throws IOException {
+        int length = Math.min(text.length(), this.prefixLength) & ~1;
+        byte[] letters = new byte[length];
+        if(NGramModel.toLetters(text, 0, length, letters, 0) != length) {
+            throw new IllegalArgumentException("The text of the Playfair Cipher can contain only letters");
+        }
+        KeyScorer scorer = (key, scratch) -> {
+            if(!PlayfairCipher.fillTable(key, scratch.table, scratch.positions)) {
+                return Double.NaN;
+            }
+            PlayfairCipher.transformLetters(scratch.table, scratch.positions, letters, 0, length, scratch.decrypted, 0, false);
+            return this.model.score(scratch.decrypted, 0, length);
+        };
+        return this.attack(wordlist, charset, scorer, progress);
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method reads the wordlist in batches and scores them in parallel.
+     * The reading thread waits when there are two batches for each thread in
+     * memory.
+     * @param wordlist Path: The file with a word per line
+     * @param charset Charset: The charset of the wordlist
+     * @param scorer KeyScorer: The function which scores a key
+     * @param progress Consumer(Progress): It receives the progress, it can be
+     * null
+     * @return List(Result): The best keys, sorted from the most probable
+     * @throws IOException If the wordlist can not be read
+     */
+    private List<Result> attack(Path wordlist, Charset charset, KeyScorer scorer, Consumer<Progress> progress) throws IOException {
+        PriorityQueue<Result> best = new PriorityQueue<>(Comparator.comparingDouble(Result::getScore));
+        AtomicLong tried = new AtomicLong();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(2 * this.threads);
+        ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(() -> new Scratch(this.prefixLength));
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        long start = System.nanoTime(), lastReport = start;
+        try(BufferedReader reader = Files.newBufferedReader(wordlist, charset)) {
+            String[] batch = new String[this.batchSize];
+            int size = 0;
+            String line;
+            while(failure.get() == null)
+            {
+                line = reader.readLine();
+                if(line != null) {
+                    batch[size++] = line.trim();
+                }
+                if(size == this.batchSize || (line == null && size > 0)) {
+                    String[] words = batch;
+                    int wordsSize = size;
+                    inFlight.acquire();
+                    executor.execute(() -> {
+                        try {
+                            this.scoreBatch(words, wordsSize, scorer, scratches.get(), best);
+                            tried.addAndGet(wordsSize);
+                        }
+                        catch(RuntimeException ex) {
+                            failure.compareAndSet(null, ex);
+                        }
+                        finally {
+                            inFlight.release();
+                        }
+                    });
+                    batch = new String[this.batchSize];
+                    size = 0;
+                }
+                if(line == null) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if(progress != null && now - lastReport >= DictionaryAttack.PROGRESS_INTERVAL) {
+                    progress.accept(new Progress(tried.get(), now - start));
+                    lastReport = now;
+                }
+            }
+            inFlight.acquire(2 * this.threads);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The attack has been interrupted", ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        if(failure.get() != null) {
+            throw failure.get();
+        }
+        if(progress != null) {
+            progress.accept(new Progress(tried.get(), System.nanoTime() - start));
+        }
+        List<Result> results = new ArrayList<>(best);
+        results.sort(Comparator.comparingDouble(Result::getScore).reversed());
+        return results;
+    }
+
+    /**
+     * This method scores a batch of words and merges its best keys with the
+     * best keys found until now.
+     * @param words String[]: The words
+     * @param size int: The number of words
+     * @param scorer KeyScorer: The function which scores a key
+     * @param scratch Scratch: The buffers of the current thread
+     * @param best PriorityQueue(Result): The best keys, the worst first
+     */
+    private void scoreBatch(String[] words, int size, KeyScorer scorer, Scratch scratch, PriorityQueue<Result> best) {
+        PriorityQueue<Result> batchBest = new PriorityQueue<>(Comparator.comparingDouble(Result::getScore));
+        for(int i = 0; i < size; i++)
+        {
+            double score = scorer.score(words[i], scratch);
+            if(Double.isNaN(score)) {
+                continue;
+            }
+            if(batchBest.size() < this.top) {
+                batchBest.add(new Result(words[i], score));
+            }
+            else if(score > batchBest.peek().getScore()) {
+                batchBest.poll();
+                batchBest.add(new Result(words[i], score));
+            }
+        }
+        synchronized(best) {
+            for(Result result : batchBest)
+            {
+                best.add(result);
+                if(best.size() > this.top) {
+                    best.poll();
+                }
+            }
+        }
+    }
+
+}
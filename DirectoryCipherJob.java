@@ -0,0 +1,868 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The class to encrypt or decrypt all the files of a directory tree into
+ * another directory, with the same relative paths. Every file is processed on
+ * its own virtual thread, reading and writing through AsynchronousFileChannel
+ * with buffers reused between the files, and a Semaphore bounds the number of
+ * files processed at the same time. A file which can not be processed is
+ * recorded in the report and the others go on.
+ * The cipher can be a CipherEngine, which is shared by the threads and
+ * streams the files in chunks, or a Cipher, which is used by one file at a
+ * time with the whole text.
+ */
+public final class DirectoryCipherJob {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default number of files processed at the same time.
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * The default size of the buffers, in characters.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    //FIELDS
+
+    /**
+     * The compiled cipher, null if the job uses this.cipher.
+     */
+    private final CipherEngine engine;
+
+    /**
+     * The cipher used with the whole text of a file, null if the job uses
+     * this.engine.
+     */
+    private final Cipher cipher;
+
+    /**
+     * True if the files are encrypted, false if they are decrypted.
+     */
+    private final boolean encryption;
+
+    /**
+     * The maximum number of files processed at the same time.
+     */
+    private final int concurrency;
+
+    /**
+     * The size of the buffers, in characters.
+     */
+    private final int bufferSize;
+
+    /**
+     * The charset of the files read and written.
+     */
+    private final Charset charset;
+
+    /**
+     * The buffers not used by a file, reused by the next ones.
+     */
+    private final Queue<Transfer> pool = new ConcurrentLinkedQueue<>();
+
+    //NESTED CLASSES
+
+    /**
+     * The result of a file processed by the job.
+     */
+    public static final class FileResult {
+
+        /**
+         * The file read.
+         */
+        private final Path source;
+
+        /**
+         * The file written.
+         */
+        private final Path target;
+
+        /**
+         * The number of bytes read.
+         */
+        private final long bytesRead;
+
+        /**
+         * The number of bytes written.
+         */
+        private final long bytesWritten;
+
+        /**
+         * The number of characters encrypted or decrypted.
+         */
+        private final long chars;
+
+        /**
+         * The time spent on the file, in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * The reason why the file could not be processed, null if it was
+         * processed.
+         */
+        private final Exception error;
+
+        /**
+         * Constructor of the class.
+         * @param source Path: The file read
+         * @param target Path: The file written
+         * @param bytesRead long: The number of bytes read
+         * @param bytesWritten long: The number of bytes written
+         * @param chars long: The number of characters processed
+         * @param elapsed long: The time spent, in nanoseconds
+         * @param error Exception: The error, null if there was not
+         */
+        FileResult(Path source, Path target, long bytesRead, long bytesWritten, long chars, long elapsed, Exception error) {
+            this.source = source;
+            this.target = target;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.chars = chars;
+            this.elapsed = elapsed;
+            this.error = error;
+        }
+
+        /**
+         * Getter method of the field source.
+         * @return Path: the class field source
+         */
+        public Path getSource() {
+            return this.source;
+        }
+
+        /**
+         * Getter method of the field target.
+         * @return Path: the class field target
+         */
+        public Path getTarget() {
+            return this.target;
+        }
+
+        /**
+         * Getter method of the field bytesRead.
+         * @return long: the class field bytesRead
+         */
+        public long getBytesRead() {
+            return this.bytesRead;
+        }
+
+        /**
+         * Getter method of the field bytesWritten.
+         * @return long: the class field bytesWritten
+         */
+        public long getBytesWritten() {
+            return this.bytesWritten;
+        }
+
+        /**
+         * Getter method of the field chars.
+         * @return long: the class field chars
+         */
+        public long getChars() {
+            return this.chars;
+        }
+
+        /**
+         * Getter method of the field elapsed.
+         * @return long: the class field elapsed, in nanoseconds
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * Getter method of the field error.
+         * @return Exception: the class field error, null if the file was
+         * processed
+         */
+        public Exception getError() {
+            return this.error;
+        }
+
+        /**
+         * It returns if the file could not be processed.
+         * @return boolean: True if there was an error
+         */
+        public boolean isFailed() {
+            return this.error != null;
+        }
+
+        /**
+         * It returns the megabytes read per second.
+         * @return double: The throughput of the file
+         */
+        public double getMegabytesPerSecond() {
+            return DirectoryCipherJob.megabytesPerSecond(this.bytesRead, this.elapsed);
+        }
+
+    }
+
+    /**
+     * The report of a job: the result of every file and the totals.
+     */
+    public static final class Report {
+
+        /**
+         * The result of every file, in the order they finished.
+         */
+        private final List<FileResult> files;
+
+        /**
+         * The time spent by the job, in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Constructor of the class.
+         * @param files List(FileResult): The result of every file
+         * @param elapsed long: The time spent, in nanoseconds
+         */
+        Report(List<FileResult> files, long elapsed) {
+            this.files = Collections.unmodifiableList(files);
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Getter method of the field files.
+         * @return List(FileResult): the class field files, not modifiable
+         */
+        public List<FileResult> getFiles() {
+            return this.files;
+        }
+
+        /**
+         * Getter method of the field elapsed.
+         * @return long: the class field elapsed, in nanoseconds
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * It returns the results of the files which could not be processed.
+         * @return List(FileResult): The failed files
+         */
+        public List<FileResult> getFailures() {
+            List<FileResult> failures = new ArrayList<>();
+            for(FileResult file : this.files)
+            {
+                if(file.isFailed()) {
+                    failures.add(file);
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * It returns the number of bytes read from all the files.
+         * @return long: The bytes read
+         */
+        public long getBytesRead() {
+            long bytes = 0;
+            for(FileResult file : this.files)
+            {
+                bytes += file.getBytesRead();
+            }
+            return bytes;
+        }
+
+        /**
+         * It returns the number of bytes written in all the files.
+         * @return long: The bytes written
+         */
+        public long getBytesWritten() {
+            long bytes = 0;
+            for(FileResult file : this.files)
+            {
+                bytes += file.getBytesWritten();
+            }
+            return bytes;
+        }
+
+        /**
+         * It returns the number of characters processed in all the files.
+         * @return long: The characters processed
+         */
+        public long getChars() {
+            long chars = 0;
+            for(FileResult file : this.files)
+            {
+                chars += file.getChars();
+            }
+            return chars;
+        }
+
+        /**
+         * It returns the megabytes read per second by the whole job.
+         * @return double: The throughput of the job
+         */
+        public double getMegabytesPerSecond() {
+            return DirectoryCipherJob.megabytesPerSecond(this.getBytesRead(), this.elapsed);
+        }
+
+    }
+
+    /**
+     * The buffers and the coders used by a file, and its progress.
+     */
+    private static final class Transfer {
+
+        /**
+         * The bytes read from the file.
+         */
+        private final ByteBuffer input;
+
+        /**
+         * The bytes to write in the target file.
+         */
+        private final ByteBuffer output;
+
+        /**
+         * The characters decoded, encrypted or decrypted in place.
+         */
+        private final CharBuffer chars;
+
+        /**
+         * The decoder of the bytes read.
+         */
+        private final CharsetDecoder decoder;
+
+        /**
+         * The encoder of the bytes written.
+         */
+        private final CharsetEncoder encoder;
+
+        /**
+         * The target file of the current file.
+         */
+        private AsynchronousFileChannel channel;
+
+        /**
+         * The number of bytes read from the current file.
+         */
+        private long bytesRead;
+
+        /**
+         * The number of bytes written in the current target file.
+         */
+        private long bytesWritten;
+
+        /**
+         * The number of characters processed in the current file.
+         */
+        private long processed;
+
+        /**
+         * Constructor of the class.
+         * @param bufferSize int: The size of the buffers, in characters
+         * @param charset Charset: The charset of the files
+         */
+        private Transfer(int bufferSize, Charset charset) {
+            this.decoder = charset.newDecoder();
+            this.encoder = charset.newEncoder();
+            this.input = ByteBuffer.allocateDirect(bufferSize);
+            this.output = ByteBuffer.allocateDirect((int) Math.ceil(bufferSize * (double) this.encoder.maxBytesPerChar()));
+            this.chars = CharBuffer.allocate(bufferSize);
+        }
+
+        /**
+         * This method prepares the buffers for a new file.
+         * @param channel AsynchronousFileChannel: The target file
+         */
+        private void reset(AsynchronousFileChannel channel) {
+            this.input.clear();
+            this.output.clear();
+            this.chars.clear();
+            this.decoder.reset();
+            this.encoder.reset();
+            this.channel = channel;
+            this.bytesRead = 0;
+            this.bytesWritten = 0;
+            this.processed = 0;
+        }
+
+        /**
+         * This method reads the next bytes of a file at the end of this.input.
+         * @param source AsynchronousFileChannel: The file read
+         * @return boolean: False if the end of the file has been reached
+         * @throws IOException If the file can not be read
+         * @throws InterruptedException If the thread is interrupted
+         */
+        private boolean read(AsynchronousFileChannel source) throws IOException, InterruptedException {
+            int read;
+            try {
+                read = source.read(this.input, this.bytesRead).get();
+            }
+            catch(ExecutionException ex) {
+                throw DirectoryCipherJob.toIOException(ex);
+            }
+            if(read == -1) {
+                return false;
+            }
+            this.bytesRead += read;
+            return true;
+        }
+
+        /**
+         * This method encodes characters in this.output, writing it when it
+         * is full.
+         * @param text CharBuffer: The characters to encode
+         * @param endOfInput boolean: True if they are the last characters
+         * @throws IOException If the characters can not be encoded or written
+         * @throws InterruptedException If the thread is interrupted
+         */
+        private void encode(CharBuffer text, boolean endOfInput) throws IOException, InterruptedException {
+            while(true)
+            {
+                CoderResult result = this.encoder.encode(text, this.output, endOfInput);
+                if(result.isError()) {
+                    result.throwException();
+                }
+                if(!result.isOverflow()) {
+                    break;
+                }
+                this.write();
+            }
+        }
+
+        /**
+         * This method flushes the encoder and writes this.output.
+         * @throws IOException If the bytes can not be encoded or written
+         * @throws InterruptedException If the thread is interrupted
+         */
+        private void finish() throws IOException, InterruptedException {
+            while(true)
+            {
+                CoderResult result = this.encoder.flush(this.output);
+                this.write();
+                if(!result.isOverflow()) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * This method writes all the bytes of this.output in the target file.
+         * @throws IOException If the file can not be written
+         * @throws InterruptedException If the thread is interrupted
+         */
+        private void write() throws IOException, InterruptedException {
+            this.output.flip();
+            try {
+                while(this.output.hasRemaining())
+                {
+                    this.bytesWritten += this.channel.write(this.output, this.bytesWritten).get();
+                }
+            }
+            catch(ExecutionException ex) {
+                throw DirectoryCipherJob.toIOException(ex);
+            }
+            this.output.clear();
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with the default concurrency and buffer size
+     * and UTF-8 files.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True if you want to encrypt, false if you want
+     * to decrypt
+     */
+    public DirectoryCipherJob(CipherEngine engine, boolean encryption) {
+        this(engine, encryption, DirectoryCipherJob.DEFAULT_CONCURRENCY, DirectoryCipherJob.DEFAULT_BUFFER_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True if you want to encrypt, false if you want
+     * to decrypt
+     * @param concurrency int: The maximum number of files processed at the
+     * same time. It must be positive
+     * @param bufferSize int: The size of the buffers, in characters. It must
+     * be at least 16
+     * @param charset Charset: The charset of the files read and written
+     */
+    public DirectoryCipherJob(CipherEngine engine, boolean encryption, int concurrency, int bufferSize, Charset charset) {
+        this(engine, null, encryption, concurrency, bufferSize, charset);
+        if(engine == null) {
+            throw new IllegalArgumentException("The engine can not be null");
+        }
+    }
+
+    /**
+     * Constructor of the class, with the default concurrency and buffer size
+     * and UTF-8 files.
+     * @param cipher Cipher: The cipher, used by one file at a time
+     * @param encryption boolean: True if you want to encrypt, false if you want
+     * to decrypt
+     */
+    public DirectoryCipherJob(Cipher cipher, boolean encryption) {
+        this(cipher, encryption, DirectoryCipherJob.DEFAULT_CONCURRENCY, DirectoryCipherJob.DEFAULT_BUFFER_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor of the class. The files are read and written concurrently,
+     * but the cipher encrypts one file at a time, because the Cipher classes
+     * save the last text.
+     * @param cipher Cipher: The cipher
+     * @param encryption boolean: True if you want to encrypt, false if you want
+     * to decrypt
+     * @param concurrency int: The maximum number of files processed at the
+     * same time. It must be positive
+     * @param bufferSize int: The size of the buffers, in characters. It must
+     * be at least 16
+     * @param charset Charset: The charset of the files read and written
+     */
+    public DirectoryCipherJob(Cipher cipher, boolean encryption, int concurrency, int bufferSize, Charset charset) {
+        this(null, cipher, encryption, concurrency, bufferSize, charset);
+        if(cipher == null) {
+            throw new IllegalArgumentException("The cipher can not be null");
+        }
+    }
+
+    /**
+     * Constructor of the class, called by the public ones.
+     * @param engine CipherEngine: The compiled cipher, or null
+     * @param cipher Cipher: The cipher, or null
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param concurrency int: The maximum number of files at the same time
+     * @param bufferSize int: The size of the buffers, in characters
+     * @param charset Charset: The charset of the files
+     */
+    private DirectoryCipherJob(CipherEngine engine, Cipher cipher, boolean encryption, int concurrency, int bufferSize, Charset charset) {
+        if(concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be positive");
+        }
+        if(bufferSize < 16) {
+            throw new IllegalArgumentException("The buffer size must be at least 16");
+        }
+        if(charset == null) {
+            throw new IllegalArgumentException("The charset can not be null");
+        }
+        this.engine = engine;
+        this.cipher = cipher;
+        this.encryption = encryption;
+        this.concurrency = concurrency;
+        this.bufferSize = bufferSize;
+        this.charset = charset;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It encrypts or decrypts all the regular files under the source directory
+     * into the target directory.
+     * @param source Path: The directory to read
+     * @param target Path: The directory to write, outside of source. It is
+     * created if it does not exist and its files are replaced
+     * @return Report: The result of every file and the totals
+     * @throws IOException If the source directory can not be walked or the job
+     * is interrupted
+     */
+    public Report run(Path source, Path target) throws IOException {
+        return this.run(source, target, null);
+    }
+
+    /**
+     * It encrypts or decrypts all the regular files under the source directory
+     * into the target directory, giving the result of every file to the
+     * listener as soon as it is processed.
+     * @param source Path: The directory to read
+     * @param target Path: The directory to write, outside of source. It is
+     * created if it does not exist and its files are replaced
+     * @param listener Consumer(FileResult): It receives the result of every
+     * file from the thread which processed it. It can be null
+     * @return Report: The result of every file and the totals
+     * @throws IOException If the source directory can not be walked or the job
+     * is interrupted
+     */
+    public Report run(Path source, Path target, Consumer<FileResult> listener) throws IOException {
+        if(!Files.isDirectory(source)) {
+            throw new IllegalArgumentException("The source must be a directory");
+        }
+        if(target.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("The target can not be inside the source");
+        }
+        Queue<FileResult> results = new ConcurrentLinkedQueue<>();
+        Semaphore permits = new Semaphore(this.concurrency);
+        ExecutorService executor = VirtualThreads.newExecutor("directory-cipher-job");
+        long start = System.nanoTime();
+        try(Stream<Path> walk = Files.walk(source)) {
+            Iterator<Path> files = walk.filter(Files::isRegularFile).iterator();
+            while(files.hasNext())
+            {
+                Path file = files.next();
+                Path destination = target.resolve(source.relativize(file).toString());
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        FileResult result = this.processFile(file, destination);
+                        results.add(result);
+                        if(listener != null) {
+                            listener.accept(result);
+                        }
+                    }
+                    finally {
+                        permits.release();
+                    }
+                });
+            }
+            permits.acquire(this.concurrency);
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The job has been interrupted", ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return new Report(new ArrayList<>(results), System.nanoTime() - start);
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method encrypts or decrypts a file. If it fails the target file is
+     * deleted.
+     * @param source Path: The file to read
+     * @param target Path: The file to write
+     * @return FileResult: The result of the file
+     */
+    private FileResult processFile(Path source, Path target) {
+        long start = System.nanoTime();
+        Transfer transfer = this.pool.poll();
+        if(transfer == null) {
+            transfer = new Transfer(this.bufferSize, this.charset);
+        }
+        Exception error = null;
+        try {
+            if(target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            try(AsynchronousFileChannel input = AsynchronousFileChannel.open(source, StandardOpenOption.READ);
+                AsynchronousFileChannel output = AsynchronousFileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                transfer.reset(output);
+                if(this.engine != null && this.engine.getBlockSize() > 0) {
+                    this.streamFile(input, transfer);
+                }
+                else {
+                    this.transformFile(input, transfer);
+                }
+            }
+        }
+        catch(IOException | RuntimeException ex) {
+            error = ex;
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            error = ex;
+        }
+        if(error != null) {
+            try {
+                Files.deleteIfExists(target);
+            }
+            catch(IOException ex) {
+                error.addSuppressed(ex);
+            }
+        }
+        FileResult result = new FileResult(source, target, transfer.bytesRead, transfer.bytesWritten, transfer.processed, System.nanoTime() - start, error);
+        transfer.channel = null;
+        this.pool.offer(transfer);
+        return result;
+    }
+
+    /**
+     * This method encrypts or decrypts a file in chunks with this.engine,
+     * carrying the state of the cipher from a chunk to the next one. The end
+     * of the file shorter than a block is given to encryptText or
+     * decryptText.
+     * @param input AsynchronousFileChannel: The file to read
+     * @param transfer Transfer: The buffers of the file
+     * @throws IOException If the file can not be read, decoded or written
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void streamFile(AsynchronousFileChannel input, Transfer transfer) throws IOException, InterruptedException {
+        int blockSize = this.engine.getBlockSize();
+        CharBuffer chars = transfer.chars;
+        long state = 0;
+        boolean endOfInput = false;
+        while(!endOfInput)
+        {
+            endOfInput = !transfer.read(input);
+            transfer.input.flip();
+            CoderResult result;
+            do
+            {
+                result = transfer.decoder.decode(transfer.input, chars, endOfInput);
+                if(result.isError()) {
+                    result.throwException();
+                }
+                state = this.processChunk(transfer, blockSize, state);
+            }
+            while(result.isOverflow());
+            transfer.input.compact();
+        }
+        while(transfer.decoder.flush(chars).isOverflow())
+        {
+            state = this.processChunk(transfer, blockSize, state);
+        }
+        state = this.processChunk(transfer, blockSize, state);
+        chars.flip();
+        if(chars.hasRemaining()) {
+            String end = chars.toString();
+            transfer.processed += end.length();
+            String text = this.encryption ? this.engine.encryptText(end) : this.engine.decryptText(end);
+            transfer.encode(CharBuffer.wrap(text), true);
+        }
+        else {
+            transfer.encode(chars, true);
+        }
+        transfer.finish();
+    }
+
+    /**
+     * This method encrypts or decrypts the whole blocks decoded in
+     * transfer.chars and encodes them, keeping the rest for the next chunk.
+     * @param transfer Transfer: The buffers of the file
+     * @param blockSize int: The block size of this.engine
+     * @param state long: The state of the cipher
+     * @return long: The state of the cipher after the chunk
+     * @throws IOException If the characters can not be encoded or written
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private long processChunk(Transfer transfer, int blockSize, long state) throws IOException, InterruptedException {
+        CharBuffer chars = transfer.chars;
+        chars.flip();
+        int length = chars.remaining() - chars.remaining() % blockSize;
+        if(length > 0) {
+            char[] array = chars.array();
+            int offset = chars.arrayOffset() + chars.position();
+            if(this.encryption) {
+                state = this.engine.encrypt(array, offset, array, offset, length, state);
+            }
+            else {
+                state = this.engine.decrypt(array, offset, array, offset, length, state);
+            }
+            int limit = chars.limit();
+            chars.limit(chars.position() + length);
+            transfer.encode(chars, false);
+            chars.limit(limit);
+            transfer.processed += length;
+        }
+        chars.compact();
+        return state;
+    }
+
+    /**
+     * This method reads the whole text of a file, encrypts or decrypts it at
+     * once and writes it. It is used by this.cipher and by the engines with
+     * block size 0.
+     * @param input AsynchronousFileChannel: The file to read
+     * @param transfer Transfer: The buffers of the file
+     * @throws IOException If the file can not be read, decoded or written
+     * @throws InterruptedException If the thread is interrupted
+     */
+    private void transformFile(AsynchronousFileChannel input, Transfer transfer) throws IOException, InterruptedException {
+        StringBuilder text = new StringBuilder();
+        CharBuffer chars = transfer.chars;
+        boolean endOfInput = false;
+        while(!endOfInput)
+        {
+            endOfInput = !transfer.read(input);
+            transfer.input.flip();
+            CoderResult result;
+            do
+            {
+                result = transfer.decoder.decode(transfer.input, chars, endOfInput);
+                if(result.isError()) {
+                    result.throwException();
+                }
+                chars.flip();
+                text.append(chars);
+                chars.clear();
+            }
+            while(result.isOverflow());
+            transfer.input.compact();
+        }
+        CoderResult result;
+        do
+        {
+            result = transfer.decoder.flush(chars);
+            chars.flip();
+            text.append(chars);
+            chars.clear();
+        }
+        while(result.isOverflow());
+        String transformed;
+        if(this.engine != null) {
+            transformed = this.encryption ? this.engine.encryptText(text.toString()) : this.engine.decryptText(text.toString());
+        }
+        else {
+            synchronized(this.cipher) {
+                transformed = this.encryption ? this.cipher.encryptText(text.toString()) : this.cipher.decryptText(text.toString());
+            }
+        }
+        transfer.processed = text.length();
+        transfer.encode(CharBuffer.wrap(transformed), true);
+        transfer.finish();
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the cause of a failed read or write as an
+     * IOException.
+     * @param exception ExecutionException: The failure of the operation
+     * @return IOException: The cause, wrapped if it is not an IOException
+     */
+    private static IOException toIOException(ExecutionException exception) {
+        Throwable cause = exception.getCause();
+        if(cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * This method returns a throughput in megabytes per second.
+     * @param bytes long: The bytes processed
+     * @param elapsed long: The time spent, in nanoseconds
+     * @return double: The megabytes per second, 0 if no time was spent
+     */
+    private static double megabytesPerSecond(long bytes, long elapsed) {
+        return (elapsed == 0) ? 0 : bytes * 1e3 / elapsed;
+    }
+
+}
@@ -0,0 +1,603 @@
+package cryptography;
+
+import java.util.SplittableRandom;
+
+/**
+ * The class of a document being edited together with its encryption, which
+ * is updated at every edit instead of being computed again on the whole
+ * text. The text is a rope: a balanced tree, a treap ordered by position,
+ * whose nodes hold pieces of at most MAXIMUM_PIECE characters with their
+ * encryption. Every node knows the number of characters and of letters of
+ * its subtree, so a position is found, and the tree is split and merged, in
+ * O(log n), and an insertion or a deletion costs O(edit + log n): only the
+ * pieces edited are encrypted again.
+ * <p>
+ * With a cipher which does not depend on the position, as the Caesar Cipher,
+ * the encryption of a piece never changes when the text before it is edited.
+ * With the Vigenere Cipher a piece is encrypted from the position in the key
+ * given by the letters before it modulo the length of the key, which is
+ * found from the letters of the subtrees: a piece remembers the position it
+ * was encrypted from, and when an edit moves it, because it inserts or
+ * deletes a number of letters which is not a multiple of the length of the
+ * key, the piece is encrypted again only when its encryption is read. So an
+ * edit never touches the rest of the document, and reading a part of the
+ * encryption costs O(part + log n).
+ * <p>
+ * The class is not thread-safe.
+ */
+public final class IncrementalCipherText {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The maximum number of characters of a piece.
+     */
+    public static final int MAXIMUM_PIECE = 512;
+
+    /**
+     * The position in the key of a piece which has not been encrypted.
+     */
+    private static final int NOT_ENCRYPTED = -1;
+
+    //FIELDS
+
+    /**
+     * The compiled cipher, with block size 1.
+     */
+    private final CipherEngine engine;
+
+    /**
+     * The length of the key of the Vigenere Cipher, 0 if the cipher does not
+     * depend on the position.
+     */
+    private final int period;
+
+    /**
+     * The generator of the priorities of the nodes.
+     */
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * The root of the tree, null if the text is empty.
+     */
+    private Node root;
+
+    //NESTED CLASSES
+
+    /**
+     * A node of the tree, with a piece of the text and its encryption.
+     */
+    private static final class Node {
+
+        /**
+         * The priority of the node, greater than or equal to the ones of its
+         * children.
+         */
+        private final int priority;
+
+        /**
+         * The characters of the piece, in the first length places.
+         */
+        private char[] text;
+
+        /**
+         * The encryption of the piece, in the first length places.
+         */
+        private char[] encryption;
+
+        /**
+         * The number of characters of the piece.
+         */
+        private int length;
+
+        /**
+         * The number of letters of the piece.
+         */
+        private int letters;
+
+        /**
+         * The position in the key the encryption has been computed from, or
+         * NOT_ENCRYPTED.
+         */
+        private int phase = IncrementalCipherText.NOT_ENCRYPTED;
+
+        /**
+         * The left child.
+         */
+        private Node left;
+
+        /**
+         * The right child.
+         */
+        private Node right;
+
+        /**
+         * The number of characters of the subtree.
+         */
+        private int size;
+
+        /**
+         * The number of letters of the subtree.
+         */
+        private int totalLetters;
+
+        /**
+         * Constructor of the class.
+         * @param priority int: The priority
+         * @param text char[]: The characters of the piece, used by the node
+         * @param length int: The number of characters
+         */
+        private Node(int priority, char[] text, int length) {
+            this.priority = priority;
+            this.text = text;
+            this.encryption = new char[text.length];
+            this.length = length;
+            this.letters = ASCIICharacterUtils.countLetters(text, 0, length);
+            this.update();
+        }
+
+        /**
+         * It computes the sizes of the subtree from the children.
+         */
+        private void update() {
+            this.size = this.length + Node.sizeOf(this.left) + Node.sizeOf(this.right);
+            this.totalLetters = this.letters + Node.lettersOf(this.left) + Node.lettersOf(this.right);
+        }
+
+        /**
+         * It returns the number of characters of a subtree.
+         * @param node Node: The subtree, or null
+         * @return int: The number of characters
+         */
+        private static int sizeOf(Node node) {
+            return (node == null) ? 0 : node.size;
+        }
+
+        /**
+         * It returns the number of letters of a subtree.
+         * @param node Node: The subtree, or null
+         * @return int: The number of letters
+         */
+        private static int lettersOf(Node node) {
+            return (node == null) ? 0 : node.totalLetters;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with an empty text and a cipher which does
+     * not depend on the position, as the ones of CaesarCipher.compile and
+     * SubstitutionCipher.compile.
+     * @param engine CipherEngine: The compiled cipher
+     * @throws IllegalArgumentException If the cipher depends on the position
+     * or it does not encrypt every character alone
+     */
+    public IncrementalCipherText(CipherEngine engine) {
+        this(engine, 0);
+        if(!engine.isPositionIndependent()) {
+            throw new IllegalArgumentException("The cipher must not depend on the position");
+        }
+    }
+
+    /**
+     * Constructor of the class, called by the public ones.
+     * @param engine CipherEngine: The compiled cipher
+     * @param period int: The length of the key of the Vigenere Cipher, 0 if
+     * the cipher does not depend on the position
+     * @throws IllegalArgumentException If the cipher does not encrypt every
+     * character alone
+     */
+    private IncrementalCipherText(CipherEngine engine, int period) {
+        if(engine == null) {
+            throw new IllegalArgumentException("The engine can not be null");
+        }
+        if(engine.getBlockSize() != 1) {
+            throw new IllegalArgumentException("The cipher must encrypt every character alone");
+        }
+        this.engine = engine;
+        this.period = period;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the number of characters of the text.
+     * @return int: The length of the text
+     */
+    public int length() {
+        return Node.sizeOf(this.root);
+    }
+
+    /**
+     * It inserts a text at the given position.
+     * @param index int: The position, from 0 to length()
+     * @param text CharSequence: The text to insert
+     * @throws IndexOutOfBoundsException If the position is not valid
+     */
+    public void insert(int index, CharSequence text) {
+        if(index < 0 || index > this.length()) {
+            throw new IndexOutOfBoundsException("The index " + index + " is out of the text");
+        }
+        if(text.length() == 0 || this.insertInPiece(this.root, index, text)) {
+            return;
+        }
+        Node[] parts = this.split(this.root, index);
+        int phase = this.phaseOf(Node.lettersOf(parts[0]));
+        Node middle = null;
+        int length = text.length();
+        for(int start = 0; start < length; start += IncrementalCipherText.MAXIMUM_PIECE)
+        {
+            int end = Math.min(length, start + IncrementalCipherText.MAXIMUM_PIECE);
+            char[] chars = new char[end - start];
+            for(int i = start; i < end; i++)
+            {
+                chars[i - start] = text.charAt(i);
+            }
+            Node node = new Node(this.random.nextInt(), chars, chars.length);
+            this.encrypt(node, 0, node.length, phase);
+            node.phase = phase;
+            phase = this.phaseOf(phase + node.letters);
+            middle = this.merge(middle, node);
+        }
+        this.root = this.merge(this.merge(parts[0], middle), parts[1]);
+    }
+
+    /**
+     * It deletes a part of the text.
+     * @param index int: The position of the first character to delete
+     * @param count int: The number of characters to delete
+     * @throws IndexOutOfBoundsException If the part is not in the text
+     */
+    public void delete(int index, int count) {
+        if(index < 0 || count < 0 || index > this.length() - count) {
+            throw new IndexOutOfBoundsException("The part from " + index + " of " + count + " characters is out of the text");
+        }
+        if(count == 0 || this.deleteInPiece(this.root, index, count)) {
+            return;
+        }
+        Node[] end = this.split(this.root, index + count);
+        Node[] start = this.split(end[0], index);
+        this.root = this.merge(start[0], end[1]);
+    }
+
+    /**
+     * It replaces a part of the text with another text.
+     * @param index int: The position of the first character to replace
+     * @param count int: The number of characters to replace
+     * @param text CharSequence: The new text
+     * @throws IndexOutOfBoundsException If the part is not in the text
+     */
+    public void replace(int index, int count, CharSequence text) {
+        this.delete(index, count);
+        this.insert(index, text);
+    }
+
+    /**
+     * It returns the text.
+     * @return String: The text
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder(this.length());
+        this.appendText(this.root, text);
+        return text.toString();
+    }
+
+    /**
+     * It returns the encryption of the whole text, as the encryptText method
+     * of the engine returns it.
+     * @return String: The encrypted text
+     */
+    public String getEncryptedText() {
+        return this.getEncryptedText(0, this.length());
+    }
+
+    /**
+     * It returns the encryption of a part of the text. The pieces of the
+     * part moved by an edit are encrypted again.
+     * @param from int: The position of the first character
+     * @param to int: The position after the last character
+     * @return String: The encryption of the characters from from to to
+     * @throws IndexOutOfBoundsException If the part is not in the text
+     */
+    public String getEncryptedText(int from, int to) {
+        if(from < 0 || to > this.length() || from > to) {
+            throw new IndexOutOfBoundsException("The part from " + from + " to " + to + " is out of the text");
+        }
+        StringBuilder encrypted = new StringBuilder(to - from);
+        this.appendEncryption(this.root, from, to, 0, 0, encrypted);
+        return encrypted.toString();
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method inserts a text into the piece which contains the position,
+     * if it has room for it. The sizes of the subtrees are updated on the
+     * way back.
+     * @param node Node: The subtree
+     * @param index int: The position in the subtree
+     * @param text CharSequence: The text to insert
+     * @return boolean: True if the text has been inserted, false if the tree
+     * has not been changed
+     */
+    private boolean insertInPiece(Node node, int index, CharSequence text) {
+        if(node == null) {
+            return false;
+        }
+        int leftSize = Node.sizeOf(node.left);
+        boolean inserted;
+        if(index < leftSize || (index == leftSize && node.left != null)) {
+            inserted = this.insertInPiece(node.left, index, text);
+        }
+        else if(index > leftSize + node.length) {
+            inserted = this.insertInPiece(node.right, index - leftSize - node.length, text);
+        }
+        else {
+            inserted = this.insertInto(node, index - leftSize, text);
+        }
+        if(inserted) {
+            node.update();
+        }
+        return inserted;
+    }
+
+    /**
+     * This method inserts a text into a piece, if it has room for it, and
+     * encrypts the characters whose encryption has changed: the ones
+     * inserted and, if the position in the key after them has moved, the
+     * rest of the piece.
+     * @param node Node: The piece
+     * @param offset int: The position in the piece
+     * @param text CharSequence: The text to insert
+     * @return boolean: True if the text has been inserted, false otherwise
+     */
+    private boolean insertInto(Node node, int offset, CharSequence text) {
+        int count = text.length();
+        int length = node.length + count;
+        if(length > IncrementalCipherText.MAXIMUM_PIECE) {
+            return false;
+        }
+        if(length > node.text.length) {
+            int capacity = Math.min(IncrementalCipherText.MAXIMUM_PIECE, Math.max(length, node.text.length * 2));
+            char[] chars = new char[capacity], encryption = new char[capacity];
+            System.arraycopy(node.text, 0, chars, 0, node.length);
+            System.arraycopy(node.encryption, 0, encryption, 0, node.length);
+            node.text = chars;
+            node.encryption = encryption;
+        }
+        System.arraycopy(node.text, offset, node.text, offset + count, node.length - offset);
+        System.arraycopy(node.encryption, offset, node.encryption, offset + count, node.length - offset);
+        for(int i = 0; i < count; i++)
+        {
+            node.text[offset + i] = text.charAt(i);
+        }
+        int letters = ASCIICharacterUtils.countLetters(node.text, offset, count);
+        node.length = length;
+        node.letters += letters;
+        this.encryptFrom(node, offset, count, letters);
+        return true;
+    }
+
+    /**
+     * This method deletes a part of the text from the piece which contains
+     * it, if it is inside a single piece and the piece does not become
+     * empty. The sizes of the subtrees are updated on the way back.
+     * @param node Node: The subtree
+     * @param index int: The position in the subtree
+     * @param count int: The number of characters to delete
+     * @return boolean: True if the part has been deleted, false if the tree
+     * has not been changed
+     */
+    private boolean deleteInPiece(Node node, int index, int count) {
+        if(node == null) {
+            return false;
+        }
+        int leftSize = Node.sizeOf(node.left);
+        boolean deleted;
+        if(index < leftSize) {
+            deleted = this.deleteInPiece(node.left, index, count);
+        }
+        else if(index >= leftSize + node.length) {
+            deleted = this.deleteInPiece(node.right, index - leftSize - node.length, count);
+        }
+        else {
+            int offset = index - leftSize;
+            deleted = offset + count <= node.length && count < node.length;
+            if(deleted) {
+                int letters = ASCIICharacterUtils.countLetters(node.text, offset, count);
+                System.arraycopy(node.text, offset + count, node.text, offset, node.length - offset - count);
+                System.arraycopy(node.encryption, offset + count, node.encryption, offset, node.length - offset - count);
+                node.length -= count;
+                node.letters -= letters;
+                this.encryptFrom(node, offset, 0, -letters);
+            }
+        }
+        if(deleted) {
+            node.update();
+        }
+        return deleted;
+    }
+
+    /**
+     * This method encrypts a piece again after an edit at the given offset.
+     * The characters inserted are always encrypted, the characters after them
+     * only if the edit has moved the position in the key by a number of
+     * letters which is not a multiple of the length of the key. A piece which
+     * has not been encrypted is left to be encrypted when it is read.
+     * @param node Node: The piece, already edited
+     * @param offset int: The position of the edit
+     * @param count int: The number of characters inserted
+     * @param letters int: The number of letters inserted, negative if they
+     * have been deleted
+     */
+    private void encryptFrom(Node node, int offset, int count, int letters) {
+        if(node.phase == IncrementalCipherText.NOT_ENCRYPTED) {
+            return;
+        }
+        int end = (this.period == 0 || letters % this.period == 0) ? offset + count : node.length;
+        if(end > offset) {
+            this.encrypt(node, offset, end - offset, this.phaseOf(node.phase + ASCIICharacterUtils.countLetters(node.text, 0, offset)));
+        }
+    }
+
+    /**
+     * This method encrypts a part of a piece.
+     * @param node Node: The piece
+     * @param offset int: The position of the first character
+     * @param length int: The number of characters
+     * @param phase int: The position in the key of the first letter
+     */
+    private void encrypt(Node node, int offset, int length, int phase) {
+        this.engine.encrypt(node.text, offset, node.encryption, offset, length, phase);
+    }
+
+    /**
+     * This method returns the position in the key after a number of letters.
+     * @param letters int: The number of letters
+     * @return int: The position in the key, 0 if the cipher does not depend
+     * on the position
+     */
+    private int phaseOf(int letters) {
+        return (this.period == 0) ? 0 : letters % this.period;
+    }
+
+    /**
+     * This method splits a tree at a position, cutting the piece which
+     * contains it in two.
+     * @param node Node: The tree, or null
+     * @param index int: The position, the number of characters of the first
+     * tree
+     * @return Node[]: The tree of the characters before the position and the
+     * tree of the others, each one can be null
+     */
+    private Node[] split(Node node, int index) {
+        if(node == null) {
+            return new Node[] {null, null};
+        }
+        int leftSize = Node.sizeOf(node.left);
+        if(index <= leftSize) {
+            Node[] parts = this.split(node.left, index);
+            node.left = parts[1];
+            node.update();
+            return new Node[] {parts[0], node};
+        }
+        if(index >= leftSize + node.length) {
+            Node[] parts = this.split(node.right, index - leftSize - node.length);
+            node.right = parts[0];
+            node.update();
+            return new Node[] {node, parts[1]};
+        }
+        int offset = index - leftSize;
+        int length = node.length - offset;
+        char[] chars = new char[length];
+        System.arraycopy(node.text, offset, chars, 0, length);
+        Node tail = new Node(node.priority, chars, length);
+        if(node.phase != IncrementalCipherText.NOT_ENCRYPTED) {
+            System.arraycopy(node.encryption, offset, tail.encryption, 0, length);
+            tail.phase = this.phaseOf(node.phase + node.letters - tail.letters);
+        }
+        tail.right = node.right;
+        tail.update();
+        node.right = null;
+        node.length = offset;
+        node.letters -= tail.letters;
+        node.update();
+        return new Node[] {node, tail};
+    }
+
+    /**
+     * This method merges two trees, all the characters of the first one
+     * before the characters of the second one.
+     * @param first Node: The first tree, or null
+     * @param second Node: The second tree, or null
+     * @return Node: The merged tree
+     */
+    private Node merge(Node first, Node second) {
+        if(first == null) {
+            return second;
+        }
+        if(second == null) {
+            return first;
+        }
+        if(first.priority >= second.priority) {
+            first.right = this.merge(first.right, second);
+            first.update();
+            return first;
+        }
+        second.left = this.merge(first, second.left);
+        second.update();
+        return second;
+    }
+
+    /**
+     * This method appends the characters of a tree, in order.
+     * @param node Node: The tree, or null
+     * @param text StringBuilder: The text where they are appended
+     */
+    private void appendText(Node node, StringBuilder text) {
+        if(node == null) {
+            return;
+        }
+        this.appendText(node.left, text);
+        text.append(node.text, 0, node.length);
+        this.appendText(node.right, text);
+    }
+
+    /**
+     * This method appends the encryption of the characters of a tree in a
+     * part of the text, encrypting again the pieces which have been moved in
+     * the key. The subtrees out of the part are not visited.
+     * @param node Node: The tree, or null
+     * @param from int: The position of the first character of the part
+     * @param to int: The position after the last character of the part
+     * @param start int: The position of the first character of the tree
+     * @param letters int: The number of letters before the tree
+     * @param encrypted StringBuilder: The text where the encryption is
+     * appended
+     */
+    private void appendEncryption(Node node, int from, int to, int start, int letters, StringBuilder encrypted) {
+        if(node == null || from >= start + node.size || to <= start) {
+            return;
+        }
+        this.appendEncryption(node.left, from, to, start, letters, encrypted);
+        int pieceStart = start + Node.sizeOf(node.left);
+        int pieceEnd = pieceStart + node.length;
+        int pieceLetters = letters + Node.lettersOf(node.left);
+        if(from < pieceEnd && to > pieceStart) {
+            int phase = this.phaseOf(pieceLetters);
+            if(node.phase != phase) {
+                this.encrypt(node, 0, node.length, phase);
+                node.phase = phase;
+            }
+            int offset = Math.max(from, pieceStart) - pieceStart;
+            encrypted.append(node.encryption, offset, Math.min(to, pieceEnd) - pieceStart - offset);
+        }
+        this.appendEncryption(node.right, from, to, pieceEnd, pieceLetters + node.letters, encrypted);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns an empty document encrypted with the Caesar Cipher.
+     * @param key short: The key of the cipher
+     * @return IncrementalCipherText: The document
+     */
+    public static IncrementalCipherText ofCaesar(short key) {
+        return new IncrementalCipherText(CaesarCipher.compile(key));
+    }
+
+    /**
+     * It returns an empty document encrypted with the Vigenere Cipher. Only
+     * the letters move the position in the key, as in encryptText.
+     * @param key String: It can be composed only by letters and it must not be
+     * empty
+     * @return IncrementalCipherText: The document
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static IncrementalCipherText ofVigenere(String key) throws IllegalCipherKeyException {
+        return new IncrementalCipherText(VigenereCipher.compile(key), key.length());
+    }
+
+}
@@ -0,0 +1,684 @@
+package cryptography;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class to encrypt or decrypt a text of records, one for every line,
+ * each one on its own with the same key, in parallel and keeping the order
+ * of the lines. The text is read in large blocks cut at the end of a line,
+ * and every block gets a sequence number and is encrypted or decrypted on its
+ * own virtual thread. The blocks are written in the order of their sequence
+ * numbers: a block which ends before the previous ones waits in a reorder
+ * window, and a block is read only when the window has room for it, so the
+ * memory used is proportional to the window and not to the text. The arrays
+ * of the blocks written are reused by the next ones.
+ * The line terminators, "\n" or "\r\n", are written as they are read and are
+ * not given to the cipher. The cipher can be a CipherEngine, which is shared
+ * by the threads and encrypts every line with the state 0, or a Cipher,
+ * which is used by one line at a time.
+ */
+public final class LineCipherJob {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default number of characters of a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * The default number of blocks in the window, processed or waiting to be
+     * written.
+     */
+    public static final int DEFAULT_WINDOW = 4 * Runtime.getRuntime().availableProcessors();
+
+    //FIELDS
+
+    /**
+     * The compiled cipher, null if the job uses this.cipher.
+     */
+    private final CipherEngine engine;
+
+    /**
+     * The cipher used with every line, null if the job uses this.engine.
+     */
+    private final Cipher cipher;
+
+    /**
+     * True to encrypt, false to decrypt.
+     */
+    private final boolean encryption;
+
+    /**
+     * The number of characters of a block. A block is longer only if it has
+     * a longer line.
+     */
+    private final int blockSize;
+
+    /**
+     * The maximum number of blocks read and not yet written.
+     */
+    private final int window;
+
+    /**
+     * The charset of the files read and written.
+     */
+    private final Charset charset;
+
+    /**
+     * The arrays of the blocks written, reused by the next ones.
+     */
+    private final Queue<char[]> arrays = new ConcurrentLinkedQueue<>();
+
+    //NESTED CLASSES
+
+    /**
+     * The report of a job.
+     */
+    public static final class Report {
+
+        /**
+         * The number of lines.
+         */
+        private final long lines;
+
+        /**
+         * The number of blocks.
+         */
+        private final long blocks;
+
+        /**
+         * The number of characters read.
+         */
+        private final long chars;
+
+        /**
+         * The time spent by the job, in nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Constructor of the class.
+         * @param lines long: The number of lines
+         * @param blocks long: The number of blocks
+         * @param chars long: The number of characters read
+         * @param elapsed long: The time spent, in nanoseconds
+         */
+        Report(long lines, long blocks, long chars, long elapsed) {
+            this.lines = lines;
+            this.blocks = blocks;
+            this.chars = chars;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Getter method of the field lines.
+         * @return long: the class field lines
+         */
+        public long getLines() {
+            return this.lines;
+        }
+
+        /**
+         * Getter method of the field blocks.
+         * @return long: the class field blocks
+         */
+        public long getBlocks() {
+            return this.blocks;
+        }
+
+        /**
+         * Getter method of the field chars.
+         * @return long: the class field chars
+         */
+        public long getChars() {
+            return this.chars;
+        }
+
+        /**
+         * Getter method of the field elapsed.
+         * @return long: the class field elapsed, in nanoseconds
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+
+        /**
+         * It returns the totals in a line.
+         * @return String: The totals and the throughput
+         */
+        @Override
+        public String toString() {
+            return String.format("%d lines in %d blocks, %d chars in %.1f ms (%.1f M chars/s)", this.lines, this.blocks, this.chars,
+                    this.elapsed / 1e6, (this.elapsed == 0) ? 0 : this.chars * 1e3 / this.elapsed);
+        }
+
+    }
+
+    /**
+     * A block of whole lines.
+     */
+    private static final class Block {
+
+        /**
+         * The sequence number of the block, from 0.
+         */
+        private final long sequence;
+
+        /**
+         * The characters of the block, from the pool. They are replaced with
+         * the result when the cipher works in place.
+         */
+        private final char[] chars;
+
+        /**
+         * The number of characters of the block.
+         */
+        private final int length;
+
+        /**
+         * The result of the block, null if it is in this.chars.
+         */
+        private String result;
+
+        /**
+         * The number of lines of the block.
+         */
+        private int lines;
+
+        /**
+         * Constructor of the class.
+         * @param sequence long: The sequence number
+         * @param chars char[]: The characters
+         * @param length int: The number of characters
+         */
+        private Block(long sequence, char[] chars, int length) {
+            this.sequence = sequence;
+            this.chars = chars;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * The reorder window of a run, shared by the thread which reads, the
+     * threads which process the blocks and the thread which writes.
+     */
+    private static final class Window {
+
+        /**
+         * The blocks processed, at the index of their sequence number modulo
+         * the size of the window.
+         */
+        private final Block[] slots;
+
+        /**
+         * The free places of the window, taken by the thread which reads and
+         * given back by the thread which writes.
+         */
+        private final Semaphore free;
+
+        /**
+         * The lock which guards the slots and the end.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The condition signalled when a block is processed, the text is read
+         * or there is an error.
+         */
+        private final Condition changed = this.lock.newCondition();
+
+        /**
+         * The number of blocks read, -1 until the text has been read.
+         */
+        private long blocks = -1;
+
+        /**
+         * The first error of the threads which read and process the blocks.
+         */
+        private Throwable error;
+
+        /**
+         * Constructor of the class.
+         * @param size int: The number of blocks of the window
+         */
+        private Window(int size) {
+            this.slots = new Block[size];
+            this.free = new Semaphore(size);
+        }
+
+        /**
+         * It puts a block processed in the window.
+         * @param block Block: The block
+         */
+        private void put(Block block) {
+            this.lock.lock();
+            try {
+                this.slots[(int) (block.sequence % this.slots.length)] = block;
+                this.changed.signalAll();
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * It records that the text has been read.
+         * @param blocks long: The number of blocks read
+         */
+        private void end(long blocks) {
+            this.lock.lock();
+            try {
+                this.blocks = blocks;
+                this.changed.signalAll();
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * It records an error, if it is the first one.
+         * @param error Throwable: The error
+         */
+        private void fail(Throwable error) {
+            this.lock.lock();
+            try {
+                if(this.error == null) {
+                    this.error = error;
+                }
+                this.changed.signalAll();
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * It waits for the block with the given sequence number and removes it
+         * from the window.
+         * @param sequence long: The sequence number
+         * @return Block: The block, null if the text has fewer blocks
+         * @throws IOException If the text can not be read
+         * @throws InterruptedException If the thread is interrupted
+         * @throws IllegalArgumentException If a line can not be processed by
+         * the cipher
+         */
+        private Block take(long sequence) throws IOException, InterruptedException {
+            int index = (int) (sequence % this.slots.length);
+            this.lock.lock();
+            try {
+                while(true)
+                {
+                    if(this.error instanceof IOException) {
+                        throw (IOException) this.error;
+                    }
+                    if(this.error instanceof RuntimeException) {
+                        throw (RuntimeException) this.error;
+                    }
+                    if(this.error instanceof Error) {
+                        throw (Error) this.error;
+                    }
+                    if(this.error != null) {
+                        throw new IOException(this.error);
+                    }
+                    Block block = this.slots[index];
+                    if(block != null && block.sequence == sequence) {
+                        this.slots[index] = null;
+                        return block;
+                    }
+                    if(this.blocks >= 0 && sequence >= this.blocks) {
+                        return null;
+                    }
+                    this.changed.await();
+                }
+            }
+            finally {
+                this.lock.unlock();
+            }
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with a compiled cipher, the default block
+     * size and window and UTF-8 files.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     */
+    public LineCipherJob(CipherEngine engine, boolean encryption) {
+        this(engine, encryption, LineCipherJob.DEFAULT_BLOCK_SIZE, LineCipherJob.DEFAULT_WINDOW, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor of the class, with a compiled cipher.
+     * @param engine CipherEngine: The compiled cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param blockSize int: The number of characters of a block
+     * @param window int: The maximum number of blocks read and not yet
+     * written
+     * @param charset Charset: The charset of the files
+     */
+    public LineCipherJob(CipherEngine engine, boolean encryption, int blockSize, int window, Charset charset) {
+        this(engine, null, encryption, blockSize, window, charset);
+        if(engine == null) {
+            throw new IllegalArgumentException("The engine can not be null");
+        }
+    }
+
+    /**
+     * Constructor of the class, with a cipher, the default block size and
+     * window and UTF-8 files. The cipher is used by one line at a time.
+     * @param cipher Cipher: The cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     */
+    public LineCipherJob(Cipher cipher, boolean encryption) {
+        this(cipher, encryption, LineCipherJob.DEFAULT_BLOCK_SIZE, LineCipherJob.DEFAULT_WINDOW, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor of the class, with a cipher. The cipher is used by one
+     * line at a time.
+     * @param cipher Cipher: The cipher
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param blockSize int: The number of characters of a block
+     * @param window int: The maximum number of blocks read and not yet
+     * written
+     * @param charset Charset: The charset of the files
+     */
+    public LineCipherJob(Cipher cipher, boolean encryption, int blockSize, int window, Charset charset) {
+        this(null, cipher, encryption, blockSize, window, charset);
+        if(cipher == null) {
+            throw new IllegalArgumentException("The cipher can not be null");
+        }
+    }
+
+    /**
+     * Constructor of the class, called by the public ones.
+     * @param engine CipherEngine: The compiled cipher, or null
+     * @param cipher Cipher: The cipher, or null
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @param blockSize int: The number of characters of a block
+     * @param window int: The maximum number of blocks read and not yet
+     * written
+     * @param charset Charset: The charset of the files
+     */
+    private LineCipherJob(CipherEngine engine, Cipher cipher, boolean encryption, int blockSize, int window, Charset charset) {
+        if(blockSize < 16) {
+            throw new IllegalArgumentException("The block size must be at least 16");
+        }
+        if(window < 1) {
+            throw new IllegalArgumentException("The window must be positive");
+        }
+        if(charset == null) {
+            throw new IllegalArgumentException("The charset can not be null");
+        }
+        this.engine = engine;
+        this.cipher = cipher;
+        this.encryption = encryption;
+        this.blockSize = blockSize;
+        this.window = window;
+        this.charset = charset;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It encrypts or decrypts every line of a file into another file. If it
+     * fails the target file is deleted.
+     * @param source Path: The file to read
+     * @param target Path: The file to write, replaced if it exists
+     * @return Report: The totals of the job
+     * @throws IOException If a file can not be read, decoded or written, or
+     * the job is interrupted
+     * @throws IllegalArgumentException If a line can not be processed by the
+     * cipher
+     */
+    public Report run(Path source, Path target) throws IOException {
+        try(Reader input = Files.newBufferedReader(source, this.charset);
+            Writer output = Files.newBufferedWriter(target, this.charset)) {
+            return this.run(input, output);
+        }
+        catch(IOException | RuntimeException | Error ex) {
+            try {
+                Files.deleteIfExists(target);
+            }
+            catch(IOException deletion) {
+                ex.addSuppressed(deletion);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * It encrypts or decrypts every line of a text. The text is read on
+     * another thread and written on the calling one. The streams are not
+     * closed.
+     * @param input Reader: The text to read
+     * @param output Writer: The writer of the result
+     * @return Report: The totals of the job
+     * @throws IOException If the text can not be read or written, or the job
+     * is interrupted
+     * @throws IllegalArgumentException If a line can not be processed by the
+     * cipher
+     */
+    public Report run(Reader input, Writer output) throws IOException {
+        Window window = new Window(this.window);
+        ExecutorService executor = VirtualThreads.newExecutor("line-cipher-job");
+        long start = System.nanoTime();
+        long lines = 0, chars = 0, sequence = 0;
+        try {
+            executor.execute(() -> this.read(input, window, executor));
+            Block block;
+            while((block = window.take(sequence)) != null)
+            {
+                if(block.result != null) {
+                    output.write(block.result);
+                }
+                else {
+                    output.write(block.chars, 0, block.length);
+                }
+                lines += block.lines;
+                chars += block.length;
+                sequence++;
+                this.arrays.offer(block.chars);
+                window.free.release();
+            }
+            output.flush();
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The job has been interrupted", ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return new Report(lines, sequence, chars, System.nanoTime() - start);
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method reads the text in blocks of whole lines and starts the
+     * processing of every block, waiting when the window is full. It runs on
+     * its own thread and records its errors in the window.
+     * @param input Reader: The text to read
+     * @param window Window: The reorder window
+     * @param executor ExecutorService: The executor of the blocks
+     */
+    private void read(Reader input, Window window, ExecutorService executor) {
+        try {
+            char[] rest = new char[0];
+            int restLength = 0;
+            long sequence = 0;
+            boolean endOfInput = false;
+            while(!endOfInput)
+            {
+                window.free.acquire();
+                char[] chars = this.acquire(restLength * 2);
+                System.arraycopy(rest, 0, chars, 0, restLength);
+                int filled = restLength, end = -1;
+                while(end < 0 && !endOfInput)
+                {
+                    if(filled == chars.length) {
+                        char[] larger = this.acquire(chars.length * 2);
+                        System.arraycopy(chars, 0, larger, 0, filled);
+                        this.arrays.offer(chars);
+                        chars = larger;
+                    }
+                    int from = filled;
+                    while(filled < chars.length && !endOfInput)
+                    {
+                        int read = input.read(chars, filled, chars.length - filled);
+                        if(read < 0) {
+                            endOfInput = true;
+                        }
+                        else {
+                            filled += read;
+                        }
+                    }
+                    end = endOfInput ? filled : LineCipherJob.lastLineEnd(chars, from, filled);
+                }
+                restLength = filled - end;
+                if(restLength > rest.length) {
+                    rest = new char[Math.max(restLength, rest.length * 2)];
+                }
+                System.arraycopy(chars, end, rest, 0, restLength);
+                if(end == 0) {
+                    this.arrays.offer(chars);
+                    window.free.release();
+                    break;
+                }
+                Block block = new Block(sequence++, chars, end);
+                executor.execute(() -> {
+                    try {
+                        this.process(block);
+                        window.put(block);
+                    }
+                    catch(Throwable ex) {
+                        window.fail(ex);
+                    }
+                });
+            }
+            window.end(sequence);
+        }
+        catch(IOException | RuntimeException | Error ex) {
+            window.fail(ex);
+        }
+        catch(InterruptedException ex) {
+            //the job has been stopped by the thread which writes
+        }
+    }
+
+    /**
+     * This method returns an array for a block, reused if there is one long
+     * enough.
+     * @param length int: The minimum length
+     * @return char[]: The array, at least as long as a block
+     */
+    private char[] acquire(int length) {
+        char[] chars = this.arrays.poll();
+        if(chars == null || chars.length < length) {
+            chars = new char[Math.max(length, this.blockSize)];
+        }
+        return chars;
+    }
+
+    /**
+     * This method encrypts or decrypts every line of a block. The engines
+     * with block size 1 work in place in the array of the block, the other
+     * ciphers build the result line by line.
+     * @param block Block: The block
+     * @throws IllegalArgumentException If a line can not be processed by the
+     * cipher
+     */
+    private void process(Block block) {
+        char[] chars = block.chars;
+        boolean inPlace = this.engine != null && this.engine.getBlockSize() == 1;
+        StringBuilder result = inPlace ? null : new StringBuilder(block.length);
+        int start = 0, lines = 0;
+        while(start < block.length)
+        {
+            int next = start;
+            while(next < block.length && chars[next] != '\n')
+            {
+                next++;
+            }
+            int end = (next > start && next < block.length && chars[next - 1] == '\r') ? next - 1 : next;
+            if(next < block.length) {
+                next++;
+            }
+            if(inPlace) {
+                if(this.encryption) {
+                    this.engine.encrypt(chars, start, chars, start, end - start, 0);
+                }
+                else {
+                    this.engine.decrypt(chars, start, chars, start, end - start, 0);
+                }
+            }
+            else {
+                if(end > start) {
+                    result.append(this.transformLine(new String(chars, start, end - start)));
+                }
+                result.append(chars, end, next - end);
+            }
+            lines++;
+            start = next;
+        }
+        block.lines = lines;
+        if(result != null) {
+            block.result = result.toString();
+        }
+    }
+
+    /**
+     * This method encrypts or decrypts a line with encryptText or decryptText
+     * of the engine or of the cipher.
+     * @param line String: The line, without its terminator
+     * @return String: The encrypted or decrypted line
+     */
+    private String transformLine(String line) {
+        if(this.engine != null) {
+            return this.encryption ? this.engine.encryptText(line) : this.engine.decryptText(line);
+        }
+        synchronized(this.cipher) {
+            return this.encryption ? this.cipher.encryptText(line) : this.cipher.decryptText(line);
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the index after the last line terminator of a part
+     * of an array.
+     * @param chars char[]: The characters
+     * @param from int: The index of the first character to check
+     * @param to int: The index after the last character to check
+     * @return int: The index after the last '\n', -1 if there is not
+     */
+    private static int lastLineEnd(char[] chars, int from, int to) {
+        for(int i = to - 1; i >= from; i--)
+        {
+            if(chars[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+}
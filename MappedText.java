@@ -0,0 +1,117 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class to read a text file of one byte characters, ASCII or ISO-8859-1,
+ * as a CharSequence mapped in memory, so that the methods which take a
+ * CharSequence can read files bigger than the heap without copying them.
+ */
+public final class MappedText implements CharSequence {
+
+    //FIELDS
+
+    /**
+     * The bytes of the file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The index in this.buffer of the first character.
+     */
+    private final int offset;
+
+    /**
+     * The number of characters.
+     */
+    private final int length;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. The buffer is only read with absolute
+     * methods, so it can be shared.
+     * @param buffer ByteBuffer: The bytes of the file
+     * @param offset int: The index of the first character
+     * @param length int: The number of characters
+     */
+    MappedText(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the number of characters.
+     * @return int: The number of characters
+     */
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * It returns the character at the given index.
+     * @param index int: The index of the character
+     * @return char: The character
+     */
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= this.length) {
+            throw new IndexOutOfBoundsException("The index " + index + " is out of the text");
+        }
+        return (char) (this.buffer.get(this.offset + index) & 0xFF);
+    }
+
+    /**
+     * It returns a part of the text, without copying it.
+     * @param start int: The index of the first character, inclusive
+     * @param end int: The index of the last character, exclusive
+     * @return CharSequence: The part of the text
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0 || end > this.length || start > end) {
+            throw new IndexOutOfBoundsException("The part " + start + "-" + end + " is out of the text");
+        }
+        return new MappedText(this.buffer, this.offset + start, end - start);
+    }
+
+    /**
+     * It returns the text copied in a String.
+     * @return String: The text
+     */
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[this.length];
+        this.buffer.get(this.offset, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It maps a text file in memory, read only.
+     * @param file Path: The file, at most of Integer.MAX_VALUE bytes
+     * @return MappedText: The text of the file
+     * @throws IOException If the file can not be read or is too big
+     */
+    public static MappedText open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("The file is too big to be mapped: " + size + " bytes");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedText(buffer, 0, (int) size);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class to read a language model of n-grams of letters, from unigrams to
+ * quadgrams, written by NGramModelBuilder. The file is memory-mapped, so the
+ * model is loaded without reading it and its pages are shared by all the
+ * processes which open the same file. The scoring methods do not allocate
+ * memory, so they can be used in the inner loops of the cracking classes.
+ * The file contains a header followed by a table for every order. The table of
+ * order n contains a byte for each of the 26^n n-grams, at the index
+ * l1 * 26^(n-1) + ... + ln, where li is the index of the i-th letter in the
+ * alphabet. The byte is the log10 probability of the n-gram, quantized between
+ * the minimum and the maximum of its order.
+ */
+public final class NGramModel {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of letters that the alphabet contains.
+     */
+    static final int ALPHABET_LENGTH = 26;
+
+    /**
+     * The largest order of the n-grams of a model.
+     */
+    public static final int MAX_ORDER = 4;
+
+    /**
+     * The first int of a model file, "NGRM" in ASCII.
+     */
+    static final int MAGIC = 0x4E47524D;
+
+    /**
+     * The version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The size in bytes of the header: magic, version, max order and the
+     * minimum and the step of every order.
+     */
+    static final int HEADER_SIZE = 12 + 8 * NGramModel.MAX_ORDER;
+
+    //FIELDS
+
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The offset in the file of the table of every order, at the index
+     * order - 1.
+     */
+    private final int[] offsets = new int[NGramModel.MAX_ORDER];
+
+    /**
+     * The log10 probability of the quantized value zero of every order.
+     */
+    private final float[] minimums = new float[NGramModel.MAX_ORDER];
+
+    /**
+     * The difference of log10 probability between two consecutive quantized
+     * values of every order.
+     */
+    private final float[] steps = new float[NGramModel.MAX_ORDER];
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It reads the header of the model.
+     * @param buffer ByteBuffer: The content of the model file
+     * @throws IOException If the content is not a valid model
+     */
+    NGramModel(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if(buffer.capacity() < NGramModel.HEADER_SIZE || buffer.getInt(0) != NGramModel.MAGIC) {
+            throw new IOException("The file is not an n-gram model");
+        }
+        if(buffer.getInt(4) != NGramModel.VERSION) {
+            throw new IOException("Unsupported n-gram model version " + buffer.getInt(4));
+        }
+        if(buffer.getInt(8) != NGramModel.MAX_ORDER) {
+            throw new IOException("Unsupported n-gram model order " + buffer.getInt(8));
+        }
+        int offset = NGramModel.HEADER_SIZE, size = 1;
+        for(int order = 1; order <= NGramModel.MAX_ORDER; order++)
+        {
+            size *= NGramModel.ALPHABET_LENGTH;
+            this.minimums[order - 1] = buffer.getFloat(12 + 8 * (order - 1));
+            this.steps[order - 1] = buffer.getFloat(16 + 8 * (order - 1));
+            this.offsets[order - 1] = offset;
+            offset += size;
+        }
+        if(buffer.capacity() < offset) {
+            throw new IOException("The n-gram model is truncated");
+        }
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns the log10 probability of an n-gram.
+     * @param order int: The order of the n-gram, between 1 and MAX_ORDER
+     * @param index int: The index of the n-gram, l1 * 26^(n-1) + ... + ln
+     * @return float: The log10 probability
+     */
+    public float logProbability(int order, int index) {
+        return this.minimums[order - 1] + (this.buffer.get(this.offsets[order - 1] + index) & 0xFF) * this.steps[order - 1];
+    }
+
+    /**
+     * It returns the score of the given letters with quadgrams: the sum of the
+     * log10 probability of every quadgram. If there are less than four
+     * letters, the probability of the whole n-gram is returned.
+     * @param letters byte[]: The letters, as indexes between 0 and 25
+     * @param from int: The index of the first letter, inclusive
+     * @param to int: The index of the last letter, exclusive
+     * @return double: The score, zero if there are no letters. The higher,
+     * the more probable.
+     */
+    public double score(byte[] letters, int from, int to) {
+        return this.score(letters, from, to, NGramModel.MAX_ORDER);
+    }
+
+    /**
+     * It returns the score of the given letters with the n-grams of the given
+     * order: the sum of the log10 probability of every n-gram. If there are
+     * less than order letters, the probability of the whole n-gram is
+     * returned.
+     * @param letters byte[]: The letters, as indexes between 0 and 25
+     * @param from int: The index of the first letter, inclusive
+     * @param to int: The index of the last letter, exclusive
+     * @param order int: The order of the n-grams, between 1 and MAX_ORDER
+     * @return double: The score, zero if there are no letters. The higher,
+     * the more probable.
+     */
+    public double score(byte[] letters, int from, int to, int order) {
+        if(order < 1 || order > NGramModel.MAX_ORDER) {
+            throw new IllegalArgumentException("The order must be between 1 and " + NGramModel.MAX_ORDER);
+        }
+        int length = to - from;
+        if(length <= 0) {
+            return 0;
+        }
+        if(length < order) {
+            order = length;
+        }
+        int modulus = 1;
+        for(int i = 1; i < order; i++)
+        {
+            modulus *= NGramModel.ALPHABET_LENGTH;
+        }
+        int offset = this.offsets[order - 1];
+        float minimum = this.minimums[order - 1], step = this.steps[order - 1];
+        int index = 0;
+        for(int i = from; i < from + order - 1; i++)
+        {
+            index = index * NGramModel.ALPHABET_LENGTH + letters[i];
+        }
+        long quantized = 0;
+        for(int i = from + order - 1; i < to; i++)
+        {
+            index = index * NGramModel.ALPHABET_LENGTH + letters[i];
+            quantized += this.buffer.get(offset + index) & 0xFF;
+            index %= modulus;
+        }
+        int count = to - from - order + 1;
+        return count * (double) minimum + quantized * (double) step;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It opens a model written by NGramModelBuilder, by memory-mapping it.
+     * @param file Path: The model file
+     * @return NGramModel: The model
+     * @throws IOException If the file can not be read or is not a valid model
+     */
+    public static NGramModel open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new NGramModel(buffer);
+        }
+    }
+
+    /**
+     * It copies the ASCII letters of the given text in the given array, as
+     * indexes between 0 and 25 without distinction between lowercase and
+     * uppercase. The other characters are skipped.
+     * @param text CharSequence: The text
+     * @param from int: The index of the first character, inclusive
+     * @param to int: The index of the last character, exclusive
+     * @param letters byte[]: The array to fill
+     * @param offset int: The index of letters where the first letter is put
+     * @return int: The number of letters copied, it stops when letters is full
+     */
+    public static int toLetters(CharSequence text, int from, int to, byte[] letters, int offset) {
+        int count = offset;
+        for(int i = from; i < to && count < letters.length; i++)
+        {
+            char ch = text.charAt(i);
+            if(ASCIICharacterUtils.isLowercaseLetter(ch)) {
+                letters[count++] = (byte) (ch - 'a');
+            }
+            else if(ASCIICharacterUtils.isUppercaseLetter(ch)) {
+                letters[count++] = (byte) (ch - 'A');
+            }
+        }
+        return count - offset;
+    }
+
+}
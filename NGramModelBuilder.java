@@ -0,0 +1,210 @@
+package cryptography;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class to build a language model of n-grams of letters, from unigrams to
+ * quadgrams, from a corpus. Only the ASCII letters of the corpus are counted,
+ * without distinction between lowercase and uppercase, and the n-grams go
+ * across the other characters, as the letter ciphers do. The model is written
+ * in the format read by NGramModel.
+ */
+public final class NGramModelBuilder {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The size of the buffer used to read a corpus file.
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The count given to the n-grams which never appear in the corpus, so
+     * that their probability is low but not zero.
+     */
+    private static final double MISSING_COUNT = 0.01;
+
+    //FIELDS
+
+    /**
+     * The number of occurrences of every n-gram, at the index order - 1.
+     */
+    private final long[][] counts = new long[NGramModel.MAX_ORDER][];
+
+    /**
+     * The total number of n-grams of every order, at the index order - 1.
+     */
+    private final long[] totals = new long[NGramModel.MAX_ORDER];
+
+    /**
+     * The index of the last MAX_ORDER letters read, so that the n-grams go
+     * across two calls of add.
+     */
+    private int context;
+
+    /**
+     * The number of letters read, up to MAX_ORDER.
+     */
+    private int contextLength;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. All the counts are zero.
+     */
+    public NGramModelBuilder() {
+        int size = 1;
+        for(int order = 1; order <= NGramModel.MAX_ORDER; order++)
+        {
+            size *= NGramModel.ALPHABET_LENGTH;
+            this.counts[order - 1] = new long[size];
+        }
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the number of letters counted.
+     * @return long: the number of letters counted
+     */
+    public long getLetters() {
+        return this.totals[0];
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It counts the n-grams of the given text. The n-grams go across the end
+     * of the text added before.
+     * @param text CharSequence: The text to add
+     */
+    public void add(CharSequence text) {
+        int length = text.length();
+        for(int i = 0; i < length; i++)
+        {
+            this.addChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * It counts the n-grams of the given characters.
+     * @param text char[]: The characters
+     * @param from int: The index of the first character, inclusive
+     * @param to int: The index of the last character, exclusive
+     */
+    public void add(char[] text, int from, int to) {
+        for(int i = from; i < to; i++)
+        {
+            this.addChar(text[i]);
+        }
+    }
+
+    /**
+     * It counts the n-grams of a corpus file, read in blocks.
+     * @param file Path: The corpus file
+     * @param charset Charset: The charset of the file
+     * @throws IOException If the file can not be read
+     */
+    public void addFile(Path file, Charset charset) throws IOException {
+        char[] buffer = new char[NGramModelBuilder.READ_BUFFER_SIZE];
+        try(Reader reader = Files.newBufferedReader(file, charset)) {
+            int read;
+            while((read = reader.read(buffer)) != -1)
+            {
+                this.add(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * It writes the model with the n-grams counted until now.
+     * @param file Path: The model file, it is replaced if it exists
+     * @throws IOException If the file can not be written
+     */
+    public void write(Path file) throws IOException {
+        int size = NGramModel.HEADER_SIZE;
+        for(long[] count : this.counts)
+        {
+            size += count.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(NGramModel.MAGIC);
+        buffer.putInt(NGramModel.VERSION);
+        buffer.putInt(NGramModel.MAX_ORDER);
+        float[][] logProbabilities = new float[NGramModel.MAX_ORDER][];
+        for(int order = 1; order <= NGramModel.MAX_ORDER; order++)
+        {
+            long[] count = this.counts[order - 1];
+            double total = Math.max(this.totals[order - 1], 1);
+            float[] logProbability = new float[count.length];
+            float minimum = Float.POSITIVE_INFINITY, maximum = Float.NEGATIVE_INFINITY;
+            for(int i = 0; i < count.length; i++)
+            {
+                double occurrences = (count[i] == 0) ? NGramModelBuilder.MISSING_COUNT : count[i];
+                logProbability[i] = (float) Math.log10(occurrences / total);
+                minimum = Math.min(minimum, logProbability[i]);
+                maximum = Math.max(maximum, logProbability[i]);
+            }
+            logProbabilities[order - 1] = logProbability;
+            float step = (maximum > minimum) ? (maximum - minimum) / 255 : 0;
+            buffer.putFloat(minimum);
+            buffer.putFloat(step);
+        }
+        for(int order = 1; order <= NGramModel.MAX_ORDER; order++)
+        {
+            float minimum = buffer.getFloat(12 + 8 * (order - 1));
+            float step = buffer.getFloat(16 + 8 * (order - 1));
+            for(float logProbability : logProbabilities[order - 1])
+            {
+                int quantized = (step == 0) ? 0 : Math.round((logProbability - minimum) / step);
+                buffer.put((byte) quantized);
+            }
+        }
+        buffer.flip();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method counts the n-grams ending with the given character, if it
+     * is a letter.
+     * @param ch char: The character read
+     */
+    private void addChar(char ch) {
+        int letter;
+        if(ASCIICharacterUtils.isLowercaseLetter(ch)) {
+            letter = ch - 'a';
+        }
+        else if(ASCIICharacterUtils.isUppercaseLetter(ch)) {
+            letter = ch - 'A';
+        }
+        else {
+            return;
+        }
+        if(this.contextLength < NGramModel.MAX_ORDER) {
+            this.contextLength++;
+        }
+        this.context = (this.context * NGramModel.ALPHABET_LENGTH + letter) % this.counts[NGramModel.MAX_ORDER - 1].length;
+        int modulus = 1;
+        for(int order = 1; order <= this.contextLength; order++)
+        {
+            modulus *= NGramModel.ALPHABET_LENGTH;
+            this.counts[order - 1][this.context % modulus]++;
+            this.totals[order - 1]++;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package cryptography;
+
+import java.util.Arrays;
+
+/**
+ * The class to find the minimal period of a sequence of values read one at a
+ * time, with the failure function of the Knuth-Morris-Pratt algorithm. While
+ * the sequence repeats its current period, the values and the failure function
+ * are not stored but computed from the period, so the memory used is
+ * proportional to the period and not to the length of the sequence. The time
+ * is linear in the length of the sequence.
+ */
+final class PeriodFinder {
+
+    //FIELDS
+
+    /**
+     * The first this.stored values of the sequence.
+     */
+    private byte[] values = new byte[16];
+
+    /**
+     * The failure function of the first this.stored values: the length of
+     * the longest proper border of the prefix ending at every index.
+     */
+    private int[] failure = new int[16];
+
+    /**
+     * The number of values and failures stored. After them the sequence
+     * repeats this.period.
+     */
+    private int stored;
+
+    /**
+     * The minimal period of the values read.
+     */
+    private int period;
+
+    /**
+     * The number of values read.
+     */
+    private int length;
+
+    //GETTERS
+
+    /**
+     * Getter method of the field period.
+     * @return int: the minimal period of the values read, zero if no value
+     * has been read
+     */
+    int getPeriod() {
+        return this.period;
+    }
+
+    /**
+     * Getter method of the field length.
+     * @return int: the number of values read
+     */
+    int getLength() {
+        return this.length;
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It returns a copy of the first period of the sequence.
+     * @return byte[]: The values of the period
+     */
+    byte[] getPeriodValues() {
+        return Arrays.copyOf(this.values, this.period);
+    }
+
+    /**
+     * It adds a value at the end of the sequence.
+     * @param value byte: The value to add
+     */
+    void add(byte value) {
+        int i = this.length;
+        if(i == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The sequence is too long");
+        }
+        if(i == 0) {
+            this.values[0] = value;
+            this.failure[0] = 0;
+            this.stored = 1;
+            this.period = 1;
+            this.length = 1;
+            return;
+        }
+        if(this.valueAt(i - this.period) == value) {
+            this.length++;
+            return;
+        }
+        int k = this.failureAt(i - 1);
+        while(k > 0 && this.valueAt(k) != value)
+        {
+            if(k > this.stored) {
+                k -= this.period * ((k - this.stored + this.period - 1) / this.period);
+            }
+            else {
+                k = this.failure[k - 1];
+            }
+        }
+        if(this.valueAt(k) == value) {
+            k++;
+        }
+        if(this.values.length < i + 1) {
+            int capacity = Math.max(i + 1, (int) Math.min(Integer.MAX_VALUE - 8, 2L * this.values.length));
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.failure = Arrays.copyOf(this.failure, capacity);
+        }
+        for(int j = this.stored; j < i; j++)
+        {
+            this.values[j] = this.values[j - this.period];
+            this.failure[j] = j + 1 - this.period;
+        }
+        this.values[i] = value;
+        this.failure[i] = k;
+        this.stored = i + 1;
+        this.period = i + 1 - k;
+        this.length++;
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method returns a value of the sequence, stored or computed from the
+     * period.
+     * @param index int: The index of the value, smaller than this.length
+     * @return byte: The value
+     */
+    private byte valueAt(int index) {
+        if(index < this.stored) {
+            return this.values[index];
+        }
+        return this.values[index - this.period * ((index - this.stored) / this.period + 1)];
+    }
+
+    /**
+     * This method returns the failure function at an index, stored or
+     * computed from the period.
+     * @param index int: The index, smaller than this.length
+     * @return int: The length of the longest proper border of the prefix
+     * ending at the index
+     */
+    private int failureAt(int index) {
+        if(index < this.stored) {
+            return this.failure[index];
+        }
+        return index + 1 - this.period;
+    }
+
+}
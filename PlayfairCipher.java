@@ -38,6 +38,142 @@ public final class PlayfairCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(String). It has no
+     * state and can be shared between threads. The chunks are encrypted by
+     * pairs of letters.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The letter of every cell of the table, as filled by
+         * fillTable(CharSequence, byte[], byte[]).
+         */
+        private final byte[] table = new byte[25];
+        
+        /**
+         * The cell of every letter of the table.
+         */
+        private final byte[] positions = new byte[26];
+        
+        /**
+         * It returns the given text encrypted, as encryptText(String, String)
+         * does: J becomes I and a Z is added if the length is odd.
+         */
+        @Override
+        public String encryptText(String text) {
+            CipherEvents.Operation event = CipherEvents.beginOperation();
+            if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
+                return "";
+            }
+            int length = text.length();
+            char[] chars = new char[length + length % 2];
+            text.getChars(0, length, chars, 0);
+            if(length % 2 == 1) {
+                chars[length] = 'Z';
+            }
+            this.encrypt(chars, 0, chars, 0, chars.length, 0);
+            return CipherEvents.endOperation(event, this.getClass(), true, text, new String(chars));
+        }
+        
+        /**
+         * It returns the given text decrypted, as decryptText(String, String)
+         * does.
+         * @throws IllegalArgumentException If the length of the text is odd
+         */
+        @Override
+        public String decryptText(String text) {
+            if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
+                return "";
+            }
+            return CipherEngine.super.decryptText(text);
+        }
+        
+        /**
+         * It encrypts a chunk of pairs of letters.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            this.transformPairs(src, srcOffset, dst, dstOffset, length, 1);
+            return state;
+        }
+        
+        /**
+         * It decrypts a chunk of pairs of letters.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            this.transformPairs(src, srcOffset, dst, dstOffset, length, 4);
+            return state;
+        }
+        
+        /**
+         * It returns 2, the letters are encrypted by pairs.
+         */
+        @Override
+        public int getBlockSize() {
+            return 2;
+        }
+        
+        /**
+         * It returns true, a pair does not depend on its position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+        
+        /**
+         * This method encrypts or decrypts the pairs of letters of a chunk,
+         * keeping the case of every letter.
+         * @param src char[]: The letters of the chunk
+         * @param srcOffset int: The index of the first letter
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first letter is
+         * written
+         * @param length int: The number of letters, it must be even
+         * @param shift int: 1 to encrypt, 4 to decrypt
+         * @throws IllegalArgumentException If the length is odd or the chunk
+         * contains a character which is not a letter
+         */
+        private void transformPairs(char[] src, int srcOffset, char[] dst, int dstOffset, int length, int shift) {
+            if(length % 2 != 0) {
+                throw new IllegalArgumentException("The length must be even");
+            }
+            if(ASCIICharacterUtils.indexOfNonLetter(src, srcOffset, srcOffset + length) != -1) {
+                throw new IllegalArgumentException("The text can contain only letters");
+            }
+            for(int i = 0; i < length; i += 2)
+            {
+                char first = src[srcOffset + i], second = src[srcOffset + i + 1];
+                int firstCell = this.positions[ASCIICharacterUtils.indexOf(first)];
+                int secondCell = this.positions[ASCIICharacterUtils.indexOf(second)];
+                int firstRow = firstCell / 5, firstCol = firstCell % 5;
+                int secondRow = secondCell / 5, secondCol = secondCell % 5;
+                if(firstRow == secondRow) {
+                    firstCol = (firstCol + shift) % 5;
+                    secondCol = (secondCol + shift) % 5;
+                }
+                else if(firstCol == secondCol) {
+                    firstRow = (firstRow + shift) % 5;
+                    secondRow = (secondRow + shift) % 5;
+                }
+                else {
+                    int col = firstCol;
+                    firstCol = secondCol;
+                    secondCol = col;
+                }
+                char x = (char) ('A' + this.table[firstRow * 5 + firstCol]);
+                char y = (char) ('A' + this.table[secondRow * 5 + secondCol]);
+                dst[dstOffset + i] = ASCIICharacterUtils.isUppercaseLetter(first) ? x : Character.toLowerCase(x);
+                dst[dstOffset + i + 1] = ASCIICharacterUtils.isUppercaseLetter(second) ? y : Character.toLowerCase(y);
+            }
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -186,6 +322,7 @@ public final class PlayfairCipher implements Cipher {
      * @return String: The key generated.
      */
     private String generateRandomKey() {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         char[] key = "ABCDEFGHIKLMNOPQRSTUVWXYZ".toCharArray();
         char temp;
         int first, second;
@@ -197,7 +334,7 @@ public final class PlayfairCipher implements Cipher {
             key[first] = key[second];
             key[second] = temp;
         }
-        return new String(key);
+        return CipherEvents.endGeneration(event, PlayfairCipher.class, new String(key));
     }   
     
     //PUBLIC METHODS
@@ -213,25 +350,26 @@ public final class PlayfairCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length() + text.length() % 2);
         text = text.replace('J', 'I');
         text = text.replace('j', 'i');
         int length = text.length();
         for(int i = 0; i < length; i += 2)
         {
             if(i + 1 == length) {
-                encryptedText.append(PlayfairCipher.encryptPair(text.charAt(i), 'Z', this.table));
+                PlayfairCipher.encryptPair(text.charAt(i), 'Z', this.table, encryptedText);
             }
             else {
-                encryptedText.append(PlayfairCipher.encryptPair(text.charAt(i), text.charAt(i + 1), this.table));
+                PlayfairCipher.encryptPair(text.charAt(i), text.charAt(i + 1), this.table, encryptedText);
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, PlayfairCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -245,18 +383,19 @@ public final class PlayfairCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i += 2)
         {
-            decryptedText.append(PlayfairCipher.decryptPair(text.charAt(i), text.charAt(i + 1), this.table));
+            PlayfairCipher.decryptPair(text.charAt(i), text.charAt(i + 1), this.table, decryptedText);
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, PlayfairCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
@@ -270,12 +409,8 @@ public final class PlayfairCipher implements Cipher {
         if(key == null) {
             throw new IllegalCipherKeyException();
         }
-        int length = key.length();
-        for(int i = 0; i < length; i++) 
-        {
-            if(!ASCIICharacterUtils.isLetter(key.charAt(i))) {
-                throw new IllegalCipherKeyException();
-            }
+        if(!ASCIICharacterUtils.isLetters(key)) {
+            throw new IllegalCipherKeyException();
         }
     }
     
@@ -285,14 +420,7 @@ public final class PlayfairCipher implements Cipher {
      * @return boolean: True if the text is valid, false if it is not
      */
     private static boolean checkText(String text) {
-        int length = text.length();
-        for(int i = 0; i < length; i++)
-        {
-            if(!ASCIICharacterUtils.isLetter(text.charAt(i))) {
-                return false;
-            }
-        }
-        return true;
+        return ASCIICharacterUtils.isLetters(text);
     }
     
     /**
@@ -341,96 +469,183 @@ public final class PlayfairCipher implements Cipher {
     }
     
     /**
-     * This method returns an array with the position { row, col } of the given
-     * character in the cipher table.
+     * This method returns the position of the given character in the cipher
+     * table as a single int, 5 * row + col, so that no array is allocated for
+     * every letter. A character which is not in the table gives -6, which is
+     * read back as row -1 and col -1.
      * @param ch char: The character that you want to find
      * @param table char[][]: The table given by the key
-     * @return int[]: The position { row, col } of the character
+     * @return int: The position 5 * row + col of the character
      */
-    private static int[] findPositionInTable(char ch, char[][] table) {
+    private static int findPositionInTable(char ch, char[][] table) {
         int i, j;
         for(i = 0; i < 5; i++) 
         {
             for(j = 0; j < 5; j++)
             {
                 if(table[i][j] == ch) {
-                    return new int[]{ i, j };
+                    return 5 * i + j;
                 }
             }
         }
-        return new int[]{ -1, -1 };
+        return -6;
     }
     
     /**
-     * This method encrypts a pair of characters.
+     * This method encrypts a pair of characters and appends them to the
+     * encrypted text.
      * @param first char: The first character of the pair
      * @param second char: The second character of the pair
      * @param table char[][]: The table given by the key
-     * @return String: The encrypted pair as a String
+     * @param encryptedText StringBuilder: The text where the encrypted pair is
+     * appended
      */
-    private static String encryptPair(char first, char second, char[][] table) {
-        int[] firstPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(first), table);
-        int[] secondPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(second), table);
-        if(firstPosition[0] == secondPosition[0])
+    private static void encryptPair(char first, char second, char[][] table, StringBuilder encryptedText) {
+        int firstPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(first), table);
+        int secondPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(second), table);
+        int firstRow = firstPosition / 5, firstCol = firstPosition % 5;
+        int secondRow = secondPosition / 5, secondCol = secondPosition % 5;
+        char x, y;
+        if(firstRow == secondRow)
         {
-            int row = firstPosition[0], firstCol, secondCol;
-            firstCol = (firstPosition[1] == 4) ? 0 : firstPosition[1] + 1;
-            secondCol = (secondPosition[1] == 4) ? 0 : secondPosition[1] + 1;
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[row][firstCol] : Character.toLowerCase(table[row][firstCol]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[row][secondCol] : Character.toLowerCase(table[row][secondCol]);
-            return x + "" + y;
-        }
-        else if(firstPosition[1] == secondPosition[1]) {
-            int col = firstPosition[1], firstRow, secondRow;
-            firstRow = (firstPosition[0] == 4) ? 0 : firstPosition[0] + 1;
-            secondRow = (secondPosition[0] == 4) ? 0 : secondPosition[0] + 1;
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[firstRow][col] : Character.toLowerCase(table[firstRow][col]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[secondRow][col] : Character.toLowerCase(table[secondRow][col]);
-            return x + "" + y;
+            x = table[firstRow][(firstCol == 4) ? 0 : firstCol + 1];
+            y = table[secondRow][(secondCol == 4) ? 0 : secondCol + 1];
+        }
+        else if(firstCol == secondCol) {
+            x = table[(firstRow == 4) ? 0 : firstRow + 1][firstCol];
+            y = table[(secondRow == 4) ? 0 : secondRow + 1][secondCol];
         }
         else {
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[firstPosition[0]][secondPosition[1]] : Character.toLowerCase(table[firstPosition[0]][secondPosition[1]]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[secondPosition[0]][firstPosition[1]] : Character.toLowerCase(table[secondPosition[0]][firstPosition[1]]);
-            return x + "" + y;        
+            x = table[firstRow][secondCol];
+            y = table[secondRow][firstCol];
         }
+        encryptedText.append((ASCIICharacterUtils.isUppercaseLetter(first)) ? x : Character.toLowerCase(x));
+        encryptedText.append((ASCIICharacterUtils.isUppercaseLetter(second)) ? y : Character.toLowerCase(y));
     }
     
     /**
-     * This method decrypts a pair of characters.
+     * This method decrypts a pair of characters and appends them to the
+     * decrypted text.
      * @param first char: The first character of the pair
      * @param second char: The second character of the pair
      * @param table char[][]: The table given by the key
-     * @return String: The decrypted pair as a String
+     * @param decryptedText StringBuilder: The text where the decrypted pair is
+     * appended
      */
-    private static String decryptPair(char first, char second, char[][] table) {
-        int[] firstPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(first), table);
-        int[] secondPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(second), table);
-        if(firstPosition[0] == secondPosition[0])
+    private static void decryptPair(char first, char second, char[][] table, StringBuilder decryptedText) {
+        int firstPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(first), table);
+        int secondPosition =  PlayfairCipher.findPositionInTable(Character.toUpperCase(second), table);
+        int firstRow = firstPosition / 5, firstCol = firstPosition % 5;
+        int secondRow = secondPosition / 5, secondCol = secondPosition % 5;
+        char x, y;
+        if(firstRow == secondRow)
         {
-            int row = firstPosition[0], firstCol, secondCol;
-            firstCol = (firstPosition[1] == 0) ? 4 : firstPosition[1] - 1;
-            secondCol = (secondPosition[1] == 0) ? 4 : secondPosition[1] - 1;
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[row][firstCol] : Character.toLowerCase(table[row][firstCol]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[row][secondCol] : Character.toLowerCase(table[row][secondCol]);
-            return x + "" + y;
-        }
-        else if(firstPosition[1] == secondPosition[1]) {
-            int col = firstPosition[1], firstRow, secondRow;
-            firstRow = (firstPosition[0] == 0) ? 4 : firstPosition[0] - 1;
-            secondRow = (secondPosition[0] == 0) ? 4 : secondPosition[0] - 1;
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[firstRow][col] : Character.toLowerCase(table[firstRow][col]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[secondRow][col] : Character.toLowerCase(table[secondRow][col]);
-            return x + "" + y;
+            x = table[firstRow][(firstCol == 0) ? 4 : firstCol - 1];
+            y = table[secondRow][(secondCol == 0) ? 4 : secondCol - 1];
+        }
+        else if(firstCol == secondCol) {
+            x = table[(firstRow == 0) ? 4 : firstRow - 1][firstCol];
+            y = table[(secondRow == 0) ? 4 : secondRow - 1][secondCol];
         }
         else {
-            char x = (ASCIICharacterUtils.isUppercaseLetter(first)) ? table[firstPosition[0]][secondPosition[1]] : Character.toLowerCase(table[firstPosition[0]][secondPosition[1]]);
-            char y = (ASCIICharacterUtils.isUppercaseLetter(second)) ? table[secondPosition[0]][firstPosition[1]] : Character.toLowerCase(table[secondPosition[0]][firstPosition[1]]);
-            return x + "" + y;        
+            x = table[firstRow][secondCol];
+            y = table[secondRow][firstCol];
         }
+        decryptedText.append((ASCIICharacterUtils.isUppercaseLetter(first)) ? x : Character.toLowerCase(x));
+        decryptedText.append((ASCIICharacterUtils.isUppercaseLetter(second)) ? y : Character.toLowerCase(y));
     }
     
+    //PACKAGE STATIC METHODS
+
+    /**
+     * This method fills a flat table with the letters of the key, as
+     * fillTable does, without allocating memory. The letters are indexes
+     * between 0 and 25 and the cells are numbered row * 5 + col.
+     * @param key CharSequence: The key to fill the table
+     * @param table byte[]: The 25 cells of the table, filled with the letter
+     * of every cell
+     * @param positions byte[]: The 26 letters, filled with the cell of every
+     * letter. J has the cell of I.
+     * @return boolean: True if the key is valid, false otherwise
+     */
+    static boolean fillTable(CharSequence key, byte[] table, byte[] positions) {
+        Arrays.fill(positions, (byte) -1);
+        positions['J' - 'A'] = 25;
+        int cell = 0, length = key.length();
+        for(int i = 0; i < length; i++)
+        {
+            int letter = ASCIICharacterUtils.indexOf(key.charAt(i));
+            if(letter == -1) {
+                return false;
+            }
+            if(positions[letter] == -1) {
+                table[cell] = (byte) letter;
+                positions[letter] = (byte) cell++;
+            }
+        }
+        for(int letter = 0; letter < 26 && cell < 25; letter++)
+        {
+            if(positions[letter] == -1) {
+                table[cell] = (byte) letter;
+                positions[letter] = (byte) cell++;
+            }
+        }
+        positions['J' - 'A'] = positions['I' - 'A'];
+        return true;
+    }
+
+    /**
+     * This method encrypts or decrypts pairs of letters given as indexes
+     * between 0 and 25, with the table filled by fillTable(CharSequence,
+     * byte[], byte[]). It does not allocate memory.
+     * @param table byte[]: The letter of every cell
+     * @param positions byte[]: The cell of every letter
+     * @param src byte[]: The letters to encrypt/decrypt
+     * @param from int: The index of the first letter, inclusive
+     * @param to int: The index of the last letter, exclusive. to - from must
+     * be even
+     * @param dst byte[]: The array where the result is written
+     * @param dstFrom int: The index of dst where the first letter is written
+     * @param encryption boolean: True if you want to encrypt, false if you
+     * want to decrypt
+     */
+    static void transformLetters(byte[] table, byte[] positions, byte[] src, int from, int to, byte[] dst, int dstFrom, boolean encryption) {
+        int shift = encryption ? 1 : 4;
+        for(int i = from, j = dstFrom; i + 1 < to; i += 2, j += 2)
+        {
+            int first = positions[src[i]], second = positions[src[i + 1]];
+            int firstRow = first / 5, firstCol = first % 5;
+            int secondRow = second / 5, secondCol = second % 5;
+            if(firstRow == secondRow) {
+                dst[j] = table[firstRow * 5 + (firstCol + shift) % 5];
+                dst[j + 1] = table[secondRow * 5 + (secondCol + shift) % 5];
+            }
+            else if(firstCol == secondCol) {
+                dst[j] = table[((firstRow + shift) % 5) * 5 + firstCol];
+                dst[j + 1] = table[((secondRow + shift) % 5) * 5 + secondCol];
+            }
+            else {
+                dst[j] = table[firstRow * 5 + secondCol];
+                dst[j + 1] = table[secondRow * 5 + firstCol];
+            }
+        }
+    }
+
+    /**
+     * This method returns the compiled form of the cipher with a table
+     * filled by fillTable(CharSequence, byte[], byte[]), without checking it.
+     * @param table byte[]: The letter of every one of the 25 cells
+     * @param positions byte[]: The cell of every one of the 26 letters
+     * @return CipherEngine: The compiled cipher
+     */
+    static CipherEngine restore(byte[] table, byte[] positions) {
+        Engine engine = new Engine();
+        System.arraycopy(table, 0, engine.table, 0, engine.table.length);
+        System.arraycopy(positions, 0, engine.positions, 0, engine.positions.length);
+        return engine;
+    }
     //PUBLIC STATIC METHODS
-    
+
     /**
      * It returns the given text encrypted with the given key. All letters
      * are encrypted.
@@ -444,25 +659,26 @@ public final class PlayfairCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String encryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
             return "";
         }
         PlayfairCipher.checkKey(key);
         char[][] table = PlayfairCipher.fillTable(key);
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length() + text.length() % 2);
         text = text.replace('J', 'I');
         text = text.replace('j', 'i');
         int length = text.length();
         for(int i = 0; i < length; i += 2)
         {
             if(i + 1 == length) {
-                encryptedText.append(PlayfairCipher.encryptPair(text.charAt(i), 'Z', table));
+                PlayfairCipher.encryptPair(text.charAt(i), 'Z', table, encryptedText);
             }
             else {
-                encryptedText.append(PlayfairCipher.encryptPair(text.charAt(i), text.charAt(i + 1), table));
+                PlayfairCipher.encryptPair(text.charAt(i), text.charAt(i + 1), table, encryptedText);
             }
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, PlayfairCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -478,19 +694,35 @@ public final class PlayfairCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String decryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty() || !PlayfairCipher.checkText(text)) {
             return "";
         }
         PlayfairCipher.checkKey(key);
         char[][] table = PlayfairCipher.fillTable(key);
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int length = text.length();
         for(int i = 0; i < length; i += 2)
         {
-            decryptedText.append(PlayfairCipher.decryptPair(text.charAt(i), text.charAt(i + 1), table));
+            PlayfairCipher.decryptPair(text.charAt(i), text.charAt(i + 1), table, decryptedText);
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, PlayfairCipher.class, false, text, decryptedText.toString());
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(String, String) and
+     * decryptText(String, String) and can be shared between threads.
+     * @param key String: The key, it can contain only letters
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static CipherEngine compile(String key) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        PlayfairCipher.checkKey(key);
+        Engine engine = new Engine();
+        PlayfairCipher.fillTable(key, engine.table, engine.positions);
+        return CipherEvents.endCompilation(event, PlayfairCipher.class, key, engine);
     }
     
 }
-
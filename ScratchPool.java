@@ -0,0 +1,338 @@
+package cryptography;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * The class of a concurrent pool of scratch arrays, which lets the request
+ * handlers reuse their working buffers instead of allocating new ones for
+ * every request. It does not use ThreadLocal, because a server with virtual
+ * threads starts a new thread for every request and the buffers of a thread
+ * would be used only once: the arrays are kept in a few slots, the stripes,
+ * and a thread takes and returns an array from the stripe of its id or from
+ * the next ones, with a single atomic operation and no lock.
+ * <p>
+ * The arrays are sized to the recent requests: a new array is as long as the
+ * longest request seen recently, rounded up to a power of two, and an array
+ * much longer than that is not kept when it is released, so a burst of large
+ * requests does not keep its memory. The arrays longer than the maximum
+ * length are never kept. The arrays not used for the idle timeout are
+ * evicted, and the recent length is halved, by the thread which finds that a
+ * sweep is due. The compiled keys do not need a pool, because a CipherEngine
+ * is immutable and a single instance is shared by all the threads through
+ * the CipherRegistry.
+ * @param <T> The type of the arrays
+ */
+public final class ScratchPool<T> {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The default maximum length of the arrays kept.
+     */
+    public static final int DEFAULT_MAXIMUM_LENGTH = 1 << 20;
+
+    /**
+     * The default time after which an array not used is evicted, in
+     * nanoseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * The minimum length of a new array.
+     */
+    private static final int MINIMUM_LENGTH = 256;
+
+    /**
+     * The number of stripes tried by every acquisition and release.
+     */
+    private static final int PROBES = 4;
+
+    //FIELDS
+
+    /**
+     * The function which allocates an array of a length.
+     */
+    private final IntFunction<T> allocator;
+
+    /**
+     * The function which returns the length of an array.
+     */
+    private final ToIntFunction<T> lengthOf;
+
+    /**
+     * The arrays kept, at most one for every stripe.
+     */
+    private final AtomicReferenceArray<T> arrays;
+
+    /**
+     * The time of the last release in every stripe, from System.nanoTime.
+     */
+    private final AtomicLongArray releases;
+
+    /**
+     * The number of stripes minus 1, the number of stripes is a power of two.
+     */
+    private final int mask;
+
+    /**
+     * The maximum length of the arrays kept.
+     */
+    private final int maximumLength;
+
+    /**
+     * The time after which an array not used is evicted, in nanoseconds.
+     */
+    private final long idleTimeout;
+
+    /**
+     * The length of the longest request since the last sweep, at least
+     * MINIMUM_LENGTH, halved at every sweep. It is updated without
+     * synchronization because it is only a hint.
+     */
+    private volatile int recentLength = ScratchPool.MINIMUM_LENGTH;
+
+    /**
+     * The time of the last sweep, from System.nanoTime.
+     */
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * The number of acquisitions which took an array of the pool.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of acquisitions which allocated a new array.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of arrays evicted because they were not used.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with four stripes for every processor, the
+     * default maximum length and the default idle timeout.
+     * @param allocator IntFunction(T): The function which allocates an array
+     * of a length, as char[]::new
+     * @param lengthOf ToIntFunction(T): The function which returns the length
+     * of an array
+     */
+    public ScratchPool(IntFunction<T> allocator, ToIntFunction<T> lengthOf) {
+        this(allocator, lengthOf, Runtime.getRuntime().availableProcessors() * 4, ScratchPool.DEFAULT_MAXIMUM_LENGTH, ScratchPool.DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param allocator IntFunction(T): The function which allocates an array
+     * of a length, as char[]::new
+     * @param lengthOf ToIntFunction(T): The function which returns the length
+     * of an array
+     * @param stripes int: The number of stripes, rounded up to a power of two
+     * @param maximumLength int: The maximum length of the arrays kept
+     * @param idleTimeout long: The time after which an array not used is
+     * evicted, in nanoseconds
+     * @throws IllegalArgumentException If the number of stripes is not
+     * between 1 and 65536 or another number is not positive
+     */
+    public ScratchPool(IntFunction<T> allocator, ToIntFunction<T> lengthOf, int stripes, int maximumLength, long idleTimeout) {
+        if(stripes < 1 || stripes > (1 << 16)) {
+            throw new IllegalArgumentException("The number of stripes must be between 1 and " + (1 << 16));
+        }
+        if(maximumLength < 1 || idleTimeout < 1) {
+            throw new IllegalArgumentException("The maximum length and the idle timeout must be positive");
+        }
+        int count = ScratchPool.roundUp(stripes);
+        this.allocator = allocator;
+        this.lengthOf = lengthOf;
+        this.arrays = new AtomicReferenceArray<>(count);
+        this.releases = new AtomicLongArray(count);
+        this.mask = count - 1;
+        this.maximumLength = maximumLength;
+        this.idleTimeout = idleTimeout;
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the number of acquisitions which took an array of the
+     * pool.
+     * @return long: The number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Getter method of the number of acquisitions which allocated a new array.
+     * @return long: The number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Getter method of the number of arrays evicted because they were not
+     * used.
+     * @return long: The number of evictions
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It returns an array at least as long as the given length, taken from
+     * the pool or allocated. The arrays of the pool which are too short are
+     * left in their stripes. The content of the array is not specified. The
+     * array should be given back with release when it is no longer used, and
+     * then it must not be used any more.
+     * @param length int: The minimum length
+     * @return T: The array
+     * @throws IllegalArgumentException If the length is negative
+     */
+    public T acquire(int length) {
+        if(length < 0) {
+            throw new IllegalArgumentException("The length can not be negative");
+        }
+        if(length > this.recentLength) {
+            this.recentLength = length;
+        }
+        if(length <= this.maximumLength) {
+            int stripe = this.stripe();
+            for(int i = 0; i < ScratchPool.PROBES; i++)
+            {
+                int index = (stripe + i) & this.mask;
+                T array = this.arrays.get(index);
+                if(array != null && this.lengthOf.applyAsInt(array) >= length && this.arrays.compareAndSet(index, array, null)) {
+                    this.hits.increment();
+                    return array;
+                }
+            }
+        }
+        this.misses.increment();
+        return this.allocator.apply(Math.max(length, Math.min(ScratchPool.roundUp(this.recentLength), this.maximumLength)));
+    }
+
+    /**
+     * It gives back an array to the pool. It is dropped if it is longer than
+     * the maximum length or much longer than the recent requests, or if the
+     * stripes tried are full.
+     * @param array T: The array, returned by acquire, or null
+     */
+    public void release(T array) {
+        long now = System.nanoTime();
+        if(array != null) {
+            int length = this.lengthOf.applyAsInt(array);
+            if(length <= Math.min(2L * ScratchPool.roundUp(this.recentLength), this.maximumLength)) {
+                int stripe = this.stripe();
+                for(int i = 0; i < ScratchPool.PROBES; i++)
+                {
+                    int index = (stripe + i) & this.mask;
+                    if(this.arrays.get(index) == null && this.arrays.compareAndSet(index, null, array)) {
+                        this.releases.set(index, now);
+                        break;
+                    }
+                }
+            }
+        }
+        long last = this.lastSweep.get();
+        if(now - last >= this.idleTimeout && this.lastSweep.compareAndSet(last, now)) {
+            this.evictIdle(now);
+        }
+    }
+
+    /**
+     * It evicts the arrays not used for the idle timeout and halves the
+     * recent length. It is called by release when a sweep is due.
+     * @return int: The number of arrays evicted
+     */
+    public int evictIdle() {
+        return this.evictIdle(System.nanoTime());
+    }
+
+    /**
+     * It evicts all the arrays.
+     */
+    public void clear() {
+        for(int i = 0; i <= this.mask; i++)
+        {
+            this.arrays.set(i, null);
+        }
+        this.recentLength = ScratchPool.MINIMUM_LENGTH;
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method evicts the arrays released before the idle timeout.
+     * @param now long: The current time, from System.nanoTime
+     * @return int: The number of arrays evicted
+     */
+    private int evictIdle(long now) {
+        int evicted = 0;
+        for(int i = 0; i <= this.mask; i++)
+        {
+            if(this.arrays.get(i) != null && now - this.releases.get(i) >= this.idleTimeout && this.arrays.getAndSet(i, null) != null) {
+                evicted++;
+            }
+        }
+        this.evictions.add(evicted);
+        this.recentLength = Math.max(this.recentLength / 2, ScratchPool.MINIMUM_LENGTH);
+        return evicted;
+    }
+
+    /**
+     * This method returns the first stripe tried by the current thread.
+     * @return int: The stripe
+     */
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (((int) (id ^ (id >>> 32)) * 0x9E3779B9) >>> 16) & this.mask;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns a pool of arrays of chars with the default settings.
+     * @return ScratchPool(char[]): The pool
+     */
+    public static ScratchPool<char[]> ofChars() {
+        return new ScratchPool<>(char[]::new, (char[] array) -> array.length);
+    }
+
+    /**
+     * It returns a pool of arrays of bytes with the default settings.
+     * @return ScratchPool(byte[]): The pool
+     */
+    public static ScratchPool<byte[]> ofBytes() {
+        return new ScratchPool<>(byte[]::new, (byte[] array) -> array.length);
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method rounds a length up to a power of two.
+     * @param length int: The length
+     * @return int: The smallest power of two not less than the length, or
+     * Integer.MAX_VALUE if it is too large
+     */
+    private static int roundUp(int length) {
+        if(length <= 1) {
+            return 1;
+        }
+        int power = Integer.highestOneBit(length - 1) << 1;
+        return (power < 0) ? Integer.MAX_VALUE : power;
+    }
+
+}
@@ -46,6 +46,97 @@ public final class SubstitutionCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(String). It has no
+     * state and can be shared between threads.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The encrypted character of every ASCII character.
+         */
+        private final char[] encryptionTable = new char[128];
+        
+        /**
+         * The decrypted character of every ASCII character.
+         */
+        private final char[] decryptionTable = new char[128];
+        
+        /**
+         * Constructor of the class.
+         * @param key String: The complete key, as returned by completeKey
+         */
+        private Engine(String key) {
+            for(int i = 0; i < 128; i++)
+            {
+                this.encryptionTable[i] = (char) i;
+                this.decryptionTable[i] = (char) i;
+            }
+            int length = SubstitutionCipher.ALPHABET.length();
+            for(int i = 0; i < length; i++)
+            {
+                this.encryptionTable[SubstitutionCipher.ALPHABET.charAt(i)] = key.charAt(i);
+                this.decryptionTable[key.charAt(i)] = SubstitutionCipher.ALPHABET.charAt(i);
+            }
+        }
+        
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Engine.replace(this.encryptionTable, src, srcOffset, dst, dstOffset, length);
+            return state;
+        }
+        
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            Engine.replace(this.decryptionTable, src, srcOffset, dst, dstOffset, length);
+            return state;
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns true, the substitution does not depend on the position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+        
+        /**
+         * This method replaces the ASCII characters of a chunk with the given
+         * table, the other characters are copied.
+         * @param table char[]: The replacement of every ASCII character
+         * @param src char[]: The characters to replace
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         */
+        private static void replace(char[] table, char[] src, int srcOffset, char[] dst, int dstOffset, int length) {
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i];
+                dst[dstOffset + i] = (ch < 128) ? table[ch] : ch;
+            }
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -196,11 +287,12 @@ public final class SubstitutionCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int index;
         char ch;
         for(int i = 0; i < text.length(); i++) 
@@ -214,7 +306,7 @@ public final class SubstitutionCipher implements Cipher {
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, SubstitutionCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -227,11 +319,12 @@ public final class SubstitutionCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int index;
         for(int i = 0; i < text.length(); i++) 
         {
@@ -244,7 +337,7 @@ public final class SubstitutionCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, SubstitutionCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
@@ -266,6 +359,18 @@ public final class SubstitutionCipher implements Cipher {
         return false;
     }
     
+    //PACKAGE STATIC METHODS
+    
+    /**
+     * This method returns the compiled form of the cipher with a complete key,
+     * as returned by completeKey, without checking it.
+     * @param key String: The complete key
+     * @return CipherEngine: The compiled cipher
+     */
+    static CipherEngine restore(String key) {
+        return new Engine(key);
+    }
+    
     //PUBLIC STATIC METHODS
     
     /**
@@ -274,6 +379,7 @@ public final class SubstitutionCipher implements Cipher {
      */
     @SuppressWarnings("empty-statement")
     public static String generateRandomKey() {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         char[] key = SubstitutionCipher.ALPHABET.substring(0, SubstitutionCipher.ALPHABET_LENGTH).toCharArray();
         int first, second;
         char temp;
@@ -288,7 +394,7 @@ public final class SubstitutionCipher implements Cipher {
         while(SubstitutionCipher.checkRipetition(key));
         String skey = new String(key);
         try { skey = SubstitutionCipher.completeKey(skey); } catch(IllegalCipherKeyException ex) {};
-        return skey;
+        return CipherEvents.endGeneration(event, SubstitutionCipher.class, skey);
     }
     
     /**
@@ -381,11 +487,12 @@ public final class SubstitutionCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String encryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         key = SubstitutionCipher.completeKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int index;
         char ch;
         for(int i = 0; i < text.length(); i++) 
@@ -398,7 +505,7 @@ public final class SubstitutionCipher implements Cipher {
                 encryptedText.append(text.charAt(i));
             }
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, SubstitutionCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -412,11 +519,12 @@ public final class SubstitutionCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String decryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         key = SubstitutionCipher.completeKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int index;
         for(int i = 0; i < text.length(); i++) 
         {
@@ -428,7 +536,115 @@ public final class SubstitutionCipher implements Cipher {
                 decryptedText.append(text.charAt(i));
             }
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, SubstitutionCipher.class, false, text, decryptedText.toString());
+    }
+
+    /**
+     * It returns a key which encrypts the given plaintext into the given
+     * ciphertext, in one pass over their letters. The letters which are not
+     * in the plaintext can not be recovered: they are replaced by the letters
+     * not used by the key, in alphabetical order. The texts can be very long
+     * or mapped from files, as with MappedText.
+     * @param plaintext CharSequence: The plaintext
+     * @param ciphertext CharSequence: The plaintext encrypted with a key
+     * @return String: The key, in uppercase
+     * @throws IllegalArgumentException If the ciphertext is not the plaintext
+     * encrypted with a key
+     */
+    public static String recoverKey(CharSequence plaintext, CharSequence ciphertext) {
+        int length = plaintext.length();
+        if(ciphertext.length() != length) {
+            throw new IllegalArgumentException("The texts must have the same length");
+        }
+        char[] key = new char[SubstitutionCipher.ALPHABET_LENGTH];
+        int[] plains = new int[SubstitutionCipher.ALPHABET_LENGTH];
+        for(int i = 0; i < length; i++)
+        {
+            char plain = plaintext.charAt(i), encrypted = ciphertext.charAt(i);
+            int index, letter;
+            if(ASCIICharacterUtils.isUppercaseLetter(plain) && ASCIICharacterUtils.isUppercaseLetter(encrypted)) {
+                index = plain - 'A';
+                letter = encrypted - 'A';
+            }
+            else if(ASCIICharacterUtils.isLowercaseLetter(plain) && ASCIICharacterUtils.isLowercaseLetter(encrypted)) {
+                index = plain - 'a';
+                letter = encrypted - 'a';
+            }
+            else if(!ASCIICharacterUtils.isLetter(plain) && plain == encrypted) {
+                continue;
+            }
+            else {
+                throw new IllegalArgumentException("The character at " + i + " is not encrypted by a substitution");
+            }
+            if(key[index] == 0) {
+                if(plains[letter] != 0) {
+                    throw new IllegalArgumentException("The letter at " + i + " replaces two letters");
+                }
+                key[index] = (char) ('A' + letter);
+                plains[letter] = index + 1;
+            }
+            else if(key[index] != 'A' + letter) {
+                throw new IllegalArgumentException("The letter at " + i + " is replaced by two letters");
+            }
+        }
+        for(int index = 0, letter = 0; index < SubstitutionCipher.ALPHABET_LENGTH; index++)
+        {
+            if(key[index] == 0) {
+                while(plains[letter] != 0)
+                {
+                    letter++;
+                }
+                key[index] = (char) ('A' + letter);
+                plains[letter] = index + 1;
+            }
+        }
+        return new String(key);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(String, String) and
+     * decryptText(String, String) and can be shared between threads.
+     * @param key String: The key, all the letters of the alphabet in lowercase
+     * or in uppercase
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static CipherEngine compile(String key) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        return CipherEvents.endCompilation(event, SubstitutionCipher.class, key, new Engine(SubstitutionCipher.completeKey(key)));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key and
+     * alphabet: the letter at every index of a case is replaced with the
+     * letter of the same case at the index of the letter of the key at the
+     * same index, the other characters are not changed. With Alphabet.ENGLISH
+     * it encrypts as compile(String); the letters which do not change are
+     * allowed.
+     * @param key String: Every letter of the alphabet once, in any case
+     * @param alphabet Alphabet: The alphabet
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static CipherEngine compile(String key, Alphabet alphabet) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        int length = alphabet.getLength();
+        if(key == null || key.length() != length) {
+            throw new IllegalCipherKeyException("The key must have " + length + " letters");
+        }
+        int[] targets = new int[length];
+        boolean[] used = new boolean[length];
+        for(int i = 0; i < length; i++)
+        {
+            int index = alphabet.indexOf(key.charAt(i));
+            if(index == -1 || used[index]) {
+                throw new IllegalCipherKeyException("The key must contain every letter of the alphabet once");
+            }
+            used[index] = true;
+            targets[i] = index;
+        }
+        return CipherEvents.endCompilation(event, SubstitutionCipher.class, key, alphabet.translation(targets));
     }
     
 }
@@ -1,5 +1,6 @@
 package cryptography;
 
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -37,6 +38,101 @@ public final class TranspositionCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(int). It has no
+     * state and can be shared between threads. The whole text must be given in
+     * one chunk.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The number of columns of the table.
+         */
+        private final int key;
+        
+        /**
+         * Constructor of the class.
+         * @param key int: The number of columns of the table, positive
+         */
+        private Engine(int key) {
+            this.key = key;
+        }
+        
+        /**
+         * It encrypts a whole text, reading the table by columns.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            this.transpose(src, srcOffset, dst, dstOffset, length, true);
+            return state;
+        }
+        
+        /**
+         * It decrypts a whole text, writing the table by columns.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            this.transpose(src, srcOffset, dst, dstOffset, length, false);
+            return state;
+        }
+        
+        /**
+         * It returns 0, the whole text is needed to fill the table.
+         */
+        @Override
+        public int getBlockSize() {
+            return 0;
+        }
+        
+        /**
+         * It returns false, the position of a character depends on the length
+         * of the text.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return false;
+        }
+        
+        /**
+         * This method moves the characters of a text between the rows and the
+         * columns of the table, without building it.
+         * @param src char[]: The characters of the text
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The length of the text
+         * @param encryption boolean: True to read the table by columns, false
+         * to write it by columns
+         */
+        private void transpose(char[] src, int srcOffset, char[] dst, int dstOffset, int length, boolean encryption) {
+            if(src == dst) {
+                src = Arrays.copyOfRange(src, srcOffset, srcOffset + length);
+                srcOffset = 0;
+            }
+            if(length <= this.key) {
+                System.arraycopy(src, srcOffset, dst, dstOffset, length);
+                return;
+            }
+            int k = 0;
+            for(int col = 0; col < this.key; col++)
+            {
+                for(int position = col; position < length; position += this.key, k++)
+                {
+                    if(encryption) {
+                        dst[dstOffset + k] = src[srcOffset + position];
+                    }
+                    else {
+                        dst[dstOffset + position] = src[srcOffset + k];
+                    }
+                }
+            }
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -178,11 +274,12 @@ public final class TranspositionCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int nRow;
         if(text.length() >= this.key) {
             nRow = text.length() / this.key;
@@ -210,7 +307,7 @@ public final class TranspositionCipher implements Cipher {
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, TranspositionCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -224,11 +321,12 @@ public final class TranspositionCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int nCol;
         if(text.length() >= this.key) {
             nCol = text.length() / this.key;
@@ -256,7 +354,7 @@ public final class TranspositionCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, TranspositionCipher.class, false, text, this.lastDecryptedText);
     }
     
     //STATIC METHODS
@@ -272,10 +370,11 @@ public final class TranspositionCipher implements Cipher {
      * null or is an empty String
      */
     public static String encryptText(int key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int nRow;
         if(text.length() >= key) {
             nRow = text.length() / key;
@@ -302,7 +401,7 @@ public final class TranspositionCipher implements Cipher {
                 }
             }
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, TranspositionCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -316,10 +415,11 @@ public final class TranspositionCipher implements Cipher {
      * null or is an empty String
      */
     public static String decryptText(int key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int nCol;
         if(text.length() >= key) {
             nCol = text.length() / key;
@@ -346,7 +446,23 @@ public final class TranspositionCipher implements Cipher {
                 }
             }
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, TranspositionCipher.class, false, text, decryptedText.toString());
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(int, String) and
+     * decryptText(int, String) and can be shared between threads.
+     * @param key int: The key, it must be positive
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not positive
+     */
+    public static CipherEngine compile(int key) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        if(key < 1) {
+            throw new IllegalCipherKeyException("The key must be positive");
+        }
+        return CipherEvents.endCompilation(event, TranspositionCipher.class, key, new Engine(key));
     }
     
 }
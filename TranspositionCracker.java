@@ -0,0 +1,254 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The class to find the key of a text encrypted with the Transposition Cipher
+ * Algorithm by trying all the widths in a range. The widths are evaluated in
+ * parallel and the decrypted text is never built: the position in the
+ * encrypted text of every decrypted character is computed, and only a sample of
+ * the bigrams is read and scored with the english bigram frequencies.
+ */
+public final class TranspositionCracker {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of letters that the alphabet contains.
+     */
+    private static final byte ALPHABET_LENGTH = 26;
+
+    /**
+     * The default number of bigrams sampled for each width.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+    /**
+     * The most frequent english bigrams with their frequency in percent.
+     */
+    private static final String COMMON_BIGRAMS = "TH3.56 HE3.07 IN2.43 ER2.05 "
+            + "AN1.99 RE1.85 ON1.76 AT1.49 EN1.45 ND1.35 TI1.34 ES1.34 OR1.28 "
+            + "TE1.20 OF1.17 ED1.17 IS1.13 IT1.12 AL1.09 AR1.07 ST1.05 TO1.04 "
+            + "NT1.04 NG0.95 SE0.93 HA0.93 AS0.87 OU0.87 IO0.83 LE0.83 VE0.83 "
+            + "CO0.79 ME0.79 DE0.76 HI0.76 RI0.73 RO0.73 IC0.70 NE0.69 EA0.69 "
+            + "RA0.69 CE0.65 LI0.62 CH0.60 LL0.58 BE0.58 MA0.57 SI0.55 OM0.55 "
+            + "UR0.54";
+
+    /**
+     * The log10 probability given to a bigram which is not in COMMON_BIGRAMS.
+     */
+    private static final float RARE_BIGRAM_SCORE = -3.5f;
+
+    /**
+     * The log10 probability of every bigram of letters, indexed by
+     * first * ALPHABET_LENGTH + second.
+     */
+    private static final float[] BIGRAM_SCORES = TranspositionCracker.buildBigramScores();
+
+    //NESTED CLASSES
+
+    /**
+     * A width tried by the cracker with its score. The higher the score, the
+     * more the decrypted text looks like english.
+     */
+    public static final class Candidate {
+
+        /**
+         * The width, which is the key of the Transposition Cipher.
+         */
+        private final int key;
+
+        /**
+         * The mean log10 probability of the sampled bigrams.
+         */
+        private final double score;
+
+        /**
+         * Constructor of the class.
+         * @param key int: The width tried
+         * @param score double: The score of the width
+         */
+        Candidate(int key, double score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        /**
+         * Getter method of the field key.
+         * @return int: the class field key
+         */
+        public int getKey() {
+            return this.key;
+        }
+
+        /**
+         * Getter method of the field score.
+         * @return double: the class field score, negative infinity if the
+         * sample did not contain any bigram of letters
+         */
+        public double getScore() {
+            return this.score;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Private constructor, the class contains only static methods.
+     */
+    private TranspositionCracker() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method builds the table of the bigrams scores from COMMON_BIGRAMS.
+     * @return float[]: The table of the scores
+     */
+    private static float[] buildBigramScores() {
+        float[] scores = new float[TranspositionCracker.ALPHABET_LENGTH * TranspositionCracker.ALPHABET_LENGTH];
+        for(int i = 0; i < scores.length; i++)
+        {
+            scores[i] = TranspositionCracker.RARE_BIGRAM_SCORE;
+        }
+        for(String bigram : TranspositionCracker.COMMON_BIGRAMS.split(" "))
+        {
+            int index = (bigram.charAt(0) - 'A') * TranspositionCracker.ALPHABET_LENGTH + (bigram.charAt(1) - 'A');
+            scores[index] = (float) Math.log10(Double.parseDouble(bigram.substring(2)) / 100);
+        }
+        return scores;
+    }
+
+    /**
+     * This method returns the index of an ASCII letter in the alphabet,
+     * ignoring the case.
+     * @param ch char: The character
+     * @return int: The index of the letter, -1 if the character is not an
+     * ASCII letter
+     */
+    private static int letterIndex(char ch) {
+        if(ASCIICharacterUtils.isUppercaseLetter(ch)) {
+            return ch - 'A';
+        }
+        else if(ASCIICharacterUtils.isLowercaseLetter(ch)) {
+            return ch - 'a';
+        }
+        return -1;
+    }
+
+    /**
+     * This method returns the position in the encrypted text of a character of
+     * the decrypted text. It is the same mapping used by
+     * TranspositionCipher.decryptText, without building the table.
+     * @param position int: The position of the character in the decrypted text
+     * @param key int: The width of the table
+     * @param nRow int: The number of rows of the table
+     * @param fullColumns int: The number of columns whose length is nRow, the
+     * others have nRow - 1 characters
+     * @return int: The position of the character in the encrypted text
+     */
+    private static int encryptedPosition(int position, int key, int nRow, int fullColumns) {
+        int row = position / key;
+        int col = position % key;
+        int columnStart = (col < fullColumns) ? col * nRow : fullColumns * nRow + (col - fullColumns) * (nRow - 1);
+        return columnStart + row;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns the score of the text decrypted with the given key, without
+     * decrypting it. The score is the mean log10 probability of a sample of
+     * bigrams of letters of the decrypted text.
+     * @param text CharSequence: The encrypted text, for example a String or a
+     * CharBuffer of a mapped file
+     * @param key int: The key that you want to try. It must be positive
+     * @param sampleSize int: The maximum number of bigrams read. It must be
+     * positive
+     * @return double: The score, negative infinity if no bigram of letters was
+     * found
+     */
+    public static double score(CharSequence text, int key, int sampleSize) {
+        if(key < 1) {
+            throw new IllegalArgumentException("The key must be positive");
+        }
+        if(sampleSize < 1) {
+            throw new IllegalArgumentException("The sample size must be positive");
+        }
+        int length = text.length();
+        if(length < 2) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int nRow = (length >= key) ? (length + key - 1) / key : 1;
+        int fullColumns = length - (nRow - 1) * key;
+        long pairs = length - 1;
+        long samples = Math.min(pairs, sampleSize);
+        double total = 0;
+        int counted = 0;
+        for(long i = 0; i < samples; i++)
+        {
+            int position = (int) (i * pairs / samples);
+            int first = TranspositionCracker.letterIndex(text.charAt(TranspositionCracker.encryptedPosition(position, key, nRow, fullColumns)));
+            int second = TranspositionCracker.letterIndex(text.charAt(TranspositionCracker.encryptedPosition(position + 1, key, nRow, fullColumns)));
+            if(first != -1 && second != -1) {
+                total += TranspositionCracker.BIGRAM_SCORES[first * TranspositionCracker.ALPHABET_LENGTH + second];
+                counted++;
+            }
+        }
+        return (counted == 0) ? Double.NEGATIVE_INFINITY : total / counted;
+    }
+
+    /**
+     * It tries all the keys between 2 and maxKey and returns the best ones,
+     * sorted from the most probable.
+     * @param text CharSequence: The encrypted text
+     * @param maxKey int: The largest key tried
+     * @param top int: The number of candidates returned. It must be positive
+     * @return List(Candidate): The best candidates, empty if the text is null
+     * or shorter than two characters
+     */
+    public static List<Candidate> crack(CharSequence text, int maxKey, int top) {
+        return TranspositionCracker.crack(text, 2, maxKey, top, TranspositionCracker.DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * It tries all the keys between minKey and maxKey in parallel and returns
+     * the best ones, sorted from the most probable. Keys as large as the text
+     * length or larger are not tried because they do not change the text.
+     * @param text CharSequence: The encrypted text
+     * @param minKey int: The smallest key tried. It must be positive
+     * @param maxKey int: The largest key tried
+     * @param top int: The number of candidates returned. It must be positive
+     * @param sampleSize int: The number of bigrams read for every key. It must
+     * be positive
+     * @return List(Candidate): The best candidates, empty if the text is null
+     * or shorter than two characters
+     */
+    public static List<Candidate> crack(CharSequence text, int minKey, int maxKey, int top, int sampleSize) {
+        if(minKey < 1) {
+            throw new IllegalArgumentException("The keys must be positive");
+        }
+        if(top < 1) {
+            throw new IllegalArgumentException("The number of candidates must be positive");
+        }
+        if(sampleSize < 1) {
+            throw new IllegalArgumentException("The sample size must be positive");
+        }
+        if(text == null || text.length() < 2) {
+            return new ArrayList<>();
+        }
+        int lastKey = Math.min(maxKey, text.length() - 1);
+        return IntStream.rangeClosed(minKey, lastKey)
+                .parallel()
+                .mapToObj(key -> new Candidate(key, TranspositionCracker.score(text, key, sampleSize)))
+                .sorted(Comparator.comparingDouble(Candidate::getScore).reversed().thenComparingInt(Candidate::getKey))
+                .limit(top)
+                .collect(Collectors.toList());
+    }
+
+}
@@ -9,6 +9,24 @@ import java.util.Random;
  */
 public final class UnicodeCaesarCipher implements Cipher {
     
+    //CONSTANT FIELDS
+    
+    /**
+     * The number of surrogate code points.
+     */
+    private static final int SURROGATE_COUNT = Character.MAX_SURROGATE - Character.MIN_SURROGATE + 1;
+    
+    /**
+     * The number of Unicode scalar values, the code points which are not
+     * surrogates.
+     */
+    private static final int SCALAR_COUNT = Character.MAX_CODE_POINT + 1 - UnicodeCaesarCipher.SURROGATE_COUNT;
+    
+    /**
+     * The number of scalar values of the Basic Multilingual Plane.
+     */
+    private static final int BMP_SCALAR_COUNT = Character.MIN_SUPPLEMENTARY_CODE_POINT - UnicodeCaesarCipher.SURROGATE_COUNT;
+    
     //FIELDS
     
     /**
@@ -29,6 +47,69 @@ public final class UnicodeCaesarCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(short). It has no
+     * state and can be shared between threads.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The key of the cipher.
+         */
+        private final short key;
+        
+        /**
+         * Constructor of the class.
+         * @param key short: The key of the cipher
+         */
+        private Engine(short key) {
+            this.key = key;
+        }
+        
+        /**
+         * It encrypts a chunk of a text. All characters are encrypted.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            for(int i = 0; i < length; i++)
+            {
+                dst[dstOffset + i] = (char) (src[srcOffset + i] + this.key);
+            }
+            return state;
+        }
+        
+        /**
+         * It decrypts a chunk of a text. All characters are decrypted.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            for(int i = 0; i < length; i++)
+            {
+                dst[dstOffset + i] = (char) (src[srcOffset + i] - this.key);
+            }
+            return state;
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns true, the shift does not depend on the position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -160,18 +241,13 @@ public final class UnicodeCaesarCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
-        int length = text.length();
-        for(int i = 0; i < length; i++) 
-        {
-            encryptedText.append((char) (text.charAt(i) + this.key));
-        }
-        this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        this.lastEncryptedText = UnicodeCaesarCipher.shiftChars(text, this.key);
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -184,18 +260,134 @@ public final class UnicodeCaesarCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        this.lastDecryptedText = UnicodeCaesarCipher.shiftChars(text, -this.key);
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, false, text, this.lastDecryptedText);
+    }
+    
+    /**
+     * It returns the given text encrypted with this.key key as a sequence of
+     * code points, so that the surrogate pairs are kept: every Unicode scalar
+     * value is shifted among the scalar values, skipping the surrogates, and
+     * the unpaired surrogates are not changed. The result can be longer or
+     * shorter than the text. It is also assigned to this.lastEncryptedText.
+     * @param text String: The text that you want to encrypt. If it is null or
+     * empty then the encrypted text will be empty
+     * @return String: The encrypted text, an empty String if the text equals
+     * null or is an empty String
+     */
+    public String encryptCodePoints(String text) {
+        this.lastEncryptedText = UnicodeCaesarCipher.encryptCodePoints(this.key, text);
+        return this.lastEncryptedText;
+    }
+    
+    /**
+     * It returns the given text, encrypted by encryptCodePoints, decrypted
+     * with this.key key. The result is also assigned to
+     * this.lastDecryptedText.
+     * @param text String: The text that you want to decrypt. If it is null or
+     * empty then the decrypted text will be empty
+     * @return String: The decrypted text, an empty String if the text equals
+     * null or is an empty String
+     */
+    public String decryptCodePoints(String text) {
+        this.lastDecryptedText = UnicodeCaesarCipher.decryptCodePoints(this.key, text);
+        return this.lastDecryptedText;
+    }
+    
+    //PRIVATE STATIC METHODS
+    
+    /**
+     * This method shifts every character of a text, writing them in an array
+     * as long as the text.
+     * @param text String: The text, not empty
+     * @param shift int: The shift of every character
+     * @return String: The shifted text
+     */
+    private static String shiftChars(String text, int shift) {
+        char[] chars = text.toCharArray();
+        for(int i = 0; i < chars.length; i++)
+        {
+            chars[i] += shift;
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * This method shifts every scalar value of a text among the scalar
+     * values, leaving the unpaired surrogates. While the characters are not
+     * surrogates and remain in the Basic Multilingual Plane they are written
+     * in an array as long as the text; from the first one which is not, the
+     * code points of the text are converted to an int array, shifted and
+     * converted back.
+     * @param text String: The text, not empty
+     * @param shift int: The shift, from 0 to SCALAR_COUNT - 1
+     * @return String: The shifted text
+     */
+    private static String shiftCodePoints(String text, int shift) {
         int length = text.length();
-        for(int i = 0; i < length; i++) 
+        char[] chars = new char[length];
+        int i = 0;
+        for(; i < length; i++)
         {
-            decryptedText.append((char) (text.charAt(i) - this.key));
+            char ch = text.charAt(i);
+            if(Character.isSurrogate(ch)) {
+                break;
+            }
+            int index = UnicodeCaesarCipher.indexOf(ch) + shift;
+            if(index >= UnicodeCaesarCipher.SCALAR_COUNT) {
+                index -= UnicodeCaesarCipher.SCALAR_COUNT;
+            }
+            if(index >= UnicodeCaesarCipher.BMP_SCALAR_COUNT) {
+                break;
+            }
+            chars[i] = (char) UnicodeCaesarCipher.scalarAt(index);
         }
-        this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        if(i == length) {
+            return new String(chars);
+        }
+        int[] codePoints = new int[length];
+        int count = 0;
+        for(i = 0; i < length; )
+        {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if(codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                codePoints[count++] = codePoint;
+            }
+            else {
+                int index = UnicodeCaesarCipher.indexOf(codePoint) + shift;
+                if(index >= UnicodeCaesarCipher.SCALAR_COUNT) {
+                    index -= UnicodeCaesarCipher.SCALAR_COUNT;
+                }
+                codePoints[count++] = UnicodeCaesarCipher.scalarAt(index);
+            }
+        }
+        return new String(codePoints, 0, count);
+    }
+    
+    /**
+     * This method returns the position of a scalar value among the scalar
+     * values.
+     * @param codePoint int: The scalar value
+     * @return int: The position, from 0 to SCALAR_COUNT - 1
+     */
+    private static int indexOf(int codePoint) {
+        return (codePoint < Character.MIN_SURROGATE) ? codePoint : codePoint - UnicodeCaesarCipher.SURROGATE_COUNT;
+    }
+    
+    /**
+     * This method returns the scalar value at a position among the scalar
+     * values.
+     * @param index int: The position, from 0 to SCALAR_COUNT - 1
+     * @return int: The scalar value
+     */
+    private static int scalarAt(int index) {
+        return (index < Character.MIN_SURROGATE) ? index : index + UnicodeCaesarCipher.SURROGATE_COUNT;
     }
     
     //STATIC METHODS
@@ -211,16 +403,11 @@ public final class UnicodeCaesarCipher implements Cipher {
      * null or is an empty String
      */
     public static String encryptText(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
-        int length = text.length();
-        for(int i = 0; i < length; i++) 
-        {
-            encryptedText.append((char) (text.charAt(i) + key));
-        }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, true, text, UnicodeCaesarCipher.shiftChars(text, key));
     }
     
     /**
@@ -234,16 +421,64 @@ public final class UnicodeCaesarCipher implements Cipher {
      * null or is an empty String
      */
     public static String decryptText(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
-        int length = text.length();
-        for(int i = 0; i < length; i++) 
-        {
-            decryptedText.append((char) (text.charAt(i) - key));
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, false, text, UnicodeCaesarCipher.shiftChars(text, -key));
+    }
+    
+    /**
+     * It returns the given text encrypted with the given key as a sequence of
+     * code points, so that the surrogate pairs are kept: every Unicode scalar
+     * value is shifted by the key among the scalar values, skipping the
+     * surrogates, and the unpaired surrogates are not changed. The result can
+     * be longer or shorter than the text.
+     * @param key short: It can be any short value, either positive or negative,
+     * if it is zero then the text does not change
+     * @param text String: The text that you want to encrypt. If it is null or
+     * empty then the encrypted text will be empty
+     * @return String: The encrypted text, an empty String in case text equals
+     * null or is an empty String
+     */
+    public static String encryptCodePoints(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
         }
-        return decryptedText.toString();
+        String encryptedText = UnicodeCaesarCipher.shiftCodePoints(text, Math.floorMod(key, UnicodeCaesarCipher.SCALAR_COUNT));
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, true, text, encryptedText);
+    }
+    
+    /**
+     * It returns the given text, encrypted by encryptCodePoints(short, String),
+     * decrypted with the given key.
+     * @param key short: It can be any short value, either positive or negative,
+     * if it is zero then the text does not change
+     * @param text String: The text that you want to decrypt. If it is null or
+     * empty then the decrypted text will be empty
+     * @return String: The decrypted text, an empty String in case text equals
+     * null or is an empty String
+     */
+    public static String decryptCodePoints(short key, String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        String decryptedText = UnicodeCaesarCipher.shiftCodePoints(text, Math.floorMod(-key, UnicodeCaesarCipher.SCALAR_COUNT));
+        return CipherEvents.endOperation(event, UnicodeCaesarCipher.class, false, text, decryptedText);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(short, String) and
+     * decryptText(short, String) and can be shared between threads.
+     * @param key short: It can be any short value, either positive or negative
+     * @return CipherEngine: The compiled cipher
+     */
+    public static CipherEngine compile(short key) {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        return CipherEvents.endCompilation(event, UnicodeCaesarCipher.class, key, new Engine(key));
     }
     
 }
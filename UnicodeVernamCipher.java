@@ -1,7 +1,10 @@
 package cryptography;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The class to encrypt/decrypt with the Vernam Cipher Algorithm, also 
@@ -156,12 +159,13 @@ public final class UnicodeVernamCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
         this.lastKey = UnicodeVernamCipher.generateRandomKey(text.length(), this.usedKeys);
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = this.lastKey.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -171,7 +175,7 @@ public final class UnicodeVernamCipher implements Cipher {
         }
         this.usedKeys.add(this.lastKey);
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -184,11 +188,12 @@ public final class UnicodeVernamCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = this.lastKey.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -197,7 +202,7 @@ public final class UnicodeVernamCipher implements Cipher {
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, false, text, this.lastDecryptedText);
     }
     
     /**
@@ -212,12 +217,13 @@ public final class UnicodeVernamCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public String decryptText(String text, String key) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
         UnicodeVernamCipher.checkKey(key, this.usedKeys);
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -226,31 +232,55 @@ public final class UnicodeVernamCipher implements Cipher {
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
     
+    /**
+     * This method encrypts or decrypts every character of a text with the
+     * character of the key at the same index, as encryptText and decryptText
+     * do.
+     * @param text String: The text
+     * @param key String: The key, at least as long as the text
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @return String: The text encrypted or decrypted
+     */
+    private static String shift(String text, String key, boolean encryption) {
+        int length = text.length();
+        char[] chars = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            int shift = key.charAt(i) - 'a';
+            chars[i] = (char) (encryption ? text.charAt(i) + shift : text.charAt(i) - shift);
+        }
+        return new String(chars);
+    }
+    
     /**
      * This method generate a random key.
      * @param length int: The length of the key
-     * @param usedKeys ArrayList(String): The keys already used to encrypt.
+     * @param usedKeys Collection(String): The keys already used to encrypt.
      * @return String: The generated random key
      */
-    private static String generateRandomKey(int length, ArrayList<String> usedKeys) {
+    private static String generateRandomKey(int length, Collection<String> usedKeys) {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         if(length < 1) {
             throw new IllegalArgumentException("The length must be positive");
         }
-        StringBuilder key = new StringBuilder();
+        Random random = new Random();
+        char[] chars = new char[length];
+        String key;
         do
         {
             for(int i = 0; i < length; i++) 
             {
-                key.append((char) new Random().nextInt());
+                chars[i] = (char) random.nextInt();
             }
+            key = new String(chars);
         }
-        while(usedKeys.contains(key.toString()));
-        return key.toString();
+        while(CipherEvents.isUsed(UnicodeVernamCipher.class, usedKeys, key));
+        return CipherEvents.endGeneration(event, UnicodeVernamCipher.class, key);
     }
     
     /**
@@ -264,7 +294,7 @@ public final class UnicodeVernamCipher implements Cipher {
         if(key == null) {
             throw new IllegalCipherKeyException("The key can not be null");
         }
-        if(usedKeys.contains(key)) {
+        if(CipherEvents.isUsed(UnicodeVernamCipher.class, usedKeys, key)) {
             throw new IllegalCipherKeyException("The key has been already used");
         }
     }
@@ -281,11 +311,12 @@ public final class UnicodeVernamCipher implements Cipher {
      * insetead of the text if the text equals null or is an empty String
      */
     public static String[] encryptText(String text, ArrayList<String> usedKeys) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return new String[]{ "", "" };
         }
         String key = UnicodeVernamCipher.generateRandomKey(text.length(), usedKeys);
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -293,7 +324,7 @@ public final class UnicodeVernamCipher implements Cipher {
             encryptedText.append((char) (text.charAt(i) + key.charAt(j) - 'a'));
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
-        return new String[]{ encryptedText.toString(), key };
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, true, text, new String[]{ encryptedText.toString(), key });
     }
     
     /**
@@ -309,11 +340,12 @@ public final class UnicodeVernamCipher implements Cipher {
      * null or is an empty String
      */
     public static String decryptText(String key, String text, ArrayList<String> usedKeys) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
         UnicodeVernamCipher.checkKey(key, usedKeys);
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -321,7 +353,105 @@ public final class UnicodeVernamCipher implements Cipher {
             decryptedText.append((char) (text.charAt(i) - key.charAt(j) + 'a'));
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, false, text, decryptedText.toString());
+    }
+    
+    /**
+     * It returns the given text encrypted with a generated key, which is
+     * claimed in the given set of used pads, as encryptText(String,
+     * ArrayList) does. The set can be shared by many threads: every key is
+     * returned to only one of them.
+     * @param text String: The text that you want to encrypt. If it is null or
+     * empty then the encrypted text will be empty.
+     * @param usedPads UsedPadSet: The pads already used, shared
+     * @return String[]: The encrypted text and the key used, two empty Strings
+     * if the text equals null or is an empty String
+     * @throws IllegalStateException If no unused key can be generated
+     */
+    public static String[] encryptText(String text, UsedPadSet usedPads) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return new String[]{ "", "" };
+        }
+        String key = usedPads.claimRandom(() -> UnicodeVernamCipher.generateRandomKey(text.length(), Collections.emptyList()));
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, true, text, new String[]{ UnicodeVernamCipher.shift(text, key, true), key });
+    }
+    
+    /**
+     * It returns the given text decrypted with the given key, which is
+     * rejected if it is in the given set of used pads, as decryptText(String,
+     * String, ArrayList) rejects the keys of the list. The key is not added
+     * to the set, which can be shared by many threads.
+     * @param key String: The key that you want to use to decrypt the text. It
+     * must have the same length of the text and never been used
+     * @param text String: The text that you want to decrypt. If it is null or
+     * empty then the decrypted text will be empty.
+     * @param usedPads UsedPadSet: The pads already used, shared
+     * @return String: The decrypted text, an empty String if the text equals
+     * null or is an empty String
+     * @throws IllegalCipherKeyException If the key is not valid or has been
+     * already used
+     */
+    public static String decryptText(String key, String text, UsedPadSet usedPads) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        if(key == null || key.length() < text.length()) {
+            throw new IllegalCipherKeyException("The key must be as long as the text");
+        }
+        if(usedPads.isUsed(key)) {
+            throw new IllegalCipherKeyException("The key has been already used");
+        }
+        return CipherEvents.endOperation(event, UnicodeVernamCipher.class, false, text, UnicodeVernamCipher.shift(text, key, false));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given pad, which
+     * decrypts as decryptText(String, String, ArrayList) and encrypts with the
+     * same pad. The pad is applied as UnicodeVigenereCipher.compile(String)
+     * applies its key. It can be shared between threads. The pad is not added
+     * to the used keys: it is up to the caller not to use it twice.
+     * @param key String: The pad, not empty
+     * @param usedKeys ArrayList(String): The already used keys
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the pad is null, empty or has been
+     * already used
+     */
+    public static CipherEngine compile(String key, ArrayList<String> usedKeys) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        UnicodeVernamCipher.checkKey(key, usedKeys);
+        return CipherEvents.endCompilation(event, UnicodeVernamCipher.class, key, UnicodeVigenereCipher.compile(key));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher whose pad is generated from
+     * the given seed, in blocks, as needed: the pad is never kept whole. It
+     * can be shared between threads. The seed is not added to the used keys:
+     * it is up to the caller not to use it twice.
+     * @param seed byte[]: The seed, VernamKeystream.SEED_LENGTH bytes, for
+     * example from VernamKeystream.generateSeed()
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the seed is not valid
+     */
+    public static CipherEngine compileKeystream(byte[] seed) throws IllegalCipherKeyException {
+        return UnicodeVernamCipher.compileKeystream(seed, null);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher whose pad is generated from
+     * the given seed, as compileKeystream(byte[]) does, which splits the
+     * chunks longer than VernamKeystream.PARALLEL_THRESHOLD between the
+     * threads of the given pool.
+     * @param seed byte[]: The seed, VernamKeystream.SEED_LENGTH bytes
+     * @param pool ForkJoinPool: The pool, or null to encrypt in the calling
+     * thread
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the seed is not valid
+     */
+    public static CipherEngine compileKeystream(byte[] seed, ForkJoinPool pool) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        return CipherEvents.endCompilation(event, UnicodeVernamCipher.class, seed, new VernamKeystream(seed, true, pool));
     }
     
 }
@@ -1,6 +1,8 @@
 package cryptography;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The class to encrypt/decrypt with the Vigenere Cipher Algorithm, extended to
@@ -9,6 +11,14 @@ import java.util.Random;
  */
 public final class UnicodeVigenereCipher implements Cipher {
     
+    //CONSTANT FIELDS
+    
+    /**
+     * The number of characters under which a chunk is not split between the
+     * threads of a ForkJoinPool.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+    
     //FIELDS
     
     /**
@@ -29,6 +39,186 @@ public final class UnicodeVigenereCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(String) and
+     * compile(String, ForkJoinPool). It has no state and can be shared between
+     * threads. The state of a text is the position in the key of its next
+     * character, so the position of the character at offset i of a chunk is
+     * (state + i) % key length and a chunk can be split anywhere.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The shift of every character of the key, the character minus 'a'.
+         */
+        private final int[] shifts;
+        
+        /**
+         * The pool which encrypts the long chunks in parallel, null to
+         * encrypt them in the calling thread.
+         */
+        private final ForkJoinPool pool;
+        
+        /**
+         * Constructor of the class.
+         * @param shifts int[]: The shift of every character of the key
+         * @param pool ForkJoinPool: The pool of the long chunks, or null
+         */
+        private Engine(int[] shifts, ForkJoinPool pool) {
+            this.shifts = shifts;
+            this.pool = pool;
+        }
+        
+        /**
+         * It encrypts a chunk of a text. All characters are encrypted.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shift(src, srcOffset, dst, dstOffset, length, (int) state, true);
+        }
+        
+        /**
+         * It decrypts a chunk of a text. All characters are decrypted.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shift(src, srcOffset, dst, dstOffset, length, (int) state, false);
+        }
+        
+        /**
+         * This method shifts a chunk, splitting it between the threads of the
+         * pool if it is longer than PARALLEL_THRESHOLD.
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character to shift
+         * @param dst char[]: The array where the characters are written
+         * @param dstOffset int: The index of dst of the first character
+         * @param length int: The number of characters
+         * @param position int: The position in the key of the first character
+         * @param encryption boolean: True to encrypt, false to decrypt
+         * @return long: The position in the key of the next character
+         */
+        private long shift(char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position, boolean encryption) {
+            if(this.pool == null || length <= UnicodeVigenereCipher.PARALLEL_THRESHOLD) {
+                UnicodeVigenereCipher.shift(this.shifts, src, srcOffset, dst, dstOffset, length, position, encryption);
+            }
+            else {
+                this.pool.invoke(new Shift(this.shifts, src, srcOffset, dst, dstOffset, length, position, encryption));
+            }
+            return (int) ((position + (long) length) % this.shifts.length);
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns false, the shift depends on the position.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return false;
+        }
+        
+    }
+    
+    /**
+     * The task which shifts a part of a chunk, splitting it in halves until
+     * they are not longer than PARALLEL_THRESHOLD. Every half writes its own
+     * part of the same array.
+     */
+    private static final class Shift extends RecursiveAction {
+        
+        /**
+         * The serial version of the class.
+         */
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * The shift of every character of the key.
+         */
+        private final int[] shifts;
+        
+        /**
+         * The characters to shift.
+         */
+        private final char[] src;
+        
+        /**
+         * The index of the first character to shift.
+         */
+        private final int srcOffset;
+        
+        /**
+         * The array where the characters are written.
+         */
+        private final char[] dst;
+        
+        /**
+         * The index of dst of the first character.
+         */
+        private final int dstOffset;
+        
+        /**
+         * The number of characters.
+         */
+        private final int length;
+        
+        /**
+         * The position in the key of the first character.
+         */
+        private final int position;
+        
+        /**
+         * True to encrypt, false to decrypt.
+         */
+        private final boolean encryption;
+        
+        /**
+         * Constructor of the class.
+         * @param shifts int[]: The shift of every character of the key
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character to shift
+         * @param dst char[]: The array where the characters are written
+         * @param dstOffset int: The index of dst of the first character
+         * @param length int: The number of characters
+         * @param position int: The position in the key of the first character
+         * @param encryption boolean: True to encrypt, false to decrypt
+         */
+        private Shift(int[] shifts, char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position, boolean encryption) {
+            this.shifts = shifts;
+            this.src = src;
+            this.srcOffset = srcOffset;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.length = length;
+            this.position = position;
+            this.encryption = encryption;
+        }
+        
+        /**
+         * It shifts the characters, or the two halves in parallel.
+         */
+        @Override
+        protected void compute() {
+            if(this.length <= UnicodeVigenereCipher.PARALLEL_THRESHOLD) {
+                UnicodeVigenereCipher.shift(this.shifts, this.src, this.srcOffset, this.dst, this.dstOffset, this.length, this.position, this.encryption);
+                return;
+            }
+            int half = this.length >>> 1;
+            int position = (int) ((this.position + (long) half) % this.shifts.length);
+            RecursiveAction.invokeAll(
+                    new Shift(this.shifts, this.src, this.srcOffset, this.dst, this.dstOffset, half, this.position, this.encryption),
+                    new Shift(this.shifts, this.src, this.srcOffset + half, this.dst, this.dstOffset + half, this.length - half, position, this.encryption));
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -189,13 +379,14 @@ public final class UnicodeVigenereCipher implements Cipher {
      * @return String: The generated random key
      */
     private String generateRandomKey() {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         StringBuilder key = new StringBuilder();
         int length = new Random().nextInt(100);
         for(int i = 0; i < length; i++) 
         {
             key.append((char) new Random().nextInt());
         }
-        return key.toString();
+        return CipherEvents.endGeneration(event, UnicodeVigenereCipher.class, key.toString());
     }
     
     /**
@@ -204,6 +395,7 @@ public final class UnicodeVigenereCipher implements Cipher {
      * @return String: The generated random key
      */
     private String generateRandomKey(int length) {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         if(length < 1) {
             throw new IllegalArgumentException("The length must be positive");
         }
@@ -212,7 +404,7 @@ public final class UnicodeVigenereCipher implements Cipher {
         {
             key.append((char) new Random().nextInt());
         }
-        return key.toString();
+        return CipherEvents.endGeneration(event, UnicodeVigenereCipher.class, key.toString());
     }
     
     //PUBLIC METHODS
@@ -227,11 +419,12 @@ public final class UnicodeVigenereCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = this.key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -240,7 +433,7 @@ public final class UnicodeVigenereCipher implements Cipher {
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, UnicodeVigenereCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -253,11 +446,12 @@ public final class UnicodeVigenereCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = this.key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -266,7 +460,7 @@ public final class UnicodeVigenereCipher implements Cipher {
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, UnicodeVigenereCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
@@ -282,6 +476,40 @@ public final class UnicodeVigenereCipher implements Cipher {
         }
     }
     
+    /**
+     * This method shifts the characters of a chunk, starting from a position
+     * in the key.
+     * @param shifts int[]: The shift of every character of the key
+     * @param src char[]: The characters to shift
+     * @param srcOffset int: The index of the first character to shift
+     * @param dst char[]: The array where the characters are written
+     * @param dstOffset int: The index of dst of the first character
+     * @param length int: The number of characters
+     * @param position int: The position in the key of the first character
+     * @param encryption boolean: True to encrypt, false to decrypt
+     */
+    private static void shift(int[] shifts, char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position, boolean encryption) {
+        int keyLength = shifts.length, sign = encryption ? 1 : -1;
+        for(int i = 0; i < length; i++)
+        {
+            dst[dstOffset + i] = (char) (src[srcOffset + i] + sign * shifts[position]);
+            position = (position == keyLength - 1) ? 0 : position + 1;
+        }
+    }
+    
+    //PACKAGE STATIC METHODS
+    
+    /**
+     * This method returns the compiled form of the cipher with the shifts of
+     * a key, every character minus 'a', without checking them.
+     * @param shifts int[]: The shift of every character of the key, not
+     * empty
+     * @return CipherEngine: The compiled cipher
+     */
+    static CipherEngine restore(int[] shifts) {
+        return new Engine(shifts, null);
+    }
+    
     //PUBLIC STATIC METHODS
     
     /**
@@ -295,11 +523,12 @@ public final class UnicodeVigenereCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is null
      */
     public static String encryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         UnicodeVigenereCipher.checkKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -307,7 +536,7 @@ public final class UnicodeVigenereCipher implements Cipher {
             encryptedText.append((char) (text.charAt(i) + key.charAt(j) - 'a'));
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, UnicodeVigenereCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -321,11 +550,12 @@ public final class UnicodeVigenereCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is null
      */
     public static String decryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         UnicodeVigenereCipher.checkKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -333,7 +563,46 @@ public final class UnicodeVigenereCipher implements Cipher {
             decryptedText.append((char) (text.charAt(i) - key.charAt(j) + 'a'));
             j = (j == keyLength - 1) ? 0 : j + 1;
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, UnicodeVigenereCipher.class, false, text, decryptedText.toString());
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(String, String) and
+     * decryptText(String, String) and can be shared between threads.
+     * @param key String: It can be any Unicode String value, but not empty
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is null or empty
+     */
+    public static CipherEngine compile(String key) throws IllegalCipherKeyException {
+        return UnicodeVigenereCipher.compile(key, null);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, as
+     * compile(String) does, which splits the chunks longer than
+     * PARALLEL_THRESHOLD between the threads of the given pool. The parts are
+     * written in the destination array, so the encryption of a text allocates
+     * only its characters.
+     * @param key String: It can be any Unicode String value, but not empty
+     * @param pool ForkJoinPool: The pool, for example ForkJoinPool.commonPool(),
+     * or null to encrypt in the calling thread
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is null or empty
+     */
+    public static CipherEngine compile(String key, ForkJoinPool pool) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        UnicodeVigenereCipher.checkKey(key);
+        if(key.isEmpty()) {
+            throw new IllegalCipherKeyException("The key must not be empty");
+        }
+        int length = key.length();
+        int[] shifts = new int[length];
+        for(int i = 0; i < length; i++)
+        {
+            shifts[i] = (char) (key.charAt(i) - 'a');
+        }
+        return CipherEvents.endCompilation(event, UnicodeVigenereCipher.class, key, new Engine(shifts, pool));
     }
     
 }
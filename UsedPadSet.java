@@ -0,0 +1,320 @@
+package cryptography;
+
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The class of a set of the one-time pads already used, shared by all the
+ * threads which encrypt or decrypt with the Vernam Ciphers, so that a pad is
+ * never used twice by any of them. The set keeps a 64-bit fingerprint of
+ * every pad instead of the pad, and claiming a pad is a single
+ * compare-and-set of its fingerprint into an empty slot of an open-addressing
+ * table of longs: the thread whose compare-and-set succeeds owns the pad,
+ * every other thread finds it used. No thread ever holds a lock, so a
+ * producer never waits for another one.
+ * <p>
+ * When a probe gets too long the table is replaced with one twice as large.
+ * The threads which find the old table being moved help to move it, slot by
+ * slot, and claim in the new table only once every slot has been moved: every
+ * slot is copied before it is marked as moved, and an empty slot is marked
+ * with a compare-and-set, so a fingerprint can not be added to the old table
+ * after it has been moved and the new table always knows all the claims.
+ * <p>
+ * The fingerprint is a hash of the characters of the pad mixed with a random
+ * seed of the set. Two random pads have the same fingerprint with probability
+ * about 2^-64: then the second one is treated as used, so a pad can be
+ * refused but it is never accepted twice. The pads generated for the callers
+ * are claimed in the same way and generated again if they are used.
+ */
+public final class UsedPadSet {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The multiplier of the hash, the golden ratio in 64 bits.
+     */
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The number of pads generated before giving up when they are all used,
+     * which happens only with very short pads.
+     */
+    private static final int CLAIM_ATTEMPTS = 16;
+
+    /**
+     * The number of slots of the first table.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The number of slots probed before the table is considered full.
+     */
+    private static final int MAXIMUM_PROBES = 64;
+
+    /**
+     * The value of an empty slot.
+     */
+    private static final long EMPTY = 0;
+
+    /**
+     * The value of a slot which has been moved to the next table.
+     */
+    private static final long MOVED = 1;
+
+    //FIELDS
+
+    /**
+     * The current table of the fingerprints.
+     */
+    private final AtomicReference<Table> table = new AtomicReference<>(new Table(UsedPadSet.INITIAL_CAPACITY));
+
+    /**
+     * The number of pads used.
+     */
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * The random seed of the fingerprints.
+     */
+    private final long seed = new SecureRandom().nextLong();
+
+    //NESTED CLASSES
+
+    /**
+     * An open-addressing table of fingerprints with linear probing, and the
+     * table which replaces it once it is full.
+     */
+    private static final class Table {
+
+        /**
+         * The slots: EMPTY, MOVED or a fingerprint.
+         */
+        private final AtomicLongArray slots;
+
+        /**
+         * The number of slots minus 1, the number of slots is a power of two.
+         */
+        private final int mask;
+
+        /**
+         * The table which replaces this one, null until this one is full.
+         */
+        private final AtomicReference<Table> next = new AtomicReference<>();
+
+        /**
+         * True when every slot has been moved to the next table.
+         */
+        private volatile boolean moved;
+
+        /**
+         * Constructor of the class.
+         * @param capacity int: The number of slots, a power of two
+         */
+        private Table(int capacity) {
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, with no pad used.
+     */
+    public UsedPadSet() {
+    }
+
+    /**
+     * Constructor of the class, with the given pads used.
+     * @param usedKeys Collection(String): The pads already used
+     */
+    public UsedPadSet(Collection<String> usedKeys) {
+        for(String key : usedKeys)
+        {
+            this.claim(key);
+        }
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It marks a pad as used, if no thread has already done it. It is atomic:
+     * if many threads claim the same pad, only one of them succeeds.
+     * @param pad CharSequence: The pad
+     * @return boolean: True if the pad was not used and now it is used by the
+     * caller, false if it was already used
+     */
+    public boolean claim(CharSequence pad) {
+        if(this.add(this.table.get(), this.fingerprint(pad))) {
+            this.size.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * It checks if a pad has been used.
+     * @param pad CharSequence: The pad
+     * @return boolean: True if the pad has been used, false otherwise
+     */
+    public boolean isUsed(CharSequence pad) {
+        long fingerprint = this.fingerprint(pad);
+        Table table = this.table.get();
+        while(true)
+        {
+            int index = (int) fingerprint & table.mask;
+            for(int probe = 0; probe < UsedPadSet.MAXIMUM_PROBES; probe++)
+            {
+                long value = table.slots.get(index);
+                if(value == fingerprint) {
+                    return true;
+                }
+                if(value == UsedPadSet.EMPTY) {
+                    return false;
+                }
+                if(value == UsedPadSet.MOVED) {
+                    break;
+                }
+                index = (index + 1) & table.mask;
+            }
+            Table next = table.next.get();
+            if(next == null) {
+                return false;
+            }
+            this.move(table, next);
+            table = next;
+        }
+    }
+
+    /**
+     * It returns the number of pads used.
+     * @return int: The number of fingerprints
+     */
+    public int size() {
+        return this.size.intValue();
+    }
+
+    //PACKAGE METHODS
+
+    /**
+     * It generates pads until one is not used and claims it.
+     * @param generator Supplier(String): The generator of random pads
+     * @return String: The pad claimed
+     * @throws IllegalStateException If CLAIM_ATTEMPTS pads are all used
+     */
+    String claimRandom(Supplier<String> generator) {
+        for(int attempt = 0; attempt < UsedPadSet.CLAIM_ATTEMPTS; attempt++)
+        {
+            String pad = generator.get();
+            if(this.claim(pad)) {
+                return pad;
+            }
+        }
+        throw new IllegalStateException("No unused pad has been generated in " + UsedPadSet.CLAIM_ATTEMPTS + " attempts");
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method adds a fingerprint to a table or, if the table is full or
+     * being moved, to the tables which replace it.
+     * @param table Table: The first table tried
+     * @param fingerprint long: The fingerprint, not EMPTY nor MOVED
+     * @return boolean: True if the fingerprint has been added, false if it
+     * was already there
+     */
+    private boolean add(Table table, long fingerprint) {
+        while(true)
+        {
+            int index = (int) fingerprint & table.mask;
+            int probe = 0;
+            while(probe < UsedPadSet.MAXIMUM_PROBES)
+            {
+                long value = table.slots.get(index);
+                if(value == fingerprint) {
+                    return false;
+                }
+                if(value == UsedPadSet.MOVED) {
+                    break;
+                }
+                if(value == UsedPadSet.EMPTY) {
+                    if(table.slots.compareAndSet(index, UsedPadSet.EMPTY, fingerprint)) {
+                        return true;
+                    }
+                    continue;
+                }
+                index = (index + 1) & table.mask;
+                probe++;
+            }
+            Table next = table.next.get();
+            if(next == null) {
+                table.next.compareAndSet(null, new Table(table.slots.length() * 2));
+                next = table.next.get();
+            }
+            this.move(table, next);
+            this.table.compareAndSet(table, next);
+            table = next;
+        }
+    }
+
+    /**
+     * This method moves every slot of a table to the next one, together with
+     * the other threads which are doing it. When it returns every slot has
+     * been moved.
+     * @param table Table: The table
+     * @param next Table: The next table
+     */
+    private void move(Table table, Table next) {
+        if(table.moved) {
+            return;
+        }
+        int capacity = table.slots.length();
+        for(int i = 0; i < capacity; i++)
+        {
+            long value = table.slots.get(i);
+            while(value != UsedPadSet.MOVED)
+            {
+                if(value != UsedPadSet.EMPTY) {
+                    this.add(next, value);
+                }
+                if(table.slots.compareAndSet(i, value, UsedPadSet.MOVED)) {
+                    break;
+                }
+                value = table.slots.get(i);
+            }
+        }
+        table.moved = true;
+    }
+
+    /**
+     * This method returns the fingerprint of a pad. The characters are read
+     * four at a time into a long, which is mixed into the state with a
+     * multiplication and a rotation, then the state is finalized with the
+     * avalanche of SplitMix64. The values EMPTY and MOVED are replaced.
+     * @param pad CharSequence: The pad
+     * @return long: The fingerprint
+     */
+    private long fingerprint(CharSequence pad) {
+        int length = pad.length(), i = 0;
+        long hash = this.seed ^ (length * UsedPadSet.MULTIPLIER);
+        for(; i <= length - 4; i += 4)
+        {
+            long word = pad.charAt(i) | (long) pad.charAt(i + 1) << 16 | (long) pad.charAt(i + 2) << 32 | (long) pad.charAt(i + 3) << 48;
+            hash = Long.rotateLeft((hash ^ word) * UsedPadSet.MULTIPLIER, 31);
+        }
+        for(; i < length; i++)
+        {
+            hash = Long.rotateLeft((hash ^ pad.charAt(i)) * UsedPadSet.MULTIPLIER, 31);
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash ^= hash >>> 31;
+        return (hash == UsedPadSet.EMPTY || hash == UsedPadSet.MOVED) ? hash + 2 : hash;
+    }
+
+}
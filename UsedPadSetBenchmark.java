@@ -0,0 +1,237 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Predicate;
+
+/**
+ * The class which measures how the claims of one-time pads scale with the
+ * number of threads that share the used pads. Every thread claims its own
+ * random pads in the same set, once in a UsedPadSet and once in a HashSet
+ * guarded by a lock, the external synchronization the used keys of the Vernam
+ * Ciphers would need to be shared. The pads are generated before the measure,
+ * so only the claims are timed.
+ */
+public final class UsedPadSetBenchmark {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The length of the pads claimed.
+     */
+    private static final int PAD_LENGTH = 32;
+
+    //NESTED CLASSES
+
+    /**
+     * The measures with a number of threads.
+     */
+    public static final class Result {
+
+        /**
+         * The number of threads.
+         */
+        private final int threads;
+
+        /**
+         * The number of pads claimed.
+         */
+        private final long claims;
+
+        /**
+         * The time of the claims in the UsedPadSet, in nanoseconds.
+         */
+        private final long lockFree;
+
+        /**
+         * The time of the claims in the locked HashSet, in nanoseconds.
+         */
+        private final long locked;
+
+        /**
+         * Constructor of the class.
+         * @param threads int: The number of threads
+         * @param claims long: The number of pads claimed
+         * @param lockFree long: The time of the claims in the UsedPadSet
+         * @param locked long: The time of the claims in the locked HashSet
+         */
+        Result(int threads, long claims, long lockFree, long locked) {
+            this.threads = threads;
+            this.claims = claims;
+            this.lockFree = lockFree;
+            this.locked = locked;
+        }
+
+        /**
+         * Getter method of the field threads.
+         * @return int: the class field threads
+         */
+        public int getThreads() {
+            return this.threads;
+        }
+
+        /**
+         * Getter method of the field claims.
+         * @return long: the class field claims
+         */
+        public long getClaims() {
+            return this.claims;
+        }
+
+        /**
+         * Getter method of the field lockFree.
+         * @return long: the class field lockFree, in nanoseconds
+         */
+        public long getLockFree() {
+            return this.lockFree;
+        }
+
+        /**
+         * Getter method of the field locked.
+         * @return long: the class field locked, in nanoseconds
+         */
+        public long getLocked() {
+            return this.locked;
+        }
+
+        /**
+         * It returns the measures in a line, as millions of claims per second.
+         * @return String: The throughputs
+         */
+        @Override
+        public String toString() {
+            return String.format("%d threads: UsedPadSet %.2f M claims/s, locked HashSet %.2f M claims/s",
+                    this.threads, this.claims * 1e3 / this.lockFree, this.claims * 1e3 / this.locked);
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private UsedPadSetBenchmark() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It measures the claims with a number of threads.
+     * @param threads int: The number of threads
+     * @param claims int: The number of pads claimed by every thread
+     * @return Result: The measures
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public static Result run(int threads, int claims) throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(threads);
+        List<String[]> pads = new ArrayList<>();
+        for(int t = 0; t < threads; t++)
+        {
+            String[] own = new String[claims];
+            for(int i = 0; i < claims; i++)
+            {
+                own[i] = UsedPadSetBenchmark.randomPad(random);
+            }
+            pads.add(own);
+        }
+        UsedPadSet usedPads = new UsedPadSet();
+        long lockFree = UsedPadSetBenchmark.measure(pads, usedPads::claim);
+        Set<String> usedKeys = new HashSet<>();
+        long locked = UsedPadSetBenchmark.measure(pads, (String pad) -> {
+            synchronized(usedKeys) {
+                return usedKeys.add(pad);
+            }
+        });
+        return new Result(threads, (long) threads * claims, lockFree, locked);
+    }
+
+    /**
+     * It runs the benchmark from 1 thread to twice the processors. The
+     * arguments are the number of pads claimed by every thread and the number
+     * of rounds.
+     * @param args String[]: The optional arguments
+     * @throws InterruptedException If the thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int claims = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int maximum = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+        for(int round = 1; round <= rounds; round++)
+        {
+            System.out.println("round " + round + ":");
+            for(int threads = 1; threads <= maximum; threads *= 2)
+            {
+                System.out.println("  " + UsedPadSetBenchmark.run(threads, claims));
+            }
+        }
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method claims the pads of every thread at the same time and
+     * returns the time until the last thread has finished.
+     * @param pads List(String[]): The pads of every thread
+     * @param claim Predicate(String): The claim of a pad
+     * @return long: The time, in nanoseconds
+     * @throws InterruptedException If the thread is interrupted
+     * @throws IllegalStateException If a pad is claimed twice
+     */
+    private static long measure(List<String[]> pads, Predicate<String> claim) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(pads.size());
+        List<Thread> threads = new ArrayList<>();
+        for(String[] own : pads)
+        {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for(String pad : own)
+                    {
+                        if(!claim.test(pad)) {
+                            throw new IllegalStateException("A new pad has been found used");
+                        }
+                    }
+                }
+                catch(InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    end.countDown();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        end.await();
+        long time = System.nanoTime() - begin;
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        return time;
+    }
+
+    /**
+     * This method returns a random pad of lowercase letters.
+     * @param random SplittableRandom: The generator
+     * @return String: The pad
+     */
+    private static String randomPad(SplittableRandom random) {
+        char[] pad = new char[UsedPadSetBenchmark.PAD_LENGTH];
+        for(int i = 0; i < pad.length; i++)
+        {
+            pad[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(pad);
+    }
+
+}
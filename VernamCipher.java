@@ -1,7 +1,10 @@
 package cryptography;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The class to encrypt/decrypt with the Vernam Cipher Algorithm, also 
@@ -44,6 +47,94 @@ public final class VernamCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher with a given pad, returned by
+     * compile(String, ArrayList). It has no state and can be shared between
+     * threads. The state of a text is the position in the pad of its next
+     * letter.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The shift of every letter of the pad, from 1 for A to 0 for Z.
+         */
+        private final byte[] shifts;
+        
+        /**
+         * Constructor of the class.
+         * @param shifts byte[]: The shift of every letter of the pad
+         */
+        private Engine(byte[] shifts) {
+            this.shifts = shifts;
+        }
+        
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted and only
+         * they move the position in the pad.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shiftLetters(src, srcOffset, dst, dstOffset, length, (int) state, true);
+        }
+        
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted and only
+         * they move the position in the pad.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shiftLetters(src, srcOffset, dst, dstOffset, length, (int) state, false);
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns false, the shift depends on the letters before.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return false;
+        }
+        
+        /**
+         * This method shifts the letters of a chunk with the pad, the other
+         * characters are copied.
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         * @param position int: The position in the pad of the first letter
+         * @param encryption boolean: True to encrypt, false to decrypt
+         * @return int: The position in the pad of the letter after the chunk
+         */
+        private int shiftLetters(char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position, boolean encryption) {
+            int keyLength = this.shifts.length;
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i];
+                char base = ASCIICharacterUtils.getBase(ch);
+                if(base != 0) {
+                    int shift = encryption ? this.shifts[position] : VernamCipher.ALPHABET_LENGTH - this.shifts[position];
+                    ch = (char) (base + (ch - base + shift) % VernamCipher.ALPHABET_LENGTH);
+                    position = (position == keyLength - 1) ? 0 : position + 1;
+                }
+                dst[dstOffset + i] = ch;
+            }
+            return position;
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -155,11 +246,12 @@ public final class VernamCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         this.lastKey = VernamCipher.generateRandomKey(text.length(), this.usedKeys);
         int keyLength = this.lastKey.length();
         int textLength = text.length();
@@ -179,7 +271,7 @@ public final class VernamCipher implements Cipher {
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, VernamCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -192,11 +284,12 @@ public final class VernamCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = this.lastKey.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -215,7 +308,7 @@ public final class VernamCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, VernamCipher.class, false, text, this.lastDecryptedText);
     }
     
     /**
@@ -230,12 +323,13 @@ public final class VernamCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public String decryptText(String text, String key) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
         UnicodeVernamCipher.checkKey(key, this.usedKeys);
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         key = key.toLowerCase();
         int keyLength = key.length();
         int textLength = text.length();
@@ -255,7 +349,7 @@ public final class VernamCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, VernamCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
@@ -278,7 +372,7 @@ public final class VernamCipher implements Cipher {
                 throw new IllegalCipherKeyException("The key can not contain letters");
             }
         }
-        if(usedKeys.contains(key)) {
+        if(CipherEvents.isUsed(VernamCipher.class, usedKeys, key)) {
             throw new IllegalCipherKeyException("The key has been already used");
         }
     }
@@ -286,19 +380,53 @@ public final class VernamCipher implements Cipher {
     /**
      * This method generate a random valid key.
      * @param length int: The length of the key
-     * @param usedKeys ArrayList(String): The keys already used to encrypt.
+     * @param usedKeys Collection(String): The keys already used to encrypt.
      * @return String: The generated random key
      */
-    private static String generateRandomKey(int length, ArrayList<String> usedKeys) {
+    private static String generateRandomKey(int length, Collection<String> usedKeys) {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         if(length < 1) {
             throw new IllegalArgumentException("The length must be positive");
         }
-        StringBuilder key = new StringBuilder();
+        Random random = new Random();
+        char[] key = new char[length];
         for(int i = 0; i < length; i++) 
         {
-            key.append((char) (new Random().nextInt(VernamCipher.ALPHABET_LENGTH) + 'a'));
+            key[i] = (char) (random.nextInt(VernamCipher.ALPHABET_LENGTH) + 'a');
         }
-        return key.toString();
+        return CipherEvents.endGeneration(event, VernamCipher.class, new String(key));
+    }
+    
+    //PACKAGE STATIC METHODS
+    
+    /**
+     * This method encrypts or decrypts the letters of a text with a pad, one
+     * letter of the pad for every letter of the text, as encryptText and
+     * decryptText do. The pad is read as a CharSequence, so it can be a view
+     * of a mapped file.
+     * @param text CharSequence: The text
+     * @param pad CharSequence: The lowercase letters of the pad, at least one
+     * for every letter of the text
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @return String: The text encrypted or decrypted
+     */
+    static String shiftLetters(CharSequence text, CharSequence pad, boolean encryption) {
+        int length = text.length();
+        char[] chars = new char[length];
+        for(int i = 0, j = 0; i < length; i++)
+        {
+            char ch = text.charAt(i);
+            char base = ASCIICharacterUtils.getBase(ch);
+            if(base != 0) {
+                int shift = (pad.charAt(j++) - 'a' + 1) % VernamCipher.ALPHABET_LENGTH;
+                if(!encryption) {
+                    shift = VernamCipher.ALPHABET_LENGTH - shift;
+                }
+                ch = (char) (base + (ch - base + shift) % VernamCipher.ALPHABET_LENGTH);
+            }
+            chars[i] = ch;
+        }
+        return new String(chars);
     }
     
     //PUBLIC STATIC METHODS
@@ -313,11 +441,12 @@ public final class VernamCipher implements Cipher {
      * insetead of the text if the text equals null or is an empty String
      */
     public static String[] encryptText(String text, ArrayList<String> usedKeys) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return new String[]{ "", "" };
         }
         String key = VernamCipher.generateRandomKey(text.length(), usedKeys);
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -335,7 +464,7 @@ public final class VernamCipher implements Cipher {
                 encryptedText.append(text.charAt(i));
             }
         }
-        return new String[]{ encryptedText.toString(), key };
+        return CipherEvents.endOperation(event, VernamCipher.class, true, text, new String[]{ encryptedText.toString(), key });
     }
     
     /**
@@ -351,15 +480,16 @@ public final class VernamCipher implements Cipher {
      * null or is an empty String
      */
     public static String decryptText(String key, String text, ArrayList<String> usedKeys) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             return "";
         }
         VernamCipher.checkKey(key, usedKeys);
-        if(usedKeys.contains(key)) {
+        if(CipherEvents.isUsed(VernamCipher.class, usedKeys, key)) {
             throw new IllegalCipherKeyException("The key have been already used");
         }
         key = key.toLowerCase();
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
@@ -377,7 +507,155 @@ public final class VernamCipher implements Cipher {
                 decryptedText.append(text.charAt(i));
             }
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, VernamCipher.class, false, text, decryptedText.toString());
+    }
+
+    /**
+     * It returns the pad which encrypts the given plaintext into the given
+     * ciphertext, in one pass over their letters. Only the letters of the pad
+     * used by the letters of the texts can be recovered, so the pad returned
+     * is as long as the letters of the texts and decrypts the ciphertext with
+     * decryptText. The texts can be very long or mapped from files, as with
+     * MappedText.
+     * @param plaintext CharSequence: The plaintext
+     * @param ciphertext CharSequence: The plaintext encrypted with a pad
+     * @return String: The pad, in lowercase
+     * @throws IllegalArgumentException If the ciphertext is not the plaintext
+     * encrypted with a pad
+     */
+    public static String recoverKey(CharSequence plaintext, CharSequence ciphertext) {
+        int length = plaintext.length();
+        if(ciphertext.length() != length) {
+            throw new IllegalArgumentException("The texts must have the same length");
+        }
+        char[] key = new char[length];
+        int keyLength = 0;
+        for(int i = 0; i < length; i++)
+        {
+            char plain = plaintext.charAt(i), encrypted = ciphertext.charAt(i);
+            char base = ASCIICharacterUtils.getBase(plain);
+            if(base != 0) {
+                if(encrypted - base < 0 || encrypted - base >= VernamCipher.ALPHABET_LENGTH) {
+                    throw new IllegalArgumentException("The letter at " + i + " is not encrypted with a shift");
+                }
+                key[keyLength++] = (char) ('a' + (encrypted - plain + 2 * VernamCipher.ALPHABET_LENGTH - 1) % VernamCipher.ALPHABET_LENGTH);
+            }
+            else if(plain != encrypted) {
+                throw new IllegalArgumentException("The character at " + i + " is not a letter but it is encrypted");
+            }
+        }
+        return new String(key, 0, keyLength);
+    }
+    
+    /**
+     * It returns the given text encrypted with a generated key, which is
+     * claimed in the given set of used pads, as encryptText(String,
+     * ArrayList) does. The set can be shared by many threads: every key is
+     * returned to only one of them.
+     * @param text String: The text that you want to encrypt. If it is null or
+     * empty then the encrypted text will be empty.
+     * @param usedPads UsedPadSet: The pads already used, shared
+     * @return String[]: The encrypted text and the key used, two empty Strings
+     * if the text equals null or is an empty String
+     * @throws IllegalStateException If no unused key can be generated, as it
+     * happens when the short keys are all used
+     */
+    public static String[] encryptText(String text, UsedPadSet usedPads) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return new String[]{ "", "" };
+        }
+        String key = usedPads.claimRandom(() -> VernamCipher.generateRandomKey(text.length(), Collections.emptyList()));
+        return CipherEvents.endOperation(event, VernamCipher.class, true, text, new String[]{ VernamCipher.shiftLetters(text, key, true), key });
+    }
+    
+    /**
+     * It returns the given text decrypted with the given key, which is
+     * rejected if it is in the given set of used pads, as decryptText(String,
+     * String, ArrayList) rejects the keys of the list. The key is not added
+     * to the set, which can be shared by many threads.
+     * @param key String: The key that you want to use to decrypt the text. It
+     * must have a letter for every letter of the text and never been used
+     * @param text String: The text that you want to decrypt. If it is null or
+     * empty then the decrypted text will be empty.
+     * @param usedPads UsedPadSet: The pads already used, shared
+     * @return String: The decrypted text, an empty String if the text equals
+     * null or is an empty String
+     * @throws IllegalCipherKeyException If the key is not valid or has been
+     * already used
+     */
+    public static String decryptText(String key, String text, UsedPadSet usedPads) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        if(key == null || !ASCIICharacterUtils.isLetters(key)) {
+            throw new IllegalCipherKeyException("The key can contain only letters");
+        }
+        if(key.length() < ASCIICharacterUtils.countLetters(text)) {
+            throw new IllegalCipherKeyException("The key must have a letter for every letter of the text");
+        }
+        key = key.toLowerCase();
+        if(usedPads.isUsed(key)) {
+            throw new IllegalCipherKeyException("The key has been already used");
+        }
+        return CipherEvents.endOperation(event, VernamCipher.class, false, text, VernamCipher.shiftLetters(text, key, false));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given pad, which
+     * decrypts as decryptText(String, String, ArrayList) and encrypts with the
+     * same pad. It can be shared between threads. The pad is not added to the
+     * used keys: it is up to the caller not to use it twice.
+     * @param key String: The pad, composed only by letters and not empty
+     * @param usedKeys ArrayList(String): The already used keys
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the pad is not valid or has been
+     * already used
+     */
+    public static CipherEngine compile(String key, ArrayList<String> usedKeys) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        VernamCipher.checkKey(key, usedKeys);
+        int length = key.length();
+        if(length == 0) {
+            throw new IllegalCipherKeyException("The key must not be empty");
+        }
+        byte[] shifts = new byte[length];
+        for(int i = 0; i < length; i++)
+        {
+            shifts[i] = (byte) ((Character.toLowerCase(key.charAt(i)) - 'a' + 1) % VernamCipher.ALPHABET_LENGTH);
+        }
+        return CipherEvents.endCompilation(event, VernamCipher.class, key, new Engine(shifts));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher whose pad is generated from
+     * the given seed, in blocks, as needed: the pad is never kept whole. It
+     * can be shared between threads. The seed is not added to the used keys:
+     * it is up to the caller not to use it twice.
+     * @param seed byte[]: The seed, VernamKeystream.SEED_LENGTH bytes, for
+     * example from VernamKeystream.generateSeed()
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the seed is not valid
+     */
+    public static CipherEngine compileKeystream(byte[] seed) throws IllegalCipherKeyException {
+        return VernamCipher.compileKeystream(seed, null);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher whose pad is generated from
+     * the given seed, as compileKeystream(byte[]) does, which splits the
+     * chunks longer than VernamKeystream.PARALLEL_THRESHOLD between the
+     * threads of the given pool.
+     * @param seed byte[]: The seed, VernamKeystream.SEED_LENGTH bytes
+     * @param pool ForkJoinPool: The pool, or null to encrypt in the calling
+     * thread
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the seed is not valid
+     */
+    public static CipherEngine compileKeystream(byte[] seed, ForkJoinPool pool) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        return CipherEvents.endCompilation(event, VernamCipher.class, seed, new VernamKeystream(seed, false, pool));
     }
     
 }
@@ -0,0 +1,458 @@
+package cryptography;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The class of a text encrypted with the Vernam Cipher together with the
+ * reference to its pad, in a compact binary form, so that it can be decrypted
+ * without the instance which encrypted it. The pad is either referenced by the
+ * id of a pad source and the offset of its first letter, as given by a
+ * VernamPadStore, or written in the envelope, five bits for every letter.
+ * Decrypting an envelope needs only the envelope and a PadSource, so any
+ * number of envelopes can be decrypted in parallel with the same source.
+ * <p>
+ * The bytes of an envelope are: 'V', 'E', the version, the flags (1 if the pad
+ * is inline), the length of the text and the number of letters, then the pad
+ * id and offset or the packed pad, then the length in bytes and the UTF-8
+ * bytes of the encrypted text. The numbers are unsigned variable-length
+ * integers, 7 bits per byte, the lowest first.
+ */
+public final class VernamEnvelope {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The first two bytes of an envelope.
+     */
+    private static final byte[] MAGIC = { 'V', 'E' };
+
+    /**
+     * The version of the format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The flag of an envelope with the pad inline.
+     */
+    private static final byte INLINE_FLAG = 1;
+
+    /**
+     * The length of the alphabet.
+     */
+    private static final int ALPHABET_LENGTH = 26;
+
+    /**
+     * The generator of the inline pads.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    //FIELDS
+
+    /**
+     * The encrypted text.
+     */
+    private final String text;
+
+    /**
+     * The number of letters of the text, which is the length of the pad.
+     */
+    private final int letterCount;
+
+    /**
+     * The id of the pad source, 0 if the pad is inline.
+     */
+    private final long padId;
+
+    /**
+     * The offset of the first letter of the pad in its source, 0 if the pad
+     * is inline.
+     */
+    private final long padOffset;
+
+    /**
+     * The letters of the pad, null if the pad is referenced.
+     */
+    private final String pad;
+
+    //NESTED CLASSES
+
+    /**
+     * The source of the pads referenced by the envelopes. It must be safe to
+     * call from many threads.
+     */
+    @FunctionalInterface
+    public interface PadSource {
+
+        /**
+         * It returns the letters of a pad.
+         * @param id long: The id of the pad source
+         * @param offset long: The offset of the first letter
+         * @param length int: The number of letters
+         * @return CharSequence: The lowercase letters
+         * @throws IllegalArgumentException If the pad does not exist
+         */
+        CharSequence getPad(long id, long offset, int length);
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param text String: The encrypted text
+     * @param letterCount int: The number of letters of the text
+     * @param padId long: The id of the pad source
+     * @param padOffset long: The offset of the pad in its source
+     * @param pad String: The letters of the pad, null if it is referenced
+     */
+    private VernamEnvelope(String text, int letterCount, long padId, long padOffset, String pad) {
+        this.text = text;
+        this.letterCount = letterCount;
+        this.padId = padId;
+        this.padOffset = padOffset;
+        this.pad = pad;
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the field text.
+     * @return String: the class field text, encrypted
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Getter method of the field letterCount.
+     * @return int: the class field letterCount
+     */
+    public int getLetterCount() {
+        return this.letterCount;
+    }
+
+    /**
+     * Getter method of the field padId.
+     * @return long: the class field padId, 0 if the pad is inline
+     */
+    public long getPadId() {
+        return this.padId;
+    }
+
+    /**
+     * Getter method of the field padOffset.
+     * @return long: the class field padOffset, 0 if the pad is inline
+     */
+    public long getPadOffset() {
+        return this.padOffset;
+    }
+
+    /**
+     * It returns if the pad is written in the envelope.
+     * @return boolean: True if the pad is inline, false if it is referenced
+     */
+    public boolean isInline() {
+        return this.pad != null;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It decrypts the text of the envelope.
+     * @param pads PadSource: The source of the referenced pads. It is not used
+     * if the pad is inline and can be null
+     * @return String: The decrypted text
+     * @throws IllegalArgumentException If the pad is not found or too short
+     */
+    public String decrypt(PadSource pads) {
+        CharSequence pad = this.pad;
+        if(pad == null) {
+            if(pads == null) {
+                throw new IllegalArgumentException("The pad is referenced and there is no pad source");
+            }
+            pad = pads.getPad(this.padId, this.padOffset, this.letterCount);
+        }
+        if(pad.length() < this.letterCount) {
+            throw new IllegalArgumentException("The pad is shorter than the text");
+        }
+        return VernamCipher.shiftLetters(this.text, pad, false);
+    }
+
+    /**
+     * It returns the binary form of the envelope.
+     * @return byte[]: The bytes
+     * @throws IllegalArgumentException If the text contains unpaired
+     * surrogates, which can not be written in UTF-8
+     */
+    public byte[] toBytes() {
+        ByteBuffer text;
+        try {
+            text = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .encode(CharBuffer.wrap(this.text));
+        }
+        catch(CharacterCodingException ex) {
+            throw new IllegalArgumentException("The text can not be written in UTF-8", ex);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(text.remaining() + 32);
+        output.write(VernamEnvelope.MAGIC, 0, VernamEnvelope.MAGIC.length);
+        output.write(VernamEnvelope.VERSION);
+        output.write(this.isInline() ? VernamEnvelope.INLINE_FLAG : 0);
+        VernamEnvelope.writeNumber(output, this.text.length());
+        VernamEnvelope.writeNumber(output, this.letterCount);
+        if(this.isInline()) {
+            byte[] packed = VernamEnvelope.pack(this.pad);
+            output.write(packed, 0, packed.length);
+        }
+        else {
+            VernamEnvelope.writeNumber(output, this.padId);
+            VernamEnvelope.writeNumber(output, this.padOffset);
+        }
+        VernamEnvelope.writeNumber(output, text.remaining());
+        output.write(text.array(), text.arrayOffset() + text.position(), text.remaining());
+        return output.toByteArray();
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It encrypts a text with the next letters of a pad store and returns it
+     * in an envelope which references them.
+     * @param text String: The text that you want to encrypt
+     * @param store VernamPadStore: The store of the pads
+     * @param padId long: The id of the store, given back to the PadSource, not
+     * negative
+     * @return VernamEnvelope: The envelope
+     * @throws IllegalArgumentException If the id is negative
+     * @throws IllegalCipherKeyException If the store has not enough letters
+     * @throws IOException If the store can not be written
+     */
+    public static VernamEnvelope seal(String text, VernamPadStore store, long padId) throws IllegalCipherKeyException, IOException {
+        if(padId < 0) {
+            throw new IllegalArgumentException("The id of the pad source can not be negative");
+        }
+        VernamPadStore.Encryption encryption = store.encryptText((text == null) ? "" : text);
+        return new VernamEnvelope(encryption.getText(), encryption.getLength(), padId, encryption.getOffset(), null);
+    }
+
+    /**
+     * It encrypts a text with a new random pad and returns it in an envelope
+     * which contains the pad.
+     * @param text String: The text that you want to encrypt
+     * @return VernamEnvelope: The envelope
+     */
+    public static VernamEnvelope sealInline(String text) {
+        if(text == null) {
+            text = "";
+        }
+        int letters = ASCIICharacterUtils.countLetters(text);
+        char[] pad = new char[letters];
+        for(int i = 0; i < letters; i++)
+        {
+            pad[i] = (char) ('a' + VernamEnvelope.RANDOM.nextInt(VernamEnvelope.ALPHABET_LENGTH));
+        }
+        String key = new String(pad);
+        return new VernamEnvelope(VernamCipher.shiftLetters(text, key, true), letters, 0, 0, key);
+    }
+
+    /**
+     * It reads an envelope from its binary form. The lengths written in the
+     * bytes are checked against the bytes left before anything is allocated,
+     * so that a malformed envelope can not exhaust the memory.
+     * @param bytes byte[]: The bytes, as returned by toBytes()
+     * @return VernamEnvelope: The envelope
+     * @throws IllegalArgumentException If the bytes are not a valid envelope,
+     * also if they go on after its text
+     */
+    public static VernamEnvelope parse(byte[] bytes) {
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        try {
+            if(input.get() != VernamEnvelope.MAGIC[0] || input.get() != VernamEnvelope.MAGIC[1] || input.get() != VernamEnvelope.VERSION) {
+                throw new IllegalArgumentException("The bytes are not a Vernam envelope of version " + VernamEnvelope.VERSION);
+            }
+            boolean inline = (input.get() & VernamEnvelope.INLINE_FLAG) != 0;
+            int length = VernamEnvelope.readInt(input);
+            int letters = VernamEnvelope.readInt(input);
+            if(letters > length) {
+                throw new IllegalArgumentException("The envelope has more letters than characters");
+            }
+            String pad = null;
+            long padId = 0, padOffset = 0;
+            if(inline) {
+                pad = VernamEnvelope.unpack(input, letters);
+            }
+            else {
+                padId = VernamEnvelope.readNumber(input);
+                padOffset = VernamEnvelope.readNumber(input);
+            }
+            int size = VernamEnvelope.readInt(input);
+            if(size > input.remaining()) {
+                throw new IllegalArgumentException("The envelope is truncated");
+            }
+            if(size < input.remaining()) {
+                throw new IllegalArgumentException("The envelope has bytes after its text");
+            }
+            String text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(input.slice(input.position(), size)).toString();
+            if(text.length() != length) {
+                throw new IllegalArgumentException("The length of the text is not " + length);
+            }
+            if(ASCIICharacterUtils.countLetters(text) != letters) {
+                throw new IllegalArgumentException("The number of letters of the text is not " + letters);
+            }
+            return new VernamEnvelope(text, letters, padId, padOffset, pad);
+        }
+        catch(BufferUnderflowException ex) {
+            throw new IllegalArgumentException("The envelope is truncated", ex);
+        }
+        catch(CharacterCodingException ex) {
+            throw new IllegalArgumentException("The text of the envelope is not UTF-8", ex);
+        }
+    }
+
+    /**
+     * It decrypts an envelope from its binary form.
+     * @param bytes byte[]: The bytes of the envelope
+     * @param pads PadSource: The source of the referenced pads
+     * @return String: The decrypted text
+     * @throws IllegalArgumentException If the envelope is not valid or its pad
+     * is not found
+     */
+    public static String decrypt(byte[] bytes, PadSource pads) {
+        return VernamEnvelope.parse(bytes).decrypt(pads);
+    }
+
+    /**
+     * It decrypts many envelopes in parallel, on the common ForkJoinPool, with
+     * the same source of pads.
+     * @param envelopes List(byte[]): The bytes of the envelopes
+     * @param pads PadSource: The source of the referenced pads, safe to call
+     * from many threads
+     * @return String[]: The decrypted texts, in the order of the envelopes
+     * @throws IllegalArgumentException If an envelope is not valid or its pad
+     * is not found
+     */
+    public static String[] decryptAll(List<byte[]> envelopes, PadSource pads) {
+        String[] texts = new String[envelopes.size()];
+        IntStream.range(0, texts.length).parallel().forEach((int i) -> texts[i] = VernamEnvelope.decrypt(envelopes.get(i), pads));
+        return texts;
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method writes an unsigned variable-length number.
+     * @param output ByteArrayOutputStream: The output
+     * @param value long: The number, not negative
+     */
+    private static void writeNumber(ByteArrayOutputStream output, long value) {
+        while((value & ~0x7FL) != 0)
+        {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * This method reads an unsigned variable-length number.
+     * @param input ByteBuffer: The input
+     * @return long: The number
+     * @throws IllegalArgumentException If the number is too long
+     */
+    private static long readNumber(ByteBuffer input) {
+        long value = 0;
+        for(int shift = 0; shift < 63; shift += 7)
+        {
+            byte b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("A number of the envelope is too long");
+    }
+
+    /**
+     * This method reads an unsigned variable-length number which must be an
+     * int.
+     * @param input ByteBuffer: The input
+     * @return int: The number
+     * @throws IllegalArgumentException If the number is too big
+     */
+    private static int readInt(ByteBuffer input) {
+        long value = VernamEnvelope.readNumber(input);
+        if(value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A length of the envelope is too big");
+        }
+        return (int) value;
+    }
+
+    /**
+     * This method packs the lowercase letters of a pad in five bits each.
+     * @param pad String: The pad
+     * @return byte[]: The packed pad
+     */
+    private static byte[] pack(String pad) {
+        int length = pad.length();
+        byte[] packed = new byte[(int) ((length * 5L + 7) / 8)];
+        int bits = 0, index = 0, accumulator = 0;
+        for(int i = 0; i < length; i++)
+        {
+            accumulator = (accumulator << 5) | (pad.charAt(i) - 'a');
+            bits += 5;
+            if(bits >= 8) {
+                bits -= 8;
+                packed[index++] = (byte) (accumulator >>> bits);
+            }
+        }
+        if(bits > 0) {
+            packed[index] = (byte) (accumulator << (8 - bits));
+        }
+        return packed;
+    }
+
+    /**
+     * This method unpacks a pad of five bits for every letter.
+     * @param input ByteBuffer: The input, at the first byte of the pad
+     * @param length int: The number of letters
+     * @return String: The pad
+     * @throws IllegalArgumentException If the input is shorter than the pad or
+     * a letter is not valid
+     */
+    private static String unpack(ByteBuffer input, int length) {
+        if((length * 5L + 7) / 8 > input.remaining()) {
+            throw new IllegalArgumentException("The envelope is truncated");
+        }
+        char[] pad = new char[length];
+        int bits = 0, accumulator = 0;
+        for(int i = 0; i < length; i++)
+        {
+            if(bits < 5) {
+                accumulator = (accumulator << 8) | (input.get() & 0xFF);
+                bits += 8;
+            }
+            bits -= 5;
+            int letter = (accumulator >>> bits) & 0x1F;
+            if(letter >= VernamEnvelope.ALPHABET_LENGTH) {
+                throw new IllegalArgumentException("The pad of the envelope is not valid");
+            }
+            pad[i] = (char) ('a' + letter);
+        }
+        return new String(pad);
+    }
+
+}
@@ -0,0 +1,335 @@
+package cryptography;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The compiled form of the Vernam Ciphers whose pad is generated from a seed
+ * instead of being given, returned by VernamCipher.compileKeystream and
+ * UnicodeVernamCipher.compileKeystream. The pad is an AES-CTR keystream: the
+ * output of AES-256 in counter mode with the seed as key, with no derivation
+ * of the seed and no reseeding. It is generated in blocks of BLOCK_SIZE
+ * shifts, block b from the counter b * 2^64, so every block can be generated
+ * alone and the pad is never kept whole. Only the seed and the length of the
+ * text are needed to decrypt it. The seed is a one-time pad too: it must not
+ * be used for two texts.
+ * <p>
+ * The pad of the VernamCipher has a shift from 0 to 25 for every letter, the
+ * other characters are copied and do not move the position in the pad. The
+ * pad of the UnicodeVernamCipher has a shift from 0 to 65535 for every
+ * character. The state of a text is the position in the pad of its next
+ * shift. With a ForkJoinPool the chunks longer than PARALLEL_THRESHOLD are
+ * split in parts encrypted in parallel, each from its own position in the
+ * pad. An instance can be shared between threads.
+ */
+public final class VernamKeystream implements CipherEngine {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of bytes of a seed, a key of AES-256.
+     */
+    public static final int SEED_LENGTH = 32;
+
+    /**
+     * The number of shifts of a block of the pad.
+     */
+    public static final int BLOCK_SIZE = 1 << 12;
+
+    /**
+     * The number of characters under which a chunk is not split between the
+     * threads of a ForkJoinPool.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /**
+     * The length of the alphabet.
+     */
+    private static final int ALPHABET_LENGTH = 26;
+
+    /**
+     * The bytes under which a byte of the generator becomes a letter shift,
+     * the biggest multiple of the length of the alphabet.
+     */
+    private static final int LETTER_LIMIT = VernamKeystream.ALPHABET_LENGTH * 9;
+
+    /**
+     * The generator of the seeds.
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The block generated last by every thread.
+     */
+    private static final ThreadLocal<Block> BLOCKS = ThreadLocal.withInitial(Block::new);
+
+    //FIELDS
+
+    /**
+     * The seed, as a key of AES.
+     */
+    private final SecretKeySpec seed;
+
+    /**
+     * True for the pad of the UnicodeVernamCipher, false for the pad of the
+     * VernamCipher.
+     */
+    private final boolean unicode;
+
+    /**
+     * The pool which encrypts the long chunks in parallel, null to encrypt
+     * them in the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    //NESTED CLASSES
+
+    /**
+     * The buffers of a thread which generates the blocks of the pads, with the
+     * last block generated.
+     */
+    private static final class Block {
+
+        /**
+         * The AES cipher of the thread.
+         */
+        private final javax.crypto.Cipher cipher;
+
+        /**
+         * The zeros encrypted to get the bytes of the generator.
+         */
+        private final byte[] zeros = new byte[VernamKeystream.BLOCK_SIZE * 2];
+
+        /**
+         * The bytes of the generator.
+         */
+        private final byte[] bytes = new byte[VernamKeystream.BLOCK_SIZE * 2 + 16];
+
+        /**
+         * The shifts of the block.
+         */
+        private final int[] shifts = new int[VernamKeystream.BLOCK_SIZE];
+
+        /**
+         * The keystream of the block, null if there is no block.
+         */
+        private VernamKeystream owner;
+
+        /**
+         * The index of the block.
+         */
+        private long index;
+
+        /**
+         * Constructor of the class.
+         * @throws IllegalStateException If AES in counter mode is not
+         * available
+         */
+        private Block() {
+            try {
+                this.cipher = javax.crypto.Cipher.getInstance("AES/CTR/NoPadding");
+            }
+            catch(GeneralSecurityException ex) {
+                throw new IllegalStateException("AES in counter mode is not available", ex);
+            }
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param seed byte[]: The seed, SEED_LENGTH bytes
+     * @param unicode boolean: True for the pad of the UnicodeVernamCipher,
+     * false for the pad of the VernamCipher
+     * @param pool ForkJoinPool: The pool of the long chunks, or null
+     * @throws IllegalCipherKeyException If the seed is null or its length is
+     * not SEED_LENGTH
+     */
+    VernamKeystream(byte[] seed, boolean unicode, ForkJoinPool pool) throws IllegalCipherKeyException {
+        if(seed == null || seed.length != VernamKeystream.SEED_LENGTH) {
+            throw new IllegalCipherKeyException("The seed must have " + VernamKeystream.SEED_LENGTH + " bytes");
+        }
+        this.seed = new SecretKeySpec(seed, "AES");
+        this.unicode = unicode;
+        this.pool = pool;
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It encrypts a chunk of a text.
+     */
+    @Override
+    public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+        return this.transform(src, srcOffset, dst, dstOffset, length, state, true);
+    }
+
+    /**
+     * It decrypts a chunk of a text.
+     */
+    @Override
+    public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+        return this.transform(src, srcOffset, dst, dstOffset, length, state, false);
+    }
+
+    /**
+     * It returns 1, every character is encrypted alone.
+     */
+    @Override
+    public int getBlockSize() {
+        return 1;
+    }
+
+    /**
+     * It returns false, the shift depends on the position in the pad.
+     */
+    @Override
+    public boolean isPositionIndependent() {
+        return false;
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method encrypts or decrypts a chunk, splitting it between the
+     * threads of the pool if it is longer than PARALLEL_THRESHOLD. The
+     * position of every part is found counting the letters of the parts
+     * before it.
+     * @param src char[]: The characters to shift
+     * @param srcOffset int: The index of the first character
+     * @param dst char[]: The array where the result is written
+     * @param dstOffset int: The index of dst of the first character
+     * @param length int: The number of characters
+     * @param position long: The position in the pad of the first shift
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @return long: The position in the pad after the chunk
+     */
+    private long transform(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long position, boolean encryption) {
+        if(position < 0) {
+            throw new IllegalArgumentException("The position in the pad can not be negative");
+        }
+        if(this.pool == null || length <= VernamKeystream.PARALLEL_THRESHOLD) {
+            return this.shift(src, srcOffset, dst, dstOffset, length, position, encryption);
+        }
+        List<ForkJoinTask<?>> parts = new ArrayList<>();
+        for(int start = 0; start < length; start += VernamKeystream.PARALLEL_THRESHOLD)
+        {
+            int offset = start, size = Math.min(VernamKeystream.PARALLEL_THRESHOLD, length - start);
+            long first = position;
+            parts.add(ForkJoinTask.adapt(() -> this.shift(src, srcOffset + offset, dst, dstOffset + offset, size, first, encryption)));
+            position += this.unicode ? size : ASCIICharacterUtils.countLetters(src, srcOffset + offset, size);
+        }
+        this.pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(parts)));
+        return position;
+    }
+
+    /**
+     * This method encrypts or decrypts a chunk in the calling thread.
+     * @param src char[]: The characters to shift
+     * @param srcOffset int: The index of the first character
+     * @param dst char[]: The array where the result is written
+     * @param dstOffset int: The index of dst of the first character
+     * @param length int: The number of characters
+     * @param position long: The position in the pad of the first shift
+     * @param encryption boolean: True to encrypt, false to decrypt
+     * @return long: The position in the pad after the chunk
+     */
+    private long shift(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long position, boolean encryption) {
+        Block block = VernamKeystream.BLOCKS.get();
+        long index = position / VernamKeystream.BLOCK_SIZE;
+        int offset = (int) (position % VernamKeystream.BLOCK_SIZE);
+        int[] shifts = this.load(block, index);
+        for(int i = 0; i < length; i++)
+        {
+            char ch = src[srcOffset + i], base = ASCIICharacterUtils.getBase(ch);
+            if(this.unicode || base != 0) {
+                if(offset == VernamKeystream.BLOCK_SIZE) {
+                    shifts = this.load(block, ++index);
+                    offset = 0;
+                }
+                int shift = shifts[offset++];
+                if(this.unicode) {
+                    ch = (char) (encryption ? ch + shift : ch - shift);
+                }
+                else {
+                    if(!encryption) {
+                        shift = VernamKeystream.ALPHABET_LENGTH - shift;
+                    }
+                    ch = (char) (base + (ch - base + shift) % VernamKeystream.ALPHABET_LENGTH);
+                }
+            }
+            dst[dstOffset + i] = ch;
+        }
+        return index * VernamKeystream.BLOCK_SIZE + offset;
+    }
+
+    /**
+     * This method returns the shifts of a block of the pad, generating them
+     * unless they are the last block generated by the thread.
+     * @param block Block: The buffers of the thread
+     * @param index long: The index of the block
+     * @return int[]: The shifts of the block
+     */
+    private int[] load(Block block, long index) {
+        if(block.owner == this && block.index == index) {
+            return block.shifts;
+        }
+        block.owner = null;
+        byte[] counter = new byte[16];
+        for(int i = 0; i < 8; i++)
+        {
+            counter[i] = (byte) (index >>> (56 - i * 8));
+        }
+        try {
+            block.cipher.init(javax.crypto.Cipher.ENCRYPT_MODE, this.seed, new IvParameterSpec(counter));
+            if(this.unicode) {
+                block.cipher.update(block.zeros, 0, block.zeros.length, block.bytes, 0);
+                for(int i = 0; i < VernamKeystream.BLOCK_SIZE; i++)
+                {
+                    block.shifts[i] = ((block.bytes[i * 2] & 0xFF) << 8) | (block.bytes[i * 2 + 1] & 0xFF);
+                }
+            }
+            else {
+                int filled = 0;
+                while(filled < VernamKeystream.BLOCK_SIZE)
+                {
+                    int length = block.cipher.update(block.zeros, 0, VernamKeystream.BLOCK_SIZE, block.bytes, 0);
+                    for(int i = 0; i < length && filled < VernamKeystream.BLOCK_SIZE; i++)
+                    {
+                        int value = block.bytes[i] & 0xFF;
+                        if(value < VernamKeystream.LETTER_LIMIT) {
+                            block.shifts[filled++] = value % VernamKeystream.ALPHABET_LENGTH;
+                        }
+                    }
+                }
+            }
+        }
+        catch(GeneralSecurityException ex) {
+            throw new IllegalStateException("The pad can not be generated", ex);
+        }
+        block.owner = this;
+        block.index = index;
+        return block.shifts;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It returns a new random seed, generated with SecureRandom.
+     * @return byte[]: The seed, SEED_LENGTH bytes
+     */
+    public static byte[] generateSeed() {
+        byte[] seed = new byte[VernamKeystream.SEED_LENGTH];
+        VernamKeystream.RANDOM.nextBytes(seed);
+        return seed;
+    }
+
+}
@@ -0,0 +1,897 @@
+package cryptography;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The class to find the texts of a collection which have been encrypted with
+ * the same pad by VernamCipher or UnicodeVernamCipher. Two texts encrypted with
+ * the same pad have the same difference as their plaintexts, so their
+ * characters coincide more often than the characters of texts encrypted with
+ * different pads.
+ * The texts are read from a file of records, as written by writeCiphertexts.
+ * In a first pass the characters at the begin of every text are kept, in
+ * chunks of records so that a collection of any size can be indexed. Then,
+ * for every band, every text is put in a bucket whose value depends on its
+ * characters in some randomly chosen positions: only the texts sharing a
+ * bucket are compared, instead of all the pairs. In a second pass the
+ * candidate pairs are verified in parallel by their index of coincidence,
+ * which is the rate of the zero differences between the two texts, leaving
+ * out the positions of the bands in which they share a bucket. A pair is
+ * reported when the probability of so many coincidences with different pads,
+ * multiplied by the number of candidates, is below the accepted number of
+ * false positives.
+ * <p>
+ * Two english texts encrypted with the same pad coincide in a position 6.6%
+ * of the times, so they share the bucket of a band of r positions with
+ * probability about 0.066^r, and the default number of bands is chosen from
+ * this rate to find 95% of the reused pads: 992 bands of 2 positions out of
+ * the first 256 characters. With UnicodeVernamCipher two texts with
+ * different pads share a bucket of 2 positions with probability 2^-32, so
+ * the candidates are almost only the reused pads. With the 26 letters of
+ * VernamCipher a band has only 676 buckets, and texts with different pads
+ * coincide 3.8% of the times: the buckets are crowded and almost all the
+ * pairs of a small collection are candidates, so that long texts are needed
+ * to tell the reused pads from the chance, the time grows with the square of
+ * the texts, and beyond about ten thousand texts the candidates exceed
+ * MAXIMUM_CANDIDATES and detect fails: larger collections need bands of more
+ * positions, which find fewer reused pads. No choice of the bands avoids
+ * this, because the coincidences of the reused pads are too close to the
+ * ones by chance.
+ */
+public final class VernamPadReuseDetector {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of letters that the alphabet contains.
+     */
+    private static final int ALPHABET_LENGTH = 26;
+
+    /**
+     * The number of characters that a char can contain.
+     */
+    private static final int UNICODE_LENGTH = 65536;
+
+    /**
+     * The seed used to choose the positions of the bands, so that the buckets
+     * are the same between two runs.
+     */
+    private static final long POSITIONS_SEED = 0x5DEECE66DL;
+
+    /**
+     * The rate of the positions in which two english texts have the same
+     * character, which is the rate of the coincidences of two texts encrypted
+     * with the same pad.
+     */
+    private static final double PLAINTEXT_COINCIDENCE = 0.066;
+
+    /**
+     * The number of records whose values are kept in a chunk of the index.
+     */
+    private static final int RECORDS_PER_CHUNK = 4096;
+
+    /**
+     * The maximum number of distinct candidate pairs, beyond which the bands
+     * are too wide for the collection.
+     */
+    private static final int MAXIMUM_CANDIDATES = 1 << 26;
+
+    /**
+     * The size of the buffer used to read a record in the verification.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * The default maximum number of characters compared for a pair.
+     */
+    public static final int DEFAULT_MAX_COMPARED = 1 << 16;
+
+    /**
+     * The default minimum number of characters compared to report a pair.
+     */
+    public static final int DEFAULT_MIN_COMPARED = 32;
+
+    /**
+     * The default expected number of pairs reported by chance in a run.
+     */
+    public static final double DEFAULT_FALSE_POSITIVES = 0.01;
+
+    /**
+     * The default number of texts of a bucket which every text is compared
+     * with.
+     */
+    public static final int DEFAULT_WINDOW = 32;
+
+    /**
+     * The default number of positions of a band.
+     */
+    public static final int DEFAULT_ROWS = 2;
+
+    /**
+     * The default rate of the reused pads which share a bucket in at least
+     * one band, from which the default number of bands is chosen.
+     */
+    public static final double DEFAULT_RECALL = 0.95;
+
+    /**
+     * The default number of characters at the begin of a text in which the
+     * positions are chosen.
+     */
+    public static final int DEFAULT_PREFIX_LENGTH = 256;
+
+    //FIELDS
+
+    /**
+     * True if the texts have been encrypted with UnicodeVernamCipher, false if
+     * they have been encrypted with VernamCipher.
+     */
+    private final boolean unicode;
+
+    /**
+     * The number of bands, every text is put in one bucket for each band.
+     */
+    private final int bands;
+
+    /**
+     * The number of positions which determine the bucket of a band.
+     */
+    private final int rows;
+
+    /**
+     * The positions of every band, bands * rows positions in all.
+     */
+    private final int[] positions;
+
+    /**
+     * The number of characters at the begin of a text in which the positions
+     * are chosen.
+     */
+    private final int prefixLength;
+
+    /**
+     * The number of texts of a bucket which every text is compared with.
+     */
+    private final int window;
+
+    /**
+     * The maximum number of characters compared for a pair.
+     */
+    private final int maxCompared;
+
+    /**
+     * The minimum number of characters compared to report a pair.
+     */
+    private final int minCompared;
+
+    /**
+     * The expected number of pairs reported by chance in a run.
+     */
+    private final double falsePositives;
+
+    //NESTED CLASSES
+
+    /**
+     * A pair of texts which have probably been encrypted with the same pad.
+     */
+    public static final class Match {
+
+        /**
+         * The index of the first text in the file.
+         */
+        private final int first;
+
+        /**
+         * The index of the second text in the file.
+         */
+        private final int second;
+
+        /**
+         * The number of characters compared, out of the positions used for
+         * the buckets.
+         */
+        private final int compared;
+
+        /**
+         * The number of compared characters which coincide.
+         */
+        private final int coincidences;
+
+        /**
+         * The minus log10 of the probability of at least this.coincidences
+         * coincidences with different pads.
+         */
+        private final double significance;
+
+        /**
+         * Constructor of the class.
+         * @param first int: The index of the first text
+         * @param second int: The index of the second text
+         * @param compared int: The number of characters compared
+         * @param coincidences int: The number of coincidences
+         * @param significance double: The minus log10 of the probability of
+         * the coincidences with different pads
+         */
+        Match(int first, int second, int compared, int coincidences, double significance) {
+            this.first = first;
+            this.second = second;
+            this.compared = compared;
+            this.coincidences = coincidences;
+            this.significance = significance;
+        }
+
+        /**
+         * Getter method of the field first.
+         * @return int: the class field first
+         */
+        public int getFirst() {
+            return this.first;
+        }
+
+        /**
+         * Getter method of the field second.
+         * @return int: the class field second
+         */
+        public int getSecond() {
+            return this.second;
+        }
+
+        /**
+         * Getter method of the field compared.
+         * @return int: the class field compared
+         */
+        public int getCompared() {
+            return this.compared;
+        }
+
+        /**
+         * Getter method of the field coincidences.
+         * @return int: the class field coincidences
+         */
+        public int getCoincidences() {
+            return this.coincidences;
+        }
+
+        /**
+         * Getter method of the field significance.
+         * @return double: the class field significance
+         */
+        public double getSignificance() {
+            return this.significance;
+        }
+
+    }
+
+    /**
+     * The offset, the length and the first values of the records of a file.
+     */
+    private static final class Index {
+
+        /**
+         * The offset of the characters of every record.
+         */
+        private long[] offsets = new long[1024];
+
+        /**
+         * The number of characters of every record.
+         */
+        private int[] lengths = new int[1024];
+
+        /**
+         * The number of values at the begin of every record, at most
+         * prefixLength.
+         */
+        private int[] counts = new int[1024];
+
+        /**
+         * The values at the begin of the records, RECORDS_PER_CHUNK records
+         * of prefixLength values in every chunk, so that no index overflows
+         * with millions of records.
+         */
+        private char[][] prefixes = new char[16][];
+
+        /**
+         * The number of records.
+         */
+        private int count;
+
+    }
+
+    /**
+     * The buffers used by a thread to verify the pairs.
+     */
+    private static final class Scratch {
+
+        /**
+         * The values of the first text.
+         */
+        private final int[] first;
+
+        /**
+         * The values of the second text.
+         */
+        private final int[] second;
+
+        /**
+         * True for the positions of the bands in which the two texts share a
+         * bucket. They are not counted, because the texts coincide there by
+         * construction.
+         */
+        private final boolean[] excluded;
+
+        /**
+         * The buffer of the positional reads.
+         */
+        private final ByteBuffer bytes = ByteBuffer.allocate(VernamPadReuseDetector.READ_BUFFER_SIZE);
+
+        /**
+         * Constructor of the class.
+         * @param maxCompared int: The number of values of the buffers
+         * @param prefixLength int: The number of positions of the bands
+         */
+        Scratch(int maxCompared, int prefixLength) {
+            this.first = new int[maxCompared];
+            this.second = new int[maxCompared];
+            this.excluded = new boolean[prefixLength];
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. The default parameters are used: bands of
+     * DEFAULT_ROWS positions, as many as needed to find DEFAULT_RECALL of the
+     * reused pads, 992, in the first DEFAULT_PREFIX_LENGTH characters.
+     * @param unicode boolean: True if the texts have been encrypted with
+     * UnicodeVernamCipher, false if with VernamCipher
+     */
+    public VernamPadReuseDetector(boolean unicode) {
+        this(unicode, VernamPadReuseDetector.bandsFor(VernamPadReuseDetector.DEFAULT_ROWS, VernamPadReuseDetector.DEFAULT_PREFIX_LENGTH, VernamPadReuseDetector.DEFAULT_RECALL),
+                VernamPadReuseDetector.DEFAULT_ROWS, VernamPadReuseDetector.DEFAULT_PREFIX_LENGTH);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param unicode boolean: True if the texts have been encrypted with
+     * UnicodeVernamCipher, false if with VernamCipher
+     * @param bands int: The number of bands. More bands find more pairs but
+     * produce more candidates. It must be positive
+     * @param rows int: The number of positions of a band. More positions
+     * produce less candidates but find less pairs. It must be positive
+     * @param prefixLength int: The number of characters at the begin of a
+     * text in which the positions are chosen. It must be at least rows
+     */
+    public VernamPadReuseDetector(boolean unicode, int bands, int rows, int prefixLength) {
+        this(unicode, bands, rows, prefixLength, VernamPadReuseDetector.DEFAULT_WINDOW,
+                VernamPadReuseDetector.DEFAULT_MAX_COMPARED, VernamPadReuseDetector.DEFAULT_MIN_COMPARED,
+                VernamPadReuseDetector.DEFAULT_FALSE_POSITIVES);
+    }
+
+    /**
+     * Constructor of the class.
+     * @param unicode boolean: True if the texts have been encrypted with
+     * UnicodeVernamCipher, false if with VernamCipher
+     * @param bands int: The number of bands. It must be positive
+     * @param rows int: The number of positions of a band. It must be positive
+     * @param prefixLength int: The number of characters at the begin of a
+     * text in which the positions are chosen. It must be at least rows
+     * @param window int: The number of texts of a bucket which every text is
+     * compared with, it limits the cost of the large buckets. It must be
+     * positive
+     * @param maxCompared int: The maximum number of characters compared for a
+     * pair. It must be positive
+     * @param minCompared int: The minimum number of characters compared to
+     * report a pair
+     * @param falsePositives double: The expected number of pairs reported by
+     * chance in a run. It must be positive
+     */
+    public VernamPadReuseDetector(boolean unicode, int bands, int rows, int prefixLength, int window, int maxCompared, int minCompared, double falsePositives) {
+        if(bands < 1 || rows < 1 || window < 1 || maxCompared < 1) {
+            throw new IllegalArgumentException("The bands, the rows, the window and the compared characters must be positive");
+        }
+        if(prefixLength < rows) {
+            throw new IllegalArgumentException("The prefix can not be shorter than the rows");
+        }
+        if(!(falsePositives > 0)) {
+            throw new IllegalArgumentException("The false positives must be positive");
+        }
+        this.unicode = unicode;
+        this.bands = bands;
+        this.rows = rows;
+        this.prefixLength = prefixLength;
+        this.window = window;
+        this.maxCompared = maxCompared;
+        this.minCompared = minCompared;
+        this.falsePositives = falsePositives;
+        this.positions = VernamPadReuseDetector.choosePositions(bands, rows, prefixLength);
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It reads the texts of the given file and returns the pairs which have
+     * probably been encrypted with the same pad, sorted from the most
+     * probable.
+     * @param file Path: The file containing the texts, as written by
+     * writeCiphertexts
+     * @return List(Match): The pairs found
+     * @throws IOException If the file can not be read or is not valid
+     * @throws IllegalStateException If the bands produce more than
+     * MAXIMUM_CANDIDATES candidate pairs, because they have too few
+     * positions for the collection
+     */
+    public List<Match> detect(Path file) throws IOException {
+        Index index = this.readIndex(file);
+        long[] candidates = this.findCandidates(index);
+        double minSignificance = Math.log10(candidates.length / this.falsePositives);
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(() -> new Scratch(this.maxCompared, this.prefixLength));
+            return Arrays.stream(candidates)
+                    .parallel()
+                    .mapToObj(pair -> this.verify(channel, index, pair, scratches.get(), minSignificance))
+                    .filter(Objects::nonNull)
+                    .sorted(Comparator.comparingDouble(Match::getSignificance).reversed())
+                    .collect(Collectors.toList());
+        }
+        catch(UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method reads all the records of the file sequentially, decoding
+     * only the characters at their begin.
+     * @param file Path: The file to read
+     * @return Index: The offset, the length and the first values of every
+     * record
+     * @throws IOException If the file can not be read or is not valid
+     */
+    private Index readIndex(Path file) throws IOException {
+        Index index = new Index();
+        long offset = 0;
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 20))) {
+            while(true)
+            {
+                int length;
+                try {
+                    length = input.readInt();
+                }
+                catch(EOFException ex) {
+                    break;
+                }
+                if(length < 0) {
+                    throw new IOException("Invalid record length at offset " + offset);
+                }
+                if(index.count == index.offsets.length) {
+                    index.offsets = Arrays.copyOf(index.offsets, index.count * 2);
+                    index.lengths = Arrays.copyOf(index.lengths, index.count * 2);
+                    index.counts = Arrays.copyOf(index.counts, index.count * 2);
+                }
+                int chunk = index.count / VernamPadReuseDetector.RECORDS_PER_CHUNK;
+                if(chunk == index.prefixes.length) {
+                    index.prefixes = Arrays.copyOf(index.prefixes, chunk * 2);
+                }
+                if(index.prefixes[chunk] == null) {
+                    index.prefixes[chunk] = new char[VernamPadReuseDetector.RECORDS_PER_CHUNK * this.prefixLength];
+                }
+                char[] prefix = index.prefixes[chunk];
+                int start = (index.count % VernamPadReuseDetector.RECORDS_PER_CHUNK) * this.prefixLength;
+                int read = 0, values = 0;
+                while(read < length && values < this.prefixLength)
+                {
+                    int value = this.valueOf(input.readChar());
+                    read++;
+                    if(value != -1) {
+                        prefix[start + values++] = (char) value;
+                    }
+                }
+                VernamPadReuseDetector.skipFully(input, 2L * (length - read));
+                index.counts[index.count] = values;
+                index.offsets[index.count] = offset + 4;
+                index.lengths[index.count] = length;
+                index.count++;
+                offset += 4 + 2L * length;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * This method returns the value of a character in the difference
+     * arithmetic: its index in the alphabet for VernamCipher, the character
+     * itself for UnicodeVernamCipher.
+     * @param ch char: The character
+     * @return int: The value, -1 if the character is not encrypted by the
+     * cipher
+     */
+    private int valueOf(char ch) {
+        if(this.unicode) {
+            return ch;
+        }
+        if(ASCIICharacterUtils.isLowercaseLetter(ch)) {
+            return ch - 'a';
+        }
+        else if(ASCIICharacterUtils.isUppercaseLetter(ch)) {
+            return ch - 'A';
+        }
+        return -1;
+    }
+
+    /**
+     * This method returns the bucket of a record for a band.
+     * @param band int: The band
+     * @param index Index: The first values of the records
+     * @param record int: The record
+     * @return int: The bucket, never negative, or -1 if the text is too
+     * short
+     */
+    private int bucketOf(int band, Index index, int record) {
+        char[] prefix = index.prefixes[record / VernamPadReuseDetector.RECORDS_PER_CHUNK];
+        int start = (record % VernamPadReuseDetector.RECORDS_PER_CHUNK) * this.prefixLength;
+        int values = index.counts[record];
+        long hash = band * 0x9E3779B97F4A7C15L;
+        for(int r = 0; r < this.rows; r++)
+        {
+            int position = this.positions[band * this.rows + r];
+            if(position >= values) {
+                return -1;
+            }
+            hash = (hash ^ prefix[start + position]) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        return (int) (hash >>> 33);
+    }
+
+    /**
+     * This method returns the candidate pairs: for every band the texts are
+     * sorted by bucket and every text is paired with the next texts of its
+     * bucket, up to this.window.
+     * @param index Index: The first values of the records
+     * @return long[]: The distinct pairs, as first * 2^32 + second with
+     * first smaller than second
+     * @throws IllegalStateException If there are more than
+     * MAXIMUM_CANDIDATES pairs
+     */
+    private long[] findCandidates(Index index) {
+        long[] pairs = new long[1024];
+        int nPairs = 0;
+        long[] sorted = new long[index.count];
+        int[] buckets = new int[index.count];
+        for(int b = 0; b < this.bands; b++)
+        {
+            int band = b;
+            IntStream.range(0, index.count).parallel().forEach(i -> buckets[i] = this.bucketOf(band, index, i));
+            int n = 0;
+            for(int i = 0; i < index.count; i++)
+            {
+                int bucket = buckets[i];
+                if(bucket != -1) {
+                    sorted[n++] = ((long) bucket << 32) | i;
+                }
+            }
+            Arrays.parallelSort(sorted, 0, n);
+            for(int i = 0; i < n; i++)
+            {
+                long bucket = sorted[i] >>> 32;
+                for(int j = i + 1; j < n && j <= i + this.window && (sorted[j] >>> 32) == bucket; j++)
+                {
+                    if(nPairs == pairs.length) {
+                        nPairs = VernamPadReuseDetector.distinct(pairs, nPairs);
+                        if(nPairs > VernamPadReuseDetector.MAXIMUM_CANDIDATES) {
+                            throw new IllegalStateException("More than " + VernamPadReuseDetector.MAXIMUM_CANDIDATES + " candidate pairs: the bands need more positions");
+                        }
+                        if(nPairs > pairs.length / 2) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                    }
+                    pairs[nPairs++] = ((sorted[i] & 0xFFFFFFFFL) << 32) | (sorted[j] & 0xFFFFFFFFL);
+                }
+            }
+        }
+        return Arrays.copyOf(pairs, VernamPadReuseDetector.distinct(pairs, nPairs));
+    }
+
+    /**
+     * This method compares the two texts of a candidate pair.
+     * @param channel FileChannel: The channel of the file
+     * @param index Index: The offset and the length of the records
+     * @param pair long: The pair, as first * 2^32 + second
+     * @param scratch Scratch: The buffers of the current thread
+     * @param minSignificance double: The significance needed to report the
+     * pair
+     * @return Match: The match, null if the pair has not been encrypted with
+     * the same pad
+     */
+    private Match verify(FileChannel channel, Index index, long pair, Scratch scratch, double minSignificance) {
+        int first = (int) (pair >>> 32);
+        int second = (int) pair;
+        int firstValues = this.readValues(channel, index.offsets[first], index.lengths[first], scratch.first, scratch.bytes);
+        int secondValues = this.readValues(channel, index.offsets[second], index.lengths[second], scratch.second, scratch.bytes);
+        int length = Math.min(firstValues, secondValues);
+        this.excludeSharedBands(scratch, length);
+        int compared = 0, coincidences = 0;
+        for(int i = 0; i < length; i++)
+        {
+            if(i >= this.prefixLength || !scratch.excluded[i]) {
+                compared++;
+                if(scratch.first[i] == scratch.second[i]) {
+                    coincidences++;
+                }
+            }
+        }
+        if(compared < this.minCompared || compared == 0) {
+            return null;
+        }
+        double probability = 1.0 / (this.unicode ? VernamPadReuseDetector.UNICODE_LENGTH : VernamPadReuseDetector.ALPHABET_LENGTH);
+        if(coincidences <= compared * probability) {
+            return null;
+        }
+        double significance = -VernamPadReuseDetector.log10BinomialTail(compared, coincidences, probability);
+        if(significance < minSignificance) {
+            return null;
+        }
+        return new Match(first, second, compared, coincidences, significance);
+    }
+
+    /**
+     * This method marks in scratch.excluded the positions of the bands in
+     * which the two texts of scratch share a bucket.
+     * @param scratch Scratch: The values of the two texts
+     * @param length int: The number of values of the shorter text
+     */
+    private void excludeSharedBands(Scratch scratch, int length) {
+        Arrays.fill(scratch.excluded, false);
+        for(int b = 0; b < this.bands; b++)
+        {
+            boolean shared = true;
+            for(int r = 0; r < this.rows && shared; r++)
+            {
+                int position = this.positions[b * this.rows + r];
+                shared = position < length && scratch.first[position] == scratch.second[position];
+            }
+            if(shared) {
+                for(int r = 0; r < this.rows; r++)
+                {
+                    scratch.excluded[this.positions[b * this.rows + r]] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reads the values at the begin of a record with positional
+     * reads, so that more threads can use the same channel.
+     * @param channel FileChannel: The channel of the file
+     * @param offset long: The offset of the characters of the record
+     * @param length int: The number of characters of the record
+     * @param values int[]: The buffer to fill
+     * @param buffer ByteBuffer: The buffer of the reads
+     * @return int: The number of values read
+     */
+    private int readValues(FileChannel channel, long offset, int length, int[] values, ByteBuffer buffer) {
+        long position = offset;
+        long end = offset + 2L * length;
+        int count = 0;
+        try {
+            while(position < end && count < values.length)
+            {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if(read <= 0) {
+                    throw new EOFException("Truncated record at offset " + position);
+                }
+                position += read - (read % 2);
+                buffer.flip();
+                while(buffer.remaining() >= 2 && count < values.length)
+                {
+                    int value = this.valueOf(buffer.getChar());
+                    if(value != -1) {
+                        values[count++] = value;
+                    }
+                }
+            }
+        }
+        catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return count;
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method chooses the distinct positions of every band.
+     * @param bands int: The number of bands
+     * @param rows int: The number of positions of a band
+     * @param prefixLength int: The positions are smaller than this
+     * @return int[]: The positions, bands * rows in all
+     */
+    private static int[] choosePositions(int bands, int rows, int prefixLength) {
+        SplittableRandom random = new SplittableRandom(VernamPadReuseDetector.POSITIONS_SEED);
+        int[] positions = new int[bands * rows];
+        for(int b = 0; b < bands; b++)
+        {
+            for(int r = 0; r < rows; r++)
+            {
+                int position;
+                boolean repeated;
+                do
+                {
+                    position = random.nextInt(prefixLength);
+                    repeated = false;
+                    for(int k = 0; k < r; k++)
+                    {
+                        repeated |= positions[b * rows + k] == position;
+                    }
+                }
+                while(repeated);
+                positions[b * rows + r] = position;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * This method returns the number of bands needed so that two texts
+     * encrypted with the same pad share a bucket in at least one of them with
+     * the given probability, when every position of the prefix coincides with
+     * probability PLAINTEXT_COINCIDENCE. The bands are not independent,
+     * because they choose their positions in the same prefix: the number of
+     * coincidences in the prefix is binomial, and given x coincidences a band
+     * is shared with probability C(x, rows) / C(prefixLength, rows).
+     * @param rows int: The number of positions of a band
+     * @param prefixLength int: The number of positions of the prefix
+     * @param recall double: The probability, smaller than 1
+     * @return int: The number of bands
+     */
+    private static int bandsFor(int rows, int prefixLength, double recall) {
+        int low = 0, high = 1;
+        while(VernamPadReuseDetector.recallOf(high, rows, prefixLength) < recall)
+        {
+            low = high;
+            high *= 2;
+        }
+        while(high - low > 1)
+        {
+            int middle = (low + high) >>> 1;
+            if(VernamPadReuseDetector.recallOf(middle, rows, prefixLength) < recall) {
+                low = middle;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * This method returns the probability that two texts encrypted with the
+     * same pad share a bucket in at least one of the bands, as described in
+     * bandsFor.
+     * @param bands int: The number of bands
+     * @param rows int: The number of positions of a band
+     * @param prefixLength int: The number of positions of the prefix
+     * @return double: The probability
+     */
+    private static double recallOf(int bands, int rows, int prefixLength) {
+        double p = VernamPadReuseDetector.PLAINTEXT_COINCIDENCE;
+        double probability = Math.pow(1 - p, prefixLength);
+        double recall = 0;
+        for(int x = 0; x <= prefixLength; x++)
+        {
+            double shared = 1;
+            for(int r = 0; r < rows; r++)
+            {
+                shared *= (double) Math.max(x - r, 0) / (prefixLength - r);
+            }
+            recall += probability * -Math.expm1(bands * Math.log1p(-shared));
+            probability *= (double) (prefixLength - x) / (x + 1) * p / (1 - p);
+        }
+        return recall;
+    }
+
+    /**
+     * This method returns the log10 of the probability of at least k
+     * successes in n trials, each with probability p.
+     * @param n int: The number of trials
+     * @param k int: The number of successes, larger than n * p
+     * @param p double: The probability of a success
+     * @return double: The log10 of the probability
+     */
+    private static double log10BinomialTail(int n, int k, double p) {
+        double logTerm = k * Math.log(p) + (n - k) * Math.log1p(-p);
+        for(int i = 0; i < k; i++)
+        {
+            logTerm += Math.log(n - i) - Math.log(i + 1);
+        }
+        double ratio = p / (1 - p), sum = 1, term = 1;
+        for(int i = k; i < n && term > 1e-12 * sum; i++)
+        {
+            term *= ratio * (n - i) / (i + 1);
+            sum += term;
+        }
+        return (logTerm + Math.log(sum)) / Math.log(10);
+    }
+
+    /**
+     * This method sorts the first values of the array and removes the
+     * repeated ones.
+     * @param values long[]: The array
+     * @param length int: The number of values to consider
+     * @return int: The number of distinct values, which are now at the begin
+     * of the array
+     */
+    private static int distinct(long[] values, int length) {
+        Arrays.parallelSort(values, 0, length);
+        int distinct = 0;
+        for(int i = 0; i < length; i++)
+        {
+            if(distinct == 0 || values[distinct - 1] != values[i]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * This method skips the given number of bytes of the stream.
+     * @param input DataInputStream: The stream
+     * @param bytes long: The number of bytes to skip
+     * @throws IOException If the stream ends before
+     */
+    private static void skipFully(DataInputStream input, long bytes) throws IOException {
+        while(bytes > 0)
+        {
+            long skipped = input.skip(bytes);
+            if(skipped <= 0) {
+                if(input.read() == -1) {
+                    throw new EOFException("Truncated record");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It writes the given texts in a file which can be read by detect. Every
+     * text is written as its length (int) followed by its characters, as done
+     * by DataOutputStream.writeInt and DataOutputStream.writeChars.
+     * @param file Path: The file to write
+     * @param ciphertexts Iterable(String): The encrypted texts
+     * @throws IOException If the file can not be written
+     */
+    public static void writeCiphertexts(Path file, Iterable<String> ciphertexts) throws IOException {
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 20))) {
+            for(String ciphertext : ciphertexts)
+            {
+                output.writeInt(ciphertext.length());
+                output.writeChars(ciphertext);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,464 @@
+package cryptography;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class of a file of one-time pads for the Vernam Cipher, filled in
+ * advance with random lowercase letters and mapped in memory. The file keeps
+ * the offset of the first letter not yet used: every encryption takes the
+ * letters after it and moves it atomically, also between threads, and the
+ * offset is written to the file before the letters are used, so a pad is
+ * never used twice, even after a restart, without searching the used keys.
+ * The file is locked while the store is open, so no other process or store
+ * can give the same letters. The letters are read from the mapped file
+ * without copying them.
+ * <p>
+ * The file starts with a header of HEADER_SIZE bytes: the magic number
+ * "VPAD", the version, the number of letters and the offset, then the
+ * letters, one byte each. The file can have at most Integer.MAX_VALUE bytes.
+ * A text is encrypted as VernamCipher.encryptText does with a key made of the
+ * letters used: one letter for every letter of the text.
+ */
+public final class VernamPadStore implements Closeable {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The bytes of the header of the file.
+     */
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * The magic number at the start of the file, "VPAD".
+     */
+    private static final int MAGIC = 0x56504144;
+
+    /**
+     * The version of the format of the file.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The index in the header of the number of letters.
+     */
+    private static final int LENGTH_INDEX = 8;
+
+    /**
+     * The index in the header of the offset of the first letter not used.
+     */
+    private static final int OFFSET_INDEX = 16;
+
+    /**
+     * The number of letters written at a time when the file is created.
+     */
+    private static final int FILL_SIZE = 1 << 16;
+
+    /**
+     * The length of the alphabet.
+     */
+    private static final int ALPHABET_LENGTH = 26;
+
+    /**
+     * The real paths of the files open in a store of this process. A file is
+     * not opened twice by the same process, because closing any channel of a
+     * file can release the locks of the whole process on it.
+     */
+    private static final Set<Path> OPEN_FILES = ConcurrentHashMap.newKeySet();
+
+    //FIELDS
+
+    /**
+     * The real path of the file.
+     */
+    private final Path file;
+
+    /**
+     * The channel of the file, open until the store is closed.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The exclusive lock of the file, held until the store is closed.
+     */
+    private final FileLock lock;
+
+    /**
+     * The mapped file, header included.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The number of letters of the file.
+     */
+    private final long length;
+
+    /**
+     * The offset of the first letter not given to an encryption.
+     */
+    private final AtomicLong offset;
+
+    /**
+     * The offset written in the file, guarded by this.
+     */
+    private long durableOffset;
+
+    //NESTED CLASSES
+
+    /**
+     * The result of an encryption: the encrypted text and the letters of the
+     * pad used, which are needed to decrypt it.
+     */
+    public static final class Encryption {
+
+        /**
+         * The encrypted text.
+         */
+        private final String text;
+
+        /**
+         * The offset of the first letter of the pad used.
+         */
+        private final long offset;
+
+        /**
+         * The number of letters of the pad used.
+         */
+        private final int length;
+
+        /**
+         * Constructor of the class.
+         * @param text String: The encrypted text
+         * @param offset long: The offset of the first letter of the pad used
+         * @param length int: The number of letters of the pad used
+         */
+        Encryption(String text, long offset, int length) {
+            this.text = text;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Getter method of the field text.
+         * @return String: the class field text
+         */
+        public String getText() {
+            return this.text;
+        }
+
+        /**
+         * Getter method of the field offset.
+         * @return long: the class field offset
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Getter method of the field length.
+         * @return int: the class field length
+         */
+        public int getLength() {
+            return this.length;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class.
+     * @param file Path: The real path of the file
+     * @param channel FileChannel: The channel of the file
+     * @param lock FileLock: The exclusive lock of the file
+     * @param buffer MappedByteBuffer: The mapped file, with a valid header
+     */
+    private VernamPadStore(Path file, FileChannel channel, FileLock lock, MappedByteBuffer buffer) {
+        this.file = file;
+        this.channel = channel;
+        this.lock = lock;
+        this.buffer = buffer;
+        this.length = buffer.getLong(VernamPadStore.LENGTH_INDEX);
+        this.durableOffset = buffer.getLong(VernamPadStore.OFFSET_INDEX);
+        this.offset = new AtomicLong(this.durableOffset);
+    }
+
+    //GETTERS
+
+    /**
+     * Getter method of the field length.
+     * @return long: the number of letters of the file
+     */
+    public long getLength() {
+        return this.length;
+    }
+
+    /**
+     * It returns the offset of the first letter not used.
+     * @return long: The offset
+     */
+    public long getOffset() {
+        return this.offset.get();
+    }
+
+    /**
+     * It returns the number of letters not used.
+     * @return long: The letters left
+     */
+    public long getRemaining() {
+        return this.length - this.offset.get();
+    }
+
+    //PUBLIC METHODS
+
+    /**
+     * It takes the given number of letters not used, moving the offset after
+     * them and writing it in the file before returning.
+     * @param letters int: The number of letters
+     * @return long: The offset of the first letter taken
+     * @throws IllegalCipherKeyException If there are not enough letters left
+     * @throws IOException If the offset can not be written
+     */
+    public long reserve(int letters) throws IllegalCipherKeyException, IOException {
+        if(letters < 0) {
+            throw new IllegalArgumentException("The number of letters can not be negative");
+        }
+        long start, end;
+        do
+        {
+            start = this.offset.get();
+            end = start + letters;
+            if(end > this.length) {
+                throw new IllegalCipherKeyException("The pad store has only " + (this.length - start) + " letters left");
+            }
+        }
+        while(!this.offset.compareAndSet(start, end));
+        this.persist(end);
+        return start;
+    }
+
+    /**
+     * It returns the letters of the pad at the given offset, without copying
+     * them. Only the letters already used can be read.
+     * @param offset long: The offset of the first letter
+     * @param length int: The number of letters
+     * @return CharSequence: The letters, a view of the mapped file
+     * @throws IllegalArgumentException If the letters have not been used
+     */
+    public CharSequence getPad(long offset, int length) {
+        this.checkUsed(offset, length);
+        return new MappedText(this.buffer, VernamPadStore.HEADER_SIZE + (int) offset, length);
+    }
+
+    /**
+     * It encrypts the given text with the next letters of the pad, one for
+     * every letter of the text.
+     * @param text String: The text that you want to encrypt
+     * @return Encryption: The encrypted text and the offset of the pad used
+     * @throws IllegalCipherKeyException If there are not enough letters left
+     * @throws IOException If the offset can not be written
+     */
+    public Encryption encryptText(String text) throws IllegalCipherKeyException, IOException {
+        if(text == null || text.isEmpty()) {
+            return new Encryption("", this.offset.get(), 0);
+        }
+        int letters = ASCIICharacterUtils.countLetters(text);
+        long start = this.reserve(letters);
+        return new Encryption(VernamCipher.shiftLetters(text, this.getPad(start, letters), true), start, letters);
+    }
+
+    /**
+     * It decrypts the given text with the letters of the pad at the given
+     * offset.
+     * @param text String: The encrypted text
+     * @param offset long: The offset returned with the encrypted text
+     * @return String: The decrypted text
+     * @throws IllegalArgumentException If the letters of the pad have not
+     * been used
+     */
+    public String decryptText(String text, long offset) {
+        if(text == null || text.isEmpty()) {
+            return "";
+        }
+        return VernamCipher.shiftLetters(text, this.getPad(offset, ASCIICharacterUtils.countLetters(text)), false);
+    }
+
+    /**
+     * It writes the offset and the letters in the file, then releases the
+     * lock of the file.
+     * @throws IOException If the file can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if(!this.channel.isOpen()) {
+            return;
+        }
+        try {
+            this.persist(this.offset.get());
+            this.buffer.force();
+        }
+        finally {
+            try {
+                this.lock.release();
+            }
+            finally {
+                this.channel.close();
+                VernamPadStore.OPEN_FILES.remove(this.file);
+            }
+        }
+    }
+
+    //PRIVATE METHODS
+
+    /**
+     * This method writes in the file an offset at least as big as the given
+     * one. The offsets of the threads waiting are written together.
+     * @param end long: The offset which must be written
+     * @throws IOException If the file can not be written
+     */
+    private synchronized void persist(long end) throws IOException {
+        if(this.durableOffset >= end) {
+            return;
+        }
+        long current = this.offset.get();
+        this.buffer.putLong(VernamPadStore.OFFSET_INDEX, current);
+        try {
+            this.buffer.force(0, VernamPadStore.HEADER_SIZE);
+        }
+        catch(UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        this.durableOffset = current;
+    }
+
+    /**
+     * This method checks that the letters of the pad have been used.
+     * @param offset long: The offset of the first letter
+     * @param length int: The number of letters
+     * @throws IllegalArgumentException If the letters have not been used
+     */
+    private void checkUsed(long offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > this.offset.get()) {
+            throw new IllegalArgumentException("The letters " + offset + "-" + (offset + length) + " of the pad have not been used");
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It creates a new file of random letters, generated with SecureRandom,
+     * and maps it.
+     * @param file Path: The file, which must not exist
+     * @param length long: The number of letters, at most Integer.MAX_VALUE
+     * minus HEADER_SIZE
+     * @return VernamPadStore: The store of the file
+     * @throws IOException If the file exists or can not be written
+     */
+    public static VernamPadStore create(Path file, long length) throws IOException {
+        if(length < 0 || length > Integer.MAX_VALUE - VernamPadStore.HEADER_SIZE) {
+            throw new IllegalArgumentException("The length must be between 0 and " + (Integer.MAX_VALUE - VernamPadStore.HEADER_SIZE));
+        }
+        SecureRandom random = new SecureRandom();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(VernamPadStore.HEADER_SIZE);
+            header.putInt(VernamPadStore.MAGIC).putInt(VernamPadStore.VERSION).putLong(length).putLong(0).clear();
+            while(header.hasRemaining())
+            {
+                channel.write(header);
+            }
+            byte[] bytes = new byte[VernamPadStore.FILL_SIZE];
+            ByteBuffer letters = ByteBuffer.allocate(VernamPadStore.FILL_SIZE);
+            long written = 0;
+            while(written < length)
+            {
+                letters.clear();
+                letters.limit((int) Math.min(VernamPadStore.FILL_SIZE, length - written));
+                while(letters.hasRemaining())
+                {
+                    random.nextBytes(bytes);
+                    for(int i = 0; i < bytes.length && letters.hasRemaining(); i++)
+                    {
+                        int value = bytes[i] & 0xFF;
+                        if(value < VernamPadStore.ALPHABET_LENGTH * 9) {
+                            letters.put((byte) ('a' + value % VernamPadStore.ALPHABET_LENGTH));
+                        }
+                    }
+                }
+                letters.flip();
+                while(letters.hasRemaining())
+                {
+                    written += channel.write(letters);
+                }
+            }
+            channel.force(true);
+        }
+        return VernamPadStore.open(file);
+    }
+
+    /**
+     * It maps an existing file of letters and locks it until the store is
+     * closed.
+     * @param file Path: The file, created by create(Path, long)
+     * @return VernamPadStore: The store of the file
+     * @throws IOException If the file can not be read, is not valid or is
+     * already open in a store, of this or of another process
+     */
+    public static VernamPadStore open(Path file) throws IOException {
+        Path realFile = file.toRealPath();
+        if(!VernamPadStore.OPEN_FILES.add(realFile)) {
+            throw new IOException("The pad store is already open: " + file);
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(realFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        catch(IOException | RuntimeException ex) {
+            VernamPadStore.OPEN_FILES.remove(realFile);
+            throw ex;
+        }
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            }
+            catch(OverlappingFileLockException ex) {
+                lock = null;
+            }
+            if(lock == null) {
+                throw new IOException("The pad store is already open in another process: " + file);
+            }
+            long size = channel.size();
+            if(size < VernamPadStore.HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("The file is not a pad store: " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if(buffer.getInt(0) != VernamPadStore.MAGIC || buffer.getInt(4) != VernamPadStore.VERSION) {
+                throw new IOException("The file is not a pad store of version " + VernamPadStore.VERSION);
+            }
+            long length = buffer.getLong(VernamPadStore.LENGTH_INDEX);
+            long offset = buffer.getLong(VernamPadStore.OFFSET_INDEX);
+            if(length != size - VernamPadStore.HEADER_SIZE || offset < 0 || offset > length) {
+                throw new IOException("The header of the pad store is not valid");
+            }
+            return new VernamPadStore(realFile, channel, lock, buffer);
+        }
+        catch(IOException | RuntimeException ex) {
+            channel.close();
+            VernamPadStore.OPEN_FILES.remove(realFile);
+            throw ex;
+        }
+    }
+
+}
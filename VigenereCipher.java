@@ -35,6 +35,93 @@ public final class VigenereCipher implements Cipher {
      */
     private String lastDecryptedText;
     
+    //NESTED CLASSES
+    
+    /**
+     * The compiled form of the cipher, returned by compile(String). It has no
+     * state and can be shared between threads. The state of a text is the
+     * position in the key of its next letter.
+     */
+    private static final class Engine implements CipherEngine {
+        
+        /**
+         * The shift of every letter of the key, as given by fillShifts.
+         */
+        private final byte[] shifts;
+        
+        /**
+         * Constructor of the class.
+         * @param shifts byte[]: The shift of every letter of the key
+         */
+        private Engine(byte[] shifts) {
+            this.shifts = shifts;
+        }
+        
+        /**
+         * It encrypts a chunk of a text. Only letters are encrypted and only
+         * they move the position in the key.
+         */
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shiftLetters(src, srcOffset, dst, dstOffset, length, (int) state, true);
+        }
+        
+        /**
+         * It decrypts a chunk of a text. Only letters are decrypted and only
+         * they move the position in the key.
+         */
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.shiftLetters(src, srcOffset, dst, dstOffset, length, (int) state, false);
+        }
+        
+        /**
+         * It returns 1, every character is encrypted alone.
+         */
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+        
+        /**
+         * It returns false, the shift depends on the letters before.
+         */
+        @Override
+        public boolean isPositionIndependent() {
+            return false;
+        }
+        
+        /**
+         * This method shifts the letters of a chunk with the key, the other
+         * characters are copied.
+         * @param src char[]: The characters to shift
+         * @param srcOffset int: The index of the first character
+         * @param dst char[]: The array where the result is written
+         * @param dstOffset int: The index of dst where the first character is
+         * written
+         * @param length int: The number of characters
+         * @param position int: The position in the key of the first letter
+         * @param encryption boolean: True to encrypt, false to decrypt
+         * @return int: The position in the key of the letter after the chunk
+         */
+        private int shiftLetters(char[] src, int srcOffset, char[] dst, int dstOffset, int length, int position, boolean encryption) {
+            int keyLength = this.shifts.length;
+            for(int i = 0; i < length; i++)
+            {
+                char ch = src[srcOffset + i];
+                char base = ASCIICharacterUtils.getBase(ch);
+                if(base != 0) {
+                    int shift = encryption ? this.shifts[position] : VigenereCipher.ALPHABET_LENGTH - this.shifts[position];
+                    ch = (char) (base + (ch - base + shift) % VigenereCipher.ALPHABET_LENGTH);
+                    position = (position == keyLength - 1) ? 0 : position + 1;
+                }
+                dst[dstOffset + i] = ch;
+            }
+            return position;
+        }
+        
+    }
+    
     //CONSTRUCTORS
     
     /**
@@ -195,13 +282,14 @@ public final class VigenereCipher implements Cipher {
      * @return String: The generated random key
      */
     private String generateRandomKey() {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         StringBuilder key = new StringBuilder();
         int length = new Random().nextInt(100);
         for(int i = 0; i < length; i++) 
         {
             key.append((char) (new Random().nextInt(VigenereCipher.ALPHABET_LENGTH) + 'a'));
         }
-        return key.toString();
+        return CipherEvents.endGeneration(event, VigenereCipher.class, key.toString());
     }
     
     /**
@@ -210,6 +298,7 @@ public final class VigenereCipher implements Cipher {
      * @return String: The generated random key
      */
     private String generateRandomKey(int length) {
+        CipherEvents.Generation event = CipherEvents.beginGeneration();
         if(length < 1) {
             throw new IllegalArgumentException("The length must be positive");
         }
@@ -218,7 +307,7 @@ public final class VigenereCipher implements Cipher {
         {
             key.append((char) (new Random().nextInt(VigenereCipher.ALPHABET_LENGTH) + 'a'));
         }
-        return key.toString();
+        return CipherEvents.endGeneration(event, VigenereCipher.class, key.toString());
     }
     
     //PUBLIC METHODS
@@ -233,18 +322,19 @@ public final class VigenereCipher implements Cipher {
      */
     @Override
     public String encryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastEncryptedText = "";
             return "";
         }
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         String key = this.key.toLowerCase();
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
         {
-            if(Character.isLetter(text.charAt(i))) {
-                if(Character.isLowerCase(text.charAt(i))) {
+            if(ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                if(ASCIICharacterUtils.isLowercaseLetter(text.charAt(i))) {
                     encryptedText.append((char) ('a' + ((text.charAt(i) + key.charAt(j) + 1 - (2 * 'a')) % VigenereCipher.ALPHABET_LENGTH)));
                 }
                 else {
@@ -257,7 +347,7 @@ public final class VigenereCipher implements Cipher {
             }
         }
         this.lastEncryptedText = encryptedText.toString();
-        return this.lastEncryptedText;
+        return CipherEvents.endOperation(event, VigenereCipher.class, true, text, this.lastEncryptedText);
     }
     
     /**
@@ -270,18 +360,19 @@ public final class VigenereCipher implements Cipher {
      */
     @Override
     public String decryptText(String text) {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         if(text == null || text.isEmpty()) {
             this.lastDecryptedText = "";
             return "";
         }
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         String key = this.key.toLowerCase();
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
         {
-            if(Character.isLetter(text.charAt(i))) {
-                if(Character.isLowerCase(text.charAt(i))) {
+            if(ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                if(ASCIICharacterUtils.isLowercaseLetter(text.charAt(i))) {
                     decryptedText.append((char) ('a' + ((VigenereCipher.ALPHABET_LENGTH + text.charAt(i) - (key.charAt(j) - 'a' + 1) % VigenereCipher.ALPHABET_LENGTH - 'a') % VigenereCipher.ALPHABET_LENGTH)));
                 }
                 else {
@@ -294,7 +385,7 @@ public final class VigenereCipher implements Cipher {
             }
         }
         this.lastDecryptedText = decryptedText.toString();
-        return this.lastDecryptedText;
+        return CipherEvents.endOperation(event, VigenereCipher.class, false, text, this.lastDecryptedText);
     }
     
     //PRIVATE STATIC METHODS
@@ -312,14 +403,67 @@ public final class VigenereCipher implements Cipher {
         int length = key.length();
         for(int i = 0; i < length; i++)
         {
-            if(!Character.isLetter(key.charAt(i))) {
+            if(!ASCIICharacterUtils.isLetter(key.charAt(i))) {
                 throw new IllegalCipherKeyException();
             }
         }
     }
     
-    //PUBLIC STATIC METHODS
+    /**
+     * This method returns the shift which encrypts a letter into another, as
+     * done by encryptText.
+     * @param plain char: The letter of the plaintext
+     * @param encrypted char: The letter of the ciphertext
+     * @return int: The shift, from 0 to 25, -1 if no shift encrypts plain into
+     * encrypted
+     */
+    private static int shiftOf(char plain, char encrypted) {
+        char base = ASCIICharacterUtils.getBase(plain);
+        int position = encrypted - base;
+        if(position < 0 || position >= VigenereCipher.ALPHABET_LENGTH) {
+            return -1;
+        }
+        return (position - (plain - base) % VigenereCipher.ALPHABET_LENGTH + VigenereCipher.ALPHABET_LENGTH) % VigenereCipher.ALPHABET_LENGTH;
+    }
     
+    //PACKAGE STATIC METHODS
+
+    /**
+     * This method fills the given array with the shift of every letter of the
+     * key, without allocating memory. The shift of a letter is its position in
+     * the alphabet, from 1 for A to 0 for Z, as done by encryptText.
+     * @param key CharSequence: The key
+     * @param shifts byte[]: The array to fill, at least as long as the key
+     * @return int: The number of shifts, -1 if the key is empty or not valid
+     */
+    static int fillShifts(CharSequence key, byte[] shifts) {
+        int length = key.length();
+        if(length == 0) {
+            return -1;
+        }
+        for(int i = 0; i < length; i++)
+        {
+            int index = ASCIICharacterUtils.indexOf(key.charAt(i));
+            if(index == -1) {
+                return -1;
+            }
+            shifts[i] = (byte) ((index + 1) % VigenereCipher.ALPHABET_LENGTH);
+        }
+        return length;
+    }
+
+    /**
+     * This method returns the compiled form of the cipher with the shifts of
+     * a key, as filled by fillShifts, without checking them.
+     * @param shifts byte[]: The shift of every letter of the key, not empty
+     * @return CipherEngine: The compiled cipher
+     */
+    static CipherEngine restore(byte[] shifts) {
+        return new Engine(shifts);
+    }
+    
+    //PUBLIC STATIC METHODS
+
     /**
      * It returns the given text encrypted with the given key. Only letters will
      * be encrypted.
@@ -331,18 +475,19 @@ public final class VigenereCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String encryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         VigenereCipher.checkKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
         key = key.toLowerCase();
-        StringBuilder encryptedText = new StringBuilder();
+        StringBuilder encryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
         {
-            if(Character.isLetter(text.charAt(i))) {
-                if(Character.isLowerCase(text.charAt(i))) {
+            if(ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                if(ASCIICharacterUtils.isLowercaseLetter(text.charAt(i))) {
                     encryptedText.append((char) ('a' + ((text.charAt(i) + key.charAt(j) + 1 - (2 * 'a')) % VigenereCipher.ALPHABET_LENGTH)));
                 }
                 else {
@@ -354,7 +499,7 @@ public final class VigenereCipher implements Cipher {
                 encryptedText.append(text.charAt(i));
             }
         }
-        return encryptedText.toString();
+        return CipherEvents.endOperation(event, VigenereCipher.class, true, text, encryptedText.toString());
     }
     
     /**
@@ -368,18 +513,19 @@ public final class VigenereCipher implements Cipher {
      * @throws IllegalCipherKeyException If the key is not valid
      */
     public static String decryptText(String key, String text) throws IllegalCipherKeyException {
+        CipherEvents.Operation event = CipherEvents.beginOperation();
         VigenereCipher.checkKey(key);
         if(text == null || text.isEmpty()) {
             return "";
         }
         key = key.toLowerCase();
-        StringBuilder decryptedText = new StringBuilder();
+        StringBuilder decryptedText = new StringBuilder(text.length());
         int keyLength = key.length();
         int textLength = text.length();
         for(int i = 0, j = 0; i < textLength; i++) 
         {
-            if(Character.isLetter(text.charAt(i))) {
-                if(Character.isLowerCase(text.charAt(i))) {
+            if(ASCIICharacterUtils.isLetter(text.charAt(i))) {
+                if(ASCIICharacterUtils.isLowercaseLetter(text.charAt(i))) {
                     decryptedText.append((char) ('a' + ((VigenereCipher.ALPHABET_LENGTH + text.charAt(i) - (key.charAt(j) - 'a' + 1) % VigenereCipher.ALPHABET_LENGTH - 'a') % VigenereCipher.ALPHABET_LENGTH)));
                 }
                 else {
@@ -391,7 +537,103 @@ public final class VigenereCipher implements Cipher {
                 decryptedText.append(text.charAt(i));
             }
         }
-        return decryptedText.toString();
+        return CipherEvents.endOperation(event, VigenereCipher.class, false, text, decryptedText.toString());
+    }
+
+    /**
+     * It returns the shortest key which encrypts the given plaintext into the
+     * given ciphertext, in one pass over their letters. The shifts of the
+     * letters are read as a sequence whose minimal period, found with the
+     * failure function of the Knuth-Morris-Pratt algorithm, is the key. The
+     * memory used is proportional to the key and not to the texts, so they
+     * can be very long or mapped from files, as with MappedText. The key is
+     * certain only if the texts contain at least two times its length in
+     * letters.
+     * @param plaintext CharSequence: The plaintext
+     * @param ciphertext CharSequence: The plaintext encrypted with the key
+     * @return String: The key, in lowercase
+     * @throws IllegalArgumentException If the ciphertext is not the plaintext
+     * encrypted with a key or the texts do not contain letters
+     */
+    public static String recoverKey(CharSequence plaintext, CharSequence ciphertext) {
+        int length = plaintext.length();
+        if(ciphertext.length() != length) {
+            throw new IllegalArgumentException("The texts must have the same length");
+        }
+        PeriodFinder finder = new PeriodFinder();
+        for(int i = 0; i < length; i++)
+        {
+            char plain = plaintext.charAt(i), encrypted = ciphertext.charAt(i);
+            if(ASCIICharacterUtils.isLetter(plain)) {
+                int shift = VigenereCipher.shiftOf(plain, encrypted);
+                if(shift == -1) {
+                    throw new IllegalArgumentException("The letter at " + i + " is not encrypted with a shift");
+                }
+                finder.add((byte) shift);
+            }
+            else if(plain != encrypted) {
+                throw new IllegalArgumentException("The character at " + i + " is not a letter but it is encrypted");
+            }
+        }
+        if(finder.getPeriod() == 0) {
+            throw new IllegalArgumentException("The texts must contain letters");
+        }
+        byte[] shifts = finder.getPeriodValues();
+        char[] key = new char[shifts.length];
+        for(int i = 0; i < shifts.length; i++)
+        {
+            key[i] = (char) ('a' + (shifts[i] + VigenereCipher.ALPHABET_LENGTH - 1) % VigenereCipher.ALPHABET_LENGTH);
+        }
+        return new String(key);
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key, which
+     * encrypts and decrypts as encryptText(String, String) and
+     * decryptText(String, String) and can be shared between threads.
+     * @param key String: It can be composed only by letters and it must not be
+     * empty
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static CipherEngine compile(String key) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        VigenereCipher.checkKey(key);
+        byte[] shifts = new byte[key.length()];
+        if(VigenereCipher.fillShifts(key, shifts) == -1) {
+            throw new IllegalCipherKeyException("The key must not be empty");
+        }
+        return CipherEvents.endCompilation(event, VigenereCipher.class, key, new Engine(shifts));
+    }
+    
+    /**
+     * It returns the compiled form of the cipher with the given key and
+     * alphabet: every letter is shifted among the letters of its case by the
+     * letter of the key at its position, from 1 for the first letter of the
+     * alphabet to 0 for the last one, and only letters move the position in
+     * the key. With Alphabet.ENGLISH it encrypts as compile(String).
+     * @param key String: It can be composed only by letters of the alphabet,
+     * of any case, and it must not be empty
+     * @param alphabet Alphabet: The alphabet
+     * @return CipherEngine: The compiled cipher
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    public static CipherEngine compile(String key, Alphabet alphabet) throws IllegalCipherKeyException {
+        CipherEvents.Compilation event = CipherEvents.beginCompilation();
+        if(key == null || key.isEmpty()) {
+            throw new IllegalCipherKeyException("The key must not be empty");
+        }
+        int length = key.length();
+        int[] shifts = new int[length];
+        for(int i = 0; i < length; i++)
+        {
+            int index = alphabet.indexOf(key.charAt(i));
+            if(index == -1) {
+                throw new IllegalCipherKeyException("The key can contain only letters of the alphabet");
+            }
+            shifts[i] = (index + 1) % alphabet.getLength();
+        }
+        return CipherEvents.endCompilation(event, VigenereCipher.class, key, alphabet.polyalphabetic(shifts));
     }
     
 }
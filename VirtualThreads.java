@@ -0,0 +1,95 @@
+package cryptography;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The class to create executors of virtual threads, when the Java version
+ * running the library has them. They are looked up by reflection, so that the
+ * library still compiles and runs on the versions without them: there the
+ * executors use daemon platform threads.
+ */
+final class VirtualThreads {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The method Executors.newVirtualThreadPerTaskExecutor, null if the
+     * running Java version does not have virtual threads.
+     */
+    private static final Method NEW_EXECUTOR = VirtualThreads.findNewExecutor();
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class. It is private because the class has only
+     * static methods.
+     */
+    private VirtualThreads() {
+    }
+
+    //PACKAGE STATIC METHODS
+
+    /**
+     * This method returns if the running Java version has virtual threads.
+     * @return boolean: True if the executors use virtual threads
+     */
+    static boolean isAvailable() {
+        return VirtualThreads.NEW_EXECUTOR != null;
+    }
+
+    /**
+     * This method returns an executor which starts a new virtual thread for
+     * every task, or a cached pool of daemon threads if virtual threads are
+     * not available. The tasks must be bounded by the caller, for example by a
+     * Semaphore.
+     * @param name String: The prefix of the names of the platform threads
+     * @return ExecutorService: The executor
+     */
+    static ExecutorService newExecutor(String name) {
+        if(VirtualThreads.NEW_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VirtualThreads.NEW_EXECUTOR.invoke(null);
+            }
+            catch(ReflectiveOperationException exception) {
+                //the platform threads are used
+            }
+        }
+        return Executors.newCachedThreadPool(VirtualThreads.daemonFactory(name));
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method looks up Executors.newVirtualThreadPerTaskExecutor.
+     * @return Method: The method, null if it does not exist
+     */
+    private static Method findNewExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        }
+        catch(NoSuchMethodException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * This method returns a factory of numbered daemon threads.
+     * @param name String: The prefix of the names of the threads
+     * @return ThreadFactory: The factory
+     */
+    private static ThreadFactory daemonFactory(String name) {
+        ThreadFactory factory = Executors.defaultThreadFactory();
+        AtomicInteger count = new AtomicInteger();
+        return (Runnable task) -> {
+            Thread thread = factory.newThread(task);
+            thread.setName(name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,42 @@
+package cryptography;
+
+/**
+ * The runner of all the tests of the library. It stops at the first test
+ * which fails.
+ */
+final class AllTests {
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private AllTests() {
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs all the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        UsedPadSetTest.main(args);
+        CipherRegistryTest.main(args);
+        VernamPadStoreTest.main(args);
+        VernamEnvelopeTest.main(args);
+        LineCipherJobTest.main(args);
+        IncrementalCipherTextTest.main(args);
+        CipherProcessorTest.main(args);
+        DictionaryAttackTest.main(args);
+        CipherSnapshotTest.main(args);
+        ScratchPoolTest.main(args);
+        CipherJobSchedulerTest.main(args);
+        VernamKeystreamTest.main(args);
+        AlphabetTest.main(args);
+        CipherServerTest.main(args);
+        AllocationHarness.main(new String[0]);
+    }
+
+}
@@ -0,0 +1,527 @@
+package cryptography;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * The test which measures the bytes allocated by every operation of the
+ * ciphers and compares them with the budgets written in this class, so that a
+ * change which allocates more in a hot path fails the tests.
+ * <p>
+ * The chunk methods encrypt and decrypt of the compiled ciphers must not
+ * allocate. Their encryptText and decryptText methods may allocate only the
+ * result and one working copy of the text, or two for the Transposition
+ * Cipher which can not work in place. The encryptText and decryptText methods
+ * of the Cipher classes may allocate only a StringBuilder as long as the
+ * result and the result, and the table of the Transposition Cipher: a
+ * StringBuilder which grows, or an array or a String for every letter, as the
+ * positions and the pairs of the Playfair Cipher once were, is over budget.
+ * A result with characters over 255 also counts the array of bytes allocated
+ * by the String constructor when it tries to compact the characters, and the
+ * array of a StringBuilder when it inflates to two bytes per character. The
+ * bytes are read with com.sun.management.ThreadMXBean before and after many
+ * operations, once the JIT compiler has compiled them.
+ */
+final class AllocationHarness {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The lengths of the texts measured.
+     */
+    private static final int[] LENGTHS = { 16, 1024, 65536 };
+
+    /**
+     * The operations run before the measure, to let the JIT compiler remove
+     * the allocations which do not escape.
+     */
+    private static final int WARMUP_OPERATIONS = 10000;
+
+    /**
+     * The bytes of the texts processed in every measure.
+     */
+    private static final long MEASURED_BYTES = 1L << 20;
+
+    /**
+     * The minimum number of operations of every measure.
+     */
+    private static final int MINIMUM_OPERATIONS = 50;
+
+    /**
+     * The bytes of the header of an array, with the padding to 8 bytes.
+     */
+    private static final int ARRAY_HEADER = 16;
+
+    /**
+     * The bytes of a reference in an array.
+     */
+    private static final int REFERENCE = 4;
+
+    /**
+     * The bytes of a String object without its array.
+     */
+    private static final int STRING_HEADER = 24;
+
+    /**
+     * The bytes of a StringBuilder object without its array.
+     */
+    private static final int STRING_BUILDER_HEADER = 24;
+
+    /**
+     * The number of times every operation is measured. The lowest measure is
+     * kept, so that the allocations of the JIT compiler while it replaces the
+     * code are not counted.
+     */
+    private static final int ROUNDS = 3;
+
+    //FIELDS
+
+    /**
+     * The last result of an operation, written so that the results escape and
+     * the JIT compiler can not remove their allocation.
+     */
+    private static Object sink;
+
+    //NESTED CLASSES
+
+    /**
+     * The measure of an operation of a cipher with a length of text.
+     */
+    private static final class Measurement {
+
+        /**
+         * The name of the cipher and of the operation.
+         */
+        private final String name;
+
+        /**
+         * The length of the text.
+         */
+        private final int length;
+
+        /**
+         * The bytes allocated by an operation.
+         */
+        private final double allocated;
+
+        /**
+         * The maximum bytes an operation may allocate.
+         */
+        private final long budget;
+
+        /**
+         * Constructor of the class.
+         * @param name String: The name of the cipher and of the operation
+         * @param length int: The length of the text
+         * @param allocated double: The bytes allocated by an operation
+         * @param budget long: The maximum bytes an operation may allocate
+         */
+        private Measurement(String name, int length, double allocated, long budget) {
+            this.name = name;
+            this.length = length;
+            this.allocated = allocated;
+            this.budget = budget;
+        }
+
+        /**
+         * It returns if the operation allocates more than its budget. Less
+         * than one byte per operation is not counted, since the measure
+         * itself allocates a few bytes.
+         * @return boolean: True if the budget is exceeded
+         */
+        private boolean isOverBudget() {
+            return this.allocated >= this.budget + 1;
+        }
+
+        /**
+         * It returns the measure in a line.
+         * @return String: The name, the length, the bytes and the budget
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-44s %7d chars %12.1f B/op  budget %9d  %s", this.name, this.length,
+                    this.allocated, this.budget, this.isOverBudget() ? "OVER BUDGET" : "ok");
+        }
+
+    }
+
+    /**
+     * An operation measured by the harness.
+     */
+    @FunctionalInterface
+    private interface Operation {
+
+        /**
+         * It runs the operation once.
+         * @return long: A number depending on the result, kept so that the
+         * operation is not removed by the JIT compiler. It is not an Object,
+         * so that it is not boxed
+         */
+        long run();
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private AllocationHarness() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method returns the bean which measures the bytes allocated by the
+     * threads, enabling the measure.
+     * @return com.sun.management.ThreadMXBean: The bean, null if the JVM can
+     * not measure the bytes allocated by a thread
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!bean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        return bean;
+    }
+
+    /**
+     * This method measures the operations of a cipher with a length of text:
+     * the chunk encryption and decryption of the compiled cipher, which must
+     * not allocate, its text encryption and decryption, which may allocate
+     * the result and a working copy, and the text encryption and decryption
+     * of the Cipher class, which may allocate the result and its
+     * StringBuilder. The Cipher classes of the one-time pads generate a new
+     * pad for every encryption, so only their decryption is measured.
+     * @param bean com.sun.management.ThreadMXBean: The bean which measures the
+     * bytes allocated
+     * @param type CipherType: The cipher
+     * @param length int: The length of the text, even
+     * @param measurements List(Measurement): The list where the measures are
+     * added
+     * @throws IllegalCipherKeyException If a key is not valid
+     */
+    private static void measure(com.sun.management.ThreadMXBean bean, CipherType type, int length, List<Measurement> measurements) throws IllegalCipherKeyException {
+        SplittableRandom random = new SplittableRandom(length);
+        String key = AllocationHarness.keyOf(type, length, random);
+        CipherEngine engine = type.compile(key);
+        String text = AllocationHarness.textOf(type, length, random);
+        String encrypted = engine.encryptText(text);
+        char[] buffer = text.toCharArray();
+        char[] output = new char[length];
+        String name = type.getName();
+        int copies = (type == CipherType.TRANSPOSITION) ? 2 : 1;
+        measurements.add(AllocationHarness.measure(bean, name + " encrypt(char[])", length, 0,
+                () -> engine.encrypt(buffer, 0, output, 0, length, 0)));
+        measurements.add(AllocationHarness.measure(bean, name + " decrypt(char[])", length, 0,
+                () -> engine.decrypt(buffer, 0, output, 0, length, 0)));
+        measurements.add(AllocationHarness.measure(bean, name + " encryptText(String)", length,
+                copies * AllocationHarness.arrayOfChars(length) + AllocationHarness.stringOf(encrypted),
+                () -> AllocationHarness.keep(engine.encryptText(text))));
+        measurements.add(AllocationHarness.measure(bean, name + " decryptText(String)", length,
+                copies * AllocationHarness.arrayOfChars(length) + AllocationHarness.stringOf(text),
+                () -> AllocationHarness.keep(engine.decryptText(encrypted))));
+        Cipher cipher = AllocationHarness.cipherOf(type, key, encrypted);
+        String className = cipher.getClass().getSimpleName();
+        String cipherEncrypted = type.isOneTimePad() ? encrypted : cipher.encryptText(text);
+        String cipherDecrypted = cipher.decryptText(cipherEncrypted);
+        if(!type.isOneTimePad()) {
+            measurements.add(AllocationHarness.measure(bean, className + ".encryptText(String)", length,
+                    AllocationHarness.cipherBudgetOf(type, cipherEncrypted, true),
+                    () -> AllocationHarness.keep(cipher.encryptText(text))));
+        }
+        measurements.add(AllocationHarness.measure(bean, className + ".decryptText(String)", length,
+                AllocationHarness.cipherBudgetOf(type, cipherDecrypted, false),
+                () -> AllocationHarness.keep(cipher.decryptText(cipherEncrypted))));
+    }
+
+    /**
+     * This method measures the bytes allocated by an operation.
+     * @param bean com.sun.management.ThreadMXBean: The bean which measures the
+     * bytes allocated
+     * @param name String: The name of the operation
+     * @param length int: The length of the text
+     * @param budget long: The maximum bytes the operation may allocate
+     * @param operation Operation: The operation
+     * @return Measurement: The measure
+     */
+    private static Measurement measure(com.sun.management.ThreadMXBean bean, String name, int length, long budget, Operation operation) {
+        int operations = (int) Math.max(AllocationHarness.MINIMUM_OPERATIONS, AllocationHarness.MEASURED_BYTES / length);
+        int warmup = Math.min(AllocationHarness.WARMUP_OPERATIONS, operations);
+        long result = 0;
+        for(int i = 0; i < warmup; i++)
+        {
+            result += operation.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for(int round = 0; round < AllocationHarness.ROUNDS; round++)
+        {
+            long start = bean.getThreadAllocatedBytes(thread);
+            for(int i = 0; i < operations; i++)
+            {
+                result += operation.run();
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(thread) - start);
+        }
+        AllocationHarness.sink = result;
+        return new Measurement(name, length, (double) allocated / operations, budget);
+    }
+
+    /**
+     * This method keeps a result of an operation, so that its allocation is
+     * not removed.
+     * @param result String: The result
+     * @return long: The length of the result
+     */
+    private static long keep(String result) {
+        AllocationHarness.sink = result;
+        return result.length();
+    }
+
+    /**
+     * This method returns the bytes of an array of characters.
+     * @param length int: The length of the array
+     * @return long: The bytes of the array, with its header and padding
+     */
+    private static long arrayOfChars(int length) {
+        return AllocationHarness.align(AllocationHarness.ARRAY_HEADER + 2L * length);
+    }
+
+    /**
+     * This method returns the bytes allocated to build a String from an array
+     * of characters. If the String has characters over 255, the constructor
+     * first allocates an array of bytes to compact them, then the array of
+     * two bytes per character.
+     * @param text String: The String
+     * @return long: The bytes of the String and of the arrays allocated
+     */
+    private static long stringOf(String text) {
+        long length = text.length();
+        long latin1 = AllocationHarness.align(AllocationHarness.ARRAY_HEADER + length);
+        if(AllocationHarness.isLatin1(text)) {
+            return AllocationHarness.STRING_HEADER + latin1;
+        }
+        return AllocationHarness.STRING_HEADER + latin1 + AllocationHarness.align(AllocationHarness.ARRAY_HEADER + 2 * length);
+    }
+
+    /**
+     * This method returns the bytes allocated to build a String with a
+     * StringBuilder created with the length of the String: the StringBuilder,
+     * its array of one byte per character, the array of two bytes per
+     * character if it inflates for a character over 255, and the String.
+     * @param text String: The String
+     * @return long: The bytes of the StringBuilder, of the String and of the
+     * arrays allocated
+     */
+    private static long builderOf(String text) {
+        long length = text.length();
+        long builder = AllocationHarness.STRING_BUILDER_HEADER + AllocationHarness.align(AllocationHarness.ARRAY_HEADER + length);
+        if(!AllocationHarness.isLatin1(text)) {
+            builder += AllocationHarness.align(AllocationHarness.ARRAY_HEADER + 2 * length);
+        }
+        return builder + AllocationHarness.stringOf(text);
+    }
+
+    /**
+     * This method returns the bytes which a text encryption or decryption of
+     * a Cipher class may allocate: a copy of the text and the result for the
+     * Unicode Caesar Cipher, which shifts a copy in place, a StringBuilder and
+     * the result for the others, and the table of the Transposition Cipher.
+     * @param type CipherType: The cipher
+     * @param result String: The result of the operation
+     * @param encryption boolean: True for the encryption, false for the
+     * decryption
+     * @return long: The bytes of the budget
+     */
+    private static long cipherBudgetOf(CipherType type, String result, boolean encryption) {
+        if(type == CipherType.UNICODE_CAESAR) {
+            return AllocationHarness.arrayOfChars(result.length()) + AllocationHarness.stringOf(result);
+        }
+        return AllocationHarness.builderOf(result) + AllocationHarness.tableOf(type, result.length(), encryption);
+    }
+
+    /**
+     * This method returns the bytes of the table of characters allocated by
+     * the Transposition Cipher for a text, with the key 9 of keyOf.
+     * @param type CipherType: The cipher
+     * @param length int: The length of the text
+     * @param encryption boolean: True for the table of the encryption, false
+     * for the one of the decryption
+     * @return long: The bytes of the table, 0 for the other ciphers
+     */
+    private static long tableOf(CipherType type, int length, boolean encryption) {
+        if(type != CipherType.TRANSPOSITION) {
+            return 0;
+        }
+        int key = 9;
+        int lines = Math.max(1, (length + key - 1) / key);
+        int rows = encryption ? lines : key;
+        int columns = encryption ? key : lines;
+        return AllocationHarness.align(AllocationHarness.ARRAY_HEADER + (long) AllocationHarness.REFERENCE * rows) + rows * AllocationHarness.arrayOfChars(columns);
+    }
+
+    /**
+     * This method returns if all the characters of a text are not over 255.
+     * @param text String: The text
+     * @return boolean: True if the text can be stored with a byte per
+     * character
+     */
+    private static boolean isLatin1(String text) {
+        for(int i = 0; i < text.length(); i++)
+        {
+            if(text.charAt(i) > 255) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method rounds a size to the next multiple of 8 bytes.
+     * @param size long: The size
+     * @return long: The aligned size
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * This method returns the Cipher class of a cipher with a key. The
+     * Cipher classes of the one-time pads are created to decrypt the given
+     * text with the key as pad.
+     * @param type CipherType: The cipher
+     * @param key String: The key of keyOf
+     * @param encrypted String: The text encrypted with the key
+     * @return Cipher: The Cipher class
+     * @throws IllegalCipherKeyException If the key is not valid
+     */
+    private static Cipher cipherOf(CipherType type, String key, String encrypted) throws IllegalCipherKeyException {
+        switch(type) {
+            case CAESAR:
+                return new CaesarCipher(Short.parseShort(key));
+            case VIGENERE:
+                return new VigenereCipher(key);
+            case SUBSTITUTION:
+                return new SubstitutionCipher(key);
+            case TRANSPOSITION:
+                return new TranspositionCipher(Integer.parseInt(key));
+            case PLAYFAIR:
+                return new PlayfairCipher(key);
+            case VERNAM:
+                return new VernamCipher(key, encrypted);
+            case UNICODE_CAESAR:
+                return new UnicodeCaesarCipher(Short.parseShort(key));
+            case UNICODE_VIGENERE:
+                return new UnicodeVigenereCipher(key);
+            default:
+                return new UnicodeVernamCipher(key, encrypted);
+        }
+    }
+
+    /**
+     * This method returns a key of a cipher.
+     * @param type CipherType: The cipher
+     * @param length int: The length of the text, used by the one-time pads
+     * @param random SplittableRandom: The random numbers
+     * @return String: The key
+     */
+    private static String keyOf(CipherType type, int length, SplittableRandom random) {
+        switch(type) {
+            case CAESAR:
+            case UNICODE_CAESAR:
+                return "7";
+            case TRANSPOSITION:
+                return "9";
+            case SUBSTITUTION:
+                return "QWERTYUIOPASDFGHJKLZXCVBNM";
+            case VERNAM:
+                return AllocationHarness.randomText(length, random, false);
+            case UNICODE_VERNAM:
+                StringBuilder pad = new StringBuilder(length);
+                for(int i = 0; i < length; i++)
+                {
+                    pad.append((char) ('a' + random.nextInt(0x2000)));
+                }
+                return pad.toString();
+            default:
+                return "lemonade";
+        }
+    }
+
+    /**
+     * This method returns a text of a cipher.
+     * @param type CipherType: The cipher
+     * @param length int: The length of the text
+     * @param random SplittableRandom: The random numbers
+     * @return String: The text, only letters for the Playfair Cipher
+     */
+    private static String textOf(CipherType type, int length, SplittableRandom random) {
+        if(type == CipherType.PLAYFAIR) {
+            return AllocationHarness.randomText(length, random, false).toUpperCase().replace('J', 'I');
+        }
+        return AllocationHarness.randomText(length, random, true);
+    }
+
+    /**
+     * This method returns a random text of lowercase letters.
+     * @param length int: The length of the text
+     * @param random SplittableRandom: The random numbers
+     * @param spaces boolean: True to put spaces between the letters
+     * @return String: The text
+     */
+    private static String randomText(int length, SplittableRandom random, boolean spaces) {
+        char[] chars = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            chars[i] = (spaces && random.nextInt(6) == 0) ? ' ' : (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It measures all the operations of all the ciphers with all the lengths,
+     * printing the ones over budget, and fails if there is any. With the
+     * argument -v it prints all the measures.
+     * @param args String[]: -v to print all the measures
+     * @throws Exception If a budget is exceeded
+     */
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean bean = AllocationHarness.threadBean();
+        if(bean == null) {
+            System.out.println("AllocationHarness: skipped, the JVM can not measure the bytes allocated by a thread");
+            return;
+        }
+        boolean verbose = args.length > 0 && args[0].equals("-v");
+        List<Measurement> measurements = new ArrayList<>();
+        for(CipherType type : CipherType.values())
+        {
+            for(int length : AllocationHarness.LENGTHS)
+            {
+                AllocationHarness.measure(bean, type, length, measurements);
+            }
+        }
+        int failures = 0;
+        for(Measurement measurement : measurements)
+        {
+            if(verbose || measurement.isOverBudget()) {
+                System.out.println(measurement);
+            }
+            if(measurement.isOverBudget()) {
+                failures++;
+            }
+        }
+        Check.equal(0, failures, "operations over budget");
+        System.out.println("AllocationHarness: passed");
+    }
+
+}
@@ -0,0 +1,300 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The tests of Alphabet, which compare the ciphers of the English alphabet
+ * with the ciphers of the English letters, and the ciphers of the other
+ * alphabets with a plain reference which looks the letters up in a map.
+ */
+final class AlphabetTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of random keys of every cipher and alphabet.
+     */
+    private static final int KEYS = 200;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private AlphabetTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the ciphers of Alphabet.ENGLISH encrypt and
+     * decrypt as the ciphers of the English letters.
+     * @throws Exception If the test fails
+     */
+    private static void englishMatchesLetterCiphers() throws Exception {
+        Random random = new Random(19);
+        String lowercase = "abcdefghijklmnopqrstuvwxyz";
+        for(int i = 0; i < AlphabetTest.KEYS; i++)
+        {
+            short shift = (short) random.nextInt();
+            String vigenere = AlphabetTest.randomKey(random, lowercase + lowercase.toUpperCase(), 1 + random.nextInt(12));
+            String substitution = AlphabetTest.permutation(random, lowercase);
+            CipherEngine[][] pairs = {
+                { CaesarCipher.compile(shift), CaesarCipher.compile(shift, Alphabet.ENGLISH) },
+                { VigenereCipher.compile(vigenere), VigenereCipher.compile(vigenere, Alphabet.ENGLISH) },
+                { SubstitutionCipher.compile(substitution), SubstitutionCipher.compile(substitution, Alphabet.ENGLISH) }
+            };
+            String text = AlphabetTest.randomText(random, Alphabet.ENGLISH.toString(), 1 + random.nextInt(200));
+            for(CipherEngine[] pair : pairs)
+            {
+                String encrypted = pair[0].encryptText(text);
+                Check.equal(encrypted, pair[1].encryptText(text), "English encryption with the keys " + shift + ", " + vigenere + ", " + substitution);
+                Check.equal(pair[0].decryptText(encrypted), pair[1].decryptText(encrypted), "English decryption with the keys " + shift + ", " + vigenere + ", " + substitution);
+            }
+        }
+    }
+
+    /**
+     * This method checks the ciphers of the other alphabets with the
+     * reference, the decryption back and the encryption in chunks.
+     * @throws Exception If the test fails
+     */
+    private static void otherAlphabetsMatchReference() throws Exception {
+        Random random = new Random(23);
+        List<String[]> alphabets = new ArrayList<>();
+        alphabets.add(Alphabet.GREEK.toString().split("/"));
+        alphabets.add(Alphabet.RUSSIAN.toString().split("/"));
+        alphabets.add(Alphabet.DIGITS.toString().split("/"));
+        alphabets.add(new String[]{ AlphabetTest.permutation(random, AlphabetTest.range('\u4e00', 300)), AlphabetTest.permutation(random, AlphabetTest.range('\u0100', 300)), AlphabetTest.range('\uff00', 300) });
+        for(String[] cases : alphabets)
+        {
+            Alphabet alphabet = Alphabet.of(cases);
+            String letters = String.join("", cases);
+            int length = cases[0].length();
+            for(int i = 0; i < AlphabetTest.KEYS; i++)
+            {
+                short shift = (short) random.nextInt();
+                String vigenere = AlphabetTest.randomKey(random, letters, 1 + random.nextInt(12));
+                String substitution = AlphabetTest.permutation(random, cases[random.nextInt(cases.length)]);
+                int[] caesarTargets = new int[length], substitutionTargets = new int[length];
+                for(int j = 0; j < length; j++)
+                {
+                    caesarTargets[j] = Math.floorMod(j + shift, length);
+                    substitutionTargets[j] = AlphabetTest.indexOf(cases, substitution.charAt(j));
+                }
+                int[][] vigenereTargets = new int[vigenere.length()][length];
+                for(int k = 0; k < vigenere.length(); k++)
+                {
+                    for(int j = 0; j < length; j++)
+                    {
+                        vigenereTargets[k][j] = (j + AlphabetTest.indexOf(cases, vigenere.charAt(k)) + 1) % length;
+                    }
+                }
+                Object[][] ciphers = {
+                    { CaesarCipher.compile(shift, alphabet), new int[][]{ caesarTargets } },
+                    { VigenereCipher.compile(vigenere, alphabet), vigenereTargets },
+                    { SubstitutionCipher.compile(substitution, alphabet), new int[][]{ substitutionTargets } }
+                };
+                String text = AlphabetTest.randomText(random, letters, 1 + random.nextInt(200));
+                for(Object[] cipher : ciphers)
+                {
+                    CipherEngine engine = (CipherEngine) cipher[0];
+                    String expected = AlphabetTest.reference(cases, (int[][]) cipher[1], text);
+                    String message = " of " + cases[0] + " with the keys " + shift + ", " + vigenere + ", " + substitution;
+                    Check.equal(expected, engine.encryptText(text), "encryption" + message);
+                    Check.equal(text, engine.decryptText(expected), "decryption" + message);
+                    char[] src = text.toCharArray(), dst = new char[src.length];
+                    long state = 0;
+                    for(int start = 0; start < src.length; )
+                    {
+                        int size = Math.min(src.length - start, random.nextInt(20));
+                        state = engine.encrypt(src, start, dst, start, size, state);
+                        start += size;
+                    }
+                    Check.equal(expected, new String(dst), "encryption in chunks" + message);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks the letters of the alphabets and the errors of the
+     * alphabets and of the keys.
+     * @throws Exception If the test fails
+     */
+    private static void checksLettersAndErrors() throws Exception {
+        Check.equal(24, Alphabet.GREEK.getLength(), "letters of the Greek alphabet");
+        Check.equal(33, Alphabet.RUSSIAN.getLength(), "letters of the Russian alphabet");
+        Check.equal(2, Alphabet.ENGLISH.getCaseCount(), "cases of the English alphabet");
+        Check.equal(1, Alphabet.DIGITS.getCaseCount(), "cases of the digits");
+        Check.equal(6, Alphabet.RUSSIAN.indexOf('\u0451'), "index of the Russian yo");
+        Check.equal(6, Alphabet.RUSSIAN.indexOf('\u0401'), "index of the Russian uppercase yo");
+        Check.equal(25, Alphabet.ENGLISH.indexOf('Z'), "index of Z");
+        Check.equal(-1, Alphabet.GREEK.indexOf('\u03c2'), "index of the final sigma");
+        Check.isTrue(!Alphabet.GREEK.contains('a'), "a is not Greek");
+        Check.isTrue(Alphabet.DIGITS.contains('7'), "7 is a digit");
+        Check.equal("\u03c2 sigma", CaesarCipher.compile((short) 5, Alphabet.GREEK).encryptText("\u03c2 sigma"), "characters which are not Greek letters");
+        Check.equal("0123456789", Alphabet.DIGITS.toString(), "digits");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of(), "no cases");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of(""), "empty case");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of("abc", null), "null case");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of("abc", "AB"), "short case");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of("abc", "ABa"), "letter written twice");
+        Check.fails(IllegalArgumentException.class, () -> Alphabet.of(AlphabetTest.range('\u1000', 32768)), "too many letters");
+        Check.equal(32767, Alphabet.of(AlphabetTest.range('\u1000', 32767)).getLength(), "most letters");
+        Check.fails(IllegalCipherKeyException.class, () -> VigenereCipher.compile("", Alphabet.GREEK), "empty Vigenere key");
+        Check.fails(IllegalCipherKeyException.class, () -> VigenereCipher.compile("\u03b1b", Alphabet.GREEK), "Vigenere key which is not Greek");
+        Check.fails(IllegalCipherKeyException.class, () -> SubstitutionCipher.compile("0123456788", Alphabet.DIGITS), "Substitution key with a letter twice");
+        Check.fails(IllegalCipherKeyException.class, () -> SubstitutionCipher.compile("012345678", Alphabet.DIGITS), "short Substitution key");
+    }
+
+    /**
+     * This method encrypts a text replacing the letter at every index with
+     * the letter of the same case at its target, the targets of the
+     * position in the key of the letter.
+     * @param cases String[]: The letters of every case
+     * @param targets int[][]: The target of every index, by position in the
+     * key
+     * @param text String: The text
+     * @return String: The encrypted text
+     */
+    private static String reference(String[] cases, int[][] targets, String text) {
+        Map<Character, int[]> letters = new HashMap<>();
+        for(int k = 0; k < cases.length; k++)
+        {
+            for(int i = 0; i < cases[k].length(); i++)
+            {
+                letters.put(cases[k].charAt(i), new int[]{ k, i });
+            }
+        }
+        StringBuilder encrypted = new StringBuilder();
+        int position = 0;
+        for(char ch : text.toCharArray())
+        {
+            int[] letter = letters.get(ch);
+            if(letter == null) {
+                encrypted.append(ch);
+            }
+            else {
+                encrypted.append(cases[letter[0]].charAt(targets[position][letter[1]]));
+                position = (position + 1) % targets.length;
+            }
+        }
+        return encrypted.toString();
+    }
+
+    /**
+     * This method returns the index of a letter in its case.
+     * @param cases String[]: The letters of every case
+     * @param letter char: The letter
+     * @return int: The index
+     */
+    private static int indexOf(String[] cases, char letter) {
+        for(String letters : cases)
+        {
+            if(letters.indexOf(letter) != -1) {
+                return letters.indexOf(letter);
+            }
+        }
+        throw new AssertionError("Not a letter: " + letter);
+    }
+
+    /**
+     * This method returns the given number of characters from first.
+     * @param first char: The first character
+     * @param length int: The number of characters
+     * @return String: The characters
+     */
+    private static String range(char first, int length) {
+        char[] chars = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            chars[i] = (char) (first + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * This method returns the given letters in a random order.
+     * @param random Random: The generator
+     * @param letters String: The letters
+     * @return String: The shuffled letters
+     */
+    private static String permutation(Random random, String letters) {
+        List<Character> shuffled = new ArrayList<>();
+        for(char letter : letters.toCharArray())
+        {
+            shuffled.add(letter);
+        }
+        Collections.shuffle(shuffled, random);
+        StringBuilder permutation = new StringBuilder();
+        for(char letter : shuffled)
+        {
+            permutation.append(letter);
+        }
+        return permutation.toString();
+    }
+
+    /**
+     * This method returns a random key of the given letters.
+     * @param random Random: The generator
+     * @param letters String: The letters
+     * @param length int: The length of the key
+     * @return String: The key
+     */
+    private static String randomKey(Random random, String letters, int length) {
+        char[] key = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            key[i] = letters.charAt(random.nextInt(letters.length()));
+        }
+        return new String(key);
+    }
+
+    /**
+     * This method returns a random text of letters of an alphabet, English
+     * letters, punctuation and any other character.
+     * @param random Random: The generator
+     * @param letters String: The letters of the alphabet, the '/' are
+     * punctuation
+     * @param length int: The number of characters
+     * @return String: The text
+     */
+    private static String randomText(Random random, String letters, int length) {
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            int kind = random.nextInt(10);
+            if(kind < 6) {
+                text[i] = letters.charAt(random.nextInt(letters.length()));
+            }
+            else if(kind < 8) {
+                text[i] = "abcXYZ .,\n1\u00e9".charAt(random.nextInt(12));
+            }
+            else {
+                text[i] = (char) random.nextInt(Character.MAX_VALUE + 1);
+            }
+        }
+        return new String(text);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        AlphabetTest.englishMatchesLetterCiphers();
+        AlphabetTest.otherAlphabetsMatchReference();
+        AlphabetTest.checksLettersAndErrors();
+        System.out.println("AlphabetTest: passed");
+    }
+
+}
@@ -0,0 +1,86 @@
+package cryptography;
+
+import java.util.Objects;
+
+/**
+ * The checks of the tests of the library, which throw an AssertionError with
+ * a message when they fail. The tests are classes with a main method which
+ * runs all their checks, so that they need nothing but the JDK.
+ */
+final class Check {
+
+    //NESTED CLASSES
+
+    /**
+     * A piece of code which is expected to throw.
+     */
+    @FunctionalInterface
+    interface Action {
+
+        /**
+         * It runs the code.
+         * @throws Throwable The error of the code
+         */
+        void run() throws Throwable;
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private Check() {
+    }
+
+    //PACKAGE STATIC METHODS
+
+    /**
+     * It checks that a condition is true.
+     * @param condition boolean: The condition
+     * @param message String: What the condition means
+     * @throws AssertionError If the condition is false
+     */
+    static void isTrue(boolean condition, String message) {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * It checks that two values are equal.
+     * @param expected Object: The expected value
+     * @param actual Object: The actual value
+     * @param message String: What the values are
+     * @throws AssertionError If the values are not equal
+     */
+    static void equal(Object expected, Object actual, String message) {
+        if(!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    /**
+     * It checks that a piece of code throws an error of the given class.
+     * @param <T> The class of the error
+     * @param type Class(T): The class of the error
+     * @param action Action: The code
+     * @param message String: What the code does
+     * @return T: The error thrown
+     * @throws AssertionError If the code does not throw or throws an error of
+     * another class
+     */
+    static <T extends Throwable> T fails(Class<T> type, Action action, String message) {
+        try {
+            action.run();
+        }
+        catch(Throwable ex) {
+            if(type.isInstance(ex)) {
+                return type.cast(ex);
+            }
+            throw new AssertionError(message + ": expected " + type.getName() + " but was " + ex, ex);
+        }
+        throw new AssertionError(message + ": expected " + type.getName() + " but nothing was thrown");
+    }
+
+}
@@ -0,0 +1,342 @@
+package cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The tests of CipherJobScheduler. The jobs use engines which wait for a
+ * permit before every chunk, so that the tests decide when every chunk runs.
+ */
+final class CipherJobSchedulerTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of characters of a chunk.
+     */
+    private static final int CHUNK_SIZE = 10;
+
+    /**
+     * The maximum time of a wait, in seconds. A job which does not get there
+     * in time is stuck.
+     */
+    private static final int TIMEOUT = 30;
+
+    //NESTED CLASSES
+
+    /**
+     * An engine which copies the text, waiting for a permit before every
+     * chunk and recording its name when it runs a chunk.
+     */
+    private static final class GateEngine implements CipherEngine {
+
+        /**
+         * The name of the engine.
+         */
+        private final String name;
+
+        /**
+         * The permits of the chunks.
+         */
+        private final Semaphore permits = new Semaphore(0);
+
+        /**
+         * The names of the engines in the order of their chunks, shared by
+         * the engines of a test.
+         */
+        private final List<String> order;
+
+        /**
+         * Constructor of the class.
+         * @param name String: The name of the engine
+         * @param order List(String): The names of the engines in the order of
+         * their chunks
+         */
+        private GateEngine(String name, List<String> order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        /**
+         * It lets the given number of chunks run.
+         * @param chunks int: The number of chunks
+         */
+        private void open(int chunks) {
+            this.permits.release(chunks);
+        }
+
+        @Override
+        public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            try {
+                if(!this.permits.tryAcquire(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("The chunk of " + this.name + " has not been let run");
+                }
+            }
+            catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+            this.order.add(this.name);
+            System.arraycopy(src, srcOffset, dst, dstOffset, length);
+            return state;
+        }
+
+        @Override
+        public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+            return this.encrypt(src, srcOffset, dst, dstOffset, length, state);
+        }
+
+        @Override
+        public int getBlockSize() {
+            return 1;
+        }
+
+        @Override
+        public boolean isPositionIndependent() {
+            return true;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private CipherJobSchedulerTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the jobs waiting start from the highest
+     * priority, and in the order of submission within a priority.
+     * @throws Exception If the test fails
+     */
+    private static void startsHighestPriorityFirst() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try(CipherJobScheduler scheduler = new CipherJobScheduler(null, 1, 16, CipherJobSchedulerTest.CHUNK_SIZE)) {
+            GateEngine first = new GateEngine("first", order);
+            CipherJobScheduler.Job<String> running = scheduler.submitText("tenant", CipherJobScheduler.Priority.LOW, first, true, "abcde");
+            CipherJobSchedulerTest.await(() -> running.getState() == CipherJobScheduler.State.RUNNING, "the first job runs");
+            String[] names = { "low", "normal 1", "high", "normal 2" };
+            CipherJobScheduler.Priority[] priorities = { CipherJobScheduler.Priority.LOW, CipherJobScheduler.Priority.NORMAL, CipherJobScheduler.Priority.HIGH, CipherJobScheduler.Priority.NORMAL };
+            List<CipherJobScheduler.Job<String>> jobs = new ArrayList<>();
+            for(int i = 0; i < names.length; i++)
+            {
+                GateEngine engine = new GateEngine(names[i], order);
+                engine.open(1);
+                jobs.add(scheduler.submitText("tenant", priorities[i], engine, true, "abcde"));
+            }
+            Check.equal(4, scheduler.getQueued(), "jobs waiting");
+            first.open(1);
+            for(CipherJobScheduler.Job<String> job : jobs)
+            {
+                Check.equal("abcde", job.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "result");
+            }
+            Check.equal(List.of("first", "high", "normal 1", "normal 2", "low"), order, "order of the jobs");
+        }
+    }
+
+    /**
+     * This method checks that a job waiting and a job running can be
+     * cancelled, and that a job which has ended can not.
+     * @throws Exception If the test fails
+     */
+    private static void cancelsJobs() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try(CipherJobScheduler scheduler = new CipherJobScheduler(null, 1, 16, CipherJobSchedulerTest.CHUNK_SIZE)) {
+            GateEngine engine = new GateEngine("running", order);
+            CipherJobScheduler.Job<String> running = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, engine, true, "x".repeat(100));
+            GateEngine other = new GateEngine("waiting", order);
+            CipherJobScheduler.Job<String> waiting = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, other, true, "abcde");
+            engine.open(2);
+            CipherJobSchedulerTest.await(() -> order.size() == 2, "two chunks have run");
+            Check.isTrue(waiting.cancel(), "the job waiting is cancelled");
+            Check.equal(CipherJobScheduler.State.CANCELLED, waiting.getState(), "state of the job waiting");
+            Check.equal(0, scheduler.getQueued(), "jobs waiting after the cancellation");
+            Check.isTrue(running.cancel(), "the job running is cancelled");
+            engine.open(1);
+            Check.fails(CancellationException.class, () -> running.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "result of the job running");
+            Check.equal(CipherJobScheduler.State.CANCELLED, running.getState(), "state of the job running");
+            Check.equal(3, order.size(), "chunks run before the cancellation");
+            Check.fails(CancellationException.class, () -> waiting.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "result of the job waiting");
+            CipherJobSchedulerTest.await(() -> scheduler.getRunning() == 0, "no job runs");
+            CipherJobScheduler.Job<String> ended = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, VigenereCipher.compile("lemon"), true, "attack at dawn");
+            ended.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS);
+            Check.isTrue(!ended.cancel(), "a job which has ended is not cancelled");
+            Check.equal(CipherJobScheduler.State.SUCCEEDED, ended.getState(), "state of the job which has ended");
+        }
+    }
+
+    /**
+     * This method checks that the progress of a job follows its chunks and
+     * is 100 only when it has succeeded.
+     * @throws Exception If the test fails
+     */
+    private static void reportsProgress() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try(CipherJobScheduler scheduler = new CipherJobScheduler(null, 1, 16, CipherJobSchedulerTest.CHUNK_SIZE)) {
+            GateEngine engine = new GateEngine("progress", order);
+            String text = "y".repeat(10 * CipherJobSchedulerTest.CHUNK_SIZE);
+            CipherJobScheduler.Job<String> job = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, engine, true, text);
+            Check.equal(0.0, job.getProgress(), "progress before the first chunk");
+            engine.open(3);
+            CipherJobSchedulerTest.await(() -> job.getProgress() == 30.0, "progress after three chunks");
+            engine.open(7);
+            Check.equal(text, job.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "result");
+            Check.equal(100.0, job.getProgress(), "progress after the end");
+        }
+    }
+
+    /**
+     * This method checks that a tenant with a share of one processor runs
+     * one job at a time, while the other tenants still run theirs.
+     * @throws Exception If the test fails
+     */
+    private static void capsJobsOfTenant() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        try(CipherJobScheduler scheduler = new CipherJobScheduler(null, 4, 16, CipherJobSchedulerTest.CHUNK_SIZE)) {
+            scheduler.setShare("capped", 1);
+            List<GateEngine> engines = new ArrayList<>();
+            List<CipherJobScheduler.Job<String>> jobs = new ArrayList<>();
+            for(int i = 0; i < 3; i++)
+            {
+                GateEngine engine = new GateEngine("capped " + i, order);
+                engines.add(engine);
+                jobs.add(scheduler.submitText("capped", CipherJobScheduler.Priority.NORMAL, engine, true, "abcde"));
+            }
+            GateEngine free = new GateEngine("free", order);
+            CipherJobScheduler.Job<String> other = scheduler.submitText("free", CipherJobScheduler.Priority.NORMAL, free, true, "abcde");
+            CipherJobSchedulerTest.await(() -> other.getState() == CipherJobScheduler.State.RUNNING, "the job of the other tenant runs");
+            Check.equal(2, scheduler.getRunning(), "jobs running");
+            Check.equal(CipherJobScheduler.State.RUNNING, jobs.get(0).getState(), "state of the first job of the tenant");
+            Check.equal(CipherJobScheduler.State.QUEUED, jobs.get(1).getState(), "state of the second job of the tenant");
+            Check.equal(CipherJobScheduler.State.QUEUED, jobs.get(2).getState(), "state of the third job of the tenant");
+            engines.get(0).open(1);
+            jobs.get(0).get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS);
+            CipherJobSchedulerTest.await(() -> jobs.get(1).getState() == CipherJobScheduler.State.RUNNING, "the second job of the tenant runs");
+            Check.equal(CipherJobScheduler.State.QUEUED, jobs.get(2).getState(), "state of the third job of the tenant");
+            engines.get(1).open(1);
+            engines.get(2).open(1);
+            free.open(1);
+            jobs.get(2).get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS);
+            other.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * This method checks that an exception or an error of an engine fails the
+     * job with the same exception or error, frees its worker, and deletes the
+     * target of a job between files.
+     * @throws Exception If the test fails
+     */
+    private static void failsOnErrors() throws Exception {
+        Throwable[] failures = { new IllegalArgumentException("bad chunk"), new AssertionError("broken engine") };
+        Path folder = Files.createTempDirectory("cipher-job-scheduler-test");
+        Path source = folder.resolve("source.txt");
+        Path target = folder.resolve("target.txt");
+        try(CipherJobScheduler scheduler = new CipherJobScheduler(null, 1, 16, CipherJobSchedulerTest.CHUNK_SIZE)) {
+            Files.writeString(source, "z".repeat(100), StandardCharsets.UTF_8);
+            for(Throwable failure : failures)
+            {
+                CipherEngine engine = CipherJobSchedulerTest.failingEngine(failure);
+                CipherJobScheduler.Job<String> text = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, engine, true, "z".repeat(100));
+                ExecutionException ex = Check.fails(ExecutionException.class, () -> text.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "text job with " + failure);
+                Check.isTrue(ex.getCause() == failure, "the text job fails with " + failure + ", not " + ex.getCause());
+                Check.equal(CipherJobScheduler.State.FAILED, text.getState(), "state of the text job with " + failure);
+                CipherJobScheduler.Job<Path> file = scheduler.submitFile("tenant", CipherJobScheduler.Priority.NORMAL, engine, true, source, target, StandardCharsets.UTF_8);
+                ex = Check.fails(ExecutionException.class, () -> file.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "file job with " + failure);
+                Check.isTrue(ex.getCause() == failure, "the file job fails with " + failure + ", not " + ex.getCause());
+                Check.isTrue(!Files.exists(target), "the target of the file job with " + failure + " has been deleted");
+                CipherJobSchedulerTest.await(() -> scheduler.getRunning() == 0, "no job runs after " + failure);
+            }
+            CipherJobScheduler.Job<String> next = scheduler.submitText("tenant", CipherJobScheduler.Priority.NORMAL, CaesarCipher.compile((short) 3), true, "abc");
+            Check.equal("def", next.get(CipherJobSchedulerTest.TIMEOUT, TimeUnit.SECONDS), "result of a job after the failures");
+        }
+        finally {
+            Files.deleteIfExists(target);
+            Files.delete(source);
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * This method returns an engine which throws the given exception or error
+     * at its first chunk.
+     * @param failure Throwable: A RuntimeException or an Error
+     * @return CipherEngine: The engine
+     */
+    private static CipherEngine failingEngine(Throwable failure) {
+        return new CipherEngine() {
+
+            @Override
+            public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+                if(failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+
+            @Override
+            public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+                return this.encrypt(src, srcOffset, dst, dstOffset, length, state);
+            }
+
+            @Override
+            public int getBlockSize() {
+                return 1;
+            }
+
+            @Override
+            public boolean isPositionIndependent() {
+                return true;
+            }
+
+        };
+    }
+
+    /**
+     * This method waits until a condition is true, for at most TIMEOUT
+     * seconds.
+     * @param condition BooleanSupplier: The condition
+     * @param message String: What the condition means
+     * @throws InterruptedException If the thread is interrupted
+     * @throws AssertionError If the condition is still false after TIMEOUT
+     * seconds
+     */
+    private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CipherJobSchedulerTest.TIMEOUT);
+        while(!condition.getAsBoolean())
+        {
+            Check.isTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(1);
+        }
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        CipherJobSchedulerTest.startsHighestPriorityFirst();
+        CipherJobSchedulerTest.cancelsJobs();
+        CipherJobSchedulerTest.reportsProgress();
+        CipherJobSchedulerTest.capsJobsOfTenant();
+        CipherJobSchedulerTest.failsOnErrors();
+        System.out.println("CipherJobSchedulerTest: passed");
+    }
+
+}
@@ -0,0 +1,473 @@
+package cryptography;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The tests of CipherProcessor and CipherByteProcessor, which compare the
+ * chunks published for a stream cut at random with the encryption of the
+ * whole text.
+ */
+final class CipherProcessorTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of random streams of every cipher.
+     */
+    private static final int STREAMS = 40;
+
+    /**
+     * The maximum time to wait for the end of a stream, in seconds.
+     */
+    private static final long TIMEOUT = 30;
+
+    //NESTED CLASSES
+
+    /**
+     * The publisher of a list of chunks, which sends them only when they are
+     * requested and records the most chunks requested and not yet sent.
+     * @param <T> The type of the chunks
+     */
+    private static final class ChunkPublisher<T> implements Flow.Publisher<T> {
+
+        /**
+         * The chunks.
+         */
+        private final List<T> items;
+
+        /**
+         * The error sent after the chunks, null to complete.
+         */
+        private final Throwable error;
+
+        /**
+         * The number of chunks requested and not yet sent.
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * The number of threads which have called drain and not yet left it.
+         */
+        private final AtomicInteger work = new AtomicInteger();
+
+        /**
+         * The most chunks requested and not yet sent.
+         */
+        private volatile long maximumRequested;
+
+        /**
+         * True when the subscriber has cancelled.
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The index of the next chunk, used only by the drain loop.
+         */
+        private int next;
+
+        /**
+         * True when the end has been sent, used only by the drain loop.
+         */
+        private boolean done;
+
+        /**
+         * Constructor of the class.
+         * @param items List(T): The chunks
+         * @param error Throwable: The error sent after the chunks, null to
+         * complete
+         */
+        private ChunkPublisher(List<T> items, Throwable error) {
+            this.items = items;
+            this.error = error;
+        }
+
+        /**
+         * It sends the chunks to the subscriber as they are requested.
+         * @param subscriber Flow.Subscriber: The subscriber
+         */
+        @Override
+        public void subscribe(Flow.Subscriber<? super T> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+
+                @Override
+                public void request(long n) {
+                    ChunkPublisher.this.requested.addAndGet(n);
+                    ChunkPublisher.this.drain(subscriber);
+                }
+
+                @Override
+                public void cancel() {
+                    ChunkPublisher.this.cancelled = true;
+                }
+
+            });
+        }
+
+        /**
+         * It sends the chunks requested and the end, one thread at a time.
+         * @param subscriber Flow.Subscriber: The subscriber
+         */
+        private void drain(Flow.Subscriber<? super T> subscriber) {
+            if(this.work.getAndIncrement() != 0) {
+                return;
+            }
+            do
+            {
+                this.maximumRequested = Math.max(this.maximumRequested, this.requested.get());
+                while(!this.cancelled && this.requested.get() > 0 && this.next < this.items.size())
+                {
+                    this.requested.decrementAndGet();
+                    subscriber.onNext(this.items.get(this.next++));
+                }
+                if(!this.cancelled && !this.done && this.next == this.items.size()) {
+                    this.done = true;
+                    if(this.error != null) {
+                        subscriber.onError(this.error);
+                    }
+                    else {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+            while(this.work.decrementAndGet() != 0);
+        }
+
+    }
+
+    /**
+     * The subscriber which requests the chunks in batches and keeps them.
+     * @param <T> The type of the chunks
+     */
+    private static final class ChunkSubscriber<T> implements Flow.Subscriber<T> {
+
+        /**
+         * The number of chunks of a request.
+         */
+        private final int batch;
+
+        /**
+         * The chunks received.
+         */
+        private final List<T> items = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * The end of the stream.
+         */
+        private final CountDownLatch end = new CountDownLatch(1);
+
+        /**
+         * The subscription.
+         */
+        private volatile Flow.Subscription subscription;
+
+        /**
+         * The error received, null if the stream has completed.
+         */
+        private volatile Throwable error;
+
+        /**
+         * Constructor of the class.
+         * @param batch int: The number of chunks of a request
+         */
+        private ChunkSubscriber(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(this.batch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            this.items.add(item);
+            if(this.items.size() % this.batch == 0) {
+                this.subscription.request(this.batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+            this.end.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            this.end.countDown();
+        }
+
+        /**
+         * It waits for the end of the stream.
+         * @return List(T): The chunks received
+         * @throws Exception If the stream does not end in time
+         */
+        private List<T> await() throws Exception {
+            Check.isTrue(this.end.await(CipherProcessorTest.TIMEOUT, TimeUnit.SECONDS), "end of the stream");
+            return this.items;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private CipherProcessorTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the CharBuffers published for a text cut at
+     * random are the encryption and the decryption of the whole text, one
+     * chunk after the other and in parallel, and that the processor never
+     * requests more chunks than its window.
+     * @param executor ExecutorService: The executor of the parallel mode
+     * @throws Exception If the test fails
+     */
+    private static void charsMatchWholeText(ExecutorService executor) throws Exception {
+        Random random = new Random(7);
+        for(CipherEngine engine : CipherProcessorTest.engines(random))
+        {
+            for(int stream = 0; stream < CipherProcessorTest.STREAMS; stream++)
+            {
+                boolean encryption = random.nextBoolean();
+                String text = (engine.getBlockSize() == 2) ? CipherProcessorTest.randomLetters(random, 2 * random.nextInt(200))
+                        : CipherProcessorTest.randomText(random, random.nextInt(400));
+                if(!encryption) {
+                    text = engine.encryptText(text);
+                }
+                boolean parallel = engine.isPositionIndependent() && random.nextBoolean();
+                int window = 1 + random.nextInt(4);
+                List<CharBuffer> chunks = new ArrayList<>();
+                for(int[] cut : CipherProcessorTest.cuts(random, text.length()))
+                {
+                    chunks.add(CharBuffer.wrap(text, cut[0], cut[1]));
+                }
+                ChunkPublisher<CharBuffer> publisher = new ChunkPublisher<>(chunks, null);
+                CipherProcessor processor = new CipherProcessor(engine, encryption, parallel ? executor : null, window);
+                ChunkSubscriber<CharBuffer> subscriber = new ChunkSubscriber<>(1 + random.nextInt(3));
+                publisher.subscribe(processor);
+                processor.subscribe(subscriber);
+                StringBuilder output = new StringBuilder();
+                for(CharBuffer chunk : subscriber.await())
+                {
+                    output.append(chunk);
+                }
+                String description = engine + (encryption ? " encryption" : " decryption") + (parallel ? " in parallel" : "") + " of " + text;
+                Check.equal(null, subscriber.error, "error of the " + description);
+                Check.equal(encryption ? engine.encryptText(text) : engine.decryptText(text), output.toString(), description);
+                Check.isTrue(publisher.maximumRequested <= window, "chunks requested beyond the window: " + publisher.maximumRequested);
+            }
+        }
+    }
+
+    /**
+     * This method checks that the ByteBuffers published for encoded text cut
+     * at random, also inside a character, are the encoding of the encryption
+     * of the whole text.
+     * @param executor ExecutorService: The executor of the parallel mode
+     * @throws Exception If the test fails
+     */
+    private static void bytesMatchWholeText(ExecutorService executor) throws Exception {
+        Random random = new Random(11);
+        CipherEngine[] engines = { CaesarCipher.compile((short) 5), VigenereCipher.compile("lemon") };
+        Charset[] charsets = { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.UTF_16 };
+        for(CipherEngine engine : engines)
+        {
+            for(Charset charset : charsets)
+            {
+                for(int stream = 0; stream < CipherProcessorTest.STREAMS; stream++)
+                {
+                    String text = CipherProcessorTest.randomText(random, random.nextInt(400));
+                    byte[] bytes = text.getBytes(charset);
+                    boolean parallel = engine.isPositionIndependent() && random.nextBoolean();
+                    List<ByteBuffer> chunks = new ArrayList<>();
+                    for(int[] cut : CipherProcessorTest.cuts(random, bytes.length))
+                    {
+                        chunks.add(ByteBuffer.wrap(bytes, cut[0], cut[1] - cut[0]));
+                    }
+                    ChunkPublisher<ByteBuffer> publisher = new ChunkPublisher<>(chunks, null);
+                    CipherByteProcessor processor = new CipherByteProcessor(engine, true, charset, parallel ? executor : null, 1 + random.nextInt(4));
+                    ChunkSubscriber<ByteBuffer> subscriber = new ChunkSubscriber<>(1 + random.nextInt(3));
+                    publisher.subscribe(processor);
+                    processor.subscribe(subscriber);
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    for(ByteBuffer chunk : subscriber.await())
+                    {
+                        byte[] chunkBytes = new byte[chunk.remaining()];
+                        chunk.get(chunkBytes);
+                        output.write(chunkBytes);
+                    }
+                    String description = engine + " encryption in " + charset + (parallel ? " in parallel" : "") + " of " + text;
+                    Check.equal(null, subscriber.error, "error of the " + description);
+                    Check.equal(engine.encryptText(text), new String(output.toByteArray(), charset), description);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks the errors: the ciphers which can not process a
+     * stream, the malformed bytes, the error of the publisher and a second
+     * subscriber.
+     * @throws Exception If the test fails
+     */
+    private static void rejectsWrongStreams() throws Exception {
+        Check.fails(IllegalArgumentException.class, () -> new CipherProcessor(TranspositionCipher.compile(4), true), "Transposition Cipher");
+        Check.fails(IllegalArgumentException.class, () -> new CipherProcessor(VigenereCipher.compile("lemon"), true, Runnable::run, 4), "parallel Vigenere Cipher");
+        Check.fails(IllegalArgumentException.class, () -> new CipherProcessor(CaesarCipher.compile((short) 3), true, null, 0), "empty window");
+        List<ByteBuffer> malformed = Collections.singletonList(ByteBuffer.wrap(new byte[]{ 'a', (byte) 0xC3, '(' }));
+        ChunkSubscriber<ByteBuffer> bytes = new ChunkSubscriber<>(1);
+        new ChunkPublisher<>(malformed, null).subscribe(CipherProcessorTest.subscribed(new CipherByteProcessor(CaesarCipher.compile((short) 3), true, StandardCharsets.UTF_8), bytes));
+        bytes.await();
+        Check.isTrue(bytes.error instanceof CharacterCodingException, "error of malformed bytes: " + bytes.error);
+        List<CharBuffer> chunks = Collections.singletonList(CharBuffer.wrap("Hello"));
+        IllegalStateException failure = new IllegalStateException("publisher");
+        ChunkSubscriber<CharBuffer> chars = new ChunkSubscriber<>(1);
+        CipherProcessor processor = new CipherProcessor(CaesarCipher.compile((short) 3), true);
+        new ChunkPublisher<>(chunks, failure).subscribe(CipherProcessorTest.subscribed(processor, chars));
+        chars.await();
+        Check.equal(failure, chars.error, "error of the publisher");
+        ChunkSubscriber<CharBuffer> second = new ChunkSubscriber<>(1);
+        processor.subscribe(second);
+        second.await();
+        Check.isTrue(second.error instanceof IllegalStateException, "error of a second subscriber: " + second.error);
+    }
+
+    /**
+     * This method subscribes a subscriber to a processor.
+     * @param <T> The type of the chunks
+     * @param processor Flow.Processor: The processor
+     * @param subscriber Flow.Subscriber: The subscriber
+     * @return Flow.Processor: The processor
+     */
+    private static <T> Flow.Processor<T, T> subscribed(Flow.Processor<T, T> processor, Flow.Subscriber<T> subscriber) {
+        processor.subscribe(subscriber);
+        return processor;
+    }
+
+    /**
+     * This method returns the compiled ciphers of the streams.
+     * @param random Random: The generator of the pad
+     * @return List(CipherEngine): The compiled ciphers
+     * @throws IllegalCipherKeyException If a key is not valid
+     */
+    private static List<CipherEngine> engines(Random random) throws IllegalCipherKeyException {
+        char[] pad = new char[500];
+        for(int i = 0; i < pad.length; i++)
+        {
+            pad[i] = (char) ('a' + random.nextInt(26));
+        }
+        List<CipherEngine> engines = new ArrayList<>();
+        engines.add(CaesarCipher.compile((short) 7));
+        engines.add(VigenereCipher.compile("lemon"));
+        engines.add(SubstitutionCipher.compile("qwertyuiopasdfghjklzxcvbnm"));
+        engines.add(PlayfairCipher.compile("playfair"));
+        engines.add(CipherType.VERNAM.compile(new String(pad)));
+        engines.add(UnicodeCaesarCipher.compile((short) 300));
+        engines.add(UnicodeVigenereCipher.compile("lemon"));
+        return engines;
+    }
+
+    /**
+     * This method returns random letters, lowercase and uppercase.
+     * @param random Random: The generator
+     * @param length int: The number of letters
+     * @return String: The letters
+     */
+    private static String randomLetters(Random random, int length) {
+        char[] letters = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            letters[i] = (char) ((random.nextBoolean() ? 'a' : 'A') + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    /**
+     * This method cuts a text in random parts, some of them empty.
+     * @param random Random: The generator
+     * @param length int: The length of the text
+     * @return List(int[]): The start and the end of every part
+     */
+    private static List<int[]> cuts(Random random, int length) {
+        List<int[]> cuts = new ArrayList<>();
+        int start = 0;
+        while(start < length || cuts.isEmpty())
+        {
+            int end = Math.min(length, start + random.nextInt((random.nextInt(4) == 0) ? 80 : 6));
+            cuts.add(new int[]{ start, end });
+            start = end;
+        }
+        return cuts;
+    }
+
+    /**
+     * This method returns a random text of letters and other characters,
+     * also outside the Basic Multilingual Plane.
+     * @param random Random: The generator
+     * @param length int: The number of characters, a pair counted once
+     * @return String: The text
+     */
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for(int i = 0; i < length; i++)
+        {
+            int kind = random.nextInt(20);
+            if(kind < 12) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            else if(kind < 16) {
+                text.append((char) ('A' + random.nextInt(26)));
+            }
+            else if(kind < 19) {
+                text.append(" .,\n1\u00e9\u2603".charAt(random.nextInt(7)));
+            }
+            else {
+                text.append("\ud83d\ude00");
+            }
+        }
+        return text.toString();
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CipherProcessorTest.charsMatchWholeText(executor);
+            CipherProcessorTest.bytesMatchWholeText(executor);
+            CipherProcessorTest.rejectsWrongStreams();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        System.out.println("CipherProcessorTest: passed");
+    }
+
+}
@@ -0,0 +1,216 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The tests of CipherRegistry, which compare the canonical keys with the keys
+ * they replace and check the admission of the new keys.
+ */
+final class CipherRegistryTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of random keys of every cipher.
+     */
+    private static final int KEYS = 300;
+
+    /**
+     * The number of threads which request keys at the same time.
+     */
+    private static final int THREADS = 8;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private CipherRegistryTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the canonical form of random keys encrypts and
+     * decrypts as the keys, and that the compiled cipher of a key is the one
+     * of its canonical form.
+     * @throws Exception If the test fails
+     */
+    private static void canonicalKeysEncryptAsKeys() throws Exception {
+        Random random = new Random(3);
+        CipherRegistry registry = new CipherRegistry(10 * CipherRegistryTest.KEYS);
+        for(int i = 0; i < CipherRegistryTest.KEYS; i++)
+        {
+            String period = CipherRegistryTest.randomLetters(random, 1 + random.nextInt(6));
+            String[][] keys = {
+                { "CAESAR", Integer.toString(random.nextInt(2000) - 1000) },
+                { "UNICODE_CAESAR", " " + (random.nextInt(65536) - 32768) },
+                { "TRANSPOSITION", Integer.toString(1 + random.nextInt(40)) },
+                { "VIGENERE", CipherRegistryTest.mixCase(random, period.repeat(1 + random.nextInt(4))) },
+                { "SUBSTITUTION", CipherRegistryTest.mixCase(random, SubstitutionCipher.generateRandomKey().substring(0, 26)) },
+                { "PLAYFAIR", CipherRegistryTest.mixCase(random, CipherRegistryTest.randomLetters(random, 1 + random.nextInt(30)).replace('j', 'i')) },
+                { "UNICODE_VIGENERE", CipherRegistryTest.randomLetters(random, 1 + random.nextInt(8)) }
+            };
+            String text = CipherRegistryTest.randomText(random, 1 + random.nextInt(60));
+            for(String[] pair : keys)
+            {
+                CipherType type = CipherType.valueOf(pair[0]);
+                String key = pair[1];
+                String canonical = CipherRegistry.canonicalKey(type, key);
+                CipherEngine expected = type.compile(key);
+                CipherEngine engine = type.compile(canonical);
+                String playfairText = (type == CipherType.PLAYFAIR) ? CipherRegistryTest.randomLetters(random, 2 * (1 + random.nextInt(30))) : text;
+                String encrypted = expected.encryptText(playfairText);
+                Check.equal(encrypted, engine.encryptText(playfairText), "encryption with the canonical " + type + " key " + key);
+                Check.equal(expected.decryptText(encrypted), engine.decryptText(encrypted), "decryption with the canonical " + type + " key " + key);
+                Check.equal(canonical, CipherRegistry.canonicalKey(type, canonical), "canonical form of the canonical " + type + " key " + key);
+                Check.isTrue(registry.get(type, key) == registry.get(type, canonical), "same cipher for the " + type + " key " + key);
+            }
+            Check.equal(CipherRegistry.canonicalKey(CipherType.VIGENERE, period), CipherRegistry.canonicalKey(CipherType.VIGENERE, period.repeat(3)), "period of the Vigenere key " + period);
+        }
+        Check.fails(IllegalCipherKeyException.class, () -> CipherRegistry.canonicalKey(CipherType.VIGENERE, "k3y"), "Vigenere key with a digit");
+        Check.fails(IllegalCipherKeyException.class, () -> CipherRegistry.canonicalKey(CipherType.CAESAR, "three"), "Caesar key which is not a number");
+        Check.fails(IllegalCipherKeyException.class, () -> registry.get(CipherType.SUBSTITUTION, "abc"), "short Substitution key");
+    }
+
+    /**
+     * This method checks that a burst of keys used once does not evict the
+     * keys still used all the time, and that the one-time pads are not
+     * cached.
+     * @throws Exception If the test fails
+     */
+    private static void admitsFrequentKeys() throws Exception {
+        CipherRegistry registry = new CipherRegistry(4);
+        String[] hot = { "lemon", "orange", "kiwi", "melon" };
+        for(int round = 0; round < 20; round++)
+        {
+            for(String key : hot)
+            {
+                registry.get(CipherType.VIGENERE, key);
+            }
+        }
+        Random random = new Random(5);
+        long hits = registry.getHits();
+        for(int i = 0; i < 200; i++)
+        {
+            registry.get(CipherType.VIGENERE, CipherRegistryTest.randomLetters(random, 12));
+            registry.get(CipherType.VIGENERE, hot[i % hot.length]);
+        }
+        Check.equal(4, registry.size(), "size after the burst");
+        Check.isTrue(registry.getHits() - hits >= 190, "hits of the frequent keys during the burst: " + (registry.getHits() - hits));
+        Check.isTrue(registry.getRejections() >= 190, "rejections of the burst: " + registry.getRejections());
+        Check.isTrue(registry.get(CipherType.VERNAM, "abcdefghij") != registry.get(CipherType.VERNAM, "abcdefghij"), "one-time pad compiled again");
+        Check.equal(4, registry.size(), "size after the one-time pads");
+        registry.clear();
+        Check.equal(0, registry.size(), "size after clear");
+    }
+
+    /**
+     * This method checks that many threads requesting the same keys get
+     * ciphers which encrypt with their keys, and never exceed the maximum
+     * size.
+     * @throws Exception If the test fails
+     */
+    private static void sharesKeysBetweenThreads() throws Exception {
+        CipherRegistry registry = new CipherRegistry(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for(int t = 0; t < CipherRegistryTest.THREADS; t++)
+        {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for(int i = 0; i < 20_000; i++)
+                    {
+                        int key = random.nextInt(40);
+                        CipherEngine engine = registry.get(CipherType.CAESAR, Integer.toString(key));
+                        Check.equal(CaesarCipher.compile((short) key).encryptText("Hello"), engine.encryptText("Hello"), "Caesar key " + key);
+                        if(registry.size() > 16) {
+                            throw new AssertionError("size " + registry.size());
+                        }
+                    }
+                }
+                catch(Throwable ex) {
+                    errors.add(ex);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        Check.equal(0, errors.size(), "errors of the threads: " + errors);
+        Check.isTrue(registry.getHitRate() > 0.5, "hit rate " + registry.getHitRate());
+    }
+
+    /**
+     * This method returns random lowercase letters.
+     * @param random Random: The generator
+     * @param length int: The number of letters
+     * @return String: The letters
+     */
+    private static String randomLetters(Random random, int length) {
+        char[] letters = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    /**
+     * This method returns the given letters with some of them uppercase.
+     * @param random Random: The generator
+     * @param letters String: The lowercase letters
+     * @return String: The letters in mixed case
+     */
+    private static String mixCase(Random random, String letters) {
+        char[] mixed = letters.toCharArray();
+        for(int i = 0; i < mixed.length; i++)
+        {
+            if(random.nextBoolean()) {
+                mixed[i] = Character.toUpperCase(mixed[i]);
+            }
+        }
+        return new String(mixed);
+    }
+
+    /**
+     * This method returns a random text of letters and other characters.
+     * @param random Random: The generator
+     * @param length int: The number of characters
+     * @return String: The text
+     */
+    private static String randomText(Random random, int length) {
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            text[i] = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ .,1\u00e9".charAt(random.nextInt(57));
+        }
+        return new String(text);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        CipherRegistryTest.canonicalKeysEncryptAsKeys();
+        CipherRegistryTest.admitsFrequentKeys();
+        CipherRegistryTest.sharesKeysBetweenThreads();
+        System.out.println("CipherRegistryTest: passed");
+    }
+
+}
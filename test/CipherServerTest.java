@@ -0,0 +1,277 @@
+package cryptography;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The tests of CipherServer, which start a server on a free port of the
+ * loopback and send it requests with the JDK HTTP client.
+ */
+final class CipherServerTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The text of the requests, except the ones of PlayfairCipher.
+     */
+    private static final String TEXT = "Hide the gold in the tree stump!";
+
+    /**
+     * The keys of the ciphers which take a key to encrypt.
+     */
+    private static final Map<CipherType, String> KEYS = new EnumMap<>(CipherType.class);
+
+    static {
+        CipherServerTest.KEYS.put(CipherType.CAESAR, "3");
+        CipherServerTest.KEYS.put(CipherType.VIGENERE, "lemon");
+        CipherServerTest.KEYS.put(CipherType.SUBSTITUTION, "qwertyuiopasdfghjklzxcvbnm");
+        CipherServerTest.KEYS.put(CipherType.TRANSPOSITION, "4");
+        CipherServerTest.KEYS.put(CipherType.PLAYFAIR, "playfairexample");
+        CipherServerTest.KEYS.put(CipherType.UNICODE_CAESAR, "1000");
+        CipherServerTest.KEYS.put(CipherType.UNICODE_VIGENERE, "cl\u00e9 \u043a\u043b\u044e\u0447");
+    }
+
+    //NESTED CLASSES
+
+    /**
+     * A response of the server.
+     */
+    private static final class Response {
+
+        /**
+         * The HTTP status.
+         */
+        private final int status;
+
+        /**
+         * The text of the body.
+         */
+        private final String text;
+
+        /**
+         * The key of the header KEY_HEADER, decoded, null if it is missing.
+         */
+        private final String key;
+
+        /**
+         * Constructor of the class.
+         * @param status int: The HTTP status
+         * @param text String: The text of the body
+         * @param key String: The key of the header, decoded
+         */
+        private Response(int status, String text, String key) {
+            this.status = status;
+            this.text = text;
+            this.key = key;
+        }
+
+    }
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private CipherServerTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that every cipher encrypts and decrypts as its
+     * compiled form, with UTF-8 bodies for the ciphers of the letters and
+     * UTF-16BE bodies for the Unicode ciphers.
+     * @throws Exception If the test fails
+     */
+    private static void roundTripsEveryCipher() throws Exception {
+        CipherServer server = CipherServerTest.start(CipherServer.DEFAULT_BATCH_WINDOW);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = CipherServerTest.uriOf(server);
+            for(CipherType type : CipherType.values())
+            {
+                boolean binary = type.name().startsWith("UNICODE");
+                String text = (type == CipherType.PLAYFAIR) ? "hidethegoldinthetreestump" : CipherServerTest.TEXT;
+                if(type.isOneTimePad()) {
+                    Response encrypted = CipherServerTest.send(client, uri, type, true, null, text, binary);
+                    Check.equal(200, encrypted.status, type.getName() + " encryption status");
+                    Check.isTrue(encrypted.key != null, type.getName() + " returns its pad");
+                    Response decrypted = CipherServerTest.send(client, uri, type, false, encrypted.key, encrypted.text, binary);
+                    Check.equal(200, decrypted.status, type.getName() + " decryption status");
+                    Check.equal(text, decrypted.text, type.getName() + " round trip");
+                }
+                else {
+                    String key = CipherServerTest.KEYS.get(type);
+                    CipherEngine engine = type.compile(key);
+                    Response encrypted = CipherServerTest.send(client, uri, type, true, key, text, binary);
+                    Check.equal(200, encrypted.status, type.getName() + " encryption status");
+                    Check.equal(engine.encryptText(text), encrypted.text, type.getName() + " encryption");
+                    Response decrypted = CipherServerTest.send(client, uri, type, false, key, encrypted.text, binary);
+                    Check.equal(200, decrypted.status, type.getName() + " decryption status");
+                    Check.equal(engine.decryptText(encrypted.text), decrypted.text, type.getName() + " decryption");
+                }
+            }
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * This method checks that a request alone does not wait for the batch
+     * window.
+     * @throws Exception If the test fails
+     */
+    private static void doesNotDelayRequestAlone() throws Exception {
+        long window = 5_000_000_000L;
+        CipherServer server = CipherServerTest.start(window);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = CipherServerTest.uriOf(server);
+            long start = System.nanoTime();
+            Response response = CipherServerTest.send(client, uri, CipherType.VIGENERE, true, "lemon", CipherServerTest.TEXT, false);
+            long time = System.nanoTime() - start;
+            Check.equal(200, response.status, "status");
+            Check.isTrue(time < window / 2, "the request alone waited " + time / 1_000_000 + " ms");
+            Check.equal(1L, server.getBatchedRequests(), "batched requests");
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * This method checks the errors of the wrong requests.
+     * @throws Exception If the test fails
+     */
+    private static void rejectsWrongRequests() throws Exception {
+        CipherServer server = CipherServerTest.start(CipherServer.DEFAULT_BATCH_WINDOW);
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = CipherServerTest.uriOf(server);
+            Check.equal(400, CipherServerTest.send(client, uri, CipherType.VIGENERE, true, null, CipherServerTest.TEXT, false).status, "missing key");
+            Check.equal(400, CipherServerTest.send(client, uri, CipherType.VERNAM, true, "abc", CipherServerTest.TEXT, false).status, "pad given to encrypt");
+            Check.equal(400, CipherServerTest.send(client, uri, CipherType.PLAYFAIR, false, "playfair", "abc", false).status, "odd Playfair text");
+            HttpRequest unknown = HttpRequest.newBuilder(uri.resolve("/encrypt/more?cipher=caesar"))
+                    .POST(HttpRequest.BodyPublishers.ofString(CipherServerTest.TEXT))
+                    .build();
+            Check.equal(404, client.send(unknown, HttpResponse.BodyHandlers.discarding()).statusCode(), "unknown path");
+            HttpRequest get = HttpRequest.newBuilder(uri.resolve("/encrypt?cipher=caesar")).GET().build();
+            Check.equal(405, client.send(get, HttpResponse.BodyHandlers.discarding()).statusCode(), "GET request");
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * This method starts a server on a free port of the loopback.
+     * @param batchWindow long: The batch window, in nanoseconds
+     * @return CipherServer: The server, started
+     * @throws IOException If the server can not be started
+     */
+    private static CipherServer start(long batchWindow) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        CipherServer server = new CipherServer(address, CipherServer.DEFAULT_CACHE_SIZE, batchWindow, CipherServer.DEFAULT_BATCH_SIZE);
+        server.start();
+        return server;
+    }
+
+    /**
+     * This method returns the address of a server.
+     * @param server CipherServer: The server
+     * @return URI: The address, for example http://127.0.0.1:8080
+     */
+    private static URI uriOf(CipherServer server) {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort());
+    }
+
+    /**
+     * This method sends a request to a server.
+     * @param client HttpClient: The client
+     * @param uri URI: The address of the server
+     * @param type CipherType: The cipher
+     * @param encryption boolean: True for /encrypt, false for /decrypt
+     * @param key String: The key, null to send no key
+     * @param text String: The text
+     * @param binary boolean: True to send UTF-16BE code units, false to send
+     * UTF-8
+     * @return Response: The response
+     * @throws Exception If the request can not be sent
+     */
+    private static Response send(HttpClient client, URI uri, CipherType type, boolean encryption, String key, String text, boolean binary) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri.resolve((encryption ? "/encrypt" : "/decrypt") + "?cipher=" + type.getName()));
+        if(binary) {
+            builder.header("Content-Type", CipherServer.BINARY_CONTENT_TYPE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(CipherServerTest.toBytes(text)));
+        }
+        else {
+            builder.header("Content-Type", "text/plain; charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofString(text, StandardCharsets.UTF_8));
+        }
+        if(key != null) {
+            builder.header(CipherServer.KEY_HEADER, binary ? Base64.getEncoder().encodeToString(CipherServerTest.toBytes(key)) : URLEncoder.encode(key, StandardCharsets.UTF_8));
+        }
+        HttpResponse<byte[]> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        String responseKey = response.headers().firstValue(CipherServer.KEY_HEADER).orElse(null);
+        if(responseKey != null) {
+            responseKey = binary ? CipherServerTest.fromBytes(Base64.getDecoder().decode(responseKey)) : URLDecoder.decode(responseKey, StandardCharsets.UTF_8);
+        }
+        String body = (binary && response.statusCode() == 200) ? CipherServerTest.fromBytes(response.body()) : new String(response.body(), StandardCharsets.UTF_8);
+        return new Response(response.statusCode(), body, responseKey);
+    }
+
+    /**
+     * This method returns the UTF-16BE code units of a text, also the ones
+     * which are not valid Unicode.
+     * @param text String: The text
+     * @return byte[]: The code units, two bytes each
+     */
+    private static byte[] toBytes(String text) {
+        ByteBuffer bytes = ByteBuffer.allocate(2 * text.length());
+        for(int i = 0; i < text.length(); i++)
+        {
+            bytes.putChar(text.charAt(i));
+        }
+        return bytes.array();
+    }
+
+    /**
+     * This method returns the text of UTF-16BE code units.
+     * @param bytes byte[]: The code units, two bytes each
+     * @return String: The text
+     */
+    private static String fromBytes(byte[] bytes) {
+        char[] chars = new char[bytes.length / 2];
+        ByteBuffer.wrap(bytes).asCharBuffer().get(chars);
+        return new String(chars);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        CipherServerTest.roundTripsEveryCipher();
+        CipherServerTest.doesNotDelayRequestAlone();
+        CipherServerTest.rejectsWrongRequests();
+        System.out.println("CipherServerTest: passed");
+    }
+
+}
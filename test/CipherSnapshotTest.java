@@ -0,0 +1,141 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tests of CipherSnapshot, which compare the keys of a snapshot with the
+ * keys compiled again, on files of a temporary folder.
+ */
+final class CipherSnapshotTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The text encrypted with every key.
+     */
+    private static final String TEXT = "Attack at Dawn, 6 AM! \u00c9t\u00e9 \u2603 xyz";
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private CipherSnapshotTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that every key of a snapshot encrypts and decrypts
+     * as the key compiled again, that it is created once and that the keys
+     * written twice and the keys not written are handled.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void matchesCompiledKeys(Path folder) throws Exception {
+        Map<CipherType, List<String>> keys = new EnumMap<>(CipherType.class);
+        keys.put(CipherType.CAESAR, Arrays.asList("3", "-5", "29"));
+        keys.put(CipherType.UNICODE_CAESAR, Arrays.asList("500", "-7"));
+        keys.put(CipherType.TRANSPOSITION, Arrays.asList("4", "9"));
+        keys.put(CipherType.VIGENERE, Arrays.asList("lemon", "Lemon", "lemon", "k"));
+        keys.put(CipherType.SUBSTITUTION, Arrays.asList("qwertyuiopasdfghjklzxcvbnm", "QWERTYUIOPASDFGHJKLZXCVBNM"));
+        keys.put(CipherType.PLAYFAIR, Arrays.asList("playfairexample", "monarchy"));
+        keys.put(CipherType.UNICODE_VIGENERE, Arrays.asList("lemon", "cl\u00e9"));
+        Path file = folder.resolve("keys.snapshot");
+        Check.equal(16, CipherSnapshot.write(file, keys), "number of keys written");
+        CipherSnapshot snapshot = CipherSnapshot.open(file);
+        Check.equal(16, snapshot.size(), "number of keys");
+        Check.equal(0, snapshot.getMaterialized(), "keys created by the opening");
+        for(Map.Entry<CipherType, List<String>> entry : keys.entrySet())
+        {
+            for(String key : entry.getValue())
+            {
+                CipherEngine expected = entry.getKey().compile(key);
+                CipherEngine engine = snapshot.get(entry.getKey(), key);
+                String encrypted = expected.encryptText(CipherSnapshotTest.TEXT);
+                Check.equal(encrypted, engine.encryptText(CipherSnapshotTest.TEXT), "encryption with the " + entry.getKey() + " key " + key);
+                Check.equal(expected.decryptText(encrypted), engine.decryptText(encrypted), "decryption with the " + entry.getKey() + " key " + key);
+                Check.isTrue(engine == snapshot.get(entry.getKey(), key), "same cipher for the " + entry.getKey() + " key " + key);
+            }
+        }
+        Check.equal(16, snapshot.getMaterialized(), "keys created");
+        for(int index = 0; index < snapshot.size(); index++)
+        {
+            Check.isTrue(snapshot.get(index) == snapshot.get(snapshot.getType(index), snapshot.getKey(index)), "key " + index);
+        }
+        Check.equal(null, snapshot.get(CipherType.VIGENERE, "orange"), "key not written");
+        Check.equal(null, snapshot.get(CipherType.CAESAR, "lemon"), "key of another cipher");
+        Check.fails(IndexOutOfBoundsException.class, () -> snapshot.get(16), "index after the last key");
+        Check.fails(IllegalArgumentException.class, () -> CipherSnapshot.write(folder.resolve("pads.snapshot"),
+                Collections.singletonMap(CipherType.VERNAM, Collections.singletonList("abc"))), "one-time pads");
+        Check.fails(IllegalCipherKeyException.class, () -> CipherSnapshot.write(folder.resolve("wrong.snapshot"),
+                Collections.singletonMap(CipherType.VIGENERE, Collections.singletonList("k3y"))), "key not valid");
+    }
+
+    /**
+     * This method checks that the lookups in a damaged hash table end with
+     * an IllegalStateException, also when the table has no empty slot, and
+     * that a file which is not a snapshot is not opened.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void rejectsDamagedFiles(Path folder) throws Exception {
+        Path file = folder.resolve("damaged.snapshot");
+        CipherSnapshot.write(file, Collections.singletonMap(CipherType.VIGENERE, Collections.singletonList("lemon")));
+        byte[] bytes = Files.readAllBytes(file);
+        int slots = ByteBuffer.wrap(bytes).getInt(12);
+        ByteBuffer full = ByteBuffer.wrap(bytes.clone());
+        for(int slot = 0; slot < slots; slot++)
+        {
+            full.putInt(CipherSnapshot.HEADER_SIZE + slot * 4, 1);
+        }
+        Files.write(file, full.array());
+        CipherSnapshot fullSnapshot = CipherSnapshot.open(file);
+        Check.isTrue(fullSnapshot.get(CipherType.VIGENERE, "lemon") != null, "key of a table with no empty slot");
+        Check.fails(IllegalStateException.class, () -> fullSnapshot.get(CipherType.VIGENERE, "orange"), "key not written in a table with no empty slot");
+        ByteBuffer wrongIndex = ByteBuffer.wrap(bytes.clone());
+        for(int slot = 0; slot < slots; slot++)
+        {
+            wrongIndex.putInt(CipherSnapshot.HEADER_SIZE + slot * 4, 7);
+        }
+        Path wrongFile = folder.resolve("index.snapshot");
+        Files.write(wrongFile, wrongIndex.array());
+        CipherSnapshot wrongSnapshot = CipherSnapshot.open(wrongFile);
+        Check.fails(IllegalStateException.class, () -> wrongSnapshot.get(CipherType.VIGENERE, "lemon"), "slot with a key which does not exist");
+        Path shortFile = folder.resolve("short.snapshot");
+        Files.write(shortFile, Arrays.copyOf(bytes, CipherSnapshot.HEADER_SIZE));
+        Check.fails(IOException.class, () -> CipherSnapshot.open(shortFile), "file shorter than its hash table");
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path folder = Files.createTempDirectory("cipher-snapshot-test");
+        try {
+            CipherSnapshotTest.matchesCompiledKeys(folder);
+            CipherSnapshotTest.rejectsDamagedFiles(folder);
+        }
+        finally {
+            for(String name : new String[]{ "keys.snapshot", "pads.snapshot", "wrong.snapshot", "damaged.snapshot", "index.snapshot", "short.snapshot" })
+            {
+                Files.deleteIfExists(folder.resolve(name));
+            }
+            Files.delete(folder);
+        }
+        System.out.println("CipherSnapshotTest: passed");
+    }
+
+}
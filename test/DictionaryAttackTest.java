@@ -0,0 +1,104 @@
+package cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tests of DictionaryAttack, with a model built from a short English text
+ * and a wordlist of a temporary folder.
+ */
+final class DictionaryAttackTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The text of the model.
+     */
+    private static final String CORPUS = "It was the best of times, it was the worst of times, it was the age of wisdom, "
+            + "it was the age of foolishness, it was the epoch of belief, it was the epoch of incredulity, it was the "
+            + "season of light, it was the season of darkness, it was the spring of hope, it was the winter of despair, "
+            + "we had everything before us, we had nothing before us, we were all going direct to heaven, we were all "
+            + "going direct the other way. There were a king with a large jaw and a queen with a plain face, on the "
+            + "throne of England; there were a king with a large jaw and a queen with a fair face, on the throne of France.";
+
+    /**
+     * The plain text of the attack, with accented letters among the others.
+     */
+    private static final String TEXT = "The caf\u00e9 was the best of places, the na\u00efve king and the queen had "
+            + "everything before them, a r\u00e9sum\u00e9 of hope and of despair in the season of light.";
+
+    /**
+     * The words tried as keys.
+     */
+    private static final List<String> WORDS = Arrays.asList("apple", "lemon", "k3y", "", "orange", "LEMONADE", "zebra", "lemo");
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private DictionaryAttackTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the key of a text with accented letters is
+     * found first, with the score of the plain text, since the cipher does
+     * not move on in the key for the letters which are not ASCII.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void findsVigenereKey(Path folder) throws Exception {
+        NGramModelBuilder builder = new NGramModelBuilder();
+        builder.add(DictionaryAttackTest.CORPUS);
+        Path modelFile = folder.resolve("english.ngrams");
+        builder.write(modelFile);
+        NGramModel model = NGramModel.open(modelFile);
+        Path wordlist = folder.resolve("words.txt");
+        Files.write(wordlist, DictionaryAttackTest.WORDS, StandardCharsets.UTF_8);
+        String encrypted = VigenereCipher.encryptText("lemon", DictionaryAttackTest.TEXT);
+        DictionaryAttack attack = new DictionaryAttack(model, 2, 3, DictionaryAttack.DEFAULT_PREFIX_LENGTH, 3);
+        List<DictionaryAttack.Result> results = attack.attackVigenere(encrypted, wordlist, StandardCharsets.UTF_8, null);
+        Check.equal(3, results.size(), "number of results");
+        Check.equal("lemon", results.get(0).getKey(), "best key");
+        byte[] letters = new byte[DictionaryAttack.DEFAULT_PREFIX_LENGTH];
+        int count = NGramModel.toLetters(DictionaryAttackTest.TEXT, 0, DictionaryAttackTest.TEXT.length(), letters, 0);
+        Check.equal(model.score(letters, 0, count), results.get(0).getScore(), "score of the best key");
+    }
+
+    /**
+     * This method deletes a temporary folder and its files.
+     * @param folder Path: The folder
+     * @throws Exception If a file can not be deleted
+     */
+    private static void delete(Path folder) throws Exception {
+        for(String name : new String[]{ "english.ngrams", "words.txt" })
+        {
+            Files.deleteIfExists(folder.resolve(name));
+        }
+        Files.delete(folder);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path folder = Files.createTempDirectory("dictionary-attack-test");
+        try {
+            DictionaryAttackTest.findsVigenereKey(folder);
+        }
+        finally {
+            DictionaryAttackTest.delete(folder);
+        }
+        System.out.println("DictionaryAttackTest: passed");
+    }
+
+}
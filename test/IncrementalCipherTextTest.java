@@ -0,0 +1,132 @@
+package cryptography;
+
+import java.util.Random;
+
+/**
+ * The tests of IncrementalCipherText, which compare the encryption of a
+ * document after every edit with the encryption of its whole text.
+ */
+final class IncrementalCipherTextTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of random edits of a document.
+     */
+    private static final int EDITS = 3000;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private IncrementalCipherTextTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that after random inserts, deletes and replaces,
+     * long and short, the encryption of the document and of its parts is
+     * the encryption of its whole text.
+     * @throws Exception If the test fails
+     */
+    private static void matchesFullEncryption() throws Exception {
+        Object[][] documents = {
+            { IncrementalCipherText.ofCaesar((short) 7), CaesarCipher.compile((short) 7) },
+            { IncrementalCipherText.ofVigenere("lemon"), VigenereCipher.compile("lemon") },
+            { IncrementalCipherText.ofVigenere("k"), VigenereCipher.compile("k") },
+            { new IncrementalCipherText(SubstitutionCipher.compile("qwertyuiopasdfghjklzxcvbnm")), SubstitutionCipher.compile("qwertyuiopasdfghjklzxcvbnm") }
+        };
+        Random random = new Random(1);
+        for(Object[] pair : documents)
+        {
+            IncrementalCipherText document = (IncrementalCipherText) pair[0];
+            CipherEngine engine = (CipherEngine) pair[1];
+            StringBuilder expected = new StringBuilder();
+            for(int edit = 0; edit < IncrementalCipherTextTest.EDITS; edit++)
+            {
+                int index = random.nextInt(expected.length() + 1);
+                int count = (expected.length() == index) ? 0 : random.nextInt(Math.min(expected.length() - index, (random.nextInt(20) == 0) ? 2000 : 8) + 1);
+                String text = IncrementalCipherTextTest.randomText(random, (random.nextInt(20) == 0) ? 1500 : random.nextInt(6));
+                switch(random.nextInt(3)) {
+                    case 0:
+                        document.insert(index, text);
+                        expected.insert(index, text);
+                        break;
+                    case 1:
+                        document.delete(index, count);
+                        expected.delete(index, index + count);
+                        break;
+                    default:
+                        document.replace(index, count, text);
+                        expected.replace(index, index + count, text);
+                        break;
+                }
+                Check.equal(expected.length(), document.length(), "length after the edit " + edit);
+                if(edit % 10 == 0) {
+                    String encrypted = engine.encryptText(expected.toString());
+                    Check.equal(expected.toString(), document.getText(), "text after the edit " + edit);
+                    Check.equal(encrypted, document.getEncryptedText(), "encryption after the edit " + edit);
+                    int from = random.nextInt(expected.length() + 1);
+                    int to = from + random.nextInt(expected.length() - from + 1);
+                    Check.equal(encrypted.substring(from, to), document.getEncryptedText(from, to), "encryption from " + from + " to " + to + " after the edit " + edit);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method checks the errors of the constructor and of the edits.
+     * @throws Exception If the test fails
+     */
+    private static void rejectsWrongArguments() throws Exception {
+        Check.fails(IllegalArgumentException.class, () -> new IncrementalCipherText(VigenereCipher.compile("lemon")), "cipher which depends on the position");
+        Check.fails(IllegalArgumentException.class, () -> new IncrementalCipherText(PlayfairCipher.compile("playfair")), "cipher of pairs of letters");
+        IncrementalCipherText document = IncrementalCipherText.ofCaesar((short) 3);
+        document.insert(0, "Hello");
+        Check.fails(IndexOutOfBoundsException.class, () -> document.insert(6, "!"), "insert after the end");
+        Check.fails(IndexOutOfBoundsException.class, () -> document.delete(3, 3), "delete after the end");
+        Check.fails(IndexOutOfBoundsException.class, () -> document.getEncryptedText(4, 2), "part which ends before its start");
+        Check.equal("Hello", document.getText(), "text after the wrong edits");
+    }
+
+    /**
+     * This method returns a random text of letters, lowercase and uppercase,
+     * and other characters.
+     * @param random Random: The generator
+     * @param length int: The number of characters
+     * @return String: The text
+     */
+    private static String randomText(Random random, int length) {
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            int kind = random.nextInt(10);
+            if(kind < 6) {
+                text[i] = (char) ('a' + random.nextInt(26));
+            }
+            else if(kind < 8) {
+                text[i] = (char) ('A' + random.nextInt(26));
+            }
+            else {
+                text[i] = " .,\n1\u00e9".charAt(random.nextInt(6));
+            }
+        }
+        return new String(text);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        IncrementalCipherTextTest.matchesFullEncryption();
+        IncrementalCipherTextTest.rejectsWrongArguments();
+        System.out.println("IncrementalCipherTextTest: passed");
+    }
+
+}
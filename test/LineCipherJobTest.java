@@ -0,0 +1,238 @@
+package cryptography;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tests of LineCipherJob. The blocks are small, so that a text has many
+ * of them and they are processed out of order.
+ */
+final class LineCipherJobTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of characters of a block.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The number of blocks of the window.
+     */
+    private static final int WINDOW = 4;
+
+    /**
+     * The maximum time of a job, in seconds. A job which does not end in
+     * time is stuck.
+     */
+    private static final int TIMEOUT = 60;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private LineCipherJobTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the lines are written in order, with their line
+     * separators, by the engines which work in place and by the ones which do
+     * not, and that the decryption gives the text back.
+     * @throws Exception If the test fails
+     */
+    private static void keepsOrderOfLines() throws Exception {
+        String text = LineCipherJobTest.randomText(new Random(1), 5000);
+        CipherEngine[] engines = { VigenereCipher.compile("lemon"), TranspositionCipher.compile(5) };
+        for(CipherEngine engine : engines)
+        {
+            LineCipherJob encryption = new LineCipherJob(engine, true, LineCipherJobTest.BLOCK_SIZE, LineCipherJobTest.WINDOW, StandardCharsets.UTF_8);
+            StringWriter encrypted = new StringWriter();
+            LineCipherJob.Report report = LineCipherJobTest.run(encryption, text, encrypted);
+            Check.equal(LineCipherJobTest.encryptLines(engine, text), encrypted.toString(), engine.getClass().getName() + " encryption");
+            Check.equal(5000L, report.getLines(), "lines of the report");
+            Check.equal((long) text.length(), report.getChars(), "characters of the report");
+            Check.isTrue(report.getBlocks() > LineCipherJobTest.WINDOW, "the text has more blocks than the window");
+            LineCipherJob decryption = new LineCipherJob(engine, false, LineCipherJobTest.BLOCK_SIZE, LineCipherJobTest.WINDOW, StandardCharsets.UTF_8);
+            StringWriter decrypted = new StringWriter();
+            LineCipherJobTest.run(decryption, encrypted.toString(), decrypted);
+            Check.equal(text, decrypted.toString(), engine.getClass().getName() + " decryption");
+        }
+    }
+
+    /**
+     * This method checks that an exception or an error of a line stops the
+     * job with the same exception or error, instead of leaving it stuck.
+     * @throws Exception If the test fails
+     */
+    private static void reportsFailures() throws Exception {
+        String text = LineCipherJobTest.randomText(new Random(2), 2000).replaceFirst("\n", "\n!\n");
+        Throwable[] failures = { new IllegalArgumentException("bad line"), new StackOverflowError("deep line") };
+        for(Throwable failure : failures)
+        {
+            LineCipherJob job = new LineCipherJob(LineCipherJobTest.failingEngine(failure), true, LineCipherJobTest.BLOCK_SIZE, LineCipherJobTest.WINDOW, StandardCharsets.UTF_8);
+            Throwable thrown = Check.fails(Throwable.class, () -> LineCipherJobTest.run(job, text, new StringWriter()), "job with " + failure);
+            Check.isTrue(thrown == failure, "the job throws " + failure + ", not " + thrown);
+        }
+    }
+
+    /**
+     * This method checks that a job between files deletes the target when it
+     * fails.
+     * @throws Exception If the test fails
+     */
+    private static void deletesTargetOnFailure() throws Exception {
+        Path folder = Files.createTempDirectory("line-cipher-job-test");
+        Path source = folder.resolve("source.txt");
+        Path target = folder.resolve("target.txt");
+        try {
+            Files.writeString(source, "first line\n!\nlast line\n", StandardCharsets.UTF_8);
+            LineCipherJob job = new LineCipherJob(LineCipherJobTest.failingEngine(new IllegalArgumentException("bad line")), true);
+            Check.fails(IllegalArgumentException.class, () -> job.run(source, target), "job between files");
+            Check.isTrue(!Files.exists(target), "the target has been deleted");
+        }
+        finally {
+            Files.deleteIfExists(target);
+            Files.delete(source);
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * This method runs a job on another thread, waiting at most TIMEOUT
+     * seconds, and throws the exception or error of the job as it is.
+     * @param job LineCipherJob: The job
+     * @param text String: The text
+     * @param output StringWriter: The writer of the result
+     * @return LineCipherJob.Report: The report of the job
+     * @throws Exception The exception of the job, or TimeoutException if it
+     * is stuck
+     * @throws Error The error of the job
+     */
+    private static LineCipherJob.Report run(LineCipherJob job, String text, StringWriter output) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<LineCipherJob.Report> report = executor.submit(() -> job.run(new StringReader(text), output));
+            return report.get(LineCipherJobTest.TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (Exception) ex.getCause();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * This method returns a text of random lines, separated by "\n" or by
+     * "\r\n", some of them longer than a block.
+     * @param random Random: The generator
+     * @param lines int: The number of lines
+     * @return String: The text, ended by a line separator
+     */
+    private static String randomText(Random random, int lines) {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < lines; i++)
+        {
+            int length = (random.nextInt(50) == 0) ? 3 * LineCipherJobTest.BLOCK_SIZE : random.nextInt(40);
+            text.append("line ").append(i).append(' ');
+            for(int j = 0; j < length; j++)
+            {
+                text.append((random.nextInt(6) == 0) ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+            text.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * This method encrypts every line of a text alone, keeping the line
+     * separators.
+     * @param engine CipherEngine: The compiled cipher
+     * @param text String: The text, ended by a line separator
+     * @return String: The encrypted text
+     */
+    private static String encryptLines(CipherEngine engine, String text) {
+        StringBuilder encrypted = new StringBuilder();
+        int start = 0;
+        while(start < text.length())
+        {
+            int next = text.indexOf('\n', start);
+            int end = (next > start && text.charAt(next - 1) == '\r') ? next - 1 : next;
+            encrypted.append(engine.encryptText(text.substring(start, end))).append(text, end, next + 1);
+            start = next + 1;
+        }
+        return encrypted.toString();
+    }
+
+    /**
+     * This method returns an engine which throws the given exception or error
+     * when a line contains '!', and copies the other lines.
+     * @param failure Throwable: A RuntimeException or an Error
+     * @return CipherEngine: The engine
+     */
+    private static CipherEngine failingEngine(Throwable failure) {
+        return new CipherEngine() {
+
+            @Override
+            public long encrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+                for(int i = 0; i < length; i++)
+                {
+                    if(src[srcOffset + i] == '!' && failure instanceof Error) {
+                        throw (Error) failure;
+                    }
+                    if(src[srcOffset + i] == '!') {
+                        throw (RuntimeException) failure;
+                    }
+                    dst[dstOffset + i] = src[srcOffset + i];
+                }
+                return state;
+            }
+
+            @Override
+            public long decrypt(char[] src, int srcOffset, char[] dst, int dstOffset, int length, long state) {
+                return this.encrypt(src, srcOffset, dst, dstOffset, length, state);
+            }
+
+            @Override
+            public int getBlockSize() {
+                return 1;
+            }
+
+            @Override
+            public boolean isPositionIndependent() {
+                return true;
+            }
+
+        };
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        LineCipherJobTest.keepsOrderOfLines();
+        LineCipherJobTest.reportsFailures();
+        LineCipherJobTest.deletesTargetOnFailure();
+        System.out.println("LineCipherJobTest: passed");
+    }
+
+}
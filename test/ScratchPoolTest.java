@@ -0,0 +1,66 @@
+package cryptography;
+
+/**
+ * The tests of ScratchPool. The lengths close to Integer.MAX_VALUE are tested
+ * with a pool whose arrays are only their lengths, as Integer.
+ */
+final class ScratchPoolTest {
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private ScratchPoolTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that an array too short for a request stays in the
+     * pool for the next requests.
+     */
+    private static void keepsShortArrays() {
+        ScratchPool<char[]> pool = new ScratchPool<>(char[]::new, (char[] array) -> array.length, 1, ScratchPool.DEFAULT_MAXIMUM_LENGTH, ScratchPool.DEFAULT_IDLE_TIMEOUT);
+        char[] small = pool.acquire(100);
+        Check.equal(256, small.length, "length of a new array");
+        pool.release(small);
+        char[] large = pool.acquire(1000);
+        Check.equal(1024, large.length, "length of an array longer than the one of the pool");
+        Check.equal(0L, pool.getHits(), "hits of a request longer than the array of the pool");
+        Check.isTrue(pool.acquire(10) == small, "the short array is still in the pool");
+        Check.equal(1L, pool.getHits(), "hits");
+        Check.equal(2L, pool.getMisses(), "misses");
+    }
+
+    /**
+     * This method checks that the arrays are kept and allocated within the
+     * maximum length, also when twice the recent length overflows an int.
+     */
+    private static void keepsArraysOfHugeRequests() {
+        ScratchPool<Integer> pool = new ScratchPool<>(Integer::valueOf, Integer::intValue, 1, Integer.MAX_VALUE, ScratchPool.DEFAULT_IDLE_TIMEOUT);
+        Check.equal(Integer.MAX_VALUE, pool.acquire((1 << 30) + 1), "length of a huge array");
+        pool.release(5000);
+        Check.equal(5000, pool.acquire(10), "array kept after a huge request");
+        Check.equal(1L, pool.getHits(), "hits after a huge request");
+        ScratchPool<Integer> bounded = new ScratchPool<>(Integer::valueOf, Integer::intValue, 1, 3000, ScratchPool.DEFAULT_IDLE_TIMEOUT);
+        Check.equal(3000, bounded.acquire(2100), "length of an array near the maximum length");
+        Check.equal(5000, bounded.acquire(5000), "length of an array longer than the maximum length");
+        bounded.release(5000);
+        Check.equal(3000, bounded.acquire(10), "array longer than the maximum length not kept");
+        Check.equal(0L, bounded.getHits(), "hits of a bounded pool");
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     */
+    public static void main(String[] args) {
+        ScratchPoolTest.keepsShortArrays();
+        ScratchPoolTest.keepsArraysOfHugeRequests();
+        System.out.println("ScratchPoolTest: passed");
+    }
+
+}
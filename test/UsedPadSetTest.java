@@ -0,0 +1,146 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The tests of UsedPadSet.
+ */
+final class UsedPadSetTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of threads which claim at the same time.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * The number of pads, enough to grow the table many times.
+     */
+    private static final int PADS = 50_000;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private UsedPadSetTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that a pad is claimed only once and then is used.
+     */
+    private static void claimsOnce() {
+        UsedPadSet pads = new UsedPadSet();
+        Check.isTrue(!pads.isUsed("abcdef"), "a new pad is not used");
+        Check.isTrue(pads.claim("abcdef"), "the first claim succeeds");
+        Check.isTrue(!pads.claim("abcdef"), "the second claim fails");
+        Check.isTrue(pads.claim(new StringBuilder("abcdeg")), "another pad can be claimed");
+        Check.isTrue(pads.isUsed(new StringBuilder("abcdef")), "the pad is used, whatever its CharSequence");
+        Check.equal(2, pads.size(), "size");
+    }
+
+    /**
+     * This method checks that the keys given to the constructor are used.
+     */
+    private static void startsFromUsedKeys() {
+        UsedPadSet pads = new UsedPadSet(Arrays.asList("first", "second"));
+        Check.isTrue(pads.isUsed("first") && pads.isUsed("second"), "the given keys are used");
+        Check.isTrue(!pads.claim("second"), "a given key can not be claimed");
+        Check.equal(2, pads.size(), "size");
+    }
+
+    /**
+     * This method checks that when many threads claim the same pads at the
+     * same time, while the table grows, every pad is claimed by exactly one
+     * of them.
+     * @throws InterruptedException If the test is interrupted
+     */
+    private static void neverClaimsTwice() throws InterruptedException {
+        UsedPadSet pads = new UsedPadSet();
+        List<String> all = UsedPadSetTest.randomPads(UsedPadSetTest.PADS, new Random(1));
+        AtomicIntegerArray claims = new AtomicIntegerArray(all.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < UsedPadSetTest.THREADS; t++)
+        {
+            Random random = new Random(t);
+            Integer[] order = new Integer[all.size()];
+            for(int i = 0; i < order.length; i++)
+            {
+                order[i] = i;
+            }
+            Collections.shuffle(Arrays.asList(order), random);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch(InterruptedException ex) {
+                    return;
+                }
+                for(int i : order)
+                {
+                    if(pads.claim(all.get(i))) {
+                        claims.incrementAndGet(i);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+        for(int i = 0; i < all.size(); i++)
+        {
+            Check.equal(1, claims.get(i), "claims of the pad " + i);
+            Check.isTrue(pads.isUsed(all.get(i)), "the pad " + i + " is used");
+        }
+        Check.equal(all.size(), pads.size(), "size");
+    }
+
+    /**
+     * This method returns distinct random pads of 32 letters.
+     * @param count int: The number of pads
+     * @param random Random: The generator
+     * @return List(String): The pads
+     */
+    private static List<String> randomPads(int count, Random random) {
+        List<String> pads = new ArrayList<>(count);
+        char[] pad = new char[32];
+        while(pads.size() < count)
+        {
+            for(int i = 0; i < pad.length; i++)
+            {
+                pad[i] = (char) ('a' + random.nextInt(26));
+            }
+            pads.add(new String(pad));
+        }
+        return pads;
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        UsedPadSetTest.claimsOnce();
+        UsedPadSetTest.startsFromUsedKeys();
+        UsedPadSetTest.neverClaimsTwice();
+        System.out.println("UsedPadSetTest: passed");
+    }
+
+}
@@ -0,0 +1,130 @@
+package cryptography;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tests of VernamEnvelope: the round trip of the envelopes with the pad
+ * inline and referenced, and the rejection of the malformed bytes.
+ */
+final class VernamEnvelopeTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The texts of the envelopes.
+     */
+    private static final String[] TEXTS = { "", "Attack at dawn, 6 AM!", "\u00e9t\u00e9 \u2603 snow", "no letters? 1 2 3 -> \u00e0 \u00e8" };
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private VernamEnvelopeTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that an envelope with the pad inline is decrypted,
+     * also after its binary form is parsed, without a pad source.
+     */
+    private static void roundTripsInlinePads() {
+        for(String text : VernamEnvelopeTest.TEXTS)
+        {
+            VernamEnvelope envelope = VernamEnvelope.sealInline(text);
+            Check.isTrue(envelope.isInline(), "the pad is inline");
+            Check.equal(ASCIICharacterUtils.countLetters(text), envelope.getLetterCount(), "letters of " + text);
+            Check.equal(text, envelope.decrypt(null), "decryption of " + text);
+            VernamEnvelope parsed = VernamEnvelope.parse(envelope.toBytes());
+            Check.equal(envelope.getText(), parsed.getText(), "text of the parsed " + text);
+            Check.equal(text, parsed.decrypt(null), "decryption of the parsed " + text);
+        }
+    }
+
+    /**
+     * This method checks that the envelopes which reference the pads of a
+     * store are decrypted in parallel with the store as pad source, and that
+     * the largest pad ids and offsets are written and read back.
+     * @throws Exception If the test fails
+     */
+    private static void roundTripsReferencedPads() throws Exception {
+        Path folder = Files.createTempDirectory("vernam-envelope-test");
+        Path file = folder.resolve("envelopes.pad");
+        try(VernamPadStore store = VernamPadStore.create(file, 100_000)) {
+            List<byte[]> envelopes = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            for(int i = 0; i < 500; i++)
+            {
+                String text = VernamEnvelopeTest.TEXTS[i % VernamEnvelopeTest.TEXTS.length] + " #" + i;
+                VernamEnvelope envelope = VernamEnvelope.seal(text, store, 7);
+                Check.isTrue(!envelope.isInline(), "the pad is referenced");
+                envelopes.add(envelope.toBytes());
+                texts.add(text);
+            }
+            VernamEnvelope.PadSource pads = (long id, long offset, int length) -> {
+                if(id != 7) {
+                    throw new IllegalArgumentException("Unknown pad source " + id);
+                }
+                return store.getPad(offset, length);
+            };
+            Check.equal(texts, Arrays.asList(VernamEnvelope.decryptAll(envelopes, pads)), "decryption in parallel");
+            VernamEnvelope largest = VernamEnvelope.seal("x", store, Long.MAX_VALUE);
+            VernamEnvelope parsed = VernamEnvelope.parse(largest.toBytes());
+            Check.equal(Long.MAX_VALUE, parsed.getPadId(), "largest pad id");
+            Check.equal(largest.getPadOffset(), parsed.getPadOffset(), "offset of the largest pad id");
+            Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.seal("x", store, -1), "negative pad id");
+            Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(envelopes.get(1)).decrypt(null), "referenced pad without source");
+        }
+        finally {
+            Files.deleteIfExists(file);
+            Files.delete(folder);
+        }
+    }
+
+    /**
+     * This method checks that the malformed bytes are rejected with an
+     * IllegalArgumentException, before anything as long as a length written
+     * in them is allocated.
+     */
+    private static void rejectsMalformedBytes() {
+        byte[] valid = VernamEnvelope.sealInline("Attack at dawn").toBytes();
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(new byte[0]), "no bytes");
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(new byte[]{ 'V', 'X', 1, 1 }), "wrong magic");
+        for(int length = 0; length < valid.length; length++)
+        {
+            byte[] truncated = Arrays.copyOf(valid, length);
+            Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(truncated), "envelope truncated at " + length);
+        }
+        byte[] trailing = Arrays.copyOf(valid, valid.length + 1);
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(trailing), "byte after the text");
+        byte[] hugePad = { 'V', 'E', 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0 };
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(hugePad), "pad longer than the bytes");
+        byte[] moreLetters = { 'V', 'E', 1, 1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(moreLetters), "more letters than characters");
+        byte[] longNumber = { 'V', 'E', 1, 0, 1, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01 };
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(longNumber), "number of ten bytes");
+        byte[] wrongLetters = valid.clone();
+        wrongLetters[5]++;
+        Check.fails(IllegalArgumentException.class, () -> VernamEnvelope.parse(wrongLetters), "wrong number of letters");
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        VernamEnvelopeTest.roundTripsInlinePads();
+        VernamEnvelopeTest.roundTripsReferencedPads();
+        VernamEnvelopeTest.rejectsMalformedBytes();
+        System.out.println("VernamEnvelopeTest: passed");
+    }
+
+}
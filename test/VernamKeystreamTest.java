@@ -0,0 +1,209 @@
+package cryptography;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The tests of VernamKeystream, which compare its encryption with the Vernam
+ * Ciphers given the pad generated by a plain AES-CTR reference, and the
+ * encryption in chunks and in parallel with the encryption in one call.
+ */
+final class VernamKeystreamTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of characters of the texts, more than three blocks of the
+     * pad.
+     */
+    private static final int TEXT_LENGTH = 3 * VernamKeystream.BLOCK_SIZE + 1000;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private VernamKeystreamTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the keystream encrypts as the Vernam Ciphers
+     * with the pad of the reference, and decrypts back, for the letters and
+     * for the Unicode characters.
+     * @throws Exception If the test fails
+     */
+    private static void matchesReferencePad() throws Exception {
+        Random random = new Random(13);
+        for(int round = 0; round < 3; round++)
+        {
+            byte[] seed = new byte[VernamKeystream.SEED_LENGTH];
+            random.nextBytes(seed);
+            String text = VernamKeystreamTest.randomText(random, VernamKeystreamTest.TEXT_LENGTH);
+            int letters = ASCIICharacterUtils.countLetters(text);
+            int[] shifts = VernamKeystreamTest.referencePad(seed, false, letters);
+            char[] pad = new char[letters];
+            for(int i = 0; i < letters; i++)
+            {
+                pad[i] = (char) ('a' + (shifts[i] + 25) % 26);
+            }
+            CipherEngine keystream = VernamCipher.compileKeystream(seed);
+            String encrypted = keystream.encryptText(text);
+            Check.equal(CipherType.VERNAM.compile(new String(pad)).encryptText(text), encrypted, "encryption with the letter pad of the round " + round);
+            Check.equal(text, keystream.decryptText(encrypted), "decryption with the letter pad of the round " + round);
+            int[] unicodeShifts = VernamKeystreamTest.referencePad(seed, true, text.length());
+            char[] unicodePad = new char[text.length()];
+            for(int i = 0; i < unicodePad.length; i++)
+            {
+                unicodePad[i] = (char) ('a' + unicodeShifts[i]);
+            }
+            CipherEngine unicodeKeystream = UnicodeVernamCipher.compileKeystream(seed);
+            String unicodeEncrypted = unicodeKeystream.encryptText(text);
+            Check.equal(UnicodeVernamCipher.compile(new String(unicodePad), new ArrayList<>()).encryptText(text), unicodeEncrypted, "encryption with the Unicode pad of the round " + round);
+            Check.equal(text, unicodeKeystream.decryptText(unicodeEncrypted), "decryption with the Unicode pad of the round " + round);
+        }
+    }
+
+    /**
+     * This method checks that a text encrypted in random chunks, carrying the
+     * state, and in parallel in a ForkJoinPool is encrypted as in one call.
+     * @throws Exception If the test fails
+     */
+    private static void matchesInChunksAndInParallel() throws Exception {
+        Random random = new Random(17);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for(boolean unicode : new boolean[]{ false, true })
+            {
+                byte[] seed = VernamKeystream.generateSeed();
+                CipherEngine serial = unicode ? UnicodeVernamCipher.compileKeystream(seed) : VernamCipher.compileKeystream(seed);
+                CipherEngine parallel = unicode ? UnicodeVernamCipher.compileKeystream(seed, pool) : VernamCipher.compileKeystream(seed, pool);
+                char[] text = VernamKeystreamTest.randomText(random, 3 * VernamKeystream.PARALLEL_THRESHOLD + 777).toCharArray();
+                char[] expected = new char[text.length];
+                long end = serial.encrypt(text, 0, expected, 0, text.length, 0);
+                Check.equal(unicode ? (long) text.length : (long) ASCIICharacterUtils.countLetters(text, 0, text.length), end, "position after the text");
+                char[] chunked = new char[text.length];
+                long state = 0;
+                for(int start = 0; start < text.length; )
+                {
+                    int length = Math.min(text.length - start, random.nextInt((random.nextInt(10) == 0) ? 3 * VernamKeystream.BLOCK_SIZE : 50));
+                    state = serial.encrypt(text, start, chunked, start, length, state);
+                    start += length;
+                }
+                Check.equal(new String(expected), new String(chunked), "encryption in chunks, unicode " + unicode);
+                Check.equal(end, state, "position after the chunks, unicode " + unicode);
+                char[] output = new char[text.length];
+                Check.equal(end, parallel.encrypt(text, 0, output, 0, text.length, 0), "position after the text in parallel, unicode " + unicode);
+                Check.equal(new String(expected), new String(output), "encryption in parallel, unicode " + unicode);
+                int from = 1 + random.nextInt(text.length - 1);
+                long middle = serial.encrypt(text, 0, output, 0, from, 0);
+                parallel.decrypt(expected, from, output, from, text.length - from, middle);
+                Check.equal(new String(text, from, text.length - from), new String(output, from, text.length - from), "decryption in parallel from " + from + ", unicode " + unicode);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * This method checks the errors of the seeds and of the positions.
+     * @throws Exception If the test fails
+     */
+    private static void rejectsWrongSeeds() throws Exception {
+        Check.fails(IllegalCipherKeyException.class, () -> VernamCipher.compileKeystream(null), "null seed");
+        Check.fails(IllegalCipherKeyException.class, () -> VernamCipher.compileKeystream(new byte[16]), "seed of 16 bytes");
+        Check.fails(IllegalCipherKeyException.class, () -> UnicodeVernamCipher.compileKeystream(new byte[33]), "seed of 33 bytes");
+        CipherEngine keystream = VernamCipher.compileKeystream(VernamKeystream.generateSeed());
+        Check.fails(IllegalArgumentException.class, () -> keystream.encrypt(new char[1], 0, new char[1], 0, 1, -1), "negative position");
+        Check.isTrue(!keystream.isPositionIndependent(), "the keystream depends on the position");
+    }
+
+    /**
+     * This method generates the shifts of a pad with AES-256 in counter mode,
+     * block b from the counter b * 2^64. The letter shifts are the bytes
+     * under 234 modulo 26, the Unicode shifts are pairs of bytes.
+     * @param seed byte[]: The seed
+     * @param unicode boolean: True for the Unicode shifts
+     * @param length int: The number of shifts
+     * @return int[]: The shifts
+     * @throws Exception If AES is not available
+     */
+    private static int[] referencePad(byte[] seed, boolean unicode, int length) throws Exception {
+        int[] shifts = new int[length];
+        javax.crypto.Cipher aes = javax.crypto.Cipher.getInstance("AES/CTR/NoPadding");
+        for(int block = 0; block * VernamKeystream.BLOCK_SIZE < length; block++)
+        {
+            byte[] counter = new byte[16];
+            for(int i = 0; i < 8; i++)
+            {
+                counter[i] = (byte) ((long) block >>> (56 - i * 8));
+            }
+            aes.init(javax.crypto.Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, "AES"), new IvParameterSpec(counter));
+            int first = block * VernamKeystream.BLOCK_SIZE, last = Math.min(length, first + VernamKeystream.BLOCK_SIZE);
+            if(unicode) {
+                byte[] bytes = aes.update(new byte[2 * VernamKeystream.BLOCK_SIZE]);
+                for(int i = first; i < last; i++)
+                {
+                    shifts[i] = ((bytes[(i - first) * 2] & 0xFF) << 8) | (bytes[(i - first) * 2 + 1] & 0xFF);
+                }
+            }
+            else {
+                int filled = first;
+                while(filled < last)
+                {
+                    for(byte b : aes.update(new byte[16]))
+                    {
+                        if((b & 0xFF) < 234 && filled < last) {
+                            shifts[filled++] = (b & 0xFF) % 26;
+                        }
+                    }
+                }
+            }
+        }
+        return shifts;
+    }
+
+    /**
+     * This method returns a random text of letters and other characters.
+     * @param random Random: The generator
+     * @param length int: The number of characters
+     * @return String: The text
+     */
+    private static String randomText(Random random, int length) {
+        char[] text = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            int kind = random.nextInt(10);
+            if(kind < 6) {
+                text[i] = (char) ('a' + random.nextInt(26));
+            }
+            else if(kind < 8) {
+                text[i] = (char) ('A' + random.nextInt(26));
+            }
+            else {
+                text[i] = " .,\n1\u00e9\u2603".charAt(random.nextInt(7));
+            }
+        }
+        return new String(text);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        VernamKeystreamTest.matchesReferencePad();
+        VernamKeystreamTest.matchesInChunksAndInParallel();
+        VernamKeystreamTest.rejectsWrongSeeds();
+        System.out.println("VernamKeystreamTest: passed");
+    }
+
+}
@@ -0,0 +1,165 @@
+package cryptography;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * The tests of VernamPadStore, on files of a temporary folder.
+ */
+final class VernamPadStoreTest {
+
+    //CONSTANT FIELDS
+
+    /**
+     * The number of threads which reserve at the same time.
+     */
+    private static final int THREADS = 8;
+
+    //CONSTRUCTORS
+
+    /**
+     * Constructor of the class, which can not be instantiated.
+     */
+    private VernamPadStoreTest() {
+    }
+
+    //PRIVATE STATIC METHODS
+
+    /**
+     * This method checks that the letters reserved by many threads at the
+     * same time never overlap and cover the used part of the pad.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void reservesDisjointLetters(Path folder) throws Exception {
+        try(VernamPadStore store = VernamPadStore.create(folder.resolve("reserve.pad"), 100_000)) {
+            List<long[]> reservations = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for(int t = 0; t < VernamPadStoreTest.THREADS; t++)
+            {
+                Random random = new Random(t);
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for(int i = 0; i < 200; i++)
+                        {
+                            int letters = 1 + random.nextInt(50);
+                            reservations.add(new long[]{ store.reserve(letters), letters });
+                        }
+                    }
+                    catch(InterruptedException | IllegalCipherKeyException | IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for(Thread thread : threads)
+            {
+                thread.join();
+            }
+            reservations.sort((long[] first, long[] second) -> Long.compare(first[0], second[0]));
+            long end = 0;
+            for(long[] reservation : reservations)
+            {
+                Check.equal(end, reservation[0], "start of a reservation");
+                end += reservation[1];
+            }
+            Check.equal(end, store.getOffset(), "offset");
+            Check.equal(store.getLength() - end, store.getRemaining(), "remaining letters");
+        }
+    }
+
+    /**
+     * This method checks that a reopened store keeps its offset, decrypts
+     * the texts encrypted before and never gives the same letters again.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void keepsOffsetAfterReopen(Path folder) throws Exception {
+        Path file = folder.resolve("reopen.pad");
+        String text = "Attack at dawn, 6 AM!";
+        VernamPadStore.Encryption encryption;
+        long offset;
+        try(VernamPadStore store = VernamPadStore.create(file, 1000)) {
+            store.reserve(7);
+            encryption = store.encryptText(text);
+            Check.equal(7L, encryption.getOffset(), "offset of the encryption");
+            Check.equal(ASCIICharacterUtils.countLetters(text), encryption.getLength(), "letters of the encryption");
+            Check.equal(text, store.decryptText(encryption.getText(), encryption.getOffset()), "decryption");
+            offset = store.getOffset();
+        }
+        try(VernamPadStore store = VernamPadStore.open(file)) {
+            Check.equal(offset, store.getOffset(), "offset after the reopen");
+            Check.equal(text, store.decryptText(encryption.getText(), encryption.getOffset()), "decryption after the reopen");
+            Check.equal(offset, store.reserve(3), "first reservation after the reopen");
+        }
+    }
+
+    /**
+     * This method checks the errors of a store: too many letters, letters not
+     * used and a file opened twice.
+     * @param folder Path: The temporary folder
+     * @throws Exception If the test fails
+     */
+    private static void rejectsWrongUses(Path folder) throws Exception {
+        Path file = folder.resolve("errors.pad");
+        try(VernamPadStore store = VernamPadStore.create(file, 10)) {
+            store.reserve(8);
+            Check.fails(IllegalCipherKeyException.class, () -> store.reserve(3), "reservation beyond the end");
+            Check.equal(8L, store.getOffset(), "offset after a failed reservation");
+            Check.fails(IllegalArgumentException.class, () -> store.getPad(5, 4), "pad not used");
+            Check.fails(IOException.class, () -> VernamPadStore.open(file), "second open");
+            Check.equal(2L, store.getRemaining(), "remaining letters after a second open");
+        }
+        try(VernamPadStore store = VernamPadStore.open(file)) {
+            Check.equal(8L, store.getOffset(), "offset after the reopen");
+        }
+        Check.fails(IOException.class, () -> VernamPadStore.create(file, 10), "creation of an existing file");
+    }
+
+    /**
+     * This method deletes a temporary folder and its files.
+     * @param folder Path: The folder
+     * @throws IOException If a file can not be deleted
+     */
+    private static void delete(Path folder) throws IOException {
+        try(Stream<Path> files = Files.list(folder)) {
+            for(Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    //PUBLIC STATIC METHODS
+
+    /**
+     * It runs the tests.
+     * @param args String[]: Not used
+     * @throws Exception If a test fails
+     */
+    public static void main(String[] args) throws Exception {
+        Path folder = Files.createTempDirectory("vernam-pad-store-test");
+        try {
+            VernamPadStoreTest.reservesDisjointLetters(folder);
+            VernamPadStoreTest.keepsOffsetAfterReopen(folder);
+            VernamPadStoreTest.rejectsWrongUses(folder);
+        }
+        finally {
+            VernamPadStoreTest.delete(folder);
+        }
+        System.out.println("VernamPadStoreTest: passed");
+    }
+
+}